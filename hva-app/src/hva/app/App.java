@@ -1,6 +1,7 @@
 package hva.app;
 
 import hva.exceptions.ImportFileException;
+import hva.exceptions.UnavailableFileException;
 import pt.tecnico.uilib.Dialog;
 
 public class App {
@@ -11,12 +12,34 @@ public class App {
             String datafile = System.getProperty("import");
             if (datafile != null) {
                 try {
-                    receiver.importFile(datafile);
+                    // "-" streams the data from the standard input, compressed or not
+                    if (datafile.equals("-"))
+                        receiver.importFile(System.in);
+                    else
+                        receiver.importFile(datafile);
                 } catch (ImportFileException e) {
                     // no behavior described: just present the problem
                     e.printStackTrace();
                 }
             }
+            String snapshot = System.getProperty("readonly");
+            if (snapshot != null) {
+                try {
+                    // only queries: the commands that change the hotel are not available
+                    receiver.loadReadOnly(snapshot);
+                } catch (UnavailableFileException e) {
+                    e.printStackTrace();
+                }
+            }
+            String followed = System.getProperty("follow");
+            if (followed != null) {
+                try {
+                    // only queries, kept up to date with the journal of the process that saves the snapshot
+                    receiver.follow(followed);
+                } catch (UnavailableFileException e) {
+                    e.printStackTrace();
+                }
+            }
 
             (new hva.app.main.Menu(receiver)).open();
         }
@@ -18,7 +18,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoRegisterAnimal extends Command<Hotel> {
 
     DoRegisterAnimal(Hotel receiver) {
-        super(Label.REGISTER_ANIMAL, receiver);
+        super(Label.REGISTER_ANIMAL, receiver, hotel -> !hotel.isReadOnly());
         addStringField("animalId", Prompt.animalKey());
         addStringField("animalName", Prompt.animalName());
         addStringField("speciesId", Prompt.speciesKey());
@@ -14,7 +14,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoTransferToHabitat extends Command<Hotel> {
 
     DoTransferToHabitat(Hotel hotel) {
-        super(Label.TRANSFER_ANIMAL_TO_HABITAT, hotel);
+        super(Label.TRANSFER_ANIMAL_TO_HABITAT, hotel, h -> !h.isReadOnly());
         addStringField("animalId", Prompt.animalKey());
         addStringField("habitatId", hva.app.habitat.Prompt.habitatKey());
     }
@@ -13,7 +13,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoAddResponsibility extends Command<Hotel> {
 
     DoAddResponsibility(Hotel receiver) {
-        super(Label.ADD_RESPONSABILITY, receiver);
+        super(Label.ADD_RESPONSABILITY, receiver, hotel -> !hotel.isReadOnly());
         addStringField("employeeId", Prompt.employeeKey());
         addStringField("responsabilityId", Prompt.responsibilityKey());
     }
@@ -18,7 +18,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoRegisterEmployee extends Command<Hotel> {
 
     DoRegisterEmployee(Hotel receiver) {
-        super(Label.REGISTER_EMPLOYEE, receiver);
+        super(Label.REGISTER_EMPLOYEE, receiver, hotel -> !hotel.isReadOnly());
     }
 
     @Override
@@ -14,7 +14,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoRemoveResponsibility extends Command<Hotel> {
 
     DoRemoveResponsibility(Hotel receiver) {
-        super(Label.REMOVE_RESPONSABILITY, receiver);
+        super(Label.REMOVE_RESPONSABILITY, receiver, hotel -> !hotel.isReadOnly());
         addStringField("employeeId", Prompt.employeeKey());
         addStringField("responsabilityId", Prompt.responsibilityKey());
     }
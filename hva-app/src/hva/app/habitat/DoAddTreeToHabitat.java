@@ -16,7 +16,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoAddTreeToHabitat extends Command<Hotel> {
 
     DoAddTreeToHabitat(Hotel receiver) {
-        super(Label.ADD_TREE_TO_HABITAT, receiver);
+        super(Label.ADD_TREE_TO_HABITAT, receiver, hotel -> !hotel.isReadOnly());
     }
 
     @Override
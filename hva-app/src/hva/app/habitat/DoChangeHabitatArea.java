@@ -12,7 +12,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoChangeHabitatArea extends Command<Hotel> {
 
     DoChangeHabitatArea(Hotel receiver) {
-        super(Label.CHANGE_HABITAT_AREA, receiver);
+        super(Label.CHANGE_HABITAT_AREA, receiver, hotel -> !hotel.isReadOnly());
     }
 
     @Override
@@ -17,7 +17,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoChangeHabitatInfluence extends Command<Hotel> {
 
     DoChangeHabitatInfluence(Hotel receiver) {
-        super(Label.CHANGE_HABITAT_INFLUENCE, receiver);
+        super(Label.CHANGE_HABITAT_INFLUENCE, receiver, hotel -> !hotel.isReadOnly());
     }
 
     @Override
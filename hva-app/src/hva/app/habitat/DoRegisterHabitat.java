@@ -15,7 +15,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoRegisterHabitat extends Command<Hotel> {
 
     DoRegisterHabitat(Hotel receiver) {
-        super(Label.REGISTER_HABITAT, receiver);
+        super(Label.REGISTER_HABITAT, receiver, hotel -> !hotel.isReadOnly());
     }
 
     @Override
@@ -6,7 +6,7 @@ import pt.tecnico.uilib.menus.CommandException;
 
 class DoAdvanceSeason extends Command<HotelManager> {
     DoAdvanceSeason(HotelManager receiver) {
-        super(Label.ADVANCE_SEASON, receiver);
+        super(Label.ADVANCE_SEASON, receiver, r -> !r.isReadOnly());
     }
 
     @Override
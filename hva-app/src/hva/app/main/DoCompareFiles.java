@@ -0,0 +1,59 @@
+package hva.app.main;
+
+import hva.HotelManager;
+import hva.SnapshotDiffListener;
+import hva.enums.SnapshotEntity;
+import pt.tecnico.uilib.forms.Form;
+import pt.tecnico.uilib.menus.Command;
+import pt.tecnico.uilib.menus.CommandException;
+
+import hva.exceptions.UnavailableFileException;
+import hva.app.exceptions.FileOpenFailedException;
+
+class DoCompareFiles extends Command<HotelManager> {
+
+    /** Number of differences shown at a time, so they are not all kept. */
+    private static final int LINES_PER_PAGE = 1000;
+
+    DoCompareFiles(HotelManager receiver) {
+        super(Label.COMPARE_FILES, receiver);
+    }
+
+    @Override
+    protected final void execute() throws CommandException {
+        String before = Form.requestString(Prompt.compareBefore());
+        String after = Form.requestString(Prompt.compareAfter());
+        int[] lines = { 0 };
+        try {
+            _receiver.compareFiles(before, after, new SnapshotDiffListener() {
+                @Override
+                public void added(SnapshotEntity entity, String id, String description) {
+                    show(Message.added(description));
+                }
+
+                @Override
+                public void removed(SnapshotEntity entity, String id, String description) {
+                    show(Message.removed(description));
+                }
+
+                @Override
+                public void changed(SnapshotEntity entity, String id, String was, String is) {
+                    show(Message.changed(was, is));
+                }
+
+                private void show(String line) {
+                    _display.addLine(line);
+                    if (++lines[0] % LINES_PER_PAGE == 0)
+                        _display.displayText();
+                }
+            });
+        } catch (UnavailableFileException e) {
+            _display.clear();
+            throw new FileOpenFailedException(e);
+        }
+        if (lines[0] == 0)
+            _display.popup(Message.noDifferences());
+        else
+            _display.displayText();
+    }
+}
@@ -2,6 +2,7 @@ package hva.app.main;
 
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.util.concurrent.CompletableFuture;
 
 import pt.tecnico.uilib.forms.Form;
 import pt.tecnico.uilib.menus.Command;
@@ -10,16 +11,17 @@ import hva.exceptions.MissingFileAssociationException;
 
 class DoSaveFile extends Command<HotelManager> {
     DoSaveFile(HotelManager receiver) {
-        super(Label.SAVE_FILE, receiver, r -> r.getHotel() != null);   
+        super(Label.SAVE_FILE, receiver, r -> r.getHotel() != null && !r.isReadOnly());
     }
 
     @Override
     protected final void execute() {
+        // the snapshot is written in the background, so commands can keep running
         try {
-            _receiver.save();
+            report(_receiver.saveAsync());
         } catch (MissingFileAssociationException e) {
             try {
-                _receiver.saveAs(Form.requestString(Prompt.newSaveAs()));
+                report(_receiver.saveAsAsync(Form.requestString(Prompt.newSaveAs())));
             } catch (MissingFileAssociationException e1) {
                 e1.printStackTrace();
             } catch (IOException e1) {
@@ -29,6 +31,18 @@ class DoSaveFile extends Command<HotelManager> {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } 
+        }
+    }
+
+    /**
+     * Reports the failure of a save, when it finishes.
+     *
+     * @param save the save.
+     */
+    private static void report(CompletableFuture<Long> save) {
+        save.whenComplete((result, failure) -> {
+            if (failure != null)
+                failure.printStackTrace();
+        });
     }
 }
@@ -0,0 +1,16 @@
+package hva.app.main;
+
+import hva.HotelManager;
+import pt.tecnico.uilib.menus.Command;
+import pt.tecnico.uilib.menus.CommandException;
+
+class DoShowReplicationLag extends Command<HotelManager> {
+    DoShowReplicationLag(HotelManager receiver) {
+        super(Label.SHOW_REPLICATION_LAG, receiver, r -> r.isFollowing());
+    }
+
+    @Override
+    protected final void execute() throws CommandException {
+        _display.popup(Message.replicationLag(_receiver.getReplicationLagOperations(), _receiver.getReplicationLagMillis()));
+    }
+}
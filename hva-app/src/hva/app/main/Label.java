@@ -6,9 +6,11 @@ public interface Label {
     String NEW_FILE = "Criar ficheiro";
     String OPEN_FILE = "Abrir ficheiro";
     String SAVE_FILE = "Guardar ficheiro";
+    String COMPARE_FILES = "Comparar ficheiros";
 
     String ADVANCE_SEASON = "Avançar estação do ano";
     String SHOW_GLOBAL_SATISFACTION = "Ver satisfação global";
+    String SHOW_REPLICATION_LAG = "Ver atraso da réplica";
 
     String MENU_ANIMALS = "Gestão de animais";
     String MENU_EMPLOYEES = "Gestão de funcionários";
@@ -7,8 +7,10 @@ public class Menu extends pt.tecnico.uilib.menus.Menu {
                 new DoNewFile(receiver),
                 new DoOpenFile(receiver),
                 new DoSaveFile(receiver),
+                new DoCompareFiles(receiver),
                 new DoAdvanceSeason(receiver),
                 new DoShowGlobalSatisfaction(receiver),
+                new DoShowReplicationLag(receiver),
                 new DoOpenAnimalsMenu(receiver),
                 new DoOpenEmployeesMenu(receiver),
                 new DoOpenHabitatsMenu(receiver),
@@ -8,4 +8,24 @@ public interface Message {
     static String fileNotFound(String filename) {
         return "O ficheiro '" + filename + "' não existe.";
     }
+
+    static String added(String entity) {
+        return "+ " + entity;
+    }
+
+    static String removed(String entity) {
+        return "- " + entity;
+    }
+
+    static String changed(String before, String after) {
+        return "~ " + before + " -> " + after;
+    }
+
+    static String noDifferences() {
+        return "Os ficheiros não têm diferenças.";
+    }
+
+    static String replicationLag(long operations, long millis) {
+        return "Atraso da réplica: " + operations + " operações, " + millis + " ms.";
+    }
 }
\ No newline at end of file
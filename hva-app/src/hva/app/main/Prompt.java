@@ -16,4 +16,12 @@ public interface Prompt {
     static String saveBeforeExit() {
         return "Guardar antes de fechar? ";
     }
+
+    static String compareBefore() {
+        return "Ficheiro anterior: ";
+    }
+
+    static String compareAfter() {
+        return "Ficheiro posterior: ";
+    }
 }
\ No newline at end of file
@@ -15,7 +15,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoRegisterVaccine extends Command<Hotel> {
 
     DoRegisterVaccine(Hotel receiver) {
-        super(Label.REGISTER_VACCINE, receiver);
+        super(Label.REGISTER_VACCINE, receiver, hotel -> !hotel.isReadOnly());
     }
 
     @Override
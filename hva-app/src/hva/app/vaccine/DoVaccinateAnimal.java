@@ -17,7 +17,7 @@ import pt.tecnico.uilib.menus.CommandException;
 class DoVaccinateAnimal extends Command<Hotel> {
 
     DoVaccinateAnimal(Hotel receiver) {
-        super(Label.VACCINATE_ANIMAL, receiver);
+        super(Label.VACCINATE_ANIMAL, receiver, hotel -> !hotel.isReadOnly());
     }
 
     @Override
@@ -104,6 +104,13 @@ public class Animal implements Serializable {
         return _habitat;
     }
 
+    /**
+     * @return the effects of the vaccines the animal took, in order, as an unmodifiable list.
+     */
+    List<VaccineDamage> healthEvents() {
+        return Collections.unmodifiableList(_healthHistory);
+    }
+
     /**
      * @return the animal's health history.
      */
@@ -0,0 +1,111 @@
+package hva;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The {@code BulkImportFormat} class holds the constants of the binary bulk-import format, a compact
+ * form of a text input file that {@link Hotel#importFile(String)} reads without parsing text (see
+ * {@link BulkImportWriter} and {@link BulkImportReader}).
+ *
+ * <p>
+ * A bulk-import file starts with the {@link #MAGIC} bytes and the format version (a 4-byte big-endian
+ * integer). Then come records, each prefixed by its length (a varint), as in a snapshot (see
+ * {@link SnapshotFormat}). The first record holds the number of species, trees, habitats, vaccines, animals
+ * and employees that follow, at most, so the hotel makes room for them at once. Each of the next records
+ * starts with a one-byte tag, the type of its entry, followed by the fields of the entry; a record with the
+ * {@link #END} tag closes the file.
+ * </p>
+ *
+ * <p>
+ * The entries come in dependency order, the order in which {@link HotelImporter} registers the entries of a
+ * text file, so they are registered in one pass: species, trees, habitats, vaccines, animals and employees,
+ * then, since version 2, the influences of the habitats and the vaccinations, which hold the IDs of the
+ * entities they link instead of an ID and a name of their own. Numbers are varints (zigzag-encoded when they
+ * may be negative) and names are UTF-8 bytes prefixed by their length. A tree has a {@link #DECIDUOUS_TREE}
+ * or {@link #EVERGREEN_TREE} byte for its type, an influence a {@link #POSITIVE_INFLUENCE},
+ * {@link #NEUTRAL_INFLUENCE} or {@link #NEGATIVE_INFLUENCE} byte, and the lists of
+ * a habitat, a vaccine or an employee are a count followed by their IDs. A species ends with the number of
+ * animal entries of the species, at most, so the species makes room for them at once. Animals come sorted
+ * by ID (case-insensitive), so each habitat receives its animals in order.
+ * </p>
+ *
+ * <p>
+ * Identifiers, which are repeated by every entry that refers to an entity, go through a string table built
+ * as the file is read: an identifier is a varint, 0 followed by the identifier itself the first time it
+ * appears, which gives it the next number of the table, or that number plus one afterwards.
+ * </p>
+ */
+final class BulkImportFormat {
+
+    /** The first bytes of every bulk-import file. */
+    static final byte[] MAGIC = { 'H', 'V', 'A', 'B' };
+
+    /** The version of the format written by this code. */
+    static final int VERSION = 2;
+
+    /** Tag of the record that closes the file. */
+    static final byte END = 0;
+
+    /** Tag of a species entry: ID, name and number of animals. */
+    static final byte SPECIES = 1;
+
+    /** Tag of a tree entry: ID, name, type, age and cleaning difficulty. */
+    static final byte TREE = 2;
+
+    /** Tag of a habitat entry: ID, name, area and trees. */
+    static final byte HABITAT = 3;
+
+    /** Tag of a vaccine entry: ID, name and the IDs of the species it targets. */
+    static final byte VACCINE = 4;
+
+    /** Tag of an animal entry: ID, name, species and habitat. */
+    static final byte ANIMAL = 5;
+
+    /** Tag of a zookeeper entry: ID, name and habitats. */
+    static final byte ZOOKEEPER = 6;
+
+    /** Tag of a veterinarian entry: ID, name and species. */
+    static final byte VETERINARIAN = 7;
+
+    /** Tag of an influence entry, since version 2: habitat, species and influence. */
+    static final byte INFLUENCE = 8;
+
+    /** Tag of a vaccination entry, since version 2: vaccine, veterinarian and animal. */
+    static final byte VACCINATION = 9;
+
+    /** Type of a deciduous tree ({@code CADUCA}). */
+    static final byte DECIDUOUS_TREE = 0;
+
+    /** Type of an evergreen tree ({@code PERENE}). */
+    static final byte EVERGREEN_TREE = 1;
+
+    /** Influence of a habitat that is good for a species ({@code POS}). */
+    static final byte POSITIVE_INFLUENCE = 0;
+
+    /** Influence of a habitat that is neither good nor bad for a species ({@code NEU}). */
+    static final byte NEUTRAL_INFLUENCE = 1;
+
+    /** Influence of a habitat that is bad for a species ({@code NEG}). */
+    static final byte NEGATIVE_INFLUENCE = 2;
+
+    /** Not instantiable. */
+    private BulkImportFormat() {
+    }
+
+    /**
+     * Checks if a file starts with the magic bytes of a bulk-import file.
+     *
+     * @param path the file.
+     * @return {@code true} if the file is in this format.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isBulkImport(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return Arrays.equals(SnapshotFormat.readMagic(channel), MAGIC);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package hva;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import hva.HotelImporter.EntryType;
+import hva.employee.Veterinarian;
+import hva.employee.Zookeeper;
+import hva.exceptions.unknown.UnknownHabitatIdException;
+import hva.exceptions.unknown.UnknownSpeciesIdException;
+import hva.tree.DeciduousTree;
+import hva.tree.EvergreenTree;
+import hva.tree.Tree;
+
+/**
+ * The {@code BulkImportReader} class reads a file in the binary bulk-import format (see {@link BulkImportFormat}).
+ *
+ * <p>
+ * A hotel whose operations are not recorded, such as one being rebuilt from scratch, is filled directly, as
+ * from a snapshot: the hotel and each species make room for their entities at once, the entities are created
+ * from the fields of their records, which need no parsing, and linked to the entities they refer to, which are
+ * looked up once per identifier, and the satisfaction of the hotel is recomputed once, when it is next asked. Entries that refer to unknown entities or duplicate others
+ * are reported and skipped, as in a text import.
+ * </p>
+ *
+ * <p>
+ * A hotel whose operations are recorded in a journal must register each entry as an operation, so the
+ * entries are read back as the fields of text entries instead (see {@link #readEntries(Path)}), and
+ * registered as those of a text file.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_in: The input from which the file is read.</li>
+ *   <li>_ids: The identifiers read so far, numbered in the order they first appeared.</li>
+ *   <li>_species: The species of the hotel whose identifiers were read, by number in the string table.</li>
+ *   <li>_habitats: The habitats of the hotel whose identifiers were read, by number in the string table.</li>
+ *   <li>_animalCount: The number of animal entries in the file, at most.</li>
+ * </ul>
+ */
+final class BulkImportReader {
+
+    /** The input from which the file is read. */
+    private final SnapshotInput _in;
+
+    /** The identifiers read so far, numbered in the order they first appeared. */
+    private final List<String> _ids = new ArrayList<>();
+
+    /** The species of the hotel whose identifiers were read, by number in the string table, looked up once. */
+    private Species[] _species = new Species[0];
+
+    /** The habitats of the hotel whose identifiers were read, by number in the string table, looked up once. */
+    private Habitat[] _habitats = new Habitat[0];
+
+    /** The number of animal entries in the file, at most. */
+    private int _animalCount;
+
+    /**
+     * @param in the input from which the file is read.
+     */
+    private BulkImportReader(SnapshotInput in) {
+        _in = in;
+    }
+
+    /**
+     * Registers the entries of a bulk-import file in a hotel whose operations are not recorded.
+     *
+     * @param path the file.
+     * @param hotel the hotel.
+     * @throws IOException if the file cannot be read, or is not a bulk-import file, or is corrupted.
+     */
+    static void read(Path path, Hotel hotel) throws IOException {
+        try (SnapshotInput in = new SnapshotInput(FileChannel.open(path, StandardOpenOption.READ))) {
+            BulkImportReader reader = new BulkImportReader(in);
+            reader.readHeader();
+            int species = in.readVarInt();
+            int trees = in.readVarInt();
+            int habitats = in.readVarInt();
+            int vaccines = in.readVarInt();
+            reader._animalCount = in.readVarInt();
+            int employees = in.readVarInt();
+            hotel.ensureCapacity(species, trees, habitats, reader._animalCount, employees, vaccines);
+            for (byte tag = reader.nextEntry(); tag != BulkImportFormat.END; tag = reader.nextEntry()) {
+                try {
+                    reader.register(tag, hotel);
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    // an invalid entry is reported and skipped, as in a text import
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of a bulk-import file as the fields of the same entries in a text input file.
+     *
+     * @param path the file.
+     * @return the entries of each type, split into fields, in file order.
+     * @throws IOException if the file cannot be read, or is not a bulk-import file, or is corrupted.
+     */
+    static Map<EntryType, List<String[]>> readEntries(Path path) throws IOException {
+        Map<EntryType, List<String[]>> entries = new EnumMap<>(EntryType.class);
+        try (SnapshotInput in = new SnapshotInput(FileChannel.open(path, StandardOpenOption.READ))) {
+            BulkImportReader reader = new BulkImportReader(in);
+            reader.readHeader();
+            for (byte tag = reader.nextEntry(); tag != BulkImportFormat.END; tag = reader.nextEntry()) {
+                String[] fields = reader.fields(tag);
+                EntryType type = switch (tag) {
+                    case BulkImportFormat.SPECIES -> EntryType.SPECIES;
+                    case BulkImportFormat.TREE -> EntryType.TREE;
+                    case BulkImportFormat.HABITAT -> EntryType.HABITAT;
+                    case BulkImportFormat.VACCINE -> EntryType.VACCINE;
+                    case BulkImportFormat.ANIMAL -> EntryType.ANIMAL;
+                    case BulkImportFormat.ZOOKEEPER, BulkImportFormat.VETERINARIAN -> EntryType.EMPLOYEE;
+                    case BulkImportFormat.INFLUENCE -> EntryType.INFLUENCE;
+                    case BulkImportFormat.VACCINATION -> EntryType.VACCINATION;
+                    default -> throw new StreamCorruptedException("Unknown entry tag " + tag);
+                };
+                entries.computeIfAbsent(type, t -> new ArrayList<>()).add(fields);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the header and the record of the counts, whose fields are read next.
+     *
+     * @throws IOException if the file cannot be read or is not a bulk-import file of a known version.
+     */
+    private void readHeader() throws IOException {
+        int version = _in.readHeader(BulkImportFormat.MAGIC);
+        if (version < 1 || version > BulkImportFormat.VERSION)
+            throw new InvalidObjectException("Unsupported bulk-import version " + version);
+        _in.nextRecord();
+    }
+
+    /**
+     * Loads the next entry, whose fields are read next.
+     *
+     * @return the tag of the entry, {@link BulkImportFormat#END} at the end of the file.
+     * @throws IOException if the file cannot be read or the tag is unknown.
+     */
+    private byte nextEntry() throws IOException {
+        _in.nextRecord();
+        byte tag = (byte) _in.readByte();
+        if (tag < BulkImportFormat.END || tag > BulkImportFormat.VACCINATION)
+            throw new StreamCorruptedException("Unknown entry tag " + tag);
+        return tag;
+    }
+
+    /**
+     * Creates the entity of the current entry and links it into the hotel. Every identifier of the entry
+     * is read before any is looked up, so the string table is complete even if the entry is invalid.
+     *
+     * @param tag the tag of the entry.
+     * @param hotel the hotel.
+     * @throws Exception if the record is corrupted, or the entity is duplicated or refers to unknown entities.
+     */
+    private void register(byte tag, Hotel hotel) throws Exception {
+        if (tag == BulkImportFormat.INFLUENCE || tag == BulkImportFormat.VACCINATION) {
+            // they only link entities already registered, so they are registered as the same text entries
+            hotel.registerEntry(fields(tag));
+            return;
+        }
+        String id = readId();
+        String name = _in.readString();
+        switch (tag) {
+            case BulkImportFormat.SPECIES -> {
+                // a corrupted count cannot make room for more animals than the file has
+                int animals = Math.min(_in.readVarInt(), _animalCount);
+                Species species = new Species(id, name);
+                hotel.addSpecies(id, species);
+                species.ensureCapacity(animals);
+            }
+            case BulkImportFormat.TREE -> {
+                int type = readTreeType();
+                int age = _in.readSignedVarInt();
+                int difficulty = _in.readSignedVarInt();
+                Tree tree = type == BulkImportFormat.EVERGREEN_TREE
+                    ? new EvergreenTree(id, name, age, difficulty, hotel.getSeasonClock())
+                    : new DeciduousTree(id, name, age, difficulty, hotel.getSeasonClock());
+                hotel.addTree(id, tree);
+            }
+            case BulkImportFormat.HABITAT -> {
+                int area = _in.readSignedVarInt();
+                String[] treeIds = readIds();
+                Habitat habitat = new Habitat(id, name, area);
+                for (String treeId : treeIds)
+                    habitat.addTree(hotel.getTree(treeId));
+                hotel.addHabitat(id, habitat);
+            }
+            case BulkImportFormat.VACCINE -> {
+                Map<String, Species> species = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                for (String speciesId : readIds())
+                    species.put(speciesId, hotel.getSpecies(speciesId));
+                hotel.addVaccine(id, new Vaccine(id, name, species));
+            }
+            case BulkImportFormat.ANIMAL -> {
+                int speciesNumber = readNumber();
+                int habitatNumber = readNumber();
+                Species species = speciesAt(speciesNumber, hotel);
+                Habitat habitat = habitatAt(habitatNumber, hotel);
+                Animal animal = new Animal(id, name, species, habitat);
+                hotel.addAnimal(id, animal);
+                species.addAnimal(animal);
+                habitat.restoreAnimal(animal);
+            }
+            case BulkImportFormat.ZOOKEEPER -> {
+                String[] habitatIds = readIds();
+                // responsibilities are only assigned once the whole entry is known to be valid
+                Habitat[] habitats = new Habitat[habitatIds.length];
+                for (int i = 0; i < habitats.length; i++)
+                    habitats[i] = hotel.getHabitat(habitatIds[i]);
+                hotel.assertNewEmployee(id);
+                Zookeeper zookeeper = new Zookeeper(id, name);
+                for (Habitat habitat : habitats)
+                    zookeeper.assignHabitat(habitat);
+                hotel.addEmployee(id, zookeeper);
+            }
+            case BulkImportFormat.VETERINARIAN -> {
+                String[] speciesIds = readIds();
+                Species[] species = new Species[speciesIds.length];
+                for (int i = 0; i < species.length; i++)
+                    species[i] = hotel.getSpecies(speciesIds[i]);
+                hotel.assertNewEmployee(id);
+                Veterinarian veterinarian = new Veterinarian(id, name);
+                for (Species responsibility : species)
+                    veterinarian.assignSpecies(responsibility);
+                hotel.addEmployee(id, veterinarian);
+            }
+            default -> throw new StreamCorruptedException("Unknown entry tag " + tag);
+        }
+    }
+
+    /**
+     * Reads the current entry as the fields of the same entry in a text input file.
+     *
+     * @param tag the tag of the entry.
+     * @return the fields of the entry.
+     * @throws IOException if the record is corrupted.
+     */
+    private String[] fields(byte tag) throws IOException {
+        if (tag == BulkImportFormat.INFLUENCE)
+            return new String[] { "INFLUÊNCIA", readId(), readId(), readInfluence() };
+        if (tag == BulkImportFormat.VACCINATION)
+            return new String[] { "VACINAÇÃO", readId(), readId(), readId() };
+        String id = readId();
+        String name = _in.readString();
+        return switch (tag) {
+            case BulkImportFormat.SPECIES -> new String[] { "ESPÉCIE", id, name };
+            case BulkImportFormat.TREE -> {
+                String type = readTreeType() == BulkImportFormat.EVERGREEN_TREE ? "PERENE" : "CADUCA";
+                yield new String[] { "ÁRVORE", id, name, Integer.toString(_in.readSignedVarInt()), Integer.toString(_in.readSignedVarInt()), type };
+            }
+            case BulkImportFormat.HABITAT -> withIds(new String[] { "HABITAT", id, name, Integer.toString(_in.readSignedVarInt()) });
+            case BulkImportFormat.VACCINE -> withIds(new String[] { "VACINA", id, name });
+            case BulkImportFormat.ANIMAL -> new String[] { "ANIMAL", id, name, readId(), readId() };
+            case BulkImportFormat.ZOOKEEPER -> withIds(new String[] { "TRATADOR", id, name });
+            case BulkImportFormat.VETERINARIAN -> withIds(new String[] { "VETERINÁRIO", id, name });
+            default -> throw new StreamCorruptedException("Unknown entry tag " + tag);
+        };
+    }
+
+    /**
+     * Reads the identifiers that end the current entry and appends them to its fields as a comma-separated
+     * field, unless there are none, as in a text input file.
+     *
+     * @param fields the fields before the identifiers.
+     * @return the fields of the entry.
+     * @throws IOException if the record is corrupted.
+     */
+    private String[] withIds(String[] fields) throws IOException {
+        String[] ids = readIds();
+        if (ids.length == 0)
+            return fields;
+        String[] result = Arrays.copyOf(fields, fields.length + 1);
+        result[fields.length] = String.join(",", ids);
+        return result;
+    }
+
+    /**
+     * Reads a list of identifiers: a count followed by the identifiers.
+     *
+     * @return the identifiers.
+     * @throws IOException if the record is corrupted.
+     */
+    private String[] readIds() throws IOException {
+        int count = _in.readVarInt();
+        // a corrupted count runs into the end of the record before it can fill the memory
+        List<String> ids = new ArrayList<>(Math.min(count, 16));
+        for (int i = 0; i < count; i++)
+            ids.add(readId());
+        return ids.toArray(new String[0]);
+    }
+
+    /**
+     * @return the type of the tree of the current entry.
+     * @throws StreamCorruptedException if the record ends before the type or the type is unknown.
+     */
+    private int readTreeType() throws StreamCorruptedException {
+        int type = _in.readByte();
+        if (type != BulkImportFormat.DECIDUOUS_TREE && type != BulkImportFormat.EVERGREEN_TREE)
+            throw new StreamCorruptedException("Unknown tree type " + type);
+        return type;
+    }
+
+    /**
+     * @return the influence of the current entry, as in a text input file.
+     * @throws StreamCorruptedException if the record ends before the influence or the influence is unknown.
+     */
+    private String readInfluence() throws StreamCorruptedException {
+        int influence = _in.readByte();
+        return switch (influence) {
+            case BulkImportFormat.POSITIVE_INFLUENCE -> "POS";
+            case BulkImportFormat.NEUTRAL_INFLUENCE -> "NEU";
+            case BulkImportFormat.NEGATIVE_INFLUENCE -> "NEG";
+            default -> throw new StreamCorruptedException("Unknown influence " + influence);
+        };
+    }
+
+    /**
+     * Reads an identifier through the string table.
+     *
+     * @return the identifier.
+     * @throws IOException if the record is corrupted or refers to an identifier not read yet.
+     */
+    private String readId() throws IOException {
+        return _ids.get(readNumber());
+    }
+
+    /**
+     * Reads an identifier through the string table, adding it to the table the first time it appears.
+     *
+     * @return the number of the identifier in the string table.
+     * @throws IOException if the record is corrupted or refers to an identifier not read yet.
+     */
+    private int readNumber() throws IOException {
+        int number = _in.readVarInt();
+        if (number == 0) {
+            _ids.add(_in.readString());
+            return _ids.size() - 1;
+        }
+        if (number > _ids.size())
+            throw new StreamCorruptedException("Unknown identifier " + number);
+        return number - 1;
+    }
+
+    /**
+     * Returns the species with an identifier of the string table, looking it up in the hotel only once.
+     *
+     * @param number the number of the identifier in the string table.
+     * @param hotel the hotel.
+     * @return the species.
+     * @throws UnknownSpeciesIdException if the hotel has no species with the identifier.
+     */
+    private Species speciesAt(int number, Hotel hotel) throws UnknownSpeciesIdException {
+        if (number >= _species.length)
+            _species = Arrays.copyOf(_species, Math.max(number + 1, 2 * _species.length));
+        if (_species[number] == null)
+            _species[number] = hotel.getSpecies(_ids.get(number));
+        return _species[number];
+    }
+
+    /**
+     * Returns the habitat with an identifier of the string table, looking it up in the hotel only once.
+     *
+     * @param number the number of the identifier in the string table.
+     * @param hotel the hotel.
+     * @return the habitat.
+     * @throws UnknownHabitatIdException if the hotel has no habitat with the identifier.
+     */
+    private Habitat habitatAt(int number, Hotel hotel) throws UnknownHabitatIdException {
+        if (number >= _habitats.length)
+            _habitats = Arrays.copyOf(_habitats, Math.max(number + 1, 2 * _habitats.length));
+        if (_habitats[number] == null)
+            _habitats[number] = hotel.getHabitat(_ids.get(number));
+        return _habitats[number];
+    }
+}
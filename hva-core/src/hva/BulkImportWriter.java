@@ -0,0 +1,344 @@
+package hva;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hva.HotelImporter.EntryType;
+import hva.exceptions.UnrecognizedEntryException;
+
+/**
+ * The {@code BulkImportWriter} class converts a text input file into the binary bulk-import format (see
+ * {@link BulkImportFormat}).
+ *
+ * <p>
+ * The text file is split into entries as for an import (see {@link ImportFileReader}), and the entries are
+ * written by type, in the order they are registered, with animals sorted by ID, each with its numbers
+ * already parsed and its identifiers numbered through the string table. Entries that an import would reject
+ * as unrecognized, such as a tree of an unknown type or an unknown influence, are reported and left out. Entries that refer to
+ * unknown entities are kept, and reported when the file is imported, as they would be by a text import.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_out: The output where the bulk-import file is written.</li>
+ *   <li>_ids: The number of each identifier already written, in the string table.</li>
+ *   <li>_animalsBySpecies: The number of animal entries of each species, by folded species identifier.</li>
+ * </ul>
+ */
+final class BulkImportWriter {
+
+    /** The output where the bulk-import file is written. */
+    private final SnapshotOutput _out;
+
+    /** The number of each identifier already written, in the string table. */
+    private final Map<String, Integer> _ids = new HashMap<>();
+
+    /** The number of animal entries of each species, by folded species identifier. */
+    private final Map<String, Integer> _animalsBySpecies = new HashMap<>();
+
+    /**
+     * @param out the output where the bulk-import file is written.
+     */
+    private BulkImportWriter(SnapshotOutput out) {
+        _out = out;
+    }
+
+    /**
+     * Converts a text input file, compressed or not, into a bulk-import file.
+     *
+     * @param text the text input file.
+     * @param binary the bulk-import file, replaced if it exists.
+     * @throws IOException if a file cannot be read or written, or an entry misses fields or has an invalid number.
+     */
+    static void convert(Path text, Path binary) throws IOException {
+        Map<EntryType, List<String[]>> entries = ImportFileReader.read(text);
+        try (SnapshotOutput out = new SnapshotOutput(FileChannel.open(binary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            new BulkImportWriter(out).write(entries);
+        }
+    }
+
+    /**
+     * Writes the entries of a text input file, in dependency order.
+     *
+     * @param entries the entries of each type, in file order.
+     * @throws IOException if the file cannot be written, or an entry misses fields or has an invalid number.
+     */
+    private void write(Map<EntryType, List<String[]>> entries) throws IOException {
+        List<String[]> species = entriesOf(entries, EntryType.SPECIES);
+        List<String[]> trees = entriesOf(entries, EntryType.TREE);
+        List<String[]> habitats = entriesOf(entries, EntryType.HABITAT);
+        List<String[]> vaccines = entriesOf(entries, EntryType.VACCINE);
+        List<String[]> animals = entriesOf(entries, EntryType.ANIMAL);
+        List<String[]> employees = entriesOf(entries, EntryType.EMPLOYEE);
+        animals = sortedById(animals);
+        for (String[] fields : animals)
+            _animalsBySpecies.merge(CaseInsensitiveIndex.fold(fields[3]), 1, Integer::sum);
+        _out.writeHeader(BulkImportFormat.MAGIC, BulkImportFormat.VERSION);
+        _out.writeVarInt(species.size());
+        _out.writeVarInt(trees.size());
+        _out.writeVarInt(habitats.size());
+        _out.writeVarInt(vaccines.size());
+        _out.writeVarInt(animals.size());
+        _out.writeVarInt(employees.size());
+        _out.endRecord();
+        for (String[] fields : species)
+            writeSpecies(fields);
+        for (String[] fields : trees)
+            writeTree(fields);
+        for (String[] fields : habitats)
+            writeHabitat(fields);
+        for (String[] fields : vaccines)
+            writeVaccine(fields);
+        for (String[] fields : animals)
+            writeAnimal(fields);
+        for (String[] fields : employees)
+            writeEmployee(fields);
+        for (String[] fields : entriesOf(entries, EntryType.INFLUENCE))
+            writeInfluence(fields);
+        for (String[] fields : entriesOf(entries, EntryType.VACCINATION))
+            writeVaccination(fields);
+        for (String[] fields : entriesOf(entries, EntryType.UNRECOGNIZED))
+            new UnrecognizedEntryException(fields[0]).printStackTrace();
+        _out.writeByte(BulkImportFormat.END);
+        _out.endRecord();
+    }
+
+    /**
+     * Returns the entries of the given type, in file order.
+     *
+     * @param entries the entries, by type.
+     * @param type the type of entries.
+     * @return the entries of the type.
+     */
+    private static List<String[]> entriesOf(Map<EntryType, List<String[]>> entries, EntryType type) {
+        return entries.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * Returns animal entries sorted by ID (case-insensitive), so the importer adds the animals of each
+     * habitat in order, which the tree of the animals of a habitat takes far faster than random order. The
+     * sort is stable: of two entries with the same ID, the first one in the text file still comes first, and
+     * is the one registered.
+     *
+     * @param animals the animal entries, in file order.
+     * @return the animal entries, by ID.
+     * @throws IOException if an entry misses fields.
+     */
+    private static List<String[]> sortedById(List<String[]> animals) throws IOException {
+        for (String[] fields : animals)
+            checkFields(fields, 5);
+        List<String[]> sorted = new ArrayList<>(animals);
+        sorted.sort(Comparator.comparing(fields -> fields[1], String.CASE_INSENSITIVE_ORDER));
+        return sorted;
+    }
+
+    /**
+     * Writes a species entry: {@code ESPÉCIE|id|name}, followed by the number of its animal entries.
+     *
+     * @param fields the fields of the entry.
+     * @throws IOException if the file cannot be written or the entry misses fields.
+     */
+    private void writeSpecies(String[] fields) throws IOException {
+        checkFields(fields, 3);
+        _out.writeByte(BulkImportFormat.SPECIES);
+        writeId(fields[1]);
+        _out.writeString(fields[2]);
+        _out.writeVarInt(_animalsBySpecies.getOrDefault(CaseInsensitiveIndex.fold(fields[1]), 0));
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a tree entry: {@code ÁRVORE|id|name|age|difficulty|type}, or reports it if its type is unknown.
+     *
+     * @param fields the fields of the entry.
+     * @throws IOException if the file cannot be written, or the entry misses fields or has an invalid number.
+     */
+    private void writeTree(String[] fields) throws IOException {
+        checkFields(fields, 6);
+        byte type = switch (fields[5]) {
+            case "CADUCA" -> BulkImportFormat.DECIDUOUS_TREE;
+            case "PERENE" -> BulkImportFormat.EVERGREEN_TREE;
+            default -> -1;
+        };
+        if (type < 0) {
+            new UnrecognizedEntryException(fields[5]).printStackTrace();
+            return;
+        }
+        int age = parseInt(fields, 3);
+        int difficulty = parseInt(fields, 4);
+        _out.writeByte(BulkImportFormat.TREE);
+        writeId(fields[1]);
+        _out.writeString(fields[2]);
+        _out.writeByte(type);
+        _out.writeSignedVarInt(age);
+        _out.writeSignedVarInt(difficulty);
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a habitat entry: {@code HABITAT|id|name|area|treeIds}.
+     *
+     * @param fields the fields of the entry.
+     * @throws IOException if the file cannot be written, or the entry misses fields or has an invalid area.
+     */
+    private void writeHabitat(String[] fields) throws IOException {
+        checkFields(fields, 4);
+        int area = parseInt(fields, 3);
+        _out.writeByte(BulkImportFormat.HABITAT);
+        writeId(fields[1]);
+        _out.writeString(fields[2]);
+        _out.writeSignedVarInt(area);
+        writeIds(fields, 4);
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a vaccine entry: {@code VACINA|id|name|speciesIds}.
+     *
+     * @param fields the fields of the entry.
+     * @throws IOException if the file cannot be written or the entry misses fields.
+     */
+    private void writeVaccine(String[] fields) throws IOException {
+        checkFields(fields, 3);
+        _out.writeByte(BulkImportFormat.VACCINE);
+        writeId(fields[1]);
+        _out.writeString(fields[2]);
+        writeIds(fields, 3);
+        _out.endRecord();
+    }
+
+    /**
+     * Writes an animal entry: {@code ANIMAL|id|name|speciesId|habitatId}.
+     *
+     * @param fields the fields of the entry.
+     * @throws IOException if the file cannot be written or the entry misses fields.
+     */
+    private void writeAnimal(String[] fields) throws IOException {
+        checkFields(fields, 5);
+        _out.writeByte(BulkImportFormat.ANIMAL);
+        writeId(fields[1]);
+        _out.writeString(fields[2]);
+        writeId(fields[3]);
+        writeId(fields[4]);
+        _out.endRecord();
+    }
+
+    /**
+     * Writes an employee entry: {@code TRATADOR|id|name|habitatIds} or {@code VETERINÁRIO|id|name|speciesIds}.
+     *
+     * @param fields the fields of the entry.
+     * @throws IOException if the file cannot be written or the entry misses fields.
+     */
+    private void writeEmployee(String[] fields) throws IOException {
+        checkFields(fields, 3);
+        _out.writeByte(fields[0].equals("VETERINÁRIO") ? BulkImportFormat.VETERINARIAN : BulkImportFormat.ZOOKEEPER);
+        writeId(fields[1]);
+        _out.writeString(fields[2]);
+        writeIds(fields, 3);
+        _out.endRecord();
+    }
+
+    /**
+     * Writes an influence entry: {@code INFLUÊNCIA|habitatId|speciesId|influence}, or reports it if its influence
+     * is unknown.
+     *
+     * @param fields the fields of the entry.
+     * @throws IOException if the file cannot be written or the entry misses fields.
+     */
+    private void writeInfluence(String[] fields) throws IOException {
+        checkFields(fields, 4);
+        byte influence = switch (fields[3]) {
+            case "POS" -> BulkImportFormat.POSITIVE_INFLUENCE;
+            case "NEU" -> BulkImportFormat.NEUTRAL_INFLUENCE;
+            case "NEG" -> BulkImportFormat.NEGATIVE_INFLUENCE;
+            default -> -1;
+        };
+        if (influence < 0) {
+            new UnrecognizedEntryException(fields[3]).printStackTrace();
+            return;
+        }
+        _out.writeByte(BulkImportFormat.INFLUENCE);
+        writeId(fields[1]);
+        writeId(fields[2]);
+        _out.writeByte(influence);
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a vaccination entry: {@code VACINAÇÃO|vaccineId|veterinarianId|animalId}.
+     *
+     * @param fields the fields of the entry.
+     * @throws IOException if the file cannot be written or the entry misses fields.
+     */
+    private void writeVaccination(String[] fields) throws IOException {
+        checkFields(fields, 4);
+        _out.writeByte(BulkImportFormat.VACCINATION);
+        writeId(fields[1]);
+        writeId(fields[2]);
+        writeId(fields[3]);
+        _out.endRecord();
+    }
+
+    /**
+     * Writes an identifier through the string table.
+     *
+     * @param id the identifier.
+     */
+    private void writeId(String id) {
+        Integer number = _ids.get(id);
+        if (number != null) {
+            _out.writeVarInt(number + 1);
+        } else {
+            _ids.put(id, _ids.size());
+            _out.writeVarInt(0);
+            _out.writeString(id);
+        }
+    }
+
+    /**
+     * Writes the comma-separated identifiers of the last field of an entry, if it has that field, as a count
+     * followed by the identifiers.
+     *
+     * @param fields the fields of the entry.
+     * @param field the index of the list.
+     */
+    private void writeIds(String[] fields, int field) {
+        String[] ids = fields.length > field ? fields[field].split(",") : new String[0];
+        _out.writeVarInt(ids.length);
+        for (String id : ids)
+            writeId(id);
+    }
+
+    /**
+     * @param fields the fields of an entry.
+     * @param count the number of fields the entry needs.
+     * @throws IOException if the entry has fewer fields.
+     */
+    private static void checkFields(String[] fields, int count) throws IOException {
+        if (fields.length < count)
+            throw new IOException("Missing fields in entry " + String.join("|", fields));
+    }
+
+    /**
+     * @param fields the fields of an entry.
+     * @param field the index of a number field.
+     * @return the number.
+     * @throws IOException if the field is not a number.
+     */
+    private static int parseInt(String[] fields, int field) throws IOException {
+        try {
+            return Integer.parseInt(fields[field]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number in entry " + String.join("|", fields), e);
+        }
+    }
+}
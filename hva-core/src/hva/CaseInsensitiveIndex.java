@@ -0,0 +1,171 @@
+package hva;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code CaseInsensitiveIndex} class maps identifiers to entities of the hotel, ignoring the case of
+ * the identifiers, with the same semantics as {@link String#CASE_INSENSITIVE_ORDER}.
+ *
+ * <p>
+ * Identifiers are folded once (each character is converted to upper case and then to lower case, as the
+ * case insensitive comparator does) and used as keys of a hash map, so each lookup is a single probe.
+ * Listings are served by a sorted view of the entities, in the order of their identifiers, which is only
+ * rebuilt when it is requested after an entity was added.
+ * </p>
+ *
+ * <p>
+ * Comparing two folded identifiers character by character gives the same result as comparing the original
+ * identifiers with {@link String#CASE_INSENSITIVE_ORDER}, so the sorted view is ordered by the folded keys.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_entities: The entities, keyed by folded identifier.</li>
+ *   <li>_sorted: The entities ordered by identifier, or {@code null} if it must be rebuilt.</li>
+ * </ul>
+ *
+ * @param <V> the type of the indexed entities.
+ */
+class CaseInsensitiveIndex<V> implements Serializable {
+
+    /** Class serial number for serialization purposes. */
+    @Serial
+    private static final long serialVersionUID = 202610171200L;
+
+    /** The entities, keyed by folded identifier. */
+    private Map<String, V> _entities = new HashMap<>();
+
+    /** The entities ordered by identifier (rebuilt on demand). */
+    private transient List<V> _sorted;
+
+    /**
+     * Folds the case of an identifier, so that identifiers that only differ in case have the same key.
+     *
+     * <p>Identifiers that are already folded are returned without being copied.</p>
+     *
+     * @param id the identifier.
+     * @return the folded identifier.
+     */
+    static String fold(String id) {
+        int length = id.length();
+        int i = 0;
+        while (i < length && foldChar(id.charAt(i)) == id.charAt(i))
+            i++;
+        if (i == length)
+            return id;
+        char[] folded = id.toCharArray();
+        for (; i < length; i++)
+            folded[i] = foldChar(folded[i]);
+        return new String(folded);
+    }
+
+    /**
+     * Folds the case of a character, as {@link String#CASE_INSENSITIVE_ORDER} does.
+     *
+     * @param c the character.
+     * @return the folded character.
+     */
+    private static char foldChar(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Retrieves the entity with the given identifier.
+     *
+     * @param id the identifier, in any case.
+     * @return the entity, or {@code null} if there is none.
+     */
+    V get(String id) {
+        return _entities.get(fold(id));
+    }
+
+    /**
+     * Checks if there is an entity with the given identifier.
+     *
+     * @param id the identifier, in any case.
+     * @return {@code true} if there is an entity with the identifier.
+     */
+    boolean containsKey(String id) {
+        return _entities.containsKey(fold(id));
+    }
+
+    /**
+     * Adds (or replaces) the entity with the given identifier.
+     *
+     * @param id the identifier, in any case.
+     * @param entity the entity.
+     */
+    void put(String id, V entity) {
+        _entities.put(fold(id), entity);
+        _sorted = null;
+    }
+
+    /**
+     * Adds the entity with the given identifier, unless there is already one.
+     *
+     * @param id the identifier, in any case.
+     * @param entity the entity.
+     * @return {@code true} if the entity was added, {@code false} if the identifier was taken.
+     */
+    boolean putIfAbsent(String id, V entity) {
+        if (_entities.putIfAbsent(fold(id), entity) != null)
+            return false;
+        _sorted = null;
+        return true;
+    }
+
+    /**
+     * Makes room for the given number of entities, so the index is not rehashed while they are added.
+     *
+     * @param expected the number of entities the index is expected to hold.
+     */
+    void ensureCapacity(int expected) {
+        if (expected > _entities.size()) {
+            Map<String, V> entities = new HashMap<>((int) (expected / 0.75f) + 1);
+            entities.putAll(_entities);
+            _entities = entities;
+        }
+    }
+
+    /**
+     * @return the number of entities.
+     */
+    int size() {
+        return _entities.size();
+    }
+
+    /**
+     * Returns the entities ordered by identifier (case insensitive), as an unmodifiable collection.
+     *
+     * @return the entities ordered by identifier.
+     */
+    Collection<V> values() {
+        if (_sorted == null) {
+            List<Map.Entry<String, V>> entries = new ArrayList<>(_entities.entrySet());
+            entries.sort(Map.Entry.comparingByKey());
+            List<V> sorted = new ArrayList<>(entries.size());
+            for (Map.Entry<String, V> entry : entries)
+                sorted.add(entry.getValue());
+            _sorted = Collections.unmodifiableList(sorted);
+        }
+        return _sorted;
+    }
+
+    /**
+     * Returns the entities in no particular order, as an unmodifiable collection.
+     *
+     * <p>Used when every entity must be visited but the order does not matter, so the sorted view is not rebuilt.</p>
+     *
+     * @return the entities in no particular order.
+     */
+    Collection<V> unorderedValues() {
+        return Collections.unmodifiableCollection(_entities.values());
+    }
+}
@@ -0,0 +1,37 @@
+package hva;
+
+import hva.enums.CheckpointTrigger;
+
+/**
+ * The {@code CheckpointListener} interface is told of the checkpoints of a hotel (see {@link HotelManager}),
+ * to measure them.
+ *
+ * <p>
+ * A checkpoint is captured while the operations that change the hotel wait, which is the time they may be
+ * stalled, and then written in the background. Listeners are called on the thread that wrote the snapshot,
+ * so they must not take long.
+ * </p>
+ */
+public interface CheckpointListener {
+
+    /**
+     * Called when a checkpoint is written.
+     *
+     * @param trigger why the hotel was checkpointed.
+     * @param captureNanos how long the hotel was kept from changing while it was captured, in nanoseconds.
+     * @param writeNanos how long the checkpoint took to be written, once captured, in nanoseconds.
+     * @param bytes the number of bytes written, of the snapshot or of its delta.
+     */
+    void checkpointWritten(CheckpointTrigger trigger, long captureNanos, long writeNanos, long bytes);
+
+    /**
+     * Called when a checkpoint cannot be written. The hotel remains changed, and its operations are still
+     * in its journal.
+     *
+     * @param trigger why the hotel was checkpointed.
+     * @param failure what prevented it.
+     */
+    default void checkpointFailed(CheckpointTrigger trigger, Throwable failure) {
+        failure.printStackTrace();
+    }
+}
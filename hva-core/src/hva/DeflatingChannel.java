@@ -0,0 +1,352 @@
+package hva;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * The {@code DeflatingChannel} class compresses the bytes written to it, in the zlib format, and writes
+ * them to another channel.
+ *
+ * <p>
+ * Writing, compressing and storing overlap, as a pipeline: the bytes are gathered in blocks, which a
+ * compressor thread deflates into other blocks, which a writer thread writes to the target channel. The
+ * blocks come from two small pools, so the stages run at most a few blocks apart and each waits for
+ * the next one when it gets too far ahead. A failure of the compressor or the writer is reported by the
+ * next call to {@link #write(ByteBuffer)} or by {@link #finish()}.
+ * </p>
+ *
+ * <p>
+ * The target channel is not closed: once {@link #finish()} returns, everything is in it.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_target: The channel where the compressed bytes are written.</li>
+ *   <li>_deflater: The compressor.</li>
+ *   <li>_freeInput: The blocks ready to be filled with the bytes written to this channel.</li>
+ *   <li>_input: The blocks of bytes waiting to be compressed.</li>
+ *   <li>_freeOutput: The blocks ready to be filled with compressed bytes.</li>
+ *   <li>_output: The blocks of compressed bytes waiting to be written.</li>
+ *   <li>_block: The block being filled with the bytes written to this channel.</li>
+ *   <li>_compressor: The thread that compresses the blocks.</li>
+ *   <li>_writer: The thread that writes the compressed blocks.</li>
+ *   <li>_failure: The error of the compressor or the writer, if any.</li>
+ *   <li>_open: Indicates if the channel can still be written.</li>
+ *   <li>_ended: Indicates if the end of the bytes was handed to the compressor.</li>
+ * </ul>
+ */
+final class DeflatingChannel implements WritableByteChannel {
+
+    /** Size of the blocks of the pipeline. */
+    private static final int BLOCK_SIZE = 1 << 18;
+
+    /** Number of blocks in each pool. */
+    private static final int POOL_SIZE = 4;
+
+    /** Marks the end of the bytes, in the queues of the pipeline. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /** The channel where the compressed bytes are written. */
+    private final WritableByteChannel _target;
+
+    /** The compressor. */
+    private final Deflater _deflater;
+
+    /** The blocks ready to be filled with the bytes written to this channel. */
+    private final BlockingQueue<ByteBuffer> _freeInput = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /** The blocks of bytes waiting to be compressed. */
+    private final BlockingQueue<ByteBuffer> _input = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+
+    /** The blocks ready to be filled with compressed bytes. */
+    private final BlockingQueue<ByteBuffer> _freeOutput = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /** The blocks of compressed bytes waiting to be written. */
+    private final BlockingQueue<ByteBuffer> _output = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+
+    /** The block being filled with the bytes written to this channel (or {@code null}). */
+    private ByteBuffer _block;
+
+    /** The thread that compresses the blocks. */
+    private final Thread _compressor;
+
+    /** The thread that writes the compressed blocks. */
+    private final Thread _writer;
+
+    /** The error of the compressor or the writer, if any. */
+    private volatile Throwable _failure;
+
+    /** Indicates if the channel can still be written. */
+    private boolean _open = true;
+
+    /** Indicates if the end of the bytes was handed to the compressor. */
+    private boolean _ended;
+
+    /**
+     * Creates a channel that compresses to the given channel, from its current position.
+     *
+     * @param target the channel where the compressed bytes are written.
+     * @param level the compression level (see {@link Deflater}).
+     */
+    DeflatingChannel(WritableByteChannel target, int level) {
+        _target = target;
+        _deflater = new Deflater(level);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            _freeInput.add(ByteBuffer.allocateDirect(BLOCK_SIZE));
+            _freeOutput.add(ByteBuffer.allocateDirect(BLOCK_SIZE));
+        }
+        _compressor = new Thread(this::compress, "hva-deflate");
+        _writer = new Thread(this::writeBlocks, "hva-deflate-write");
+        _compressor.start();
+        _writer.start();
+    }
+
+    /**
+     * Copies bytes to the current block, handing it to the compressor whenever it is full.
+     *
+     * @param source the bytes.
+     * @return the number of bytes written (all of them).
+     * @throws IOException if the channel was closed, or the compressor or the writer failed.
+     */
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        if (!_open)
+            throw new ClosedChannelException();
+        int written = source.remaining();
+        while (source.hasRemaining()) {
+            checkFailure();
+            if (_block == null)
+                _block = take(_freeInput);
+            int chunk = Math.min(source.remaining(), _block.remaining());
+            ByteBuffer slice = source.slice();
+            slice.limit(chunk);
+            _block.put(slice);
+            source.position(source.position() + chunk);
+            if (!_block.hasRemaining())
+                handOver();
+        }
+        return written;
+    }
+
+    /**
+     * Compresses the last bytes and waits until every compressed byte is written to the target channel.
+     *
+     * @throws IOException if the compressor or the writer failed.
+     */
+    void finish() throws IOException {
+        if (!_open)
+            throw new ClosedChannelException();
+        _open = false;
+        if (_block != null)
+            handOver();
+        end();
+        checkFailure();
+    }
+
+    /**
+     * @return {@code true} if the channel can still be written.
+     */
+    @Override
+    public boolean isOpen() {
+        return _open;
+    }
+
+    /**
+     * Stops the pipeline, without compressing the bytes not yet handed over if the channel was
+     * not finished, and releases the compressor. The target channel is not closed.
+     *
+     * @throws IOException if the pipeline cannot be stopped.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_open) {
+            _open = false;
+            fail(new ClosedChannelException());
+        }
+        end();
+        _deflater.end();
+    }
+
+    /**
+     * Hands the current block to the compressor.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while the compressor is busy.
+     */
+    private void handOver() throws InterruptedIOException {
+        _block.flip();
+        put(_input, _block);
+        _block = null;
+    }
+
+    /**
+     * Marks the end of the bytes, unless it was already marked, and waits for the compressor and the
+     * writer to end.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    private void end() throws InterruptedIOException {
+        if (!_ended) {
+            put(_input, END);
+            _ended = true;
+        }
+        try {
+            _compressor.join();
+            _writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Compresses the blocks handed over, until the end of the bytes. Runs on the compressor thread.
+     * After a failure, blocks are still taken, so the other stages never wait forever.
+     */
+    private void compress() {
+        try {
+            ByteBuffer output = _freeOutput.take();
+            for (ByteBuffer block = _input.take(); block != END; block = _input.take()) {
+                try {
+                    if (_failure == null) {
+                        _deflater.setInput(block);
+                        while (!_deflater.needsInput())
+                            output = deflate(output);
+                        // the deflater keeps the block, which is cleared and refilled, as its input until the next one
+                        _deflater.setInput(END);
+                    }
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+                block.clear();
+                _freeInput.put(block);
+            }
+            if (_failure == null) {
+                _deflater.finish();
+                while (!_deflater.finished())
+                    output = deflate(output);
+                output.flip();
+                _output.put(output);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            fail(e);
+        } finally {
+            putQuietly(_output, END);
+        }
+    }
+
+    /**
+     * Compresses into a block, handing it to the writer when it is full.
+     *
+     * @param output the block being filled with compressed bytes.
+     * @return the block to be filled next.
+     * @throws InterruptedException if the thread is interrupted while the writer is busy.
+     */
+    private ByteBuffer deflate(ByteBuffer output) throws InterruptedException {
+        _deflater.deflate(output);
+        if (output.hasRemaining())
+            return output;
+        output.flip();
+        _output.put(output);
+        return _freeOutput.take();
+    }
+
+    /**
+     * Writes the compressed blocks to the target channel, until the end of the bytes. Runs on the
+     * writer thread. After a failure, blocks are still taken, so the other stages never wait forever.
+     */
+    private void writeBlocks() {
+        try {
+            for (ByteBuffer block = _output.take(); block != END; block = _output.take()) {
+                try {
+                    while (_failure == null && block.hasRemaining())
+                        _target.write(block);
+                } catch (IOException | RuntimeException e) {
+                    fail(e);
+                }
+                block.clear();
+                _freeOutput.put(block);
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records the first failure of the pipeline.
+     *
+     * @param failure the failure.
+     */
+    private synchronized void fail(Throwable failure) {
+        if (_failure == null)
+            _failure = failure;
+    }
+
+    /**
+     * @throws IOException if the compressor or the writer failed.
+     */
+    private void checkFailure() throws IOException {
+        Throwable failure = _failure;
+        if (failure instanceof IOException e)
+            throw e;
+        if (failure != null)
+            throw new IOException(failure);
+    }
+
+    /**
+     * Takes a block from a queue, waiting if there is none.
+     *
+     * @param queue the queue.
+     * @return the block.
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    private static ByteBuffer take(BlockingQueue<ByteBuffer> queue) throws InterruptedIOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Puts a block in a queue, waiting if it is full.
+     *
+     * @param queue the queue.
+     * @param block the block.
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    private static void put(BlockingQueue<ByteBuffer> queue, ByteBuffer block) throws InterruptedIOException {
+        try {
+            queue.put(block);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Puts a block in a queue, ignoring interruptions, so the stage after this one always ends.
+     *
+     * @param queue the queue.
+     * @param block the block.
+     */
+    private static void putQuietly(BlockingQueue<ByteBuffer> queue, ByteBuffer block) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(block);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,376 @@
+package hva;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+
+import hva.employee.Employee;
+import hva.exceptions.duplicated.DuplicatedAnimalIdException;
+import hva.exceptions.duplicated.DuplicatedEmployeeIdException;
+import hva.exceptions.duplicated.DuplicatedHabitatIdException;
+import hva.exceptions.duplicated.DuplicatedSpeciesIdException;
+import hva.exceptions.duplicated.DuplicatedSpeciesNameException;
+import hva.exceptions.duplicated.DuplicatedTreeIdException;
+import hva.exceptions.duplicated.DuplicatedVaccineIdException;
+import hva.exceptions.unknown.UnknownAnimalIdException;
+import hva.exceptions.unknown.UnknownEmployeeIdException;
+import hva.exceptions.unknown.UnknownHabitatIdException;
+import hva.exceptions.unknown.UnknownSpeciesIdException;
+import hva.exceptions.unknown.UnknownSpeciesNameException;
+import hva.exceptions.unknown.UnknownTreeIdException;
+import hva.exceptions.unknown.UnknownVaccineIdException;
+import hva.exceptions.unknown.UnknownVeterinarianIdException;
+import hva.tree.Tree;
+
+/**
+ * The {@code FollowerHotel} class is a hotel that can only be queried, kept up to date with the operations
+ * that another process records in the journal of its snapshot (see {@link JournalFollower}).
+ *
+ * <p>
+ * The hotel is read from the snapshot and its deltas, as when it is loaded. The operations that the follow
+ * thread reads from the journal are queued on the hotel, and the next query applies them first, in order,
+ * through the same public methods that ran them in the other process (see {@link HotelJournal#apply}). So
+ * the entities are only changed by the thread that queries them, a query never sees an operation halfway,
+ * and the collections it returns are not changed while they are walked, unless another query is made
+ * meanwhile.
+ * </p>
+ *
+ * <p>
+ * Every other operation that would change the hotel throws an {@link UnsupportedOperationException}. If an
+ * operation of the journal cannot be applied, the hotel no longer follows the journal: it stops applying
+ * them, and the follow thread reads the hotel again from the snapshot.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_pending: The operations read from the journal, not yet applied.</li>
+ *   <li>_applying: Indicates if the hotel is being read or is applying operations, when it may change.</li>
+ *   <li>_diverged: Indicates if an operation of the journal could not be applied.</li>
+ * </ul>
+ */
+final class FollowerHotel extends Hotel {
+
+    /** Class serial number for serialization purposes. */
+    @Serial
+    private static final long serialVersionUID = 202610171200L;
+
+    /** The operations read from the journal, not yet applied. */
+    private final transient Queue<HotelJournal.Operation> _pending = new ConcurrentLinkedQueue<>();
+
+    /** Indicates if the hotel is being read or is applying operations, when it may change. */
+    private transient boolean _applying;
+
+    /** Indicates if an operation of the journal could not be applied. */
+    private transient volatile boolean _diverged;
+
+    /** Not instantiable from outside: see {@link #read(Path)}. */
+    private FollowerHotel() {
+    }
+
+    /**
+     * Reads a hotel to follow from a snapshot file and its deltas.
+     *
+     * @param snapshot the snapshot file.
+     * @return the hotel.
+     * @throws IOException if the file cannot be read, is not a snapshot, or is corrupted.
+     */
+    static FollowerHotel read(Path snapshot) throws IOException {
+        return SnapshotDelta.read(snapshot, () -> readOnce(snapshot), Hotel::closeVaccinationHistory);
+    }
+
+    /**
+     * Reads a hotel to follow from a snapshot file and its deltas, once.
+     *
+     * @param snapshot the snapshot file.
+     * @return the hotel.
+     * @throws IOException if the file cannot be read, is not a snapshot, or is corrupted.
+     */
+    private static FollowerHotel readOnce(Path snapshot) throws IOException {
+        FollowerHotel hotel = new FollowerHotel();
+        hotel._applying = true;
+        try {
+            SnapshotReader.read(snapshot, hotel);
+            SnapshotDelta.apply(snapshot, hotel);
+        } catch (IOException | UncheckedIOException e) {
+            hotel.closeVaccinationHistory();
+            throw e;
+        } finally {
+            hotel._applying = false;
+        }
+        return hotel;
+    }
+
+    /**
+     * Queues an operation read from the journal, applied by the next query.
+     *
+     * @param operation the operation, which follows those queued before.
+     */
+    void enqueue(HotelJournal.Operation operation) {
+        _pending.add(operation);
+    }
+
+    /**
+     * @return whether an operation of the journal could not be applied, so the hotel no longer follows it.
+     */
+    boolean hasDiverged() {
+        return _diverged;
+    }
+
+    /**
+     * Applies the operations queued so far, in order. An operation that fails is reported, and the hotel
+     * stops applying operations.
+     */
+    synchronized void catchUp() {
+        // the operations look entities up as they are applied
+        if (_applying || _diverged)
+            return;
+        _applying = true;
+        try {
+            for (HotelJournal.Operation operation = _pending.poll(); operation != null; operation = _pending.poll()) {
+                HotelJournal.apply(this, operation.operation(), operation.arguments());
+                restoreJournalSequence(operation.sequence());
+            }
+        } catch (StreamCorruptedException e) {
+            _diverged = true;
+            _pending.clear();
+            e.printStackTrace();
+        } finally {
+            _applying = false;
+        }
+    }
+
+    /**
+     * @return an exception for an operation that would change the hotel.
+     */
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Read-only hotel");
+    }
+
+    /**
+     * Rejects changes to the hotel other than by reading it or applying the journal.
+     *
+     * @throws UnsupportedOperationException if the hotel is not being read nor applying operations.
+     */
+    private void checkApplying() {
+        if (!_applying)
+            throw readOnly();
+    }
+
+    /** @see Hotel#isReadOnly() */
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    /**
+     * Applying the journal changes the hotel, but it is saved by the process that recorded the journal.
+     *
+     * @see Hotel#hasChanged()
+     */
+    @Override
+    public boolean hasChanged() {
+        return false;
+    }
+
+    /**
+     * Every operation that changes the hotel starts here, so only those of the journal are let through.
+     *
+     * @see Hotel#beginOperation()
+     */
+    @Override
+    Lock beginOperation() {
+        checkApplying();
+        return super.beginOperation();
+    }
+
+    // queries: the operations read from the journal are applied first
+
+    @Override
+    public Species getSpecies(String id) throws UnknownSpeciesIdException {
+        catchUp();
+        return super.getSpecies(id);
+    }
+
+    @Override
+    public Species getSpeciesByName(String name) throws UnknownSpeciesNameException {
+        catchUp();
+        return super.getSpeciesByName(name);
+    }
+
+    @Override
+    public Tree getTree(String id) throws UnknownTreeIdException {
+        catchUp();
+        return super.getTree(id);
+    }
+
+    @Override
+    public Habitat getHabitat(String id) throws UnknownHabitatIdException {
+        catchUp();
+        return super.getHabitat(id);
+    }
+
+    @Override
+    public Animal getAnimal(String id) throws UnknownAnimalIdException {
+        catchUp();
+        return super.getAnimal(id);
+    }
+
+    @Override
+    public Employee getEmployee(String id) throws UnknownEmployeeIdException {
+        catchUp();
+        return super.getEmployee(id);
+    }
+
+    @Override
+    public Vaccine getVaccine(String id) throws UnknownVaccineIdException {
+        catchUp();
+        return super.getVaccine(id);
+    }
+
+    @Override
+    Collection<Species> allSpecies() {
+        catchUp();
+        return super.allSpecies();
+    }
+
+    @Override
+    Collection<Tree> allTrees() {
+        catchUp();
+        return super.allTrees();
+    }
+
+    @Override
+    public Collection<Habitat> allHabitats() {
+        catchUp();
+        return super.allHabitats();
+    }
+
+    @Override
+    public Collection<Animal> allAnimals() {
+        catchUp();
+        return super.allAnimals();
+    }
+
+    @Override
+    public Collection<Employee> allEmployees() {
+        catchUp();
+        return super.allEmployees();
+    }
+
+    @Override
+    public Collection<Vaccine> allVaccines() {
+        catchUp();
+        return super.allVaccines();
+    }
+
+    @Override
+    public Collection<Tree> allTreesInHabitat(String habitatId) throws UnknownHabitatIdException {
+        catchUp();
+        return super.allTreesInHabitat(habitatId);
+    }
+
+    @Override
+    public Collection<Animal> allAnimalsInHabitat(String habitatId) throws UnknownHabitatIdException {
+        catchUp();
+        return super.allAnimalsInHabitat(habitatId);
+    }
+
+    @Override
+    public int animalSatisfaction(String animalId) throws UnknownAnimalIdException {
+        catchUp();
+        return super.animalSatisfaction(animalId);
+    }
+
+    @Override
+    public int employeeSatisfaction(String employeeId) throws UnknownEmployeeIdException {
+        catchUp();
+        return super.employeeSatisfaction(employeeId);
+    }
+
+    @Override
+    public int globalSatisfaction() {
+        catchUp();
+        return super.globalSatisfaction();
+    }
+
+    @Override
+    public Collection<Vaccination> allVaccinations() {
+        catchUp();
+        return super.allVaccinations();
+    }
+
+    @Override
+    public Collection<Vaccination> animalVaccinations(String animalId) throws UnknownAnimalIdException {
+        catchUp();
+        return super.animalVaccinations(animalId);
+    }
+
+    @Override
+    public Collection<Vaccination> veterinarianVaccinations(String veterinarianId) throws UnknownVeterinarianIdException {
+        catchUp();
+        return super.veterinarianVaccinations(veterinarianId);
+    }
+
+    @Override
+    public Collection<Vaccination> wrongVaccinations() {
+        catchUp();
+        return super.wrongVaccinations();
+    }
+
+    // entities are only added while the hotel is read or applies the journal
+
+    @Override
+    public void addSpecies(String key, Species species) throws DuplicatedSpeciesIdException,
+        DuplicatedSpeciesNameException {
+        checkApplying();
+        super.addSpecies(key, species);
+    }
+
+    @Override
+    public void addHabitat(String key, Habitat habitat) throws DuplicatedHabitatIdException {
+        checkApplying();
+        super.addHabitat(key, habitat);
+    }
+
+    @Override
+    public void addAnimal(String key, Animal animal) throws DuplicatedAnimalIdException {
+        checkApplying();
+        super.addAnimal(key, animal);
+    }
+
+    @Override
+    public void addEmployee(String key, Employee employee) throws DuplicatedEmployeeIdException {
+        checkApplying();
+        super.addEmployee(key, employee);
+    }
+
+    @Override
+    public void addVaccine(String key, Vaccine vaccine) throws DuplicatedVaccineIdException {
+        checkApplying();
+        super.addVaccine(key, vaccine);
+    }
+
+    @Override
+    public void addTree(String key, Tree tree) throws DuplicatedTreeIdException {
+        checkApplying();
+        super.addTree(key, tree);
+    }
+
+    @Override
+    public void addVaccination(Vaccination vaccination) {
+        checkApplying();
+        super.addVaccination(vaccination);
+    }
+
+    @Override
+    public void addWrongVaccination(Vaccination wrongVaccination) {
+        checkApplying();
+        super.addWrongVaccination(wrongVaccination);
+    }
+}
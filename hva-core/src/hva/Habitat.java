@@ -34,6 +34,7 @@ import hva.tree.Tree;
  *   <li>_area: The total area of the habitat (in square meters).</li>
  *   <li>_trees: A collection of trees located within the habitat, keyed by tree ID (case-insensitive).</li>
  *   <li>_animals: A collection of animals residing in the habitat, keyed by animal ID (case-insensitive).</li>
+ *   <li>_populationBySpecies: The number of animals of each species residing in the habitat.</li>
  * </ul>
  */
 public class Habitat implements Serializable {
@@ -66,6 +67,9 @@ public class Habitat implements Serializable {
     /** The influence of the habitat on each species of animal. */
     private Map<Species, HabitatInfluence> _influenceBySpecies = new HashMap<>();
 
+    /** The number of animals of each species residing in the habitat (rebuilt on demand after loading). */
+    private transient Map<Species, Integer> _populationBySpecies;
+
     /**
      * Constructs a new {@code Habitat} with the specified ID, name, and area.
      * 
@@ -137,17 +141,37 @@ public class Habitat implements Serializable {
         return animalCollection;
     }
 
+    /**
+     * Returns all the zookeepers assigned to the habitat as an unmodifiable collection.
+     * 
+     * @return A collection of zookeepers assigned to the habitat.
+     */
+    public Collection<Zookeeper> allZookeepers() {
+        return Collections.unmodifiableCollection(_zookeepers.values());
+    }
+
+    /**
+     * Returns the influence of the habitat on each species whose influence was changed, as an unmodifiable map.
+     *
+     * @return the influence of the habitat by species.
+     */
+    Map<Species, HabitatInfluence> influences() {
+        return Collections.unmodifiableMap(_influenceBySpecies);
+    }
+
     /**
      * Determines the influence of the habitat on a given animal.
-     * If the species of the animal is not already present in the influence map,
-     * it will be added with a default influence of NEUTRAL.
+     * If the species of the animal is not present in the influence map,
+     * the influence is NEUTRAL.
+     *
+     * <p>The habitat is not modified, so the influence can be read from several threads at once.</p>
      *
      * @param animal the animal whose habitat influence is to be determined
      * @return the influence of the habitat on the specified animal
      */
     public HabitatInfluence influenceOnAnimal(Animal animal) {
         Species species = animal.getSpecies();
-        return _influenceBySpecies.computeIfAbsent(species, k -> HabitatInfluence.NEUTRAL);
+        return _influenceBySpecies.getOrDefault(species, HabitatInfluence.NEUTRAL);
     }
 
     /**
@@ -184,9 +208,22 @@ public class Habitat implements Serializable {
      * @param animal The animal to be added to the habitat.
      */
     public void addAnimal(Animal animal) {
-        _animals.put(animal.getId(), animal);
+        Map<Species, Integer> populationBySpecies = populationBySpecies();
+        if (_animals.put(animal.getId(), animal) == null)
+            populationBySpecies.merge(animal.getSpecies(), 1, Integer::sum);
     } 
 
+    /**
+     * Adds an animal to the habitat while the hotel is restored from a snapshot. As after Java
+     * deserialization, the population by species is left to be rebuilt when it is first needed.
+     *
+     * @param animal The animal to be added to the habitat.
+     */
+    void restoreAnimal(Animal animal) {
+        _animals.put(animal.getId(), animal);
+        _populationBySpecies = null;
+    }
+
     /**
      * Removes an animal from the habitat.
      * 
@@ -194,7 +231,26 @@ public class Habitat implements Serializable {
      * @return The animal that was removed from the habitat.
      */
     public Animal removeAnimal(Animal animal) {
-        return _animals.remove(animal.getId());
+        Map<Species, Integer> populationBySpecies = populationBySpecies();
+        Animal removed = _animals.remove(animal.getId());
+        if (removed != null)
+            populationBySpecies.computeIfPresent(removed.getSpecies(), (species, count) -> count == 1 ? null : count - 1);
+        return removed;
+    }
+
+    /**
+     * Returns the number of animals of each species residing in the habitat, rebuilding it
+     * from the animals if the habitat was just loaded.
+     *
+     * @return the population of the habitat by species.
+     */
+    private Map<Species, Integer> populationBySpecies() {
+        if (_populationBySpecies == null) {
+            _populationBySpecies = new HashMap<>();
+            for (Animal habitatAnimal : _animals.values())
+                _populationBySpecies.merge(habitatAnimal.getSpecies(), 1, Integer::sum);
+        }
+        return _populationBySpecies;
     }
 
     /**
@@ -219,15 +275,15 @@ public class Habitat implements Serializable {
      * Counts the number of animals in the habitat that are of the same species as the given animal,
      * excluding the given animal itself.
      *
+     * <p>The population of each species is kept up to date as animals arrive and leave, so this takes constant time.</p>
+     *
      * @param animal the animal whose species is to be matched against other animals in the habitat
      * @return the number of animals in the habitat that are of the same species as the given animal
      */
     public int sameSpecies(Animal animal) {
-        int sameSpeciesAnimalCount = 0;
-        for (Animal habitatAnimal : _animals.values()) {
-            if (animal.getSpecies().equals(habitatAnimal.getSpecies()) && !animal.equals(habitatAnimal)) 
-                sameSpeciesAnimalCount++;
-        }
+        int sameSpeciesAnimalCount = populationBySpecies().getOrDefault(animal.getSpecies(), 0);
+        if (equals(animal.getHabitat()))
+            sameSpeciesAnimalCount--;
         return sameSpeciesAnimalCount;
     }
 
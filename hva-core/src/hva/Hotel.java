@@ -3,9 +3,17 @@ package hva;
 import java.io.Serial;
 import java.io.Serializable;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -14,6 +22,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import hva.exceptions.ImportFileException;
 import hva.exceptions.UnrecognizedEntryException;
@@ -31,6 +43,7 @@ import hva.exceptions.unknown.UnknownAnimalIdException;
 import hva.exceptions.unknown.UnknownEmployeeIdException;
 import hva.exceptions.unknown.UnknownHabitatIdException;
 import hva.exceptions.unknown.UnknownSpeciesIdException;
+import hva.exceptions.unknown.UnknownSpeciesNameException;
 import hva.exceptions.unknown.UnknownTreeIdException;
 import hva.exceptions.unknown.UnknownVaccineIdException;
 import hva.exceptions.unknown.UnknownVeterinarianIdException;
@@ -42,8 +55,6 @@ import hva.strategies.VeterinarianSatisfactionStrategy;
 import hva.strategies.VeterinarianVaccinationStrategy;
 import hva.strategies.ZookeeperSatisfactionStrategy;
 import hva.tree.Tree;
-import hva.treeStates.DeciduousTreeStateSpring;
-import hva.treeStates.EvergreenTreeStateSpring;
 import hva.tree.DeciduousTree;
 import hva.tree.EvergreenTree;
 import hva.employee.Employee;
@@ -51,6 +62,8 @@ import hva.employee.Zookeeper;
 import hva.employee.Veterinarian;
 import hva.enums.VaccineDamage;
 import hva.enums.HabitatInfluence;
+import hva.enums.Season;
+import hva.enums.SatisfactionMode;
 import hva.Species;
 import hva.Habitat;
 import hva.Animal;
@@ -72,7 +85,10 @@ import hva.Vaccination;
  *   <li>Managing vaccinations and tracking wrong vaccinations.</li>
  *   <li>Calculating satisfaction levels for animals and employees.</li>
  *   <li>Handling responsibilities of employees.</li>
- *   <li>Advancing the season for trees.</li>
+ *   <li>Advancing the season of the hotel, shared by all its trees.</li>
+ *   <li>Recording the operations that change the hotel in a journal (see {@link HotelJournal}).</li>
+ *   <li>Recording which entities changed since it was saved, so the next save only writes them (see {@link HotelChanges}).</li>
+ *   <li>Letting checkpoints capture it between operations only (see {@link HotelCheckpointer}).</li>
  * </ul>
  * 
  * <p>Exceptions are thrown for various error conditions, such as unknown IDs, duplicated entries, and unauthorized actions.</p>
@@ -116,23 +132,54 @@ public class Hotel implements Serializable {
     // @Serial // Removed as it is not available in Java SE
     private static final long serialVersionUID = 202407081733L;
 
-    /** Collection of species in the hotel, identified by their IDs. */
-    private Map<String, Species> _species = new HashMap<>();
+    /**
+     * The fields of a hotel saved with Java serialization, before snapshots existed, which are still read: the
+     * entities were kept in maps by ID and the season was the one of two root trees, advanced with every tree.
+     */
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("_species", Map.class),
+        new ObjectStreamField("_habitats", Map.class),
+        new ObjectStreamField("_animals", Map.class),
+        new ObjectStreamField("_employees", Map.class),
+        new ObjectStreamField("_vaccines", Map.class),
+        new ObjectStreamField("_trees", Map.class),
+        new ObjectStreamField("_vaccinations", List.class),
+        new ObjectStreamField("_wrongVaccinations", List.class),
+        new ObjectStreamField("_changed", boolean.class),
+        new ObjectStreamField("_rootEvergreenTree", Tree.class),
+        new ObjectStreamField("_rootDeciduousTree", Tree.class),
+    };
+
+    /** Default number of animals and employees below which the satisfaction is always evaluated sequentially. */
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
+
+    /** The name given, in errors, to an input that is not a file, as on the command line. */
+    private static final String STREAM_SOURCE = "-";
+
+    /** The longest an export waits in line for the running operations to end before it lets them go on. */
+    private static final long MAX_EXPORT_WAIT_MILLIS = 100;
+
+    /** Collection of species in the hotel, identified by their IDs, case insensitive. */
+    private CaseInsensitiveIndex<Species> _species = new CaseInsensitiveIndex<>();
+
+    /** Index of the species in the hotel by name (names are unique), kept alongside {@code _species}. */
+    private Map<String, Species> _speciesByName = new HashMap<>();
 
     /** Collection of habitats in the hotel, identified by their IDs, case insensitive. */
-    private Map<String, Habitat> _habitats = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private CaseInsensitiveIndex<Habitat> _habitats = new CaseInsensitiveIndex<>();
 
     /** Collection of animals in the hotel, identified by their IDs, case insensitive. */
-    private Map<String, Animal> _animals = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private CaseInsensitiveIndex<Animal> _animals = new CaseInsensitiveIndex<>();
 
     /** Collection of employees in the hotel, identified by their IDs, case insensitive. */
-    private Map<String, Employee> _employees = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private CaseInsensitiveIndex<Employee> _employees = new CaseInsensitiveIndex<>();
 
     /** Collection of vaccines in the hotel, identified by their IDs, case insensitive. */
-    private Map<String, Vaccine> _vaccines = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private CaseInsensitiveIndex<Vaccine> _vaccines = new CaseInsensitiveIndex<>();
 
-    /** Collection of trees not assigned to any habitat, identified by their IDs. */
-    private Map<String, Tree> _trees = new HashMap<>();
+    /** Collection of trees not assigned to any habitat, identified by their IDs, case insensitive. */
+    private CaseInsensitiveIndex<Tree> _trees = new CaseInsensitiveIndex<>();
 
     /** Collection of all the vaccinations that happened in the hotel. */
     private List<Vaccination> _vaccinations = new ArrayList<>();
@@ -140,44 +187,155 @@ public class Hotel implements Serializable {
     /** Collection of all the vaccinations in which the vaccine was not the proper one for the animal */
     private List<Vaccination> _wrongVaccinations = new ArrayList<>();
 
-    /** Indicates if the hotel object has been modified since the last change. */
-    private boolean _changed = false;
+    /** Number of times the hotel was modified (may be incremented by several threads during an import). */
+    private AtomicLong _modifications = new AtomicLong();
 
-    /** Shortcut to the first evergreen tree. */
-    private Tree _rootEvergreenTree;
-    
-    /** Shortcut to the first deciduous tree. */
-    private Tree _rootDeciduousTree;
+    /** Number of times the hotel was modified when it was last saved or loaded. */
+    private AtomicLong _savedModifications = new AtomicLong();
+
+    /** The current season of the hotel, shared by all its trees. */
+    private SeasonClock _seasonClock = new SeasonClock();
+
+    /** Sequence number of the last operation that changed the hotel, as recorded in its journal. */
+    private long _journalSequence = 0;
+
+    /** The journal where the operations that change the hotel are recorded, if it has one. */
+    private transient HotelJournal _journal;
+
+    /** The vaccination history not yet read from the snapshot of the hotel, if any. */
+    private transient VaccinationHistory _vaccinationHistory;
+
+    /** The entities registered or changed since the hotel was last saved, if they are recorded. */
+    private transient HotelChanges _changes;
+
+    /** The lineage of the snapshot the hotel was read from, which its deltas repeat, or 0. */
+    private transient long _snapshotLineage;
+
+    /** The snapshot the hotel was last saved in or read from, and its deltas, if any. */
+    private transient SnapshotChain _snapshotChain;
+
+    /** Held, shared, by the operations that change the hotel, and alone by a checkpoint as it is captured. */
+    private transient ReentrantReadWriteLock _operationLock = new ReentrantReadWriteLock();
+
+    /** Told of the operations that change the hotel, to checkpoint it, if it is checkpointed. */
+    private transient volatile HotelCheckpointer _checkpointer;
+
+    /** Running total of the satisfaction of animals and employees (rebuilt on demand after loading). */
+    private transient SatisfactionLedger _satisfactionLedger;
+
+    /** Indicates if the running satisfaction total is cross-checked against a full recomputation. */
+    private transient boolean _verifySatisfaction;
+
+    /** How the satisfaction of many animals and employees is evaluated at once. */
+    private transient SatisfactionMode _satisfactionMode;
+
+    /** Number of animals and employees below which the satisfaction is always evaluated sequentially. */
+    private transient int _parallelSatisfactionThreshold;
 
     /**
      * Constructs a new {@code Hotel} object with default values.
      * 
-     * <p>It initializes the root evergreen and deciduous trees.</p>
+     * <p>The hotel starts in spring.</p>
      */
     public Hotel() {
-        // type|id|name|age|cleaningDifficulty|treetype
-        String[] evergreenFields = {"ÁRVORE", "RootEvergreenTree", "EvergreenTree", "0", "0", "PERENE"};
-        String[] deciduousFields = {"ÁRVORE", "RootDeciduousTree", "DeciduousTree", "0", "0", "CADUCA"};
-        try {
-            _rootEvergreenTree = registerTree(evergreenFields);
-            _rootDeciduousTree = registerTree(deciduousFields);
-            _trees.remove("RootEvergreenTree");
-            _trees.remove("RootDeciduousTree");
-            setChanged(false);
-        } catch (UnrecognizedEntryException | DuplicatedTreeIdException e) {
-            // should not happen
-            e.printStackTrace();
+        configureSatisfaction();
+    }
+
+
+    /**
+     * Restores a hotel saved with Java serialization, with the satisfaction settings taken from the system properties.
+     * 
+     * <p>The entities are moved to the indexes of the hotel and the species are numbered, in order of ID. The
+     * season clock starts in the season of the root evergreen tree, and every tree is moved to it.</p>
+     * 
+     * @param in the stream from which the hotel is read.
+     * @throws IOException if the stream cannot be read or lacks some of the fields of a hotel.
+     * @throws ClassNotFoundException if a serialized class is not available.
+     */
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _species = readIndex(fields, "_species", Species.class);
+        _speciesByName = new HashMap<>();
+        for (Species species : _species.values()) {
+            species.setIndex(_speciesByName.size());
+            _speciesByName.put(species.getName(), species);
         }
+        _habitats = readIndex(fields, "_habitats", Habitat.class);
+        _animals = readIndex(fields, "_animals", Animal.class);
+        _employees = readIndex(fields, "_employees", Employee.class);
+        _vaccines = readIndex(fields, "_vaccines", Vaccine.class);
+        _trees = readIndex(fields, "_trees", Tree.class);
+        _vaccinations = readList(fields, "_vaccinations");
+        _wrongVaccinations = readList(fields, "_wrongVaccinations");
+        Tree root = (Tree) fields.get("_rootEvergreenTree", null);
+        if (root == null)
+            throw new InvalidObjectException("hotel without a root evergreen tree");
+        _seasonClock = new SeasonClock(root.getSeason().value());
+        for (Tree tree : _trees.unorderedValues())
+            tree.setClock(_seasonClock);
+        _modifications = new AtomicLong();
+        _savedModifications = new AtomicLong();
+        _operationLock = new ReentrantReadWriteLock();
+        configureSatisfaction();
     }
 
+    /**
+     * Reads one of the maps of entities by ID of a hotel saved with Java serialization into an index.
+     * 
+     * @param <V> the type of the entities.
+     * @param fields the fields of the hotel.
+     * @param name the name of the map.
+     * @param type the class of the entities.
+     * @return the index of the entities in the map.
+     * @throws IOException if the stream cannot be read or the map is missing.
+     */
+    private static <V> CaseInsensitiveIndex<V> readIndex(ObjectInputStream.GetField fields, String name, Class<V> type) throws IOException {
+        if (!(fields.get(name, null) instanceof Map<?, ?> entities))
+            throw new InvalidObjectException("hotel without " + name);
+        CaseInsensitiveIndex<V> index = new CaseInsensitiveIndex<>();
+        index.ensureCapacity(entities.size());
+        for (Map.Entry<?, ?> entry : entities.entrySet())
+            index.put((String) entry.getKey(), type.cast(entry.getValue()));
+        return index;
+    }
+
+    /**
+     * Reads one of the lists of vaccinations of a hotel saved with Java serialization.
+     * 
+     * @param fields the fields of the hotel.
+     * @param name the name of the list.
+     * @return the vaccinations in the list.
+     * @throws IOException if the stream cannot be read or the list is missing.
+     */
+    private static List<Vaccination> readList(ObjectInputStream.GetField fields, String name) throws IOException {
+        if (!(fields.get(name, null) instanceof List<?> vaccinations))
+            throw new InvalidObjectException("hotel without " + name);
+        List<Vaccination> list = new ArrayList<>(vaccinations.size());
+        for (Object vaccination : vaccinations)
+            list.add((Vaccination) vaccination);
+        return list;
+    }
+
+    /**
+     * Initializes the satisfaction settings from the system properties {@code hva.satisfaction.verify},
+     * {@code hva.satisfaction.parallel} and {@code hva.satisfaction.threshold}.
+     */
+    private void configureSatisfaction() {
+        _verifySatisfaction = Boolean.getBoolean("hva.satisfaction.verify");
+        _satisfactionMode = Boolean.getBoolean("hva.satisfaction.parallel") ? SatisfactionMode.PARALLEL : SatisfactionMode.SEQUENTIAL;
+        _parallelSatisfactionThreshold = Integer.getInteger("hva.satisfaction.threshold", DEFAULT_PARALLEL_THRESHOLD);
+    }
 
     /**
      * Returns whether the hotel has been changed.
      * 
+     * <p>The hotel has changed if it was modified since it was last saved or loaded.</p>
+     * 
      * @return {@code true} if the hotel object has been changed, {@code false} otherwise.
      */
     public boolean hasChanged() {
-        return _changed;
+        return _modifications.get() != _savedModifications.get();
     }
 
     /**
@@ -186,14 +344,343 @@ public class Hotel implements Serializable {
      * @param changed the new changed status.
      */
     public void setChanged(boolean changed) {
-        _changed = changed;
+        if (changed)
+            changed();
+        else
+            _savedModifications.set(_modifications.get());
+    }
+
+    /**
+     * Returns whether the hotel can only be queried, in which case the operations that change it
+     * throw an {@link UnsupportedOperationException} (see {@link ReadOnlyHotel}).
+     *
+     * @return {@code false}, for a hotel that can be changed.
+     */
+    public boolean isReadOnly() {
+        return false;
     }
 
     /**
      * Marks the hotel as changed.
      */
     public void changed() {
-        setChanged(true);
+        _modifications.incrementAndGet();
+    }
+
+    /**
+     * @return the number of times the hotel was modified.
+     */
+    long getModificationCount() {
+        return _modifications.get();
+    }
+
+    /**
+     * Records that the hotel was saved as it was after the given number of modifications, when the
+     * save was captured. The hotel remains changed if it was modified since then.
+     * 
+     * @param modifications the number of modifications of the saved state.
+     */
+    void markSaved(long modifications) {
+        _savedModifications.accumulateAndGet(modifications, Math::max);
+    }
+
+    /**
+     * @return the sequence number of the last operation that changed the hotel.
+     */
+    long getJournalSequence() {
+        return _journalSequence;
+    }
+
+    /**
+     * Sets the sequence number of the last operation that changed the hotel, when it is restored
+     * from a snapshot or its journal.
+     *
+     * @param sequence the sequence number.
+     */
+    void restoreJournalSequence(long sequence) {
+        _journalSequence = sequence;
+    }
+
+    /**
+     * @return the journal where the operations that change the hotel are recorded, or {@code null}.
+     */
+    HotelJournal getJournal() {
+        return _journal;
+    }
+
+    /**
+     * Sets the journal where the operations that change the hotel are recorded.
+     *
+     * @param journal the journal, or {@code null} to stop recording operations.
+     */
+    void setJournal(HotelJournal journal) {
+        _journal = journal;
+    }
+
+    /**
+     * @return the entities registered or changed since the hotel was last saved, or
+     *         {@link HotelChanges#UNTRACKED} if they are not recorded.
+     */
+    private HotelChanges changes() {
+        HotelChanges changes = _changes;
+        return changes != null ? changes : HotelChanges.UNTRACKED;
+    }
+
+    /**
+     * Takes the entities registered or changed since the hotel was last saved, when a save is captured,
+     * and starts recording the changes from then on.
+     *
+     * @return the changes since the last save, or {@link HotelChanges#UNTRACKED} if they were not recorded.
+     */
+    synchronized HotelChanges takeChanges() {
+        HotelChanges changes = changes();
+        _changes = new HotelChanges();
+        return changes;
+    }
+
+    /**
+     * @return the lineage of the snapshot the hotel was read from, or 0 if it has none.
+     */
+    long getSnapshotLineage() {
+        return _snapshotLineage;
+    }
+
+    /**
+     * Sets the lineage of the snapshot the hotel is read from, which its deltas repeat.
+     *
+     * @param lineage the lineage.
+     */
+    void restoreSnapshotLineage(long lineage) {
+        _snapshotLineage = lineage;
+    }
+
+    /**
+     * @return the snapshot the hotel was last saved in or read from, and its deltas, or {@code null}.
+     */
+    SnapshotChain getSnapshotChain() {
+        return _snapshotChain;
+    }
+
+    /**
+     * Sets the snapshot the hotel was last saved in or read from, and its deltas.
+     *
+     * @param chain the snapshot and its deltas.
+     */
+    void setSnapshotChain(SnapshotChain chain) {
+        _snapshotChain = chain;
+    }
+
+    /**
+     * Leaves the vaccination history of the hotel in its snapshot, to be read when it is first needed.
+     * The hotel must not have any vaccination yet.
+     *
+     * @param history the vaccination history.
+     */
+    void deferVaccinationHistory(VaccinationHistory history) {
+        _vaccinationHistory = history;
+        for (Vaccine vaccine : _vaccines.values())
+            vaccine.deferVaccinations(history);
+    }
+
+    /**
+     * Adds the vaccination history read from the snapshot of the hotel, before any later vaccination.
+     *
+     * @param vaccinations the vaccinations, in the order they happened.
+     * @param wrongVaccinations the vaccinations in which the vaccine was wrong.
+     */
+    void restoreVaccinationHistory(List<Vaccination> vaccinations, List<Vaccination> wrongVaccinations) {
+        for (Vaccination vaccination : vaccinations)
+            linkVaccination(vaccination);
+        _wrongVaccinations.addAll(wrongVaccinations);
+    }
+
+    /**
+     * Adds the vaccinations read from a delta of the snapshot of the hotel, which follow its vaccination
+     * history. If the history was not read yet, they are added after it when it is.
+     *
+     * @param vaccinations the vaccinations, in the order they happened.
+     * @param wrongVaccinations the vaccinations in which the vaccine was wrong.
+     */
+    void restoreLaterVaccinations(List<Vaccination> vaccinations, List<Vaccination> wrongVaccinations) {
+        if (_vaccinationHistory != null && _vaccinationHistory.append(vaccinations, wrongVaccinations)) {
+            // the vaccines of the delta count their vaccinations once the history is read as well
+            deferVaccinationHistory(_vaccinationHistory);
+            return;
+        }
+        restoreVaccinationHistory(vaccinations, wrongVaccinations);
+    }
+
+    /**
+     * Closes the snapshot of the hotel without reading its vaccination history, if it was not read yet,
+     * when the hotel is discarded.
+     */
+    void closeVaccinationHistory() {
+        if (_vaccinationHistory != null)
+            _vaccinationHistory.close();
+    }
+
+    /**
+     * Reads the vaccination history of the hotel from its snapshot, if it was not read yet.
+     *
+     * @throws java.io.UncheckedIOException if the history cannot be read.
+     */
+    private void materializeVaccinations() {
+        if (_vaccinationHistory != null)
+            _vaccinationHistory.materialize();
+    }
+
+    /**
+     * Discards the records of the journal once a snapshot that includes them was saved, unless the hotel
+     * was changed since the snapshot was captured (those changes are only in the journal).
+     *
+     * @param snapshot the snapshot file.
+     * @param sequence the sequence number of the last operation included in the snapshot.
+     */
+    synchronized void journalSaved(Path snapshot, long sequence) {
+        if (_journal != null && _journalSequence == sequence && _journal.isJournalOf(snapshot))
+            _journal.reset(sequence);
+    }
+
+    /**
+     * Records an operation that changed the hotel, with the arguments it was called with, so that it
+     * can be replayed over the last snapshot. Operations are numbered even if the hotel has no journal.
+     *
+     * <p>Entries of an import file may be registered from several threads, so the number is taken and
+     * the record is written at once.</p>
+     *
+     * @param operation the code of the operation (see {@link HotelJournal}).
+     * @param arguments the arguments of the operation.
+     */
+    private synchronized void journal(byte operation, String... arguments) {
+        _journalSequence++;
+        if (_journal != null)
+            _journal.append(_journalSequence, operation, arguments);
+        HotelCheckpointer checkpointer = _checkpointer;
+        if (checkpointer != null)
+            checkpointer.operationRecorded(operation == HotelJournal.ADVANCE_SEASON);
+    }
+
+    /**
+     * Starts an operation that changes the hotel, which a checkpoint does not capture halfway. The
+     * operations of several threads, such as the entries of an import, run at once. A hotel that
+     * cannot be changed at the time rejects the operation here (see {@link FollowerHotel}).
+     *
+     * @return the lock to release when the operation ends.
+     */
+    Lock beginOperation() {
+        Lock lock = _operationLock.readLock();
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Keeps the hotel from being changed while a checkpoint is captured, if no operation is running.
+     * It does not wait for the running operations, which may be waiting for other threads themselves.
+     *
+     * @return {@code true} if the hotel is kept from changing until {@link #endCheckpoint()}.
+     */
+    boolean tryBeginCheckpoint() {
+        return _operationLock.writeLock().tryLock();
+    }
+
+    /**
+     * Keeps the hotel from being changed while a checkpoint is captured, waiting at most the given time
+     * for the running operations to end. Meanwhile, the checkpoint waits in line: operations started
+     * after it wait for it, so a steady stream of operations does not keep it out.
+     *
+     * @param timeoutMillis the longest wait, in milliseconds.
+     * @return {@code true} if the hotel is kept from changing until {@link #endCheckpoint()}, {@code false}
+     *         if the time ran out, in which case the operations waiting for the checkpoint go on.
+     * @throws InterruptedException if the thread is interrupted while it waits.
+     */
+    boolean tryBeginCheckpoint(long timeoutMillis) throws InterruptedException {
+        return _operationLock.writeLock().tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lets the hotel change again, once a checkpoint is captured.
+     */
+    void endCheckpoint() {
+        _operationLock.writeLock().unlock();
+    }
+
+    /**
+     * @param checkpointer told of the operations that change the hotel, or {@code null} if it is not checkpointed.
+     */
+    void setCheckpointer(HotelCheckpointer checkpointer) {
+        _checkpointer = checkpointer;
+    }
+
+    /**
+     * Returns whether the global satisfaction is cross-checked against a full recomputation.
+     * 
+     * @return {@code true} if the verification mode is enabled, {@code false} otherwise.
+     */
+    public boolean isSatisfactionVerified() {
+        return _verifySatisfaction;
+    }
+
+    /**
+     * Enables or disables the verification mode of the global satisfaction.
+     * 
+     * <p>When enabled, every call to {@link #globalSatisfaction()} also recomputes the satisfaction of every
+     * animal and employee and fails if the result differs from the running total. The mode can also be
+     * enabled with the system property {@code hva.satisfaction.verify}.</p>
+     * 
+     * @param verify {@code true} to enable the verification mode.
+     */
+    public void setSatisfactionVerified(boolean verify) {
+        _verifySatisfaction = verify;
+    }
+
+    /**
+     * Returns how the satisfaction of many animals and employees is evaluated at once.
+     * 
+     * @return the satisfaction mode.
+     */
+    public SatisfactionMode getSatisfactionMode() {
+        return _satisfactionMode;
+    }
+
+    /**
+     * Sets how the satisfaction of many animals and employees is evaluated at once.
+     * 
+     * <p>In {@code PARALLEL} mode, animals are partitioned by habitat and employees by type, and the partitions
+     * are evaluated on the common fork/join pool. The result is always identical to the sequential evaluation.</p>
+     * 
+     * @param mode the satisfaction mode.
+     */
+    public void setSatisfactionMode(SatisfactionMode mode) {
+        _satisfactionMode = mode;
+    }
+
+    /**
+     * Returns the number of animals and employees below which the satisfaction is always evaluated sequentially.
+     * 
+     * @return the parallel evaluation threshold.
+     */
+    public int getParallelSatisfactionThreshold() {
+        return _parallelSatisfactionThreshold;
+    }
+
+    /**
+     * Sets the number of animals and employees below which the satisfaction is always evaluated sequentially.
+     * 
+     * @param threshold the parallel evaluation threshold.
+     */
+    public void setParallelSatisfactionThreshold(int threshold) {
+        _parallelSatisfactionThreshold = threshold;
+    }
+
+    /**
+     * Returns the running total of the satisfaction, creating it if the hotel was just loaded.
+     * 
+     * @return the satisfaction ledger of the hotel.
+     */
+    private SatisfactionLedger satisfactionLedger() {
+        if (_satisfactionLedger == null)
+            _satisfactionLedger = new SatisfactionLedger();
+        return _satisfactionLedger;
     }
 
     /**
@@ -215,9 +702,24 @@ public class Hotel implements Serializable {
      * @throws UnknownSpeciesIdException if the species is not found.
      */
     private Species fetchSpecies(String key) throws UnknownSpeciesIdException {
-        if (!_species.containsKey(key))
+        Species species = _species.get(key);
+        if (species == null)
             throw new UnknownSpeciesIdException(key);
-        return _species.get(key);
+        return species;
+    }
+
+    /**
+     * Retrieves the species with the specified name.
+     * 
+     * @param name the name of the species to retrieve.
+     * @return the species with the given name.
+     * @throws UnknownSpeciesNameException if no species has the given name.
+     */
+    public Species getSpeciesByName(String name) throws UnknownSpeciesNameException {
+        Species species = _speciesByName.get(name);
+        if (species == null)
+            throw new UnknownSpeciesNameException(name);
+        return species;
     }
 
     /**
@@ -239,9 +741,10 @@ public class Hotel implements Serializable {
      * @throws UnknownHabitatIdException if the habitat is not found.
      */
     private Habitat fetchHabitat(String key) throws UnknownHabitatIdException {
-        if (!_habitats.containsKey(key))
+        Habitat habitat = _habitats.get(key);
+        if (habitat == null)
             throw new UnknownHabitatIdException(key);
-        return _habitats.get(key);
+        return habitat;
     }
 
     /**
@@ -263,9 +766,10 @@ public class Hotel implements Serializable {
      * @throws UnknownAnimalIdException if the animal is not found.
      */
     private Animal fetchAnimal(String key) throws UnknownAnimalIdException {
-        if (!_animals.containsKey(key))
+        Animal animal = _animals.get(key);
+        if (animal == null)
             throw new UnknownAnimalIdException(key);
-        return _animals.get(key);
+        return animal;
     }
 
     /**
@@ -287,9 +791,10 @@ public class Hotel implements Serializable {
      * @throws UnknownEmployeeIdException if the employee is not found.
      */
     private Employee fetchEmployee(String key) throws UnknownEmployeeIdException {
-        if (!_employees.containsKey(key))
+        Employee employee = _employees.get(key);
+        if (employee == null)
             throw new UnknownEmployeeIdException(key);
-        return _employees.get(key);
+        return employee;
     }
 
     /**
@@ -311,9 +816,10 @@ public class Hotel implements Serializable {
      * @throws UnknownVaccineIdException if the vaccine is not found.
      */
     private Vaccine fetchVaccine(String key) throws UnknownVaccineIdException {
-        if (!_vaccines.containsKey(key))
+        Vaccine vaccine = _vaccines.get(key);
+        if (vaccine == null)
             throw new UnknownVaccineIdException(key);
-        return _vaccines.get(key);
+        return vaccine;
     }
 
     /**
@@ -335,37 +841,164 @@ public class Hotel implements Serializable {
      * @throws UnknownTreeIdException if the tree is not found.
      */
     private Tree fetchTree(String key) throws UnknownTreeIdException {
-        if (!_trees.containsKey(key))
+        Tree tree = _trees.get(key);
+        if (tree == null)
             throw new UnknownTreeIdException(key);
-        return _trees.get(key);
+        return tree;
     }
 
 
     /**
      * Reads a text input file and creates the corresponding domain entities.
-     * 
+     *
+     * <p>The file is read as UTF-8 by an {@link ImportFileReader}. Entries may refer to entities
+     * defined later in the file: they are registered in dependency order by a {@link HotelImporter}.</p>
+     *
+     * <p>A file in the binary bulk-import format (see {@link BulkImportFormat}) is recognised by its
+     * first bytes. Unless the operations of the hotel are recorded, its entities are then added
+     * directly, without going through an operation each, by a {@link BulkImportReader}.</p>
+     *
      * @param filename the name of the text input file.
      * @throws ImportFileException if there is an error reading the file.
      */
     public void importFile(String filename) throws ImportFileException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] fields = line.split("\\|");
-                try {   
-                    registerEntry(fields);
-                } catch (UnrecognizedEntryException | DuplicatedAnimalIdException | DuplicatedEmployeeIdException
-                        | DuplicatedHabitatIdException | DuplicatedSpeciesIdException | DuplicatedSpeciesNameException
-                        | DuplicatedTreeIdException | DuplicatedVaccineIdException | UnknownHabitatIdException
-                        | UnknownSpeciesIdException | UnknownTreeIdException e) {
-                    e.printStackTrace();
+        Lock operation = beginOperation();
+        try {
+            Map<HotelImporter.EntryType, List<String[]>> entries;
+            try {
+                Path path = Path.of(filename);
+                if (!BulkImportFormat.isBulkImport(path)) {
+                    entries = ImportFileReader.read(path);
+                } else if (_journal == null && _changes == null) {
+                    importBulk(path);
+                    return;
+                } else {
+                    entries = BulkImportReader.readEntries(path);
                 }
+            } catch (IOException | InvalidPathException e1) {
+                throw new ImportFileException(filename);
             }
-        } catch (IOException e1) {
-            throw new ImportFileException(filename);
+            importEntries(entries);
+        } finally {
+            operation.unlock();
         }
     }
-    
+
+    /**
+     * Adds the entities of a bulk-import file directly, in a hotel whose operations are not recorded.
+     *
+     * @param path the bulk-import file.
+     * @throws IOException if the file cannot be read or is corrupted.
+     */
+    private void importBulk(Path path) throws IOException {
+        try {
+            BulkImportReader.read(path, this);
+        } finally {
+            // the entities added, even before a failure, are only counted in the satisfaction from scratch
+            satisfactionLedger().invalidate();
+            changed();
+        }
+    }
+
+    /**
+     * Reads the entries of a text input file from a stream, such as a pipe, and creates the
+     * corresponding domain entities (see {@link #importFile(String)}).
+     *
+     * <p>The stream is read to its end, as UTF-8, and decompressed if it is gzip-compressed. It is not closed.</p>
+     *
+     * @param in the stream.
+     * @throws ImportFileException if there is an error reading the stream.
+     */
+    public void importFile(InputStream in) throws ImportFileException {
+        Lock operation = beginOperation();
+        try {
+            Map<HotelImporter.EntryType, List<String[]>> entries;
+            try {
+                entries = ImportFileReader.read(in);
+            } catch (IOException e) {
+                throw new ImportFileException(STREAM_SOURCE, e);
+            }
+            importEntries(entries);
+        } finally {
+            operation.unlock();
+        }
+    }
+
+    /**
+     * Reads the entries of a text input file from a channel and creates the corresponding domain
+     * entities (see {@link #importFile(InputStream)}).
+     *
+     * @param channel the channel, which is not closed.
+     * @throws ImportFileException if there is an error reading the channel.
+     */
+    public void importFile(ReadableByteChannel channel) throws ImportFileException {
+        importFile(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Registers the entries read from a text input file, as one batch of the journal.
+     *
+     * @param entries the entries of each type, in input order.
+     */
+    private void importEntries(Map<HotelImporter.EntryType, List<String[]>> entries) {
+        HotelJournal journal = _journal;
+        if (journal != null)
+            journal.beginBatch();
+        try {
+            new HotelImporter(this).importEntries(entries);
+        } finally {
+            if (journal != null)
+                journal.endBatch();
+        }
+    }
+
+    /**
+     * Writes the entities of the hotel to a text input file, which {@link #importFile(String)} reads
+     * back into an equivalent hotel (see {@link HotelExporter}).
+     *
+     * <p>The hotel does not change while it is exported: like a checkpoint, the export waits until no
+     * operation is running, and the operations started meanwhile wait for it to end. The export waits in
+     * line for a bounded time, as a running operation may itself wait for another one to start, such as
+     * the entries of an import; when the time runs out, the waiting operations go on and the export tries
+     * again, waiting longer each time, up to {@value #MAX_EXPORT_WAIT_MILLIS} milliseconds.</p>
+     *
+     * @param path the text file, replaced if it exists.
+     * @throws IOException if the file cannot be written.
+     */
+    public void exportTo(Path path) throws IOException {
+        // operations may wait for other threads holding the lock, so waiting for it without end could deadlock them
+        long waitMillis = 1;
+        try {
+            while (!tryBeginCheckpoint(waitMillis))
+                waitMillis = Math.min(2 * waitMillis, MAX_EXPORT_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        try (HotelExporter exporter = new HotelExporter(path)) {
+            exporter.export(this);
+        } finally {
+            endCheckpoint();
+        }
+    }
+
+    /**
+     * Registers an entry of a text input file, reporting it if it is invalid.
+     *
+     * @param fields the fields describing the entity.
+     */
+    void importEntry(String... fields) {
+        try {
+            registerEntry(fields);
+        } catch (UnrecognizedEntryException | DuplicatedAnimalIdException | DuplicatedEmployeeIdException
+                | DuplicatedHabitatIdException | DuplicatedSpeciesIdException | DuplicatedSpeciesNameException
+                | DuplicatedTreeIdException | DuplicatedVaccineIdException | UnknownHabitatIdException
+                | UnknownSpeciesIdException | UnknownTreeIdException | UnknownVaccineIdException
+                | UnknownVeterinarianIdException | UnknownAnimalIdException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Registers an entry based on the provided fields.
      * 
@@ -378,6 +1011,8 @@ public class Hotel implements Serializable {
      *   <li> "VETERINÁRIO" </li>
      *   <li> "VACINA" </li>
      *   <li> "ÁRVORE" </li>
+     *   <li> "INFLUÊNCIA" </li>
+     *   <li> "VACINAÇÃO" </li>
      * </ul>
      * 
      * <p>If not, it throws UnrecognizedEntryException.</p>
@@ -395,11 +1030,15 @@ public class Hotel implements Serializable {
      * @throws UnknownHabitatIdException if the habitat ID is unknown.
      * @throws UnknownSpeciesIdException if the species ID is unknown.
      * @throws UnknownTreeIdException if the tree ID is unknown.
+     * @throws UnknownVaccineIdException if the vaccine ID is unknown.
+     * @throws UnknownVeterinarianIdException if the veterinarian ID is unknown.
+     * @throws UnknownAnimalIdException if the animal ID is unknown.
      */
     public void registerEntry(String... fields) throws UnrecognizedEntryException, DuplicatedAnimalIdException,
         DuplicatedEmployeeIdException, DuplicatedHabitatIdException, DuplicatedSpeciesIdException, 
         DuplicatedSpeciesNameException, DuplicatedTreeIdException, DuplicatedVaccineIdException, UnknownHabitatIdException, 
-        UnknownSpeciesIdException, UnknownTreeIdException {
+        UnknownSpeciesIdException, UnknownTreeIdException, UnknownVaccineIdException, UnknownVeterinarianIdException,
+        UnknownAnimalIdException {
         switch (fields[0]) {
             case "ESPÉCIE" -> registerSpecies(fields);
             case "HABITAT" -> registerHabitat(fields);
@@ -407,6 +1046,8 @@ public class Hotel implements Serializable {
             case "TRATADOR", "VETERINÁRIO" -> registerEmployee(fields);
             case "VACINA" -> registerVaccine(fields);
             case "ÁRVORE" -> registerTree(fields);
+            case "INFLUÊNCIA" -> registerInfluence(fields);
+            case "VACINAÇÃO" -> registerVaccination(fields);
             default -> throw new UnrecognizedEntryException(fields[0]);
         }
     }
@@ -429,12 +1070,19 @@ public class Hotel implements Serializable {
      * @throws DuplicatedSpeciesNameException if a species with the same name already exists.
      */
     public void registerSpecies(String... fields) throws UnrecognizedEntryException, DuplicatedSpeciesIdException, DuplicatedSpeciesNameException {
-        if (!fields[0].equals("ESPÉCIE"))
-            throw new UnrecognizedEntryException(fields[0]);
+        Lock operation = beginOperation();
+        try {
+            if (!fields[0].equals("ESPÉCIE"))
+                throw new UnrecognizedEntryException(fields[0]);
 
-        Species species = new Species(fields[1], fields[2]);
-        addSpecies(fields[1], species);
-        changed();
+            Species species = new Species(fields[1], fields[2]);
+            addSpecies(fields[1], species);
+            changes().added(species);
+            changed();
+            journal(HotelJournal.REGISTER_SPECIES, fields);
+        } finally {
+            operation.unlock();
+        }
     }
 
     /**
@@ -457,18 +1105,25 @@ public class Hotel implements Serializable {
      * @throws UnknownTreeIdException if any tree ID provided in the list is not recognized.
      */
     public void registerHabitat(String... fields) throws UnrecognizedEntryException, DuplicatedHabitatIdException, UnknownTreeIdException {
-        if (!fields[0].equals("HABITAT"))
-            throw new UnrecognizedEntryException(fields[0]);
-
-        Habitat habitat = new Habitat(fields[1], fields[2], Integer.parseInt(fields[3]));
-        if (fields.length > 4) {
-            String[] treesIds = fields[4].split(",");
-            for (String id : treesIds) {
-                habitat.addTree(getTree(id));
+        Lock operation = beginOperation();
+        try {
+            if (!fields[0].equals("HABITAT"))
+                throw new UnrecognizedEntryException(fields[0]);
+
+            Habitat habitat = new Habitat(fields[1], fields[2], Integer.parseInt(fields[3]));
+            if (fields.length > 4) {
+                String[] treesIds = fields[4].split(",");
+                for (String id : treesIds) {
+                    habitat.addTree(getTree(id));
+                }
             }
+            addHabitat(fields[1], habitat);
+            changes().added(habitat);
+            changed();
+            journal(HotelJournal.REGISTER_HABITAT, fields);
+        } finally {
+            operation.unlock();
         }
-        addHabitat(fields[1], habitat);
-        changed();
     }
 
     /**
@@ -493,17 +1148,25 @@ public class Hotel implements Serializable {
      */
     public void registerAnimal(String... fields) throws UnrecognizedEntryException, DuplicatedAnimalIdException, 
         UnknownSpeciesIdException, UnknownHabitatIdException {
-        if (!fields[0].equals("ANIMAL"))
-            throw new UnrecognizedEntryException(fields[0]);
-
-        Species species = getSpecies(fields[3]);
-        Habitat habitat = getHabitat(fields[4]);
-
-        Animal animal = new Animal(fields[1], fields[2], species, habitat);
-        addAnimal(fields[1], animal);
-        species.addAnimal(animal);
-        habitat.addAnimal(animal);
-        changed();
+        Lock operation = beginOperation();
+        try {
+            if (!fields[0].equals("ANIMAL"))
+                throw new UnrecognizedEntryException(fields[0]);
+
+            Species species = getSpecies(fields[3]);
+            Habitat habitat = getHabitat(fields[4]);
+
+            Animal animal = new Animal(fields[1], fields[2], species, habitat);
+            addAnimal(fields[1], animal);
+            species.addAnimal(animal);
+            habitat.addAnimal(animal);
+            satisfactionLedger().animalMoved(animal);
+            changes().added(animal);
+            changed();
+            journal(HotelJournal.REGISTER_ANIMAL, fields);
+        } finally {
+            operation.unlock();
+        }
     }
 
     /**
@@ -526,31 +1189,41 @@ public class Hotel implements Serializable {
      */
     public void registerEmployee(String... fields) throws UnrecognizedEntryException, DuplicatedEmployeeIdException,
         UnknownHabitatIdException, UnknownSpeciesIdException {
-        Employee employee  = switch (fields[0]) {
-            case "TRATADOR", "TRT" -> {
-                Zookeeper zookeeper = new Zookeeper(fields[1], fields[2]);
-                if (fields.length > 3) {
-                    String[] habitatsIds = fields[3].split(",");
-                    for (String id : habitatsIds) {
-                        zookeeper.assignHabitat(getHabitat(id));
-                    }
+        Lock operation = beginOperation();
+        try {
+            String[] responsabilityIds = fields.length > 3 ? fields[3].split(",") : new String[0];
+            Employee employee  = switch (fields[0]) {
+                case "TRATADOR", "TRT" -> {
+                    // responsabilities are only assigned once the whole entry is known to be valid
+                    List<Habitat> habitats = new ArrayList<>();
+                    for (String id : responsabilityIds)
+                        habitats.add(getHabitat(id));
+                    assertNewEmployee(fields[1]);
+                    Zookeeper zookeeper = new Zookeeper(fields[1], fields[2]);
+                    for (Habitat habitat : habitats)
+                        zookeeper.assignHabitat(habitat);
+                    yield zookeeper;
                 }
-                yield zookeeper;
-            }
-            case "VETERINÁRIO", "VET" -> {
-                Veterinarian veterinarian = new Veterinarian(fields[1], fields[2]);
-                if (fields.length > 3) {
-                    String[] speciesIds = fields[3].split(",");
-                    for (String id : speciesIds) {
-                        veterinarian.assignSpecies(getSpecies(id));
-                    }
+                case "VETERINÁRIO", "VET" -> {
+                    List<Species> species = new ArrayList<>();
+                    for (String id : responsabilityIds)
+                        species.add(getSpecies(id));
+                    assertNewEmployee(fields[1]);
+                    Veterinarian veterinarian = new Veterinarian(fields[1], fields[2]);
+                    for (Species s : species)
+                        veterinarian.assignSpecies(s);
+                    yield veterinarian;
                 }
-                yield veterinarian;
-            }
-            default -> throw new UnrecognizedEntryException(fields[0]);
-        };
-        addEmployee(fields[1], employee);
-        changed();
+                default -> throw new UnrecognizedEntryException(fields[0]);
+            };
+            addEmployee(fields[1], employee);
+            satisfactionLedger().employeeChanged(employee);
+            changes().added(employee);
+            changed();
+            journal(HotelJournal.REGISTER_EMPLOYEE, fields);
+        } finally {
+            operation.unlock();
+        }
     }
 
     /**
@@ -573,19 +1246,26 @@ public class Hotel implements Serializable {
      */
     public void registerVaccine(String... fields) throws UnrecognizedEntryException, DuplicatedVaccineIdException,
         UnknownSpeciesIdException{
-        if (!fields[0].equals("VACINA"))
-            throw new UnrecognizedEntryException(fields[0]);
+        Lock operation = beginOperation();
+        try {
+            if (!fields[0].equals("VACINA"))
+                throw new UnrecognizedEntryException(fields[0]);
         
-        Map<String, Species> species = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        if (fields.length > 3) {
-            String[] speciesIds = fields[3].split(",");
-            for (String id : speciesIds) {
-                species.put(id, getSpecies(id));
+            Map<String, Species> species = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            if (fields.length > 3) {
+                String[] speciesIds = fields[3].split(",");
+                for (String id : speciesIds) {
+                    species.put(id, getSpecies(id));
+                }
             }
+            Vaccine vaccine = new Vaccine(fields[1], fields[2], species);
+            addVaccine(fields[1], vaccine);
+            changes().added(vaccine);
+            changed();
+            journal(HotelJournal.REGISTER_VACCINE, fields);
+        } finally {
+            operation.unlock();
         }
-        Vaccine vaccine = new Vaccine(fields[1], fields[2], species);
-        addVaccine(fields[1], vaccine);
-        changed();
     }
 
     /**
@@ -610,26 +1290,116 @@ public class Hotel implements Serializable {
      * @throws DuplicatedTreeIdException if a tree with the same ID is already registered.
      */
     public Tree registerTree(String... fields) throws UnrecognizedEntryException, DuplicatedTreeIdException {
+        Lock operation = beginOperation();
+        try {
+            Tree tree = plantTree(fields);
+            journal(HotelJournal.REGISTER_TREE, fields);
+            return tree;
+        } finally {
+            operation.unlock();
+        }
+    }
+
+    /**
+     * Creates and adds a tree described by the fields of a tree entry, without recording the operation.
+     *
+     * @param fields an array of strings containing the tree's details (see {@link #registerTree}).
+     * @return the registered tree
+     * @throws UnrecognizedEntryException if the treeType is not "PERENE" or "CADUCA".
+     * @throws DuplicatedTreeIdException if a tree with the same ID is already registered.
+     */
+    private Tree plantTree(String... fields) throws UnrecognizedEntryException, DuplicatedTreeIdException {
         Tree tree  = switch (fields[5]) {
-            case "PERENE" -> {
-                Tree newTree = new EvergreenTree(fields[1], fields[2], Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
-                if (_trees.size() > 1) {newTree.setState(_rootEvergreenTree.getTreeState().createForNewTree(newTree));}
-                else {newTree.setState(new EvergreenTreeStateSpring(newTree));}
-                yield newTree;
-            }
-            case "CADUCA" -> {
-                Tree newTree = new DeciduousTree(fields[1], fields[2], Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
-                if (_trees.size() > 1) {newTree.setState(_rootDeciduousTree.getTreeState().createForNewTree(newTree));}
-                else {newTree.setState(new DeciduousTreeStateSpring(newTree));}
-                yield newTree;
-            }
+            case "PERENE" -> new EvergreenTree(fields[1], fields[2], Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), _seasonClock);
+            case "CADUCA" -> new DeciduousTree(fields[1], fields[2], Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), _seasonClock);
             default -> throw new UnrecognizedEntryException(fields[5]);
         };
         addTree(fields[1], tree);
+        changes().added(tree);
         changed();
         return tree;
     }
-    
+
+    /**
+     * Registers the influence of a habitat on a species using the provided fields.
+     *
+     * <p><b>Fields format:</b></p>
+     * <ul>
+     *   <li> 0 - type (should be "INFLUÊNCIA") </li>
+     *   <li> 1 - habitatId </li>
+     *   <li> 2 - speciesId </li>
+     *   <li> 3 - influence (should be "POS", "NEU" or "NEG") </li>
+     * </ul>
+     *
+     * <p>The entry changes the influence as {@link #changeInfluenceOfHabitat} does, and is recorded as that operation.</p>
+     *
+     * @param fields an array of strings containing the influence's details
+     * @throws UnrecognizedEntryException if the type provided is not "INFLUÊNCIA" or the influence is unknown.
+     * @throws UnknownHabitatIdException if the habitat ID provided is not recognized.
+     * @throws UnknownSpeciesIdException if the species ID provided is not recognized.
+     */
+    public void registerInfluence(String... fields) throws UnrecognizedEntryException, UnknownHabitatIdException,
+        UnknownSpeciesIdException {
+        if (!fields[0].equals("INFLUÊNCIA"))
+            throw new UnrecognizedEntryException(fields[0]);
+        if (!fields[3].equals("POS") && !fields[3].equals("NEU") && !fields[3].equals("NEG"))
+            throw new UnrecognizedEntryException(fields[3]);
+        changeInfluenceOfHabitat(fields[1], fields[2], fields[3]);
+    }
+
+    /**
+     * Registers a vaccination that already happened using the provided fields.
+     *
+     * <p><b>Fields format:</b></p>
+     * <ul>
+     *   <li> 0 - type (should be "VACINAÇÃO") </li>
+     *   <li> 1 - vaccineId </li>
+     *   <li> 2 - veterinarianId </li>
+     *   <li> 3 - animalId </li>
+     * </ul>
+     *
+     * <p>The animal takes the vaccine and the vaccination is recorded as in {@link #vaccinateAnimal}, and as a
+     * wrong vaccination if the vaccine is not adequate, but the veterinarian is not asked to be responsible for
+     * the species of the animal, which they may have stopped being since.</p>
+     *
+     * @param fields an array of strings containing the vaccination's details
+     * @throws UnrecognizedEntryException if the type provided is not "VACINAÇÃO".
+     * @throws UnknownVaccineIdException if the vaccine ID provided is not recognized.
+     * @throws UnknownVeterinarianIdException if the veterinarian ID provided is not recognized.
+     * @throws UnknownAnimalIdException if the animal ID provided is not recognized.
+     */
+    public void registerVaccination(String... fields) throws UnrecognizedEntryException, UnknownVaccineIdException,
+        UnknownVeterinarianIdException, UnknownAnimalIdException {
+        Lock operation = beginOperation();
+        try {
+            if (!fields[0].equals("VACINAÇÃO"))
+                throw new UnrecognizedEntryException(fields[0]);
+
+            Vaccine vaccine = getVaccine(fields[1]);
+            Veterinarian veterinarian;
+            try {
+                if (!(getEmployee(fields[2]) instanceof Veterinarian employee))
+                    throw new UnknownVeterinarianIdException(fields[2]);
+                veterinarian = employee;
+            } catch (UnknownEmployeeIdException e) {
+                throw new UnknownVeterinarianIdException(fields[2]);
+            }
+            Animal animal = getAnimal(fields[3]);
+            vaccine.actOnAnimal(animal);
+            Vaccination vaccination = new Vaccination(vaccine, veterinarian, animal);
+            changed();
+            addVaccination(vaccination);
+            changes().vaccinated(vaccination);
+            if (!vaccine.isVaccineAdequate(animal)) {
+                addWrongVaccination(vaccination);
+                changes().wrongVaccination(vaccination);
+            }
+            journal(HotelJournal.REGISTER_VACCINATION, fields);
+        } finally {
+            operation.unlock();
+        }
+    }
+
     /**
      * Adds a species to the hotel.
      * 
@@ -640,13 +1410,17 @@ public class Hotel implements Serializable {
      */
     public void addSpecies(String key, Species species) throws DuplicatedSpeciesIdException, DuplicatedSpeciesNameException {
         assertNewSpecies(key, species.getName());
+        species.setIndex(_species.size());
         _species.put(key, species);
+        _speciesByName.put(species.getName(), species);
         changed();
     }
 
     /** 
      * Checks if the species with the specified key/name is unique before adding.
      * 
+     * <p>Both checks are single lookups, in the species and in the index of species names.</p>
+     * 
      * @param key the unique identifier for the species being checked.
      * @param name the name of the species being checked.
      * @throws DuplicatedSpeciesIdException if a species with the same ID already exists.
@@ -655,10 +1429,8 @@ public class Hotel implements Serializable {
     public void assertNewSpecies(String key, String name) throws DuplicatedSpeciesIdException, DuplicatedSpeciesNameException {
         if (_species.containsKey(key))
             throw new DuplicatedSpeciesIdException(key);
-        for (Species species : _species.values()) {
-            if (name.equals(species.getName()))
-                throw new DuplicatedSpeciesNameException(name);
-        }
+        if (_speciesByName.containsKey(name))
+            throw new DuplicatedSpeciesNameException(name);
     }
 
     /**
@@ -669,8 +1441,8 @@ public class Hotel implements Serializable {
      * @throws DuplicatedHabitatIdException if a habitat with the same ID already exists.
      */
     public void addHabitat(String key, Habitat habitat) throws DuplicatedHabitatIdException {
-        assertNewHabitat(key);
-        _habitats.put(key, habitat);
+        if (!_habitats.putIfAbsent(key, habitat))
+            throw new DuplicatedHabitatIdException(key);
         changed();
     }
 
@@ -693,8 +1465,8 @@ public class Hotel implements Serializable {
      * @throws DuplicatedAnimalIdException if an animal with the same ID already exists.
      */
     public void addAnimal(String key, Animal animal) throws DuplicatedAnimalIdException {
-        assertNewAnimal(key);
-        _animals.put(key, animal);
+        if (!_animals.putIfAbsent(key, animal))
+            throw new DuplicatedAnimalIdException(key);
         changed();
     }
 
@@ -717,8 +1489,8 @@ public class Hotel implements Serializable {
      * @throws DuplicatedEmployeeIdException if an employee with the same ID already exists.
      */
     public void addEmployee(String key, Employee employee) throws DuplicatedEmployeeIdException {
-        assertNewEmployee(key);
-        _employees.put(key, employee);
+        if (!_employees.putIfAbsent(key, employee))
+            throw new DuplicatedEmployeeIdException(key);
         changed();
     }
 
@@ -741,8 +1513,8 @@ public class Hotel implements Serializable {
      * @throws DuplicatedVaccineIdException if a vaccine with the same ID already exists.
      */
     public void addVaccine(String key, Vaccine vaccine) throws DuplicatedVaccineIdException {
-        assertNewVaccine(key);
-        _vaccines.put(key, vaccine);
+        if (!_vaccines.putIfAbsent(key, vaccine))
+            throw new DuplicatedVaccineIdException(key);
         changed();
     }
 
@@ -765,8 +1537,8 @@ public class Hotel implements Serializable {
      * @throws DuplicatedTreeIdException if a tree with the same ID already exists.
      */
     public void addTree(String key, Tree tree) throws DuplicatedTreeIdException {
-        assertNewTree(key);
-        _trees.put(key, tree);
+        if (!_trees.putIfAbsent(key, tree))
+            throw new DuplicatedTreeIdException(key);
         changed();
     }
 
@@ -782,14 +1554,68 @@ public class Hotel implements Serializable {
     }
 
     public void addVaccination(Vaccination vaccination) {
+        materializeVaccinations();
+        linkVaccination(vaccination);
+    }
+
+    public void addWrongVaccination(Vaccination wrongVaccination) {
+        materializeVaccinations();
+        _wrongVaccinations.add(wrongVaccination);
+    }
+
+    /**
+     * Adds a vaccination to the hotel and to its veterinarian, vaccine and animal.
+     *
+     * @param vaccination the vaccination.
+     */
+    private void linkVaccination(Vaccination vaccination) {
         vaccination.getVeterinarian().addVaccination(vaccination);
         vaccination.getVaccine().addVaccination(vaccination);
         vaccination.getAnimal().addVaccination(vaccination);
         _vaccinations.add(vaccination);
     }
 
-    public void addWrongVaccination(Vaccination wrongVaccination) {
-        _wrongVaccinations.add(wrongVaccination);
+    /**
+     * Makes room for entities that are about to be added in bulk, when the hotel is restored
+     * from a snapshot, so the indexes are not rehashed as they grow.
+     * 
+     * @param species the number of species.
+     * @param trees the number of trees.
+     * @param habitats the number of habitats.
+     * @param animals the number of animals.
+     * @param employees the number of employees.
+     * @param vaccines the number of vaccines.
+     */
+    void ensureCapacity(int species, int trees, int habitats, int animals, int employees, int vaccines) {
+        _species.ensureCapacity(species);
+        if (species > _speciesByName.size()) {
+            Map<String, Species> speciesByName = new HashMap<>((int) (species / 0.75f) + 1);
+            speciesByName.putAll(_speciesByName);
+            _speciesByName = speciesByName;
+        }
+        _trees.ensureCapacity(trees);
+        _habitats.ensureCapacity(habitats);
+        _animals.ensureCapacity(animals);
+        _employees.ensureCapacity(employees);
+        _vaccines.ensureCapacity(vaccines);
+    }
+
+    /**
+     * Retrieves all species in the hotel, ordered by ID, as an unmodifiable collection.
+     * 
+     * @return an unmodifiable collection of all species.
+     */
+    Collection<Species> allSpecies() {
+        return _species.values();
+    }
+
+    /**
+     * Retrieves all trees in the hotel, ordered by ID, as an unmodifiable collection.
+     * 
+     * @return an unmodifiable collection of all trees.
+     */
+    Collection<Tree> allTrees() {
+        return _trees.values();
     }
 
     /**
@@ -798,8 +1624,7 @@ public class Hotel implements Serializable {
      * @return an unmodifiable collection of all habitats.
      */
     public Collection<Habitat> allHabitats() {
-        Collection<Habitat> habitatCollection = Collections.unmodifiableCollection(_habitats.values());
-        return habitatCollection;
+        return _habitats.values();
     }
 
     /**
@@ -808,8 +1633,7 @@ public class Hotel implements Serializable {
      * @return an unmodifiable collection of all animals.
      */
     public Collection<Animal> allAnimals() {
-        Collection<Animal> animalCollection = Collections.unmodifiableCollection(_animals.values());
-        return animalCollection;
+        return _animals.values();
     }
 
     /**
@@ -818,8 +1642,7 @@ public class Hotel implements Serializable {
      * @return an unmodifiable collection of all employees.
      */
     public Collection<Employee> allEmployees() {
-        Collection<Employee> employeeCollection = Collections.unmodifiableCollection(_employees.values());
-        return employeeCollection;
+        return _employees.values();
     }
 
     /**
@@ -828,8 +1651,7 @@ public class Hotel implements Serializable {
      * @return an unmodifiable collection of all vaccines.
      */
     public Collection<Vaccine> allVaccines() {
-        Collection<Vaccine> vaccineCollection = Collections.unmodifiableCollection(_vaccines.values());
-        return vaccineCollection;
+        return _vaccines.values();
     }
 
     /**
@@ -851,6 +1673,7 @@ public class Hotel implements Serializable {
      * @return an unmodifiable collection of all vaccinations.
      */
     public Collection<Vaccination> allVaccinations() {
+        materializeVaccinations();
         return Collections.unmodifiableCollection(_vaccinations);
     }
 
@@ -862,9 +1685,17 @@ public class Hotel implements Serializable {
      * @throws UnknownHabitatIdException if the habitat ID provided is not recognized.
      */
     public void changeHabitatArea(String habitatId, int area) throws UnknownHabitatIdException {
-        Habitat habitat = getHabitat(habitatId);
-        habitat.changeArea(area);
-        changed();
+        Lock operation = beginOperation();
+        try {
+            Habitat habitat = getHabitat(habitatId);
+            habitat.changeArea(area);
+            satisfactionLedger().habitatChanged(habitat);
+            changes().changed(habitat);
+            changed();
+            journal(HotelJournal.CHANGE_HABITAT_AREA, habitatId, String.valueOf(area));
+        } finally {
+            operation.unlock();
+        }
     }
 
     /**
@@ -884,15 +1715,30 @@ public class Hotel implements Serializable {
      */
     public Tree addTreeToHabitat(String habitatId, String treeId, String treeName, String treeAge, String treeDifficulty, String treeType)
         throws DuplicatedTreeIdException, UnknownHabitatIdException {
+        Lock operation = beginOperation();
         try {
-            Tree tree = registerTree("ÁRVORE", treeId, treeName, treeAge, treeDifficulty, treeType);
-            Habitat habitat = getHabitat(habitatId);
-            habitat.addTree(tree);
-            changed();
-            return tree;
-        } catch (UnrecognizedEntryException e) {
-            // Not suppose to ever happen
-            return null;
+            try {
+                Tree tree = plantTree("ÁRVORE", treeId, treeName, treeAge, treeDifficulty, treeType);
+                Habitat habitat;
+                try {
+                    habitat = getHabitat(habitatId);
+                } catch (UnknownHabitatIdException e) {
+                    // the tree stays registered, so the journal must register it as well
+                    journal(HotelJournal.REGISTER_TREE, "ÁRVORE", treeId, treeName, treeAge, treeDifficulty, treeType);
+                    throw e;
+                }
+                habitat.addTree(tree);
+                satisfactionLedger().staffChanged(habitat);
+                changes().changed(habitat);
+                changed();
+                journal(HotelJournal.ADD_TREE_TO_HABITAT, habitatId, treeId, treeName, treeAge, treeDifficulty, treeType);
+                return tree;
+            } catch (UnrecognizedEntryException e) {
+                // Not suppose to ever happen
+                return null;
+            }
+        } finally {
+            operation.unlock();
         }
     }
 
@@ -907,10 +1753,19 @@ public class Hotel implements Serializable {
      */
     public void transferToHabitat(String animalId, String habitatId) throws UnknownAnimalIdException,
         UnknownHabitatIdException {
-        Animal animal = getAnimal(animalId);
-        Habitat habitat = getHabitat(habitatId);
-        animal.changeHabitat(habitat);
-        changed();
+        Lock operation = beginOperation();
+        try {
+            Animal animal = getAnimal(animalId);
+            Habitat habitat = getHabitat(habitatId);
+            satisfactionLedger().animalMoved(animal);
+            animal.changeHabitat(habitat);
+            satisfactionLedger().animalMoved(animal);
+            changes().changed(animal);
+            changed();
+            journal(HotelJournal.TRANSFER_TO_HABITAT, animalId, habitatId);
+        } finally {
+            operation.unlock();
+        }
     }
 
     /**
@@ -954,19 +1809,26 @@ public class Hotel implements Serializable {
     /**
      * Shows the sum of all satisfactions: animals and employees.
      * 
+     * <p>The sum is kept as a running total that is only updated for the animals and employees affected
+     * by the changes made since the last call, so repeated calls on an unchanged hotel take constant time.
+     * In verification mode, the total is also checked against a full recomputation.</p>
+     * 
      * @return the sum of all the animals' and employees' satisfactions.
+     * @throws IllegalStateException in verification mode, if the running total differs from the full recomputation.
      */
     public int globalSatisfaction() {
-        double satisfaction = 0;
-        for (Animal animal : _animals.values()) {
-            satisfaction += animal.satisfaction();
-        }
-        for (Employee employee : _employees.values()) {
-            satisfaction += employee.satisfaction();
+        BigDecimal satisfaction = satisfactionLedger().total(_habitats.unorderedValues(), _employees.unorderedValues(),
+            _satisfactionMode, _parallelSatisfactionThreshold);
+        if (_verifySatisfaction) {
+            BigDecimal recomputed = SatisfactionLedger.recompute(_habitats.unorderedValues(), _employees.unorderedValues(),
+                _satisfactionMode, _parallelSatisfactionThreshold);
+            if (satisfaction.compareTo(recomputed) != 0)
+                throw new IllegalStateException("Global satisfaction " + satisfaction + " differs from recomputed " + recomputed);
         }
-        return (int) Math.round(satisfaction);
+        return SatisfactionLedger.round(satisfaction);
     }
 
+
     /**
      * Changes the influence of a {@code Habitat} on a {@code Species}.
      * <p>The string representing the influence can be: POS, NEG or NEU.</p>
@@ -979,37 +1841,63 @@ public class Hotel implements Serializable {
      */
     public void changeInfluenceOfHabitat(String habitatId, String speciesId, String influence) throws UnknownHabitatIdException,
         UnknownSpeciesIdException {
-        Habitat habitat = getHabitat(habitatId);
-        Species species = getSpecies(speciesId);
-        HabitatInfluence habitatInfluence = switch (influence) {
-            case "POS" -> HabitatInfluence.POSITIVE;
-            case "NEU" -> HabitatInfluence.NEUTRAL;
-            case "NEG" -> HabitatInfluence.NEGATIVE;
-            default -> null;
-            };
-        habitat.changeInfluenceOnSpecies(species, habitatInfluence);
-        changed();
+        Lock operation = beginOperation();
+        try {
+            Habitat habitat = getHabitat(habitatId);
+            Species species = getSpecies(speciesId);
+            HabitatInfluence habitatInfluence = switch (influence) {
+                case "POS" -> HabitatInfluence.POSITIVE;
+                case "NEU" -> HabitatInfluence.NEUTRAL;
+                case "NEG" -> HabitatInfluence.NEGATIVE;
+                default -> null;
+                };
+            habitat.changeInfluenceOnSpecies(species, habitatInfluence);
+            satisfactionLedger().influenceChanged(habitat);
+            changes().changed(habitat);
+            changed();
+            journal(HotelJournal.CHANGE_INFLUENCE_OF_HABITAT, habitatId, speciesId, influence);
+        } finally {
+            operation.unlock();
+        }
     }
 
     
     /**
-     * Advances the season for all trees in the collection and updates the state.
+     * Advances the season of the hotel and updates the state.
      * 
-     * This method iterates over all trees in the internal collection and calls their
-     * advanceSeason method. After advancing the season for all trees, it marks the 
-     * state as changed and returns the season value of the root evergreen tree,
-     * that corresponds to the current season.
+     * The season clock is shared by all trees, which derive their state and age from it,
+     * so this takes constant time regardless of the number of trees. It marks the 
+     * state as changed and returns the value of the new current season.
      * 
      * @return the season value after advancing the season.
      */
     public int advanceSeason() {
-        for (Tree tree : _trees.values()) {
-            tree.advanceSeason();
+        Lock operation = beginOperation();
+        try {
+            Season season = _seasonClock.advance();
+            satisfactionLedger().seasonChanged();
+            changed();
+            journal(HotelJournal.ADVANCE_SEASON);
+            return season.value();
+        } finally {
+            operation.unlock();
         }
-        _rootDeciduousTree.advanceSeason();
-        _rootEvergreenTree.advanceSeason();
-        changed();
-        return _rootEvergreenTree.getSeason().value();
+    }
+
+    /**
+     * @return the season clock of the hotel, shared by all its trees.
+     */
+    SeasonClock getSeasonClock() {
+        return _seasonClock;
+    }
+
+    /**
+     * Retrieves the current season of the hotel.
+     * 
+     * @return the current season.
+     */
+    public Season getSeason() {
+        return _seasonClock.getSeason();
     }
 
     /**
@@ -1022,22 +1910,30 @@ public class Hotel implements Serializable {
      * @throws UnknownEmployeeIdException if the employee ID provided does not correspond to any existing employee.
      */
     public void addResponsability(String employeeId, String responsabilityId) throws NoSuchResponsabilityException, UnknownEmployeeIdException {
-        Employee employee = getEmployee(employeeId);
-    
+        Lock operation = beginOperation();
         try {
-            if (employee instanceof Veterinarian veterinarian) {
-                Species species = getSpecies(responsabilityId);
-                veterinarian.assignSpecies(species);
-            } 
-            if (employee instanceof Zookeeper zookeeper) {
-                Habitat habitat = getHabitat(responsabilityId);
-                zookeeper.assignHabitat(habitat);
-            }
+            Employee employee = getEmployee(employeeId);
+    
+            try {
+                if (employee instanceof Veterinarian veterinarian) {
+                    Species species = getSpecies(responsabilityId);
+                    veterinarian.assignSpecies(species);
+                } 
+                if (employee instanceof Zookeeper zookeeper) {
+                    Habitat habitat = getHabitat(responsabilityId);
+                    zookeeper.assignHabitat(habitat);
+                }
 
-        } catch (UnknownSpeciesIdException | UnknownHabitatIdException e) {
-            throw new NoSuchResponsabilityException(employeeId, responsabilityId);
+            } catch (UnknownSpeciesIdException | UnknownHabitatIdException e) {
+                throw new NoSuchResponsabilityException(employeeId, responsabilityId);
+            }
+            satisfactionLedger().employeeChanged(employee);
+            changes().changed(employee);
+            changed();
+            journal(HotelJournal.ADD_RESPONSABILITY, employeeId, responsabilityId);
+        } finally {
+            operation.unlock();
         }
-        changed();
     }
 
     /**
@@ -1050,22 +1946,32 @@ public class Hotel implements Serializable {
      * @throws UnknownEmployeeIdException if the employee ID provided does not correspond to any existing employee.
      */
     public void removeResponsability(String employeeId, String responsabilityId) throws NoSuchResponsabilityException, UnknownEmployeeIdException {
-        Employee employee = getEmployee(employeeId);
-    
+        Lock operation = beginOperation();
         try {
-            if (employee instanceof Veterinarian veterinarian) {
-                Species species = getSpecies(responsabilityId);
-                veterinarian.unassignSpecies(species);
-            }
-            if (employee instanceof Zookeeper zookeeper) {
-                Habitat habitat = getHabitat(responsabilityId);
-                zookeeper.unassignHabitat(habitat);
-            }
+            Employee employee = getEmployee(employeeId);
+    
+            try {
+                if (employee instanceof Veterinarian veterinarian) {
+                    Species species = getSpecies(responsabilityId);
+                    veterinarian.unassignSpecies(species);
+                    satisfactionLedger().staffChanged(species);
+                }
+                if (employee instanceof Zookeeper zookeeper) {
+                    Habitat habitat = getHabitat(responsabilityId);
+                    zookeeper.unassignHabitat(habitat);
+                    satisfactionLedger().staffChanged(habitat);
+                }
 
-        } catch (UnknownSpeciesIdException | UnknownHabitatIdException e) {
-            throw new NoSuchResponsabilityException(employeeId, responsabilityId);
+            } catch (UnknownSpeciesIdException | UnknownHabitatIdException e) {
+                throw new NoSuchResponsabilityException(employeeId, responsabilityId);
+            }
+            satisfactionLedger().employeeChanged(employee);
+            changes().changed(employee);
+            changed();
+            journal(HotelJournal.REMOVE_RESPONSABILITY, employeeId, responsabilityId);
+        } finally {
+            operation.unlock();
         }
-        changed();
     }
 
     
@@ -1078,6 +1984,7 @@ public class Hotel implements Serializable {
      */
     public Collection<Vaccination> animalVaccinations(String animalId) throws UnknownAnimalIdException {
         Animal animal = getAnimal(animalId);
+        materializeVaccinations();
         return animal.allVaccinations();
     }
 
@@ -1091,6 +1998,7 @@ public class Hotel implements Serializable {
     public Collection<Vaccination> veterinarianVaccinations(String veterinarianId) throws UnknownVeterinarianIdException {
         try{
             Employee employee = getEmployee(veterinarianId);
+            materializeVaccinations();
             return employee.listAdministeredVaccinations();
         } catch (UnknownEmployeeIdException e) { 
             throw new UnknownVeterinarianIdException(veterinarianId); 
@@ -1107,6 +2015,7 @@ public class Hotel implements Serializable {
      * @return an unmodifiable collection of wrong vaccinations
      */
     public Collection<Vaccination> wrongVaccinations() {
+        materializeVaccinations();
         return Collections.unmodifiableCollection(_wrongVaccinations);        
     }
 
@@ -1124,19 +2033,27 @@ public class Hotel implements Serializable {
      */
     public void vaccinateAnimal(String vaccineId, String veterinarianId, String animalId) throws UnknownVaccineIdException,
         UnknownAnimalIdException, UnknownVeterinarianIdException, UnauthorizedVeterinarianException, WrongVaccineException {
-        Vaccine vaccine = getVaccine(vaccineId);
-        Animal animal = getAnimal(animalId);
-        try{
-            Employee employee = getEmployee(veterinarianId);
-            Vaccination vaccination = employee.vaccinateAnimal(vaccine, animal);
-            changed();
-            addVaccination(vaccination);
-            if (!vaccine.isVaccineAdequate(animal)) {
-                addWrongVaccination(vaccination);
-                throw new WrongVaccineException(vaccineId, animalId);
+        Lock operation = beginOperation();
+        try {
+            Vaccine vaccine = getVaccine(vaccineId);
+            Animal animal = getAnimal(animalId);
+            try{
+                Employee employee = getEmployee(veterinarianId);
+                Vaccination vaccination = employee.vaccinateAnimal(vaccine, animal);
+                changed();
+                addVaccination(vaccination);
+                changes().vaccinated(vaccination);
+                journal(HotelJournal.VACCINATE_ANIMAL, vaccineId, veterinarianId, animalId);
+                if (!vaccine.isVaccineAdequate(animal)) {
+                    addWrongVaccination(vaccination);
+                    changes().wrongVaccination(vaccination);
+                    throw new WrongVaccineException(vaccineId, animalId);
+                }
+            } catch (UnknownEmployeeIdException e) { 
+                throw new UnknownVeterinarianIdException(veterinarianId); 
             }
-        } catch (UnknownEmployeeIdException e) { 
-            throw new UnknownVeterinarianIdException(veterinarianId); 
+        } finally {
+            operation.unlock();
         }
     }
 
@@ -0,0 +1,273 @@
+package hva;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import hva.employee.Employee;
+import hva.tree.Tree;
+
+/**
+ * The {@code HotelChanges} class records which entities of a hotel were registered or changed by its
+ * operations since it was last saved, so the next save only writes them (see {@link SnapshotDelta}).
+ *
+ * <p>
+ * Species, trees and vaccines never change once they are registered, so only new ones are recorded.
+ * Habitats, animals and employees are recorded when they are registered and again, once each, when an
+ * operation changes them. Vaccinations are only ever added, so the new ones are recorded in order. The
+ * entities restored from a snapshot or a delta are not recorded: only the operations record changes.
+ * </p>
+ *
+ * <p>
+ * The entries of an import file of different types may be registered from several threads at once (see
+ * {@link HotelImporter}), so each type has lists of its own. A hotel that is not saved in a snapshot with
+ * deltas does not record anything (see {@link #UNTRACKED}).
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_tracked: Indicates if the changes are recorded.</li>
+ *   <li>_species: The species registered, in order.</li>
+ *   <li>_trees: The trees registered, in order.</li>
+ *   <li>_habitats: The habitats registered, in order.</li>
+ *   <li>_animals: The animals registered, in order.</li>
+ *   <li>_employees: The employees registered, in order.</li>
+ *   <li>_vaccines: The vaccines registered, in order.</li>
+ *   <li>_changedHabitats: The habitats changed, new or not.</li>
+ *   <li>_changedAnimals: The animals changed, new or not.</li>
+ *   <li>_changedEmployees: The employees changed, new or not.</li>
+ *   <li>_vaccinations: The vaccinations, in the order they happened.</li>
+ *   <li>_wrongVaccinations: The vaccinations in which the vaccine was wrong.</li>
+ * </ul>
+ */
+final class HotelChanges {
+
+    /** The changes of a hotel whose changes are not recorded. */
+    static final HotelChanges UNTRACKED = new HotelChanges(false);
+
+    /** Indicates if the changes are recorded. */
+    private final boolean _tracked;
+
+    /** The species registered, in order. */
+    private final List<Species> _species = new ArrayList<>();
+
+    /** The trees registered, in order. */
+    private final List<Tree> _trees = new ArrayList<>();
+
+    /** The habitats registered, in order. */
+    private final List<Habitat> _habitats = new ArrayList<>();
+
+    /** The animals registered, in order. */
+    private final List<Animal> _animals = new ArrayList<>();
+
+    /** The employees registered, in order. */
+    private final List<Employee> _employees = new ArrayList<>();
+
+    /** The vaccines registered, in order. */
+    private final List<Vaccine> _vaccines = new ArrayList<>();
+
+    /** The habitats changed, new or not. */
+    private final Set<Habitat> _changedHabitats = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** The animals changed, new or not. */
+    private final Set<Animal> _changedAnimals = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** The employees changed, new or not. */
+    private final Set<Employee> _changedEmployees = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** The vaccinations, in the order they happened. */
+    private final List<Vaccination> _vaccinations = new ArrayList<>();
+
+    /** The vaccinations in which the vaccine was wrong. */
+    private final List<Vaccination> _wrongVaccinations = new ArrayList<>();
+
+    /**
+     * Creates an empty record of changes.
+     */
+    HotelChanges() {
+        this(true);
+    }
+
+    /**
+     * @param tracked {@code true} if the changes are recorded.
+     */
+    private HotelChanges(boolean tracked) {
+        _tracked = tracked;
+    }
+
+    /**
+     * @return whether the changes are recorded.
+     */
+    boolean isTracked() {
+        return _tracked;
+    }
+
+    /**
+     * @param species a species that was registered.
+     */
+    void added(Species species) {
+        if (_tracked)
+            _species.add(species);
+    }
+
+    /**
+     * @param tree a tree that was registered.
+     */
+    void added(Tree tree) {
+        if (_tracked)
+            _trees.add(tree);
+    }
+
+    /**
+     * @param habitat a habitat that was registered.
+     */
+    void added(Habitat habitat) {
+        if (_tracked)
+            _habitats.add(habitat);
+    }
+
+    /**
+     * @param animal an animal that was registered.
+     */
+    void added(Animal animal) {
+        if (_tracked)
+            _animals.add(animal);
+    }
+
+    /**
+     * @param employee an employee that was registered.
+     */
+    void added(Employee employee) {
+        if (_tracked)
+            _employees.add(employee);
+    }
+
+    /**
+     * @param vaccine a vaccine that was registered.
+     */
+    void added(Vaccine vaccine) {
+        if (_tracked)
+            _vaccines.add(vaccine);
+    }
+
+    /**
+     * @param habitat a habitat whose area, trees or influences changed.
+     */
+    void changed(Habitat habitat) {
+        if (_tracked)
+            _changedHabitats.add(habitat);
+    }
+
+    /**
+     * @param animal an animal that moved or took a vaccine.
+     */
+    void changed(Animal animal) {
+        if (_tracked)
+            _changedAnimals.add(animal);
+    }
+
+    /**
+     * @param employee an employee whose responsibilities changed.
+     */
+    void changed(Employee employee) {
+        if (_tracked)
+            _changedEmployees.add(employee);
+    }
+
+    /**
+     * @param vaccination a vaccination that happened, whose animal took the vaccine.
+     */
+    void vaccinated(Vaccination vaccination) {
+        if (!_tracked)
+            return;
+        _vaccinations.add(vaccination);
+        _changedAnimals.add(vaccination.getAnimal());
+    }
+
+    /**
+     * @param vaccination a vaccination, already recorded, in which the vaccine was wrong.
+     */
+    void wrongVaccination(Vaccination vaccination) {
+        if (_tracked)
+            _wrongVaccinations.add(vaccination);
+    }
+
+    /**
+     * @return the species registered, in order.
+     */
+    List<Species> species() {
+        return _species;
+    }
+
+    /**
+     * @return the trees registered, in order.
+     */
+    List<Tree> trees() {
+        return _trees;
+    }
+
+    /**
+     * @return the habitats registered, in order.
+     */
+    List<Habitat> habitats() {
+        return _habitats;
+    }
+
+    /**
+     * @return the animals registered, in order.
+     */
+    List<Animal> animals() {
+        return _animals;
+    }
+
+    /**
+     * @return the employees registered, in order.
+     */
+    List<Employee> employees() {
+        return _employees;
+    }
+
+    /**
+     * @return the vaccines registered, in order.
+     */
+    List<Vaccine> vaccines() {
+        return _vaccines;
+    }
+
+    /**
+     * @return the habitats changed, new or not.
+     */
+    Set<Habitat> changedHabitats() {
+        return _changedHabitats;
+    }
+
+    /**
+     * @return the animals changed, new or not.
+     */
+    Set<Animal> changedAnimals() {
+        return _changedAnimals;
+    }
+
+    /**
+     * @return the employees changed, new or not.
+     */
+    Set<Employee> changedEmployees() {
+        return _changedEmployees;
+    }
+
+    /**
+     * @return the vaccinations, in the order they happened.
+     */
+    List<Vaccination> vaccinations() {
+        return _vaccinations;
+    }
+
+    /**
+     * @return the vaccinations in which the vaccine was wrong.
+     */
+    List<Vaccination> wrongVaccinations() {
+        return _wrongVaccinations;
+    }
+}
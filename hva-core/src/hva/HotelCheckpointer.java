@@ -0,0 +1,248 @@
+package hva;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import hva.enums.CheckpointTrigger;
+
+/**
+ * The {@code HotelCheckpointer} class saves the hotel of a manager in the background when its checkpoint
+ * policy says so: after the season advances, after a number of operations changed it, or once it stayed
+ * changed for some time, counted since it was last saved.
+ *
+ * <p>
+ * The hotel tells the checkpointer of every operation recorded in its journal (see {@link Hotel}), which
+ * only counts it and, when a checkpoint is due, hands it over to a checkpoint thread, so the operation does
+ * not wait. The checkpoint thread captures the hotel between two operations, which wait meanwhile, and the
+ * snapshot, usually a delta (see {@link SnapshotDelta}), is written by the save thread (see
+ * {@link SnapshotSaver}). If an operation is running, as during an import, the capture is tried again a
+ * little later.
+ * </p>
+ *
+ * <p>
+ * Checkpoints never overlap: while one is captured or written, those that become due are folded into a
+ * single one, taken when it is written. The time each checkpoint kept the hotel from changing, the time it
+ * took to be written and the bytes written are reported to a {@link CheckpointListener}, if any.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_manager: The manager whose hotel is checkpointed.</li>
+ *   <li>_onSeasonAdvance: Indicates if the hotel is checkpointed when the season advances.</li>
+ *   <li>_everyOperations: The number of operations after which the hotel is checkpointed, or 0.</li>
+ *   <li>_afterMillis: How long the hotel stays changed before it is checkpointed, in milliseconds, or 0.</li>
+ *   <li>_listener: Told of the checkpoints, or {@code null}.</li>
+ *   <li>_scheduler: The checkpoint thread, started with the first checkpoint.</li>
+ *   <li>_operations: The number of operations since the hotel was last saved.</li>
+ *   <li>_timer: The checkpoint due once the hotel stayed changed for long enough, or {@code null}.</li>
+ *   <li>_due: Why the next checkpoint is due, or {@code null} if none is.</li>
+ *   <li>_running: Indicates if a checkpoint is being captured or written.</li>
+ * </ul>
+ */
+final class HotelCheckpointer {
+
+    /** Interval between attempts to capture a hotel while an operation is running, in milliseconds. */
+    private static final long RETRY_MILLIS = 10;
+
+    /** The manager whose hotel is checkpointed. */
+    private final HotelManager _manager;
+
+    /** Indicates if the hotel is checkpointed when the season advances. */
+    private volatile boolean _onSeasonAdvance;
+
+    /** The number of operations after which the hotel is checkpointed (or 0). */
+    private volatile int _everyOperations;
+
+    /** How long the hotel stays changed before it is checkpointed, in milliseconds (or 0). */
+    private volatile long _afterMillis;
+
+    /** Told of the checkpoints (or {@code null}). */
+    private volatile CheckpointListener _listener;
+
+    /** The checkpoint thread, started with the first checkpoint. */
+    private ScheduledExecutorService _scheduler;
+
+    /** The number of operations since the hotel was last saved. */
+    private int _operations;
+
+    /** The checkpoint due once the hotel stayed changed for long enough (or {@code null}). */
+    private ScheduledFuture<?> _timer;
+
+    /** Why the next checkpoint is due (or {@code null} if none is). */
+    private CheckpointTrigger _due;
+
+    /** Indicates if a checkpoint is being captured or written. */
+    private boolean _running;
+
+    /**
+     * @param manager the manager whose hotel is checkpointed.
+     */
+    HotelCheckpointer(HotelManager manager) {
+        _manager = manager;
+    }
+
+    /**
+     * Sets when the hotel is checkpointed, from its next operation.
+     *
+     * @param onSeasonAdvance {@code true} to checkpoint the hotel when the season advances.
+     * @param everyOperations the number of operations after which the hotel is checkpointed, or 0.
+     * @param afterMillis how long the hotel stays changed before it is checkpointed, in milliseconds, or 0.
+     */
+    synchronized void configure(boolean onSeasonAdvance, int everyOperations, long afterMillis) {
+        _onSeasonAdvance = onSeasonAdvance;
+        _everyOperations = Math.max(0, everyOperations);
+        _afterMillis = Math.max(0, afterMillis);
+        if (_afterMillis == 0)
+            cancelTimer();
+    }
+
+    /**
+     * @return whether the hotel is checkpointed when the season advances.
+     */
+    boolean onSeasonAdvance() {
+        return _onSeasonAdvance;
+    }
+
+    /**
+     * @return the number of operations after which the hotel is checkpointed, or 0.
+     */
+    int everyOperations() {
+        return _everyOperations;
+    }
+
+    /**
+     * @return how long the hotel stays changed before it is checkpointed, in milliseconds, or 0.
+     */
+    long afterMillis() {
+        return _afterMillis;
+    }
+
+    /**
+     * @param listener told of the checkpoints, or {@code null}.
+     */
+    void setListener(CheckpointListener listener) {
+        _listener = listener;
+    }
+
+    /**
+     * Counts an operation that changed the hotel, and starts a checkpoint if one is due. Called by the
+     * hotel as the operation is recorded, so it does not wait for anything.
+     *
+     * @param seasonAdvanced {@code true} if the operation advanced the season.
+     */
+    synchronized void operationRecorded(boolean seasonAdvanced) {
+        _operations++;
+        if (seasonAdvanced && _onSeasonAdvance)
+            request(CheckpointTrigger.SEASON);
+        else if (_everyOperations > 0 && _operations >= _everyOperations)
+            request(CheckpointTrigger.OPERATIONS);
+        if (_afterMillis > 0 && _timer == null)
+            _timer = scheduler().schedule(this::timeElapsed, _afterMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts over counting the operations and the time the hotel stays changed, when it is saved, whether
+     * by a checkpoint or not, or replaced.
+     */
+    synchronized void saved() {
+        _operations = 0;
+        cancelTimer();
+    }
+
+    /**
+     * Starts a checkpoint once the hotel stayed changed for long enough.
+     */
+    private synchronized void timeElapsed() {
+        _timer = null;
+        request(CheckpointTrigger.TIME);
+    }
+
+    /**
+     * Forgets the checkpoint due once the hotel stays changed for long enough, if any.
+     */
+    private void cancelTimer() {
+        if (_timer != null) {
+            _timer.cancel(false);
+            _timer = null;
+        }
+    }
+
+    /**
+     * Notes that a checkpoint is due, and starts it unless one is already running, in which case it
+     * starts once that one is written.
+     *
+     * @param trigger why the checkpoint is due.
+     */
+    private void request(CheckpointTrigger trigger) {
+        if (_due == null)
+            _due = trigger;
+        if (!_running) {
+            _running = true;
+            scheduler().execute(this::checkpoint);
+        }
+    }
+
+    /**
+     * Captures a checkpoint of the hotel, on the checkpoint thread, and reports it once it is written.
+     * If an operation is running, it is tried again a little later.
+     */
+    private void checkpoint() {
+        CheckpointTrigger trigger;
+        synchronized (this) {
+            trigger = _due;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Long> save = _manager.checkpoint();
+        long captured = System.nanoTime();
+        if (save == null) {
+            synchronized (this) {
+                scheduler().schedule(this::checkpoint, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        synchronized (this) {
+            _due = null;
+        }
+        save.whenComplete((bytes, failure) -> {
+            long written = System.nanoTime();
+            CheckpointListener listener = _listener;
+            if (failure != null) {
+                if (listener != null)
+                    listener.checkpointFailed(trigger, failure);
+                else
+                    failure.printStackTrace();
+            } else if (bytes > 0 && listener != null) {
+                // nothing is reported if the hotel had no file, or was saved meanwhile
+                listener.checkpointWritten(trigger, captured - start, written - captured, bytes);
+            }
+            checkpointWritten();
+        });
+    }
+
+    /**
+     * Starts the checkpoint that became due while the last one was running, if any.
+     */
+    private synchronized void checkpointWritten() {
+        _running = false;
+        if (_due != null)
+            request(_due);
+    }
+
+    /**
+     * @return the checkpoint thread, started if it was not yet.
+     */
+    private ScheduledExecutorService scheduler() {
+        if (_scheduler == null) {
+            // a daemon, as the snapshots are written by save threads, which are not
+            _scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "hva-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _scheduler;
+    }
+}
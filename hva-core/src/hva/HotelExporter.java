@@ -0,0 +1,296 @@
+package hva;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import hva.employee.Employee;
+import hva.employee.Veterinarian;
+import hva.employee.Zookeeper;
+import hva.enums.HabitatInfluence;
+import hva.tree.EvergreenTree;
+import hva.tree.Tree;
+
+/**
+ * The {@code HotelExporter} class writes the entities of a hotel as the entries of a text input file,
+ * which {@link Hotel#importFile(String)} reads back into an equivalent hotel.
+ *
+ * <p>
+ * The entries are written in dependency order, the order in which {@link HotelImporter} registers
+ * them, so the file also imports sequentially:
+ * </p>
+ * <ol>
+ *   <li>species and trees;</li>
+ *   <li>habitats (with the trees they hold) and vaccines (with the species they target);</li>
+ *   <li>animals (with their species and habitat);</li>
+ *   <li>employees (with the habitats or species they are responsible for);</li>
+ *   <li>the influences of the habitats on species, other than neutral;</li>
+ *   <li>the vaccinations, in the order they happened.</li>
+ * </ol>
+ *
+ * <p>
+ * Each field goes straight from the entity to a buffered UTF-8 writer: no line is built as a
+ * {@code String}, and numbers are written digit by digit from a small buffer, so the memory used does
+ * not grow with the hotel. A tree is exported with its current age, which it keeps when imported.
+ * </p>
+ *
+ * <p>
+ * Importing the vaccinations again gives each animal the same health, each vaccine the same doses and
+ * each veterinarian the same vaccinations, and records the same wrong vaccinations. The season is not
+ * exported: the imported hotel starts in spring, with each tree as old as it is now in whole years.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_out: The writer of the text file.</li>
+ *   <li>_digits: The buffer where numbers are written before they are copied to the file.</li>
+ * </ul>
+ */
+final class HotelExporter implements Closeable {
+
+    /** Size of the buffer of the writer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The writer of the text file. */
+    private final Writer _out;
+
+    /** The buffer where numbers are written before they are copied to the file. */
+    private final char[] _digits = new char[11];
+
+    /**
+     * Creates an exporter that writes to a file, replacing it if it exists.
+     *
+     * @param path the text file.
+     * @throws IOException if the file cannot be created.
+     */
+    HotelExporter(Path path) throws IOException {
+        _out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes every entity of a hotel, in dependency order.
+     *
+     * @param hotel the hotel, which must not change meanwhile.
+     * @throws IOException if the file cannot be written.
+     */
+    void export(Hotel hotel) throws IOException {
+        for (Species species : hotel.allSpecies())
+            writeSpecies(species);
+        for (Tree tree : hotel.allTrees())
+            writeTree(tree);
+        for (Habitat habitat : hotel.allHabitats())
+            writeHabitat(habitat);
+        for (Vaccine vaccine : hotel.allVaccines())
+            writeVaccine(vaccine);
+        for (Animal animal : hotel.allAnimals())
+            writeAnimal(animal);
+        for (Employee employee : hotel.allEmployees())
+            writeEmployee(employee);
+        for (Habitat habitat : hotel.allHabitats())
+            writeInfluences(habitat);
+        for (Vaccination vaccination : hotel.allVaccinations())
+            writeVaccination(vaccination);
+    }
+
+    /**
+     * Writes the last entries to the file and closes it.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        _out.close();
+    }
+
+    /**
+     * Writes a species entry: {@code ESPÉCIE|id|name}.
+     *
+     * @param species the species.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeSpecies(Species species) throws IOException {
+        _out.write("ESPÉCIE");
+        writeField(species.getId());
+        writeField(species.getName());
+        _out.write('\n');
+    }
+
+    /**
+     * Writes a tree entry: {@code ÁRVORE|id|name|age|difficulty|PERENE} (or {@code CADUCA}).
+     *
+     * @param tree the tree.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeTree(Tree tree) throws IOException {
+        _out.write("ÁRVORE");
+        writeField(tree.getId());
+        writeField(tree.getName());
+        writeField(tree.getAge());
+        writeField(tree.getCleaningDificulty());
+        writeField(tree instanceof EvergreenTree ? "PERENE" : "CADUCA");
+        _out.write('\n');
+    }
+
+    /**
+     * Writes a habitat entry: {@code HABITAT|id|name|area|treeIds}, without the last field if the
+     * habitat has no trees.
+     *
+     * @param habitat the habitat.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeHabitat(Habitat habitat) throws IOException {
+        _out.write("HABITAT");
+        writeField(habitat.getId());
+        writeField(habitat.getName());
+        writeField(habitat.getArea());
+        writeIds(habitat.allTrees(), Tree::getId);
+        _out.write('\n');
+    }
+
+    /**
+     * Writes a vaccine entry: {@code VACINA|id|name|speciesIds}, without the last field if the
+     * vaccine targets no species.
+     *
+     * @param vaccine the vaccine.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeVaccine(Vaccine vaccine) throws IOException {
+        _out.write("VACINA");
+        writeField(vaccine.getId());
+        writeField(vaccine.getName());
+        writeIds(vaccine.speciesIds(), Function.identity());
+        _out.write('\n');
+    }
+
+    /**
+     * Writes an animal entry: {@code ANIMAL|id|name|speciesId|habitatId}.
+     *
+     * @param animal the animal.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeAnimal(Animal animal) throws IOException {
+        _out.write("ANIMAL");
+        writeField(animal.getId());
+        writeField(animal.getName());
+        writeField(animal.getSpecies().getId());
+        writeField(animal.getHabitat().getId());
+        _out.write('\n');
+    }
+
+    /**
+     * Writes an employee entry: {@code TRATADOR|id|name|habitatIds} for a zookeeper and
+     * {@code VETERINÁRIO|id|name|speciesIds} for a veterinarian, without the last field if the
+     * employee has no responsibilities.
+     *
+     * @param employee the employee.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeEmployee(Employee employee) throws IOException {
+        _out.write(employee instanceof Veterinarian ? "VETERINÁRIO" : "TRATADOR");
+        writeField(employee.getId());
+        writeField(employee.getName());
+        if (employee instanceof Zookeeper zookeeper)
+            writeIds(zookeeper.allHabitats(), Habitat::getId);
+        else if (employee instanceof Veterinarian veterinarian)
+            writeIds(veterinarian.allSpecies(), Species::getId);
+        _out.write('\n');
+    }
+
+    /**
+     * Writes an influence entry, {@code INFLUÊNCIA|habitatId|speciesId|POS} (or {@code NEG}), for each species
+     * on which a habitat has an influence other than neutral, by species ID.
+     *
+     * @param habitat the habitat.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeInfluences(Habitat habitat) throws IOException {
+        Map<Species, HabitatInfluence> influences = habitat.influences();
+        if (influences.isEmpty())
+            return;
+        List<Species> species = new ArrayList<>(influences.keySet());
+        species.sort(Comparator.comparing(Species::getId, String.CASE_INSENSITIVE_ORDER));
+        for (Species s : species) {
+            HabitatInfluence influence = influences.get(s);
+            if (influence == HabitatInfluence.NEUTRAL)
+                continue;
+            _out.write("INFLUÊNCIA");
+            writeField(habitat.getId());
+            writeField(s.getId());
+            writeField(influence == HabitatInfluence.POSITIVE ? "POS" : "NEG");
+            _out.write('\n');
+        }
+    }
+
+    /**
+     * Writes a vaccination entry: {@code VACINAÇÃO|vaccineId|veterinarianId|animalId}.
+     *
+     * @param vaccination the vaccination.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeVaccination(Vaccination vaccination) throws IOException {
+        _out.write("VACINAÇÃO");
+        writeField(vaccination.getVaccine().getId());
+        writeField(vaccination.getVeterinarian().getId());
+        writeField(vaccination.getAnimal().getId());
+        _out.write('\n');
+    }
+
+    /**
+     * Writes a field, after its separator.
+     *
+     * @param value the field.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeField(String value) throws IOException {
+        _out.write('|');
+        _out.write(value);
+    }
+
+    /**
+     * Writes a number field, after its separator, without converting it to a {@code String}.
+     *
+     * @param value the field.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeField(int value) throws IOException {
+        _out.write('|');
+        int start = _digits.length;
+        long rest = Math.abs((long) value);
+        do {
+            _digits[--start] = (char) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0)
+            _digits[--start] = '-';
+        _out.write(_digits, start, _digits.length - start);
+    }
+
+    /**
+     * Writes the identifiers of a list of entities as the last field of an entry, separated by commas, or nothing if
+     * the list is empty.
+     *
+     * @param <T> the type of the entities.
+     * @param entities the entities.
+     * @param id gives the identifier of an entity.
+     * @throws IOException if the file cannot be written.
+     */
+    private <T> void writeIds(Collection<T> entities, Function<T, String> id) throws IOException {
+        char separator = '|';
+        for (T entity : entities) {
+            _out.write(separator);
+            _out.write(id.apply(entity));
+            separator = ',';
+        }
+    }
+}
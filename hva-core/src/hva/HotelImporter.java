@@ -0,0 +1,138 @@
+package hva;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The {@code HotelImporter} class registers the entries of a text input file in a hotel.
+ *
+ * <p>
+ * The import runs in two phases. First, the lines are split into fields and classified by
+ * entry type in parallel (see {@link ImportFileReader}). Then the entries are registered in dependency order, so that an
+ * entry may refer to entities defined later in the file:
+ * </p>
+ * <ol>
+ *   <li>species and trees;</li>
+ *   <li>habitats (which plant trees) and vaccines (which target species);</li>
+ *   <li>animals (which live in habitats and belong to species);</li>
+ *   <li>employees (which are responsible for habitats or species);</li>
+ *   <li>influences of habitats on species;</li>
+ *   <li>vaccinations (of animals, with vaccines, by veterinarians), in the order they happened.</li>
+ * </ol>
+ *
+ * <p>
+ * Entries of the same type are registered in the order they appear in the file, so the
+ * hotel is the same as the one obtained by importing a correctly ordered file sequentially.
+ * The two types of the first and second phases only touch disjoint parts of the hotel, so
+ * they are registered concurrently. Animals and employees both update habitats, species and
+ * the satisfaction ledger, so they are registered one type after the other, and so are the
+ * influences and vaccinations that follow, which change the animals.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_hotel: The hotel where the entries are registered.</li>
+ * </ul>
+ */
+class HotelImporter {
+
+    /** The types of entries of an input file, in the order they are registered. */
+    enum EntryType {
+        SPECIES("ESPÉCIE"),
+        TREE("ÁRVORE"),
+        HABITAT("HABITAT"),
+        VACCINE("VACINA"),
+        ANIMAL("ANIMAL"),
+        EMPLOYEE("TRATADOR", "VETERINÁRIO"),
+        INFLUENCE("INFLUÊNCIA"),
+        VACCINATION("VACINAÇÃO"),
+        UNRECOGNIZED;
+
+        /** The first fields of the entries of this type. */
+        private final String[] _tags;
+
+        /**
+         * @param tags the first fields of the entries of this type.
+         */
+        EntryType(String... tags) {
+            _tags = tags;
+        }
+
+        /**
+         * @return the first fields of the entries of this type.
+         */
+        String[] getTags() {
+            return _tags.clone();
+        }
+    }
+
+    /** The hotel where the entries are registered. */
+    private final Hotel _hotel;
+
+    /**
+     * Creates an importer for the given hotel.
+     *
+     * @param hotel the hotel where the entries are registered.
+     */
+    HotelImporter(Hotel hotel) {
+        _hotel = hotel;
+    }
+
+    /**
+     * Registers entries that were already split into fields and classified by type.
+     *
+     * <p>Invalid entries are reported and skipped, as in a sequential import.</p>
+     *
+     * @param entries the entries of each type, in file order.
+     */
+    void importEntries(Map<EntryType, List<String[]>> entries) {
+        registerConcurrently(entriesOf(entries, EntryType.SPECIES), entriesOf(entries, EntryType.TREE));
+        registerConcurrently(entriesOf(entries, EntryType.HABITAT), entriesOf(entries, EntryType.VACCINE));
+        register(entriesOf(entries, EntryType.ANIMAL));
+        register(entriesOf(entries, EntryType.EMPLOYEE));
+        register(entriesOf(entries, EntryType.INFLUENCE));
+        register(entriesOf(entries, EntryType.VACCINATION));
+        register(entriesOf(entries, EntryType.UNRECOGNIZED));
+    }
+
+    /**
+     * Returns the entries of the given type, in file order.
+     *
+     * @param entries the entries, by type.
+     * @param type the type of entries.
+     * @return the entries of the type.
+     */
+    private static List<String[]> entriesOf(Map<EntryType, List<String[]>> entries, EntryType type) {
+        return entries.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * Registers two lists of entries at the same time. The entries must not touch the same parts of the hotel.
+     *
+     * @param first the first list of entries.
+     * @param second the second list of entries.
+     */
+    private void registerConcurrently(List<String[]> first, List<String[]> second) {
+        if (first.isEmpty() || second.isEmpty()) {
+            register(first);
+            register(second);
+            return;
+        }
+        ForkJoinTask<?> task = ForkJoinPool.commonPool().submit(() -> register(second));
+        register(first);
+        task.join();
+    }
+
+    /**
+     * Registers a list of entries, in order.
+     *
+     * @param entries the entries.
+     */
+    private void register(List<String[]> entries) {
+        for (String[] fields : entries)
+            _hotel.importEntry(fields);
+    }
+}
@@ -0,0 +1,435 @@
+package hva;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import hva.enums.JournalSync;
+import hva.exceptions.WrongVaccineException;
+
+/**
+ * The {@code HotelJournal} class is an append-only log of the operations that changed a hotel since
+ * its last snapshot was saved.
+ *
+ * <p>
+ * The journal of a snapshot is the file with the same name followed by {@code .journal}. It starts
+ * with the {@link #MAGIC} bytes and a version; then comes one record per operation, holding the
+ * sequence number of the operation, its code and its arguments, exactly as they were given to the
+ * hotel. Each record is followed by its CRC-32, so a record torn by a crash is detected and dropped.
+ * Since version 2, the first record is a {@link #START} record, holding the sequence number of the last
+ * operation before the journal, so a reader that follows the journal from another process (see
+ * {@link JournalFollower}) can tell when it started over, and whether operations were dropped meanwhile.
+ * </p>
+ *
+ * <p>
+ * Every snapshot holds the sequence number of the last operation it includes. When a hotel is loaded,
+ * the operations of the journal that came after its snapshot are replayed through the same public
+ * methods, which are deterministic; when it is saved, the journal starts over. If the process dies
+ * between the two steps of a save, the operations left in the journal are already in the snapshot and
+ * are skipped.
+ * </p>
+ *
+ * <p>
+ * Records are written to the file as soon as the operation is done, so they survive the process. How
+ * often they are forced to the storage device, and so how much is lost if the machine crashes, depends
+ * on the {@link JournalSync} policy. If the journal cannot be written, the error is reported and
+ * journaling stops until the hotel is saved again.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_path: The journal file.</li>
+ *   <li>_channel: The channel of the journal file.</li>
+ *   <li>_out: The output where the records are written.</li>
+ *   <li>_sync: When the records are forced to the storage device.</li>
+ *   <li>_committer: The thread that forces the records in group commit mode.</li>
+ *   <li>_dirty: Indicates if records were written since they were last forced.</li>
+ *   <li>_batches: The number of open batches, during which every-operation syncing is deferred.</li>
+ *   <li>_failed: Indicates if the journal could not be written.</li>
+ * </ul>
+ */
+final class HotelJournal implements Closeable {
+
+    /** The first bytes of every journal. */
+    static final byte[] MAGIC = { 'H', 'V', 'A', 'J' };
+
+    /** The version of the format written by this code. */
+    static final int VERSION = 2;
+
+    /** Number of bytes of the magic and the version. */
+    static final int HEADER_SIZE = 8;
+
+    /** Code of the record that starts a journal since version 2, numbered as the last operation before it. */
+    static final byte START = 0;
+
+    /** Operation code of {@link Hotel#registerSpecies}. */
+    static final byte REGISTER_SPECIES = 1;
+
+    /** Operation code of {@link Hotel#registerHabitat}. */
+    static final byte REGISTER_HABITAT = 2;
+
+    /** Operation code of {@link Hotel#registerAnimal}. */
+    static final byte REGISTER_ANIMAL = 3;
+
+    /** Operation code of {@link Hotel#registerEmployee}. */
+    static final byte REGISTER_EMPLOYEE = 4;
+
+    /** Operation code of {@link Hotel#registerVaccine}. */
+    static final byte REGISTER_VACCINE = 5;
+
+    /** Operation code of {@link Hotel#registerTree}. */
+    static final byte REGISTER_TREE = 6;
+
+    /** Operation code of {@link Hotel#addTreeToHabitat}. */
+    static final byte ADD_TREE_TO_HABITAT = 7;
+
+    /** Operation code of {@link Hotel#transferToHabitat}. */
+    static final byte TRANSFER_TO_HABITAT = 8;
+
+    /** Operation code of {@link Hotel#changeHabitatArea}. */
+    static final byte CHANGE_HABITAT_AREA = 9;
+
+    /** Operation code of {@link Hotel#changeInfluenceOfHabitat}. */
+    static final byte CHANGE_INFLUENCE_OF_HABITAT = 10;
+
+    /** Operation code of {@link Hotel#advanceSeason}. */
+    static final byte ADVANCE_SEASON = 11;
+
+    /** Operation code of {@link Hotel#addResponsability}. */
+    static final byte ADD_RESPONSABILITY = 12;
+
+    /** Operation code of {@link Hotel#removeResponsability}. */
+    static final byte REMOVE_RESPONSABILITY = 13;
+
+    /** Operation code of {@link Hotel#vaccinateAnimal}. */
+    static final byte VACCINATE_ANIMAL = 14;
+
+    /** Operation code of {@link Hotel#registerVaccination}. */
+    static final byte REGISTER_VACCINATION = 15;
+
+    /**
+     * A record of the journal, as read back.
+     *
+     * @param sequence the sequence number of the operation.
+     * @param operation the code of the operation.
+     * @param arguments the arguments of the operation.
+     */
+    record Operation(long sequence, byte operation, String[] arguments) {
+    }
+
+    /** The journal file. */
+    private final Path _path;
+
+    /** The channel of the journal file. */
+    private final FileChannel _channel;
+
+    /** The output where the records are written. */
+    private final SnapshotOutput _out;
+
+    /** When the records are forced to the storage device. */
+    private final JournalSync _sync;
+
+    /** The thread that forces the records in group commit mode (or {@code null}). */
+    private final ScheduledExecutorService _committer;
+
+    /** Indicates if records were written since they were last forced. */
+    private boolean _dirty;
+
+    /** The number of open batches. */
+    private int _batches;
+
+    /** Indicates if the journal could not be written. */
+    private boolean _failed;
+
+    /**
+     * @param path the journal file.
+     * @param channel the channel of the journal file, positioned at its end.
+     * @param sync when the records are forced to the storage device.
+     * @param groupCommitMillis the interval between forces, in group commit mode.
+     */
+    private HotelJournal(Path path, FileChannel channel, JournalSync sync, long groupCommitMillis) {
+        _path = path;
+        _channel = channel;
+        _out = new SnapshotOutput(channel);
+        _sync = sync;
+        if (sync == JournalSync.GROUP_COMMIT) {
+            _committer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "hva-journal-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            _committer.scheduleWithFixedDelay(this::commit, groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+        } else {
+            _committer = null;
+        }
+    }
+
+    /**
+     * @param snapshot the snapshot file.
+     * @return the journal file of the snapshot.
+     */
+    static Path pathOf(Path snapshot) {
+        Path absolute = snapshot.toAbsolutePath();
+        return absolute.resolveSibling(absolute.getFileName() + ".journal");
+    }
+
+    /**
+     * Opens the journal of a snapshot for appending, creating it if it does not exist.
+     *
+     * @param snapshot the snapshot file.
+     * @param fresh {@code true} to discard the records in the journal (after the snapshot was saved).
+     * @param sequence the sequence number of the last operation of the hotel, which a new journal starts after.
+     * @param sync when the records are forced to the storage device.
+     * @param groupCommitMillis the interval between forces, in group commit mode.
+     * @return the journal.
+     * @throws IOException if the journal cannot be opened or created.
+     */
+    static HotelJournal open(Path snapshot, boolean fresh, long sequence, JournalSync sync, long groupCommitMillis) throws IOException {
+        Path path = pathOf(snapshot);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            HotelJournal journal;
+            if (fresh || channel.size() < HEADER_SIZE) {
+                journal = new HotelJournal(path, channel, sync, groupCommitMillis);
+                journal.start(sequence);
+            } else {
+                channel.position(channel.size());
+                journal = new HotelJournal(path, channel, sync, groupCommitMillis);
+            }
+            return journal;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Replays over a hotel the operations of the journal of its snapshot that came after the snapshot.
+     * A torn record at the end of the journal is dropped.
+     *
+     * @param snapshot the snapshot file.
+     * @param hotel the hotel read from the snapshot.
+     * @return the number of operations replayed.
+     * @throws IOException if the journal cannot be read, or does not follow the snapshot.
+     */
+    static int replay(Path snapshot, Hotel hotel) throws IOException {
+        Path path = pathOf(snapshot);
+        if (!Files.exists(path))
+            return 0;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (SnapshotInput in = new SnapshotInput(channel)) {
+            if (channel.size() < HEADER_SIZE)
+                return 0;
+            int version = in.readHeader(MAGIC);
+            if (version > VERSION)
+                throw new InvalidObjectException("Unsupported journal version " + version);
+            int replayed = 0;
+            long end = in.position();
+            while (in.nextChecksummedRecord()) {
+                Operation operation = read(in);
+                if (operation.sequence() > hotel.getJournalSequence()) {
+                    // the operations before the journal, if it starts after the snapshot, were dropped
+                    if (operation.operation() == START || operation.sequence() != hotel.getJournalSequence() + 1)
+                        throw new StreamCorruptedException("Journal does not follow the snapshot");
+                    apply(hotel, operation.operation(), operation.arguments());
+                    hotel.restoreJournalSequence(operation.sequence());
+                    replayed++;
+                }
+                end = in.position();
+            }
+            channel.truncate(end);
+            return replayed;
+        }
+    }
+
+    /**
+     * Reads the fields of a record of the journal.
+     *
+     * @param in the input of the journal, where the record was just loaded.
+     * @return the operation of the record.
+     * @throws IOException if the record is corrupted.
+     */
+    static Operation read(SnapshotInput in) throws IOException {
+        long sequence = in.readVarLong();
+        byte operation = (byte) in.readByte();
+        String[] arguments = new String[in.readVarInt()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = in.readString();
+        return new Operation(sequence, operation, arguments);
+    }
+
+    /**
+     * Applies an operation of the journal to a hotel.
+     *
+     * @param hotel the hotel.
+     * @param operation the code of the operation.
+     * @param arguments the arguments of the operation.
+     * @throws StreamCorruptedException if the operation is unknown or fails.
+     */
+    static void apply(Hotel hotel, byte operation, String[] arguments) throws StreamCorruptedException {
+        try {
+            switch (operation) {
+                case REGISTER_SPECIES -> hotel.registerSpecies(arguments);
+                case REGISTER_HABITAT -> hotel.registerHabitat(arguments);
+                case REGISTER_ANIMAL -> hotel.registerAnimal(arguments);
+                case REGISTER_EMPLOYEE -> hotel.registerEmployee(arguments);
+                case REGISTER_VACCINE -> hotel.registerVaccine(arguments);
+                case REGISTER_TREE -> hotel.registerTree(arguments);
+                case ADD_TREE_TO_HABITAT -> hotel.addTreeToHabitat(arguments[0], arguments[1], arguments[2], arguments[3], arguments[4], arguments[5]);
+                case TRANSFER_TO_HABITAT -> hotel.transferToHabitat(arguments[0], arguments[1]);
+                case CHANGE_HABITAT_AREA -> hotel.changeHabitatArea(arguments[0], Integer.parseInt(arguments[1]));
+                case CHANGE_INFLUENCE_OF_HABITAT -> hotel.changeInfluenceOfHabitat(arguments[0], arguments[1], arguments[2]);
+                case ADVANCE_SEASON -> hotel.advanceSeason();
+                case ADD_RESPONSABILITY -> hotel.addResponsability(arguments[0], arguments[1]);
+                case REMOVE_RESPONSABILITY -> hotel.removeResponsability(arguments[0], arguments[1]);
+                case VACCINATE_ANIMAL -> {
+                    try {
+                        hotel.vaccinateAnimal(arguments[0], arguments[1], arguments[2]);
+                    } catch (WrongVaccineException e) {
+                        // the wrong vaccination is recorded, as when it first happened
+                    }
+                }
+                case REGISTER_VACCINATION -> hotel.registerVaccination(arguments);
+                default -> throw new StreamCorruptedException("Unknown journal operation " + operation);
+            }
+        } catch (StreamCorruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            StreamCorruptedException corrupted = new StreamCorruptedException("Journal operation failed: " + e);
+            corrupted.initCause(e);
+            throw corrupted;
+        }
+    }
+
+    /**
+     * Appends an operation to the journal.
+     *
+     * @param sequence the sequence number of the operation.
+     * @param operation the code of the operation.
+     * @param arguments the arguments of the operation.
+     */
+    synchronized void append(long sequence, byte operation, String... arguments) {
+        if (_failed)
+            return;
+        try {
+            _out.writeVarLong(sequence);
+            _out.writeByte(operation);
+            _out.writeVarInt(arguments.length);
+            for (String argument : arguments)
+                _out.writeString(argument);
+            _out.endChecksummedRecord();
+            _out.flush();
+            if (_sync == JournalSync.EVERY_OPERATION && _batches == 0)
+                _out.force();
+            else
+                _dirty = true;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * @param snapshot a snapshot file.
+     * @return {@code true} if this is the journal of the snapshot.
+     */
+    boolean isJournalOf(Path snapshot) {
+        return _path.equals(pathOf(snapshot));
+    }
+
+    /**
+     * Discards every record, once they are all part of a saved snapshot, and starts the journal over.
+     *
+     * @param sequence the sequence number of the last operation included in the snapshot.
+     */
+    synchronized void reset(long sequence) {
+        if (_failed)
+            return;
+        try {
+            start(sequence);
+            _dirty = false;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Empties the journal file and writes its header and {@link #START} record, in the current version.
+     *
+     * @param sequence the sequence number of the last operation before the journal.
+     * @throws IOException if the journal cannot be written.
+     */
+    private void start(long sequence) throws IOException {
+        _channel.truncate(0);
+        _out.writeHeader(MAGIC, VERSION);
+        _out.writeVarLong(sequence);
+        _out.writeByte(START);
+        _out.writeVarInt(0);
+        _out.endChecksummedRecord();
+        _out.force();
+    }
+
+    /**
+     * Starts a batch of operations (such as the entries of an import file). Until the batch ends,
+     * operations are not forced one by one.
+     */
+    synchronized void beginBatch() {
+        _batches++;
+    }
+
+    /**
+     * Ends a batch of operations, forcing them in every-operation mode.
+     */
+    synchronized void endBatch() {
+        if (--_batches == 0 && _sync == JournalSync.EVERY_OPERATION)
+            commit();
+    }
+
+    /**
+     * Forces the records written since the last force to the storage device.
+     */
+    synchronized void commit() {
+        if (!_dirty || _failed)
+            return;
+        try {
+            _out.force();
+            _dirty = false;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Forces the pending records and closes the journal.
+     *
+     * @throws IOException if the journal cannot be forced or closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (_committer != null)
+            _committer.shutdownNow();
+        try {
+            if (_dirty && !_failed && _sync != JournalSync.OS_MANAGED)
+                _out.force();
+        } finally {
+            _out.close();
+        }
+    }
+
+    /**
+     * Stops journaling after an error, reporting it.
+     *
+     * @param e the error.
+     */
+    private void fail(IOException e) {
+        _failed = true;
+        e.printStackTrace();
+    }
+}
@@ -2,13 +2,20 @@ package hva;
 
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import hva.enums.JournalSync;
+import hva.enums.SnapshotCompression;
 import hva.exceptions.MissingFileAssociationException;
 import hva.exceptions.ImportFileException;
 import hva.exceptions.UnavailableFileException;
@@ -24,38 +31,394 @@ import hva.exceptions.UnavailableFileException;
  * from disk, advancing the season, and calculating the global satisfaction score.
  * </p>
  * 
+ * <p>
+ * Once the hotel is associated with a file, by saving or loading it, the operations that change it are
+ * recorded in a journal next to the file (see {@link HotelJournal}), which is replayed when the file is
+ * loaded, so they are not lost if the application ends without saving. How often the journal is forced
+ * to the storage device is set with the system properties {@code hva.journal.sync} (a {@link JournalSync}
+ * constant, {@code GROUP_COMMIT} by default) and {@code hva.journal.groupCommitMillis}.
+ * </p>
+ *
+ * <p>
+ * Snapshots can be compressed as they are written, which makes them smaller at the cost of some time to
+ * save them. How much is set with the system property {@code hva.snapshot.compression} (a
+ * {@link SnapshotCompression} constant, {@code NONE} by default). Compressed snapshots are recognised
+ * when they are loaded, so the setting only applies to saves.
+ * </p>
+ *
+ * <p>
+ * Once the hotel was saved in, or loaded from, a snapshot, the next saves to the same file only write what
+ * changed since the save before, as deltas next to it (see {@link SnapshotDelta}), which are applied when
+ * the file is loaded. They are folded into a new snapshot in the background once there are more than
+ * {@code hva.snapshot.maxDeltas} of them (16 by default; 0 writes whole snapshots only), or they hold more
+ * than {@code hva.snapshot.maxDeltaPercent} percent of the bytes of the snapshot (50 by default).
+ * </p>
+ *
+ * <p>
+ * The hotel can also be saved in the background without being asked, when its checkpoint policy says so
+ * (see {@link #setCheckpoints(boolean, int, long)}): after the season advances ({@code hva.checkpoint.onSeason}),
+ * after a number of operations ({@code hva.checkpoint.operations}), or once it stayed changed for some time
+ * ({@code hva.checkpoint.afterMillis}), since it was last saved. None of them is set by default. Checkpoints
+ * never overlap, and only stall the operations while the hotel is captured; how long, and how much they
+ * write, is reported to a {@link CheckpointListener}.
+ * </p>
+ *
+ * <p>
+ * A snapshot can also be opened for queries only, memory-mapped and decoded as it is queried (see
+ * {@link #loadReadOnly(String)}), which is much faster for a large hotel that is only looked at.
+ * </p>
+ *
+ * <p>
+ * Two saved hotels can be compared without loading either of them (see
+ * {@link #compareFiles(String, String, SnapshotDiffListener)}), to audit what changed between them.
+ * </p>
+ *
+ * <p>
+ * A manager can also follow the hotel that another process keeps in a snapshot (see {@link #follow(String)}),
+ * for queries only: it reads the snapshot, then tails the journal where the other process records its
+ * operations and applies them in order, so heavy queries do not slow the process that changes the hotel.
+ * How often the journal is read is set with the system property {@code hva.follow.pollMillis} (50 by
+ * default); how far behind the hotel is can be asked at any time.
+ * </p>
+ *
+ * <p>
+ * Text input is read from a file or from any stream, such as a pipe, and is decompressed as it is read
+ * when it is gzip-compressed (see {@link #importFile(InputStream)}). It can also be converted once into a
+ * binary bulk-import file (see {@link #convertImportFile(String, String)}), which is imported without
+ * parsing text.
+ * </p>
+ * 
  * <p><b>Attributes:</b></p>
  * <ul>
  *   <li>_filename: The name of the file associated with the current hotel.</li>
  *   <li>_hotel: The current hotel instance.</li>
+ *   <li>_saver: Writes the snapshots of the hotel in the background.</li>
+ *   <li>_journalSync: When the journal of the hotel is forced to the storage device.</li>
+ *   <li>_groupCommitMillis: The interval between forces of the journal, in group commit mode.</li>
+ *   <li>_compression: How much the snapshots of the hotel are compressed.</li>
+ *   <li>_maxDeltas: The most deltas kept after a snapshot.</li>
+ *   <li>_maxDeltaPercent: The most bytes of deltas kept after a snapshot, in percent of its own.</li>
+ *   <li>_checkpointer: Saves the hotel in the background when its checkpoint policy says so.</li>
+ *   <li>_followPollMillis: The interval between reads of the journal followed, in milliseconds.</li>
+ *   <li>_follower: Keeps the hotel up to date with the journal of another process, or {@code null}.</li>
  * </ul>
  */
 public class HotelManager {
 
+    /** Default interval between forces of the journal, in group commit mode, in milliseconds. */
+    private static final long DEFAULT_GROUP_COMMIT_MILLIS = 50;
+
+    /** Default number of deltas kept after a snapshot. */
+    private static final int DEFAULT_MAX_DELTAS = 16;
+
+    /** Default number of bytes of deltas kept after a snapshot, in percent of its own. */
+    private static final int DEFAULT_MAX_DELTA_PERCENT = 50;
+
+    /** Default interval between reads of the journal followed, in milliseconds. */
+    private static final long DEFAULT_FOLLOW_POLL_MILLIS = 50;
+
     /** The name of the file associated with the current hotel. */
     private String _filename = "";
 
     /** This is the current hotel. */
     private Hotel _hotel = new Hotel();
 
+    /** Writes the snapshots of the hotel in the background. */
+    private final SnapshotSaver _saver = new SnapshotSaver();
+
+    /** When the journal of the hotel is forced to the storage device. */
+    private JournalSync _journalSync;
+
+    /** The interval between forces of the journal, in group commit mode, in milliseconds. */
+    private long _groupCommitMillis;
+
+    /** How much the snapshots of the hotel are compressed. */
+    private SnapshotCompression _compression;
+
+    /** The most deltas kept after a snapshot (or 0 to write whole snapshots only). */
+    private int _maxDeltas;
+
+    /** The most bytes of deltas kept after a snapshot, in percent of its own. */
+    private int _maxDeltaPercent;
+
+    /** Saves the hotel in the background when its checkpoint policy says so. */
+    private final HotelCheckpointer _checkpointer = new HotelCheckpointer(this);
+
+    /** The interval between reads of the journal followed, in milliseconds. */
+    private long _followPollMillis;
+
+    /** Keeps the hotel up to date with the journal of another process (or {@code null}). */
+    private JournalFollower _follower;
+
+    /**
+     * Creates a manager with an empty hotel, with the journal and snapshot settings taken from the
+     * system properties.
+     */
+    public HotelManager() {
+        configureJournal();
+        configureCompression();
+        configureDeltas();
+        configureCheckpoints();
+        _followPollMillis = Math.max(1, Long.getLong("hva.follow.pollMillis", DEFAULT_FOLLOW_POLL_MILLIS));
+        _hotel.setCheckpointer(_checkpointer);
+    }
+
+    /**
+     * Initializes the journal settings from the system properties {@code hva.journal.sync} and
+     * {@code hva.journal.groupCommitMillis}. An unknown policy falls back to group commit.
+     */
+    private void configureJournal() {
+        try {
+            _journalSync = JournalSync.valueOf(System.getProperty("hva.journal.sync", JournalSync.GROUP_COMMIT.name()));
+        } catch (IllegalArgumentException e) {
+            _journalSync = JournalSync.GROUP_COMMIT;
+        }
+        _groupCommitMillis = Math.max(1, Long.getLong("hva.journal.groupCommitMillis", DEFAULT_GROUP_COMMIT_MILLIS));
+    }
+
+    /**
+     * Sets when the journal is forced to the storage device. The settings apply from the next time the
+     * hotel is saved or loaded.
+     *
+     * @param sync the sync policy.
+     * @param groupCommitMillis the interval between forces, in group commit mode, in milliseconds.
+     */
+    public void setJournalSync(JournalSync sync, long groupCommitMillis) {
+        _journalSync = sync;
+        _groupCommitMillis = Math.max(1, groupCommitMillis);
+    }
+
+    /**
+     * @return when the journal of the hotel is forced to the storage device.
+     */
+    public JournalSync getJournalSync() {
+        return _journalSync;
+    }
+
+    /**
+     * Initializes the snapshot compression from the system property {@code hva.snapshot.compression}.
+     * An unknown level falls back to no compression.
+     */
+    private void configureCompression() {
+        try {
+            _compression = SnapshotCompression.valueOf(System.getProperty("hva.snapshot.compression", SnapshotCompression.NONE.name()));
+        } catch (IllegalArgumentException e) {
+            _compression = SnapshotCompression.NONE;
+        }
+    }
+
+    /**
+     * Sets how much the snapshots are compressed, from the next save.
+     *
+     * @param compression the compression level.
+     */
+    public void setSnapshotCompression(SnapshotCompression compression) {
+        _compression = compression;
+    }
+
+    /**
+     * @return how much the snapshots of the hotel are compressed.
+     */
+    public SnapshotCompression getSnapshotCompression() {
+        return _compression;
+    }
+
+    /**
+     * Initializes when saves are deltas from the system properties {@code hva.snapshot.maxDeltas} and
+     * {@code hva.snapshot.maxDeltaPercent}. Negative values are taken as 0.
+     */
+    private void configureDeltas() {
+        setSnapshotDeltas(Integer.getInteger("hva.snapshot.maxDeltas", DEFAULT_MAX_DELTAS),
+            Integer.getInteger("hva.snapshot.maxDeltaPercent", DEFAULT_MAX_DELTA_PERCENT));
+    }
+
+    /**
+     * Sets when saves are deltas and when the deltas are folded into a new snapshot, from the next save.
+     *
+     * @param maxDeltas the most deltas kept after a snapshot, or 0 to write whole snapshots only.
+     * @param maxDeltaPercent the most bytes of deltas kept after a snapshot, in percent of its own.
+     */
+    public void setSnapshotDeltas(int maxDeltas, int maxDeltaPercent) {
+        _maxDeltas = Math.max(0, maxDeltas);
+        _maxDeltaPercent = Math.max(0, maxDeltaPercent);
+        _saver.setDeltaLimits(_maxDeltas, _maxDeltaPercent);
+    }
+
+    /**
+     * @return the most deltas kept after a snapshot, or 0 if whole snapshots only are written.
+     */
+    public int getSnapshotMaxDeltas() {
+        return _maxDeltas;
+    }
+
+    /**
+     * @return the most bytes of deltas kept after a snapshot, in percent of its own.
+     */
+    public int getSnapshotMaxDeltaPercent() {
+        return _maxDeltaPercent;
+    }
+
+    /**
+     * Initializes the checkpoint policy from the system properties {@code hva.checkpoint.onSeason},
+     * {@code hva.checkpoint.operations} and {@code hva.checkpoint.afterMillis}. Negative values are taken as 0.
+     */
+    private void configureCheckpoints() {
+        setCheckpoints(Boolean.getBoolean("hva.checkpoint.onSeason"), Integer.getInteger("hva.checkpoint.operations", 0),
+            Long.getLong("hva.checkpoint.afterMillis", 0));
+    }
+
+    /**
+     * Sets when the hotel is saved in the background without being asked, if it has a file. Each count
+     * starts over whenever the hotel is saved, by a checkpoint or not.
+     *
+     * @param onSeasonAdvance {@code true} to checkpoint the hotel when the season advances.
+     * @param everyOperations the number of operations that change the hotel after which it is checkpointed,
+     *        or 0 not to count them.
+     * @param afterMillis how long the hotel stays changed before it is checkpointed, in milliseconds, or 0
+     *        not to wait for it.
+     */
+    public void setCheckpoints(boolean onSeasonAdvance, int everyOperations, long afterMillis) {
+        _checkpointer.configure(onSeasonAdvance, everyOperations, afterMillis);
+    }
+
+    /**
+     * @return whether the hotel is checkpointed when the season advances.
+     */
+    public boolean getCheckpointOnSeasonAdvance() {
+        return _checkpointer.onSeasonAdvance();
+    }
+
+    /**
+     * @return the number of operations after which the hotel is checkpointed, or 0.
+     */
+    public int getCheckpointOperations() {
+        return _checkpointer.everyOperations();
+    }
+
+    /**
+     * @return how long the hotel stays changed before it is checkpointed, in milliseconds, or 0.
+     */
+    public long getCheckpointAfterMillis() {
+        return _checkpointer.afterMillis();
+    }
+
+    /**
+     * Sets who is told of the checkpoints, with how long they took and how many bytes they wrote. Without
+     * one, checkpoints that fail are reported on the standard error.
+     *
+     * @param listener the listener, or {@code null}.
+     */
+    public void setCheckpointListener(CheckpointListener listener) {
+        _checkpointer.setListener(listener);
+    }
+
+    /**
+     * Saves the hotel in the background for a checkpoint, on the checkpoint thread, if it has a file and
+     * changed since it was last saved (see {@link HotelCheckpointer}). The hotel is captured between two
+     * of its operations, which wait meanwhile.
+     *
+     * @return a future completed with the number of bytes written (0 if nothing was saved), or
+     *         {@code null} if an operation is running, in which case the checkpoint is tried again later.
+     */
+    synchronized CompletableFuture<Long> checkpoint() {
+        Hotel hotel = _hotel;
+        if (!hotel.tryBeginCheckpoint())
+            return null;
+        try {
+            if (hotel.isReadOnly() || _filename == null || _filename.equals(""))
+                return CompletableFuture.completedFuture(0L);
+            return saveAsync();
+        } catch (IOException | MissingFileAssociationException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            hotel.endCheckpoint();
+        }
+    }
+
     
     /**
-     * Saves the serialized application's state into the file associated to the current hotel.
+     * Saves the application's state into the file associated to the current hotel, as a binary snapshot
+     * (see {@link SnapshotFormat}), waiting until it is written.
+     *
+     * <p>The operations in the journal are then part of the snapshot, so the journal starts over.</p>
      *
      * @throws FileNotFoundException if for some reason the file cannot be created or opened.
      * @throws MissingFileAssociationException if the current hotel does not have a file.
-     * @throws IOException if there is some error while serializing the state of the hotel to disk.
+     * @throws IOException if there is some error while writing the state of the hotel to disk.
      */
     
     public void save() throws FileNotFoundException, MissingFileAssociationException, IOException {
-        if (!changed()) return;
+        try {
+            saveAsync().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause)
+                throw cause;
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(_filename);
+        }
+    }
+
+    /**
+     * Saves the application's state into the file associated to the current hotel, as a binary snapshot
+     * (see {@link SnapshotFormat}), in the background.
+     *
+     * <p>The state of the hotel is captured before this method returns (see {@link SnapshotImage}); the
+     * snapshot is then written by a save thread while the hotel can keep changing. The hotel is marked as
+     * unchanged once the snapshot is written, unless it was changed meanwhile. Saves requested while another
+     * is being written coalesce: only the latest state is written next (see {@link SnapshotSaver}). A save
+     * to the file the hotel was last saved in or loaded from only writes what changed since, as a delta.</p>
+     *
+     * <p>From now on, the operations that change the hotel are recorded in the journal of the file.</p>
+     *
+     * @return a future completed with the number of bytes written when the snapshot is written (0 if the
+     *         hotel did not change), or completed exceptionally with the {@link IOException} that prevented it.
+     * @throws FileNotFoundException if the name of the file is invalid.
+     * @throws MissingFileAssociationException if the current hotel does not have a file.
+     * @throws IOException if the journal of the file cannot be created.
+     */
+    public synchronized CompletableFuture<Long> saveAsync() throws FileNotFoundException, MissingFileAssociationException, IOException {
+        if (!changed())
+            return CompletableFuture.completedFuture(0L);
 
         if(_filename == null || _filename.equals(""))
             throw new MissingFileAssociationException();
-        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(_filename)))) {
-            oos.writeObject(_hotel);
-            _hotel.setChanged(false);
-        } 
+        Path path;
+        try {
+            path = Path.of(_filename);
+        } catch (InvalidPathException e) {
+            throw new FileNotFoundException(_filename);
+        }
+        HotelJournal journal = _hotel.getJournal();
+        if (journal == null || !journal.isJournalOf(path)) {
+            // the operations after the capture must be in the journal of the new file
+            closeJournal();
+            _hotel.setJournal(HotelJournal.open(path, true, _hotel.getJournalSequence(), _journalSync, _groupCommitMillis));
+        }
+        try {
+            CompletableFuture<Long> save = _saver.save(_hotel, path, _compression);
+            _checkpointer.saved();
+            return save;
+        } catch (UncheckedIOException e) {
+            // the vaccination history, read from the previous snapshot as the hotel is captured
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Saves the application's state into the given file, which becomes associated to the current hotel,
+     * in the background (see {@link #saveAsync()}).
+     *
+     * @param filename the name of the file.
+     * @return a future completed with the number of bytes written, when the snapshot is written.
+     * @throws FileNotFoundException if the name of the file is invalid.
+     * @throws MissingFileAssociationException if the name of the file is empty.
+     * @throws IOException if the journal of the file cannot be created.
+     */
+    public synchronized CompletableFuture<Long> saveAsAsync(String filename) throws FileNotFoundException, MissingFileAssociationException, IOException {
+        _filename = filename;
+        return saveAsync();
     }
 
     /**
@@ -73,19 +436,251 @@ public class HotelManager {
     /**
      * Loads the hotel data from the specified file.
      * 
+     * <p>The format is detected from the first bytes of the file: binary snapshots are read by
+     * {@link SnapshotReader}, and files saved with Java serialization are still accepted. The deltas saved
+     * after a snapshot are applied to it (see {@link SnapshotDelta}). The operations
+     * recorded in the journal of the file after it was saved are then replayed, in which case the hotel is
+     * marked as changed. The vaccination history of a snapshot is only read when it is first needed. If
+     * the snapshot is saved, or its deltas are folded, by another hotel as it is read, it is read again.</p>
+     * 
      * @param filename name of the file containing the serialized application's state
      *        to load.
      * @throws UnavailableFileException if the specified file does not exist or there is
      *         an error while processing this file.
      */
-    public void load(String filename) throws UnavailableFileException {
+    public synchronized void load(String filename) throws UnavailableFileException {
         _filename = filename;
-        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(_filename)))) {
-            _hotel = (Hotel) ois.readObject();
-            _hotel.setChanged(false);
-        } catch (IOException | ClassNotFoundException e) {
+        Path path;
+        Hotel hotel = null;
+        try {
+            path = Path.of(_filename);
+            if (SnapshotFormat.isSnapshot(path))
+                hotel = SnapshotDelta.read(path, () -> readSnapshot(path), Hotel::closeVaccinationHistory);
+            else {
+                hotel = readSerialized(path);
+                hotel.setChanged(HotelJournal.replay(path, hotel) > 0);
+            }
+        } catch (IOException | UncheckedIOException | ClassNotFoundException | InvalidPathException e) {
+            if (hotel != null)
+                hotel.closeVaccinationHistory();
             throw new UnavailableFileException(_filename);
-        } 
+        }
+        replaceHotel(hotel);
+        try {
+            _hotel.setJournal(HotelJournal.open(path, false, _hotel.getJournalSequence(), _journalSync, _groupCommitMillis));
+        } catch (IOException e) {
+            // the hotel is still usable, its changes are only kept when it is saved
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Opens the hotel in the specified snapshot file for queries only (see {@link ReadOnlyHotel}).
+     *
+     * <p>The file is memory-mapped and its entities are only decoded when a query needs them, so
+     * a large hotel is opened at once. The operations that would change the hotel are rejected, and
+     * no journal is kept: the operations recorded in the journal of the file after it was saved are
+     * not replayed, so the hotel is the one last written to the file.</p>
+     *
+     * @param filename name of the snapshot file.
+     * @throws UnavailableFileException if the file does not exist or is not a valid snapshot.
+     */
+    public synchronized void loadReadOnly(String filename) throws UnavailableFileException {
+        Hotel hotel;
+        try {
+            hotel = ReadOnlyHotel.open(Path.of(filename));
+        } catch (IOException | UncheckedIOException | InvalidPathException e) {
+            throw new UnavailableFileException(filename);
+        }
+        replaceHotel(hotel);
+        _filename = filename;
+    }
+
+    /**
+     * Follows the hotel that another process keeps in the specified snapshot file, for queries only
+     * (see {@link JournalFollower}).
+     *
+     * <p>The hotel is read from the file and its deltas, with the operations already recorded in the
+     * journal of the file. A follow thread then reads the journal every {@code hva.follow.pollMillis}
+     * milliseconds, and the operations it finds are applied, in order, before the next query. If the
+     * other process saved the hotel and started its journal over before some operations were read, the
+     * hotel is read again from the file in the background, and replaces the current one the next time
+     * it is asked for (see {@link #getHotel()}). The operations that would change the hotel are rejected,
+     * and no journal is kept. Loading or creating another hotel stops following this one.</p>
+     *
+     * @param filename name of the snapshot file.
+     * @throws UnavailableFileException if the file does not exist or is not a valid snapshot.
+     */
+    public synchronized void follow(String filename) throws UnavailableFileException {
+        JournalFollower follower;
+        try {
+            follower = new JournalFollower(Path.of(filename), _followPollMillis);
+        } catch (IOException | UncheckedIOException | InvalidPathException e) {
+            throw new UnavailableFileException(filename);
+        }
+        replaceHotel(follower.hotel());
+        _follower = follower;
+        _filename = filename;
+    }
+
+    /**
+     * @return whether the current hotel follows the journal of another process (see {@link #follow(String)}).
+     */
+    public boolean isFollowing() {
+        return _follower != null;
+    }
+
+    /**
+     * Returns how many operations the hotel followed lags behind the process that records them, once the
+     * operations already read are applied.
+     *
+     * @return the number of operations in the journal, when it was last read, that the hotel does not
+     *         include, or 0 if no hotel is followed.
+     */
+    public synchronized long getReplicationLagOperations() {
+        if (_follower == null)
+            return 0;
+        return _follower.lagOperations(caughtUpHotel());
+    }
+
+    /**
+     * Returns for how long the hotel followed is known to lag behind the process that records its
+     * operations, once the operations already read are applied: since the journal was last read, if the
+     * hotel includes every operation in it, or else since the hotel was found not to follow the journal.
+     *
+     * @return the lag in milliseconds, or 0 if no hotel is followed.
+     */
+    public synchronized long getReplicationLagMillis() {
+        if (_follower == null)
+            return 0;
+        return _follower.lagMillis(caughtUpHotel());
+    }
+
+    /**
+     * Replaces the hotel followed by the latest one read by the follower, if it is another.
+     */
+    private void followLatest() {
+        Hotel hotel = _follower.hotel();
+        if (hotel != _hotel) {
+            _hotel.closeVaccinationHistory();
+            _hotel = hotel;
+        }
+    }
+
+    /**
+     * @return the latest hotel followed, with the operations already read applied.
+     */
+    private Hotel caughtUpHotel() {
+        followLatest();
+        FollowerHotel hotel = (FollowerHotel) _hotel;
+        hotel.catchUp();
+        return hotel;
+    }
+
+    /**
+     * @return whether the current hotel can only be queried (see {@link #loadReadOnly(String)}).
+     */
+    public boolean isReadOnly() {
+        return _hotel.isReadOnly();
+    }
+
+    /**
+     * Compares two saved hotels, such as yesterday's and today's, telling a listener of the species, trees,
+     * habitats, animals, employees, vaccines and vaccinations added, removed or changed from the earlier to
+     * the later (see {@link SnapshotDiff}).
+     *
+     * <p>Neither hotel is loaded: both snapshot files, and their deltas, are read side by side as streams
+     * sorted by ID, so a large hotel can be compared in little memory. The operations recorded in their
+     * journals after they were saved are not read, and the current hotel is not touched.</p>
+     *
+     * @param before name of the snapshot file of the earlier hotel.
+     * @param after name of the snapshot file of the later hotel.
+     * @param listener told of the differences, as they are found.
+     * @throws UnavailableFileException if a file does not exist or is not a valid snapshot.
+     */
+    public void compareFiles(String before, String after, SnapshotDiffListener listener) throws UnavailableFileException {
+        String filename = before;
+        try (SnapshotStream earlier = SnapshotStream.open(Path.of(before))) {
+            filename = after;
+            try (SnapshotStream later = SnapshotStream.open(Path.of(after))) {
+                // a record that cannot be read while the files are compared may be in either of them
+                filename = before + ", " + after;
+                SnapshotDiff.compare(earlier, later, listener);
+            }
+        } catch (IOException | UncheckedIOException | InvalidPathException e) {
+            throw new UnavailableFileException(filename);
+        }
+    }
+
+    /**
+     * Reads a hotel from a snapshot file and its deltas, and replays the operations of its journal over it.
+     *
+     * @param path the snapshot file.
+     * @return the hotel, marked as changed if operations were replayed.
+     * @throws IOException if a file cannot be read or is corrupted, or the journal does not follow the snapshot.
+     */
+    private static Hotel readSnapshot(Path path) throws IOException {
+        Hotel hotel = SnapshotReader.read(path);
+        try {
+            SnapshotDelta.apply(path, hotel);
+            hotel.setChanged(HotelJournal.replay(path, hotel) > 0);
+            return hotel;
+        } catch (IOException | UncheckedIOException e) {
+            hotel.closeVaccinationHistory();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a hotel from a file saved with Java serialization, before the snapshot format existed.
+     *
+     * <p>The hotel is migrated as it is read (see {@link Hotel}): its trees are moved to a season clock.</p>
+     *
+     * @param path the file.
+     * @return the hotel.
+     * @throws IOException if the file cannot be read or does not hold a hotel.
+     * @throws ClassNotFoundException if a serialized class is not available.
+     */
+    private static Hotel readSerialized(Path path) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+            return (Hotel) ois.readObject();
+        } catch (ClassCastException e) {
+            throw new InvalidObjectException(path + " does not hold a hotel");
+        }
+    }
+
+    /**
+     * Discards the current hotel for another, which is checkpointed from then on.
+     *
+     * @param hotel the new hotel.
+     */
+    private void replaceHotel(Hotel hotel) {
+        if (_follower != null) {
+            _follower.close();
+            _follower = null;
+        }
+        closeJournal();
+        _hotel.closeVaccinationHistory();
+        _hotel.setCheckpointer(null);
+        _hotel = hotel;
+        _checkpointer.saved();
+        if (!hotel.isReadOnly())
+            hotel.setCheckpointer(_checkpointer);
+    }
+
+    /**
+     * Closes the journal of the current hotel, if it has one, forcing its pending records.
+     */
+    private void closeJournal() {
+        HotelJournal journal = _hotel.getJournal();
+        if (journal == null)
+            return;
+        _hotel.setJournal(null);
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -98,6 +693,46 @@ public class HotelManager {
         _hotel.importFile(filename);
     }
 
+    /**
+     * Read text input from a stream, which may be gzip-compressed.
+     *
+     * @param in the stream, read to its end but not closed
+     * @throws ImportFileException
+     */
+    public void importFile(InputStream in) throws ImportFileException {
+        _hotel.importFile(in);
+    }
+
+    /**
+     * Convert a text input file, compressed or not, into the binary bulk-import format, which
+     * {@link #importFile(String)} reads without parsing text (see {@link BulkImportWriter}).
+     *
+     * @param textFilename name of the text input file
+     * @param bulkFilename name of the bulk-import file
+     * @throws ImportFileException if a file cannot be read or written, or an entry is malformed.
+     */
+    public void convertImportFile(String textFilename, String bulkFilename) throws ImportFileException {
+        try {
+            BulkImportWriter.convert(Path.of(textFilename), Path.of(bulkFilename));
+        } catch (IOException | InvalidPathException e) {
+            throw new ImportFileException(textFilename, e);
+        }
+    }
+
+    /**
+     * Write the entities of the hotel to a text input file (see {@link Hotel#exportTo(Path)}).
+     *
+     * @param filename name of the text file
+     * @throws IOException if the file cannot be written.
+     */
+    public void exportFile(String filename) throws IOException {
+        try {
+            _hotel.exportTo(Path.of(filename));
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+    }
+
     /**
      * @return filename
      */
@@ -120,17 +755,22 @@ public class HotelManager {
     }
 
     /**
+     * Returns the current hotel. A hotel followed is first replaced by the latest one read by the
+     * follower, if it had to be read again (see {@link #follow(String)}).
+     *
      * @return hotel
      */
-    public Hotel getHotel() {
+    public synchronized Hotel getHotel() {
+        if (_follower != null)
+            followLatest();
         return _hotel;
     }
 
     /**
      * Reset the hotel.
      */
-    public void reset() {
-        _hotel = new Hotel();
+    public synchronized void reset() {
+        replaceHotel(new Hotel());
         _filename = null;
     }
 
@@ -149,6 +789,6 @@ public class HotelManager {
      * @return the global satisfaction score as an integer.
      */
     public int showGlobalSatisfaction() {
-        return _hotel.globalSatisfaction();
+        return getHotel().globalSatisfaction();
     }
 }
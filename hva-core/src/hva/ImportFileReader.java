@@ -0,0 +1,437 @@
+package hva;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import hva.HotelImporter.EntryType;
+
+/**
+ * The {@code ImportFileReader} class splits a text input file into entries, without going through
+ * lines of text.
+ *
+ * <p>
+ * The file is memory-mapped and copied, a block at a time, into an array that is scanned once. Each line is split on {@code '|'} with the
+ * same rules as {@code line.split("\\|")} (trailing empty fields are dropped). The first field is
+ * compared against the UTF-8 bytes of the known entry tags, so recognised tags are never decoded:
+ * the entry shares the tag constant. Only the remaining fields are decoded, as UTF-8, straight from
+ * the bytes of the line.
+ * </p>
+ *
+ * <p>
+ * Large files are cut into chunks at line boundaries and the chunks are tokenized in parallel; the
+ * entries of each type are then concatenated in chunk order, so they keep the order of the file.
+ * Lines end with {@code "\n"}, {@code "\r\n"} or {@code "\r"}, and a leading byte order mark is skipped.
+ * </p>
+ *
+ * <p>
+ * An input that is not a file, such as a pipe, is read into a large buffer, which is tokenized the same
+ * way each time it is filled, keeping the last incomplete line for the next time. An input that starts
+ * with the gzip magic bytes, file or not, is decompressed as it is read, so it is never decompressed to
+ * disk first.
+ * </p>
+ */
+final class ImportFileReader {
+
+    /** Largest part of the file that is mapped at once. */
+    private static final int REGION_SIZE = 1 << 30;
+
+    /** Approximate size of the chunks that are tokenized in parallel. */
+    private static final int CHUNK_SIZE = 1 << 22;
+
+    /** Size of the buffer into which an input that is not mapped is read. */
+    private static final int STREAM_REGION_SIZE = 1 << 24;
+
+    /** Size of the buffers of the decompressor of a gzip input. */
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+    /** The magic bytes at the start of a gzip input. */
+    private static final byte[] GZIP_MAGIC = { (byte) 0x1F, (byte) 0x8B };
+
+    /** Size of the blocks in which a chunk is copied out of the buffer before being scanned. */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /** The UTF-8 byte order mark. */
+    private static final byte[] BYTE_ORDER_MARK = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    /** The known entry tags. */
+    private static final String[] TAGS;
+
+    /** The UTF-8 bytes of each known entry tag. */
+    private static final byte[][] TAG_BYTES;
+
+    /** The type of the entries with each known tag. */
+    private static final EntryType[] TAG_TYPES;
+
+    static {
+        List<String> tags = new ArrayList<>();
+        List<EntryType> types = new ArrayList<>();
+        for (EntryType type : EntryType.values())
+            for (String tag : type.getTags()) {
+                tags.add(tag);
+                types.add(type);
+            }
+        TAGS = tags.toArray(new String[0]);
+        TAG_TYPES = types.toArray(new EntryType[0]);
+        TAG_BYTES = new byte[TAGS.length][];
+        for (int i = 0; i < TAGS.length; i++)
+            TAG_BYTES[i] = TAGS[i].getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Not instantiable. */
+    private ImportFileReader() {
+    }
+
+    /**
+     * Reads the entries of a text input file.
+     *
+     * @param path the file.
+     * @return the entries of each type, split into fields, in file order.
+     * @throws IOException if the file cannot be read, or has a line longer than the mapped region.
+     */
+    static Map<EntryType, List<String[]>> read(Path path) throws IOException {
+        Map<EntryType, List<String[]>> entries = new EnumMap<>(EntryType.class);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, REGION_SIZE));
+                if (position == 0 && startsWith(region, GZIP_MAGIC)) {
+                    try (InputStream in = Files.newInputStream(path)) {
+                        return read(in);
+                    }
+                }
+                int start = position == 0 ? byteOrderMarkLength(region) : 0;
+                int end = region.limit();
+                if (position + end < size) {
+                    end = lastLineEnd(region);
+                    if (end == 0)
+                        throw new IOException("Line too long at byte " + position);
+                }
+                tokenize(region, start, end, entries);
+                position += end;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the entries of an input stream, which may be gzip-compressed. The stream is read to its end
+     * but not closed.
+     *
+     * @param in the input.
+     * @return the entries of each type, split into fields, in input order.
+     * @throws IOException if the input cannot be read, or has a line longer than the read buffer.
+     */
+    static Map<EntryType, List<String[]>> read(InputStream in) throws IOException {
+        Map<EntryType, List<String[]>> entries = new EnumMap<>(EntryType.class);
+        try (InputStream source = decompressed(in)) {
+            ByteBuffer region = ByteBuffer.allocate(STREAM_REGION_SIZE);
+            byte[] bytes = region.array();
+            long position = 0;
+            int filled = 0;
+            boolean ended = false;
+            while (!ended) {
+                while (filled < bytes.length) {
+                    int read = source.read(bytes, filled, bytes.length - filled);
+                    if (read < 0) {
+                        ended = true;
+                        break;
+                    }
+                    filled += read;
+                }
+                int start = position == 0 ? byteOrderMarkLength(region.duplicate().limit(filled)) : 0;
+                int end = filled;
+                if (!ended) {
+                    end = lastLineEnd(region);
+                    if (end == 0)
+                        throw new IOException("Line too long at byte " + position);
+                }
+                tokenize(region, start, end, entries);
+                // the incomplete last line is completed by the next read
+                System.arraycopy(bytes, end, bytes, 0, filled - end);
+                filled -= end;
+                position += end;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the entries of a channel, which may be gzip-compressed. The channel is read to its end but
+     * not closed.
+     *
+     * @param channel the input.
+     * @return the entries of each type, split into fields, in input order.
+     * @throws IOException if the input cannot be read, or has a line longer than the read buffer.
+     */
+    static Map<EntryType, List<String[]>> read(ReadableByteChannel channel) throws IOException {
+        return read(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Wraps an input stream so it is decompressed if it starts with the gzip magic bytes. Closing the
+     * result releases the decompressor but leaves the given stream open.
+     *
+     * @param in the input.
+     * @return the bytes of the input, decompressed if needed.
+     * @throws IOException if the start of the input cannot be read.
+     */
+    private static InputStream decompressed(InputStream in) throws IOException {
+        InputStream buffered = new BufferedInputStream(new FilterInputStream(in) {
+            @Override
+            public void close() {
+                // the caller owns the stream
+            }
+        }, GZIP_BUFFER_SIZE);
+        buffered.mark(GZIP_MAGIC.length);
+        byte[] start = buffered.readNBytes(GZIP_MAGIC.length);
+        buffered.reset();
+        if (Arrays.equals(start, GZIP_MAGIC))
+            return new GZIPInputStream(buffered, GZIP_BUFFER_SIZE);
+        return buffered;
+    }
+
+    /**
+     * Tokenizes the lines between two positions of a buffer, splitting them into chunks that are tokenized in parallel.
+     *
+     * @param buffer the buffer.
+     * @param start the position of the first line.
+     * @param end the position after the last line.
+     * @param entries the entries of each type, where the new entries are appended.
+     */
+    static void tokenize(ByteBuffer buffer, int start, int end, Map<EntryType, List<String[]>> entries) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(start);
+        for (int bound = start; bound < end; ) {
+            bound = nextLineStart(buffer, (int) Math.min((long) bound + CHUNK_SIZE, end), end);
+            bounds.add(bound);
+        }
+        List<Map<EntryType, List<String[]>>> chunks = IntStream.range(0, bounds.size() - 1).parallel()
+            .mapToObj(i -> tokenizeChunk(buffer, bounds.get(i), bounds.get(i + 1)))
+            .toList();
+        for (Map<EntryType, List<String[]>> chunk : chunks)
+            for (Map.Entry<EntryType, List<String[]>> typeEntries : chunk.entrySet())
+                entries.computeIfAbsent(typeEntries.getKey(), type -> new ArrayList<>()).addAll(typeEntries.getValue());
+    }
+
+    /**
+     * Tokenizes the lines of a chunk. The chunk is copied block by block into an array, which is scanned
+     * once for line terminators and separators. Only absolute reads are made on the buffer, so several
+     * chunks of the same buffer can be tokenized at once.
+     *
+     * @param buffer the buffer.
+     * @param from the position of the first line of the chunk.
+     * @param to the position after the last line of the chunk.
+     * @return the entries of each type in the chunk, in order.
+     */
+    private static Map<EntryType, List<String[]>> tokenizeChunk(ByteBuffer buffer, int from, int to) {
+        Map<EntryType, List<String[]>> entries = new EnumMap<>(EntryType.class);
+        byte[] block = new byte[Math.min(BLOCK_SIZE, to - from)];
+        int[] separators = new int[16];
+        int filled = 0;
+        int position = from;
+        while (true) {
+            int read = Math.min(block.length - filled, to - position);
+            buffer.get(position, block, filled, read);
+            position += read;
+            filled += read;
+            boolean last = position == to;
+
+            int lineStart = 0;
+            int count = 0;
+            for (int i = 0; i < filled; i++) {
+                byte b = block[i];
+                if (b == '|') {
+                    if (count == separators.length)
+                        separators = Arrays.copyOf(separators, 2 * count);
+                    separators[count++] = i;
+                } else if (b == '\n' || b == '\r') {
+                    if (b == '\r' && i + 1 == filled && !last)
+                        break;
+                    addEntry(entries, block, lineStart, i, separators, count);
+                    if (b == '\r' && i + 1 < filled && block[i + 1] == '\n')
+                        i++;
+                    lineStart = i + 1;
+                    count = 0;
+                }
+            }
+            if (last) {
+                if (lineStart < filled)
+                    addEntry(entries, block, lineStart, filled, separators, count);
+                return entries;
+            }
+            System.arraycopy(block, lineStart, block, 0, filled - lineStart);
+            filled -= lineStart;
+            if (filled == block.length)
+                block = Arrays.copyOf(block, 2 * block.length);
+        }
+    }
+
+    /**
+     * Splits a line into fields and adds it to the entries of its type.
+     *
+     * @param entries the entries of each type.
+     * @param block the bytes where the line is.
+     * @param start the position of the line.
+     * @param end the position after the line.
+     * @param separators the positions of the separators in the line.
+     * @param count the number of separators.
+     */
+    private static void addEntry(Map<EntryType, List<String[]>> entries, byte[] block, int start, int end, int[] separators, int count) {
+        String[] fields = split(block, start, end, separators, count);
+        EntryType type = EntryType.UNRECOGNIZED;
+        if (fields.length > 0) {
+            int tagEnd = count > 0 ? separators[0] : end;
+            int tag = recognizeTag(block, start, tagEnd);
+            if (tag >= 0) {
+                fields[0] = TAGS[tag];
+                type = TAG_TYPES[tag];
+            } else {
+                fields[0] = decode(block, start, tagEnd);
+            }
+        }
+        entries.computeIfAbsent(type, t -> new ArrayList<>()).add(fields);
+    }
+
+    /**
+     * Splits a line into fields, as {@code line.split("\\|")} does: trailing empty fields are dropped.
+     * The first field is left empty, for the caller to fill in.
+     *
+     * @param block the bytes where the line is.
+     * @param start the position of the line.
+     * @param end the position after the line.
+     * @param separators the positions of the separators in the line.
+     * @param count the number of separators.
+     * @return the fields of the line.
+     */
+    private static String[] split(byte[] block, int start, int end, int[] separators, int count) {
+        if (count == 0)
+            return new String[1];
+        int fields = count + 1;
+        while (fields > 0 && fieldStart(separators, start, fields - 1) == fieldEnd(separators, count, end, fields - 1))
+            fields--;
+        String[] result = new String[fields];
+        for (int i = 1; i < fields; i++)
+            result[i] = decode(block, fieldStart(separators, start, i), fieldEnd(separators, count, end, i));
+        return result;
+    }
+
+    /**
+     * @param separators the positions of the separators in the line.
+     * @param start the position of the line.
+     * @param field the index of the field.
+     * @return the position of the field.
+     */
+    private static int fieldStart(int[] separators, int start, int field) {
+        return field == 0 ? start : separators[field - 1] + 1;
+    }
+
+    /**
+     * @param separators the positions of the separators in the line.
+     * @param count the number of separators.
+     * @param end the position after the line.
+     * @param field the index of the field.
+     * @return the position after the field.
+     */
+    private static int fieldEnd(int[] separators, int count, int end, int field) {
+        return field == count ? end : separators[field];
+    }
+
+    /**
+     * Finds the known tag equal to the first field of a line.
+     *
+     * @param block the bytes where the line is.
+     * @param start the position of the line.
+     * @param end the position after the first field.
+     * @return the index of the tag, or -1 if the first field is not a known tag.
+     */
+    private static int recognizeTag(byte[] block, int start, int end) {
+        for (int i = 0; i < TAG_BYTES.length; i++) {
+            byte[] tag = TAG_BYTES[i];
+            if (Arrays.equals(tag, 0, tag.length, block, start, end))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes part of a line as UTF-8.
+     *
+     * @param line the bytes of the line.
+     * @param from the first byte.
+     * @param to the position after the last byte.
+     * @return the decoded string.
+     */
+    private static String decode(byte[] line, int from, int to) {
+        return new String(line, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the start of the first line at or after a position. A chunk never ends between {@code '\r'} and {@code '\n'}.
+     *
+     * @param buffer the buffer.
+     * @param position the position.
+     * @param end the end of the buffer.
+     * @return the start of the next line, or {@code end} if there is none.
+     */
+    private static int nextLineStart(ByteBuffer buffer, int position, int end) {
+        if (position >= end)
+            return end;
+        while (position < end && buffer.get(position - 1) != '\n')
+            position++;
+        return position;
+    }
+
+    /**
+     * Finds the position after the last {@code '\n'} of a region.
+     *
+     * @param region the region.
+     * @return the position after the last line feed, or 0 if there is none.
+     */
+    private static int lastLineEnd(ByteBuffer region) {
+        int position = region.limit();
+        while (position > 0 && region.get(position - 1) != '\n')
+            position--;
+        return position;
+    }
+
+    /**
+     * @param region the first region of the file.
+     * @return the length of the byte order mark at the start of the file, or 0 if there is none.
+     */
+    private static int byteOrderMarkLength(ByteBuffer region) {
+        return startsWith(region, BYTE_ORDER_MARK) ? BYTE_ORDER_MARK.length : 0;
+    }
+
+    /**
+     * @param buffer the buffer.
+     * @param bytes the bytes.
+     * @return {@code true} if the buffer, up to its limit, starts with the given bytes.
+     */
+    private static boolean startsWith(ByteBuffer buffer, byte[] bytes) {
+        if (buffer.limit() < bytes.length)
+            return false;
+        for (int i = 0; i < bytes.length; i++)
+            if (buffer.get(i) != bytes[i])
+                return false;
+        return true;
+    }
+}
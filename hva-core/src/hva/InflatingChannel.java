@@ -0,0 +1,221 @@
+package hva;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The {@code InflatingChannel} class decompresses the bytes of another channel, in the zlib format
+ * (as written by {@link DeflatingChannel}).
+ *
+ * <p>
+ * Reading the source and decompressing overlap: a reader thread reads the compressed bytes ahead, in
+ * blocks from a small pool, while they are decompressed by the thread that reads this channel. A
+ * failure of the reader is reported by the next call to {@link #read(ByteBuffer)}.
+ * </p>
+ *
+ * <p>
+ * The source channel is not closed.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_source: The channel from which the compressed bytes are read.</li>
+ *   <li>_inflater: The decompressor.</li>
+ *   <li>_free: The blocks ready to be filled with compressed bytes.</li>
+ *   <li>_filled: The blocks of compressed bytes waiting to be decompressed.</li>
+ *   <li>_block: The block being decompressed, or {@code null}.</li>
+ *   <li>_reader: The thread that reads the compressed bytes ahead.</li>
+ *   <li>_failure: The error of the reader, if any.</li>
+ *   <li>_stopped: Indicates if the reader must stop.</li>
+ *   <li>_open: Indicates if the channel can still be read.</li>
+ * </ul>
+ */
+final class InflatingChannel implements ReadableByteChannel {
+
+    /** Size of the blocks read ahead. */
+    private static final int BLOCK_SIZE = 1 << 18;
+
+    /** Number of blocks in the pool. */
+    private static final int POOL_SIZE = 4;
+
+    /** Marks the end of the source, in the queue of blocks. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /** The channel from which the compressed bytes are read. */
+    private final ReadableByteChannel _source;
+
+    /** The decompressor. */
+    private final Inflater _inflater = new Inflater();
+
+    /** The blocks ready to be filled with compressed bytes. */
+    private final BlockingQueue<ByteBuffer> _free = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /** The blocks of compressed bytes waiting to be decompressed. */
+    private final BlockingQueue<ByteBuffer> _filled = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+
+    /** The block being decompressed (or {@code null}). */
+    private ByteBuffer _block;
+
+    /** The thread that reads the compressed bytes ahead. */
+    private final Thread _reader;
+
+    /** The error of the reader, if any. */
+    private volatile IOException _failure;
+
+    /** Indicates if the reader must stop. */
+    private volatile boolean _stopped;
+
+    /** Indicates if the channel can still be read. */
+    private boolean _open = true;
+
+    /**
+     * Creates a channel that decompresses the given channel, from its current position.
+     *
+     * @param source the channel from which the compressed bytes are read.
+     */
+    InflatingChannel(ReadableByteChannel source) {
+        _source = source;
+        for (int i = 0; i < POOL_SIZE; i++)
+            _free.add(ByteBuffer.allocateDirect(BLOCK_SIZE));
+        _reader = new Thread(this::readBlocks, "hva-inflate-read");
+        _reader.setDaemon(true);
+        _reader.start();
+    }
+
+    /**
+     * Decompresses bytes into a buffer.
+     *
+     * @param target the buffer.
+     * @return the number of bytes decompressed, or {@code -1} at the end of the compressed bytes.
+     * @throws IOException if the source cannot be read, ends too soon or is not in the zlib format.
+     */
+    @Override
+    public int read(ByteBuffer target) throws IOException {
+        if (!_open)
+            throw new ClosedChannelException();
+        try {
+            int start = target.position();
+            while (target.hasRemaining() && !_inflater.finished()) {
+                if (_inflater.needsInput() && !nextBlock())
+                    throw new EOFException("Truncated snapshot");
+                if (_inflater.needsDictionary())
+                    throw new StreamCorruptedException("Unexpected compression dictionary");
+                _inflater.inflate(target);
+            }
+            int read = target.position() - start;
+            return read == 0 && _inflater.finished() ? -1 : read;
+        } catch (DataFormatException e) {
+            StreamCorruptedException corrupted = new StreamCorruptedException(e.getMessage());
+            corrupted.initCause(e);
+            throw corrupted;
+        }
+    }
+
+    /**
+     * Decompresses the rest of the bytes, if any, which checks that the compressed bytes are complete
+     * and match their checksum.
+     *
+     * @throws IOException if the source cannot be read, ends too soon or is not in the zlib format.
+     */
+    void finish() throws IOException {
+        ByteBuffer rest = ByteBuffer.allocate(1 << 12);
+        while (read(rest) >= 0)
+            rest.clear();
+    }
+
+    /**
+     * @return {@code true} if the channel can still be read.
+     */
+    @Override
+    public boolean isOpen() {
+        return _open;
+    }
+
+    /**
+     * Stops the reader and releases the decompressor. The source channel is not closed.
+     */
+    @Override
+    public void close() {
+        if (!_open)
+            return;
+        _open = false;
+        _stopped = true;
+        // the reader may be waiting for a free block
+        _free.clear();
+        if (_block != null)
+            _free.offer(_block);
+        _filled.clear();
+        try {
+            _reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _inflater.end();
+    }
+
+    /**
+     * Gives the next block of compressed bytes to the decompressor, returning the previous one to the pool.
+     *
+     * @return {@code false} if the source has ended.
+     * @throws IOException if the source cannot be read.
+     */
+    private boolean nextBlock() throws IOException {
+        try {
+            if (_block != null) {
+                _block.clear();
+                _free.put(_block);
+                _block = null;
+            }
+            ByteBuffer block = _filled.take();
+            if (block == END) {
+                _filled.put(END);
+                if (_failure != null)
+                    throw _failure;
+                return false;
+            }
+            _block = block;
+            _inflater.setInput(block);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Reads the source ahead, block by block, until it ends. Runs on the reader thread.
+     */
+    private void readBlocks() {
+        try {
+            while (!_stopped) {
+                ByteBuffer block = _free.poll(100, TimeUnit.MILLISECONDS);
+                if (block == null)
+                    continue;
+                int read = 0;
+                while (block.hasRemaining() && (read = _source.read(block)) >= 0)
+                    ;
+                block.flip();
+                if (block.hasRemaining())
+                    _filled.put(block);
+                if (read < 0)
+                    break;
+            }
+        } catch (IOException e) {
+            _failure = e;
+        } catch (InterruptedException e) {
+            _failure = new InterruptedIOException();
+        } finally {
+            _filled.offer(END);
+        }
+    }
+}
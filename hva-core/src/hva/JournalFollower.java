@@ -0,0 +1,300 @@
+package hva;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code JournalFollower} class keeps a read-only hotel up to date with a snapshot saved by another
+ * process, by tailing the journal where that process records the operations that change its hotel (see
+ * {@link HotelJournal}).
+ *
+ * <p>
+ * The hotel is first read from the snapshot and its deltas (see {@link FollowerHotel}). A follow thread
+ * then reads the journal every few milliseconds, from where it stopped, and queues the operations that
+ * follow the hotel on it; the hotel applies them when it is next queried. Records still being written are
+ * left for the next time, as when a journal is replayed.
+ * </p>
+ *
+ * <p>
+ * The journal starts over whenever the other process saves its hotel, with a record of the last operation
+ * the save includes. If the operations of the journal no longer follow the hotel, because it started over
+ * before they were read, or one could not be applied, the hotel is read again from the snapshot, which
+ * holds them, on the follow thread; the hotel queried until then is left as it was, and replaced by the
+ * manager (see {@link HotelManager#follow(String)}). The fewer milliseconds between reads, the less often
+ * that happens. A journal that cannot be read is tried again at the next read.
+ * </p>
+ *
+ * <p>
+ * The follower knows the last operation recorded in the journal when it was last read, so it can tell how
+ * many operations the hotel queried lags behind the other process, and since when.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_snapshot: The snapshot file.</li>
+ *   <li>_journal: The journal file of the snapshot.</li>
+ *   <li>_scheduler: The follow thread.</li>
+ *   <li>_hotel: The latest hotel, on which the operations of the journal are queued.</li>
+ *   <li>_served: The hotel last handed to the manager.</li>
+ *   <li>_read: The sequence number of the last operation queued on the latest hotel, or included in it.</li>
+ *   <li>_start: The sequence number in the start record of the journal, when it was last read.</li>
+ *   <li>_position: Where the next record of the journal starts, or -1 if it is read from its first record.</li>
+ *   <li>_latest: The sequence number of the last operation known to be in the journal.</li>
+ *   <li>_readNanos: When the journal was last read to its end, in nanoseconds.</li>
+ *   <li>_behindSince: When the latest hotel was found not to follow the journal, in nanoseconds, or 0.</li>
+ *   <li>_nextReloadNanos: When the hotel can be read again from the snapshot, in nanoseconds.</li>
+ *   <li>_failing: Indicates if the last read failed, so the next failures are not reported again.</li>
+ * </ul>
+ */
+final class JournalFollower implements Closeable {
+
+    /** Least time between two reads of the hotel from the snapshot, in milliseconds. */
+    private static final long RELOAD_MILLIS = 1000;
+
+    /** The snapshot file. */
+    private final Path _snapshot;
+
+    /** The journal file of the snapshot. */
+    private final Path _journal;
+
+    /** The follow thread. */
+    private final ScheduledExecutorService _scheduler;
+
+    /** The latest hotel, on which the operations of the journal are queued. */
+    private volatile FollowerHotel _hotel;
+
+    /** The hotel last handed to the manager (or {@code null}). */
+    private FollowerHotel _served;
+
+    /** The sequence number of the last operation queued on the latest hotel, or included in it. */
+    private long _read;
+
+    /** The sequence number in the start record of the journal, when it was last read (-1 before version 2). */
+    private long _start = -1;
+
+    /** Where the next record of the journal starts (or -1 if it is read from its first record). */
+    private long _position = -1;
+
+    /** The sequence number of the last operation known to be in the journal. */
+    private volatile long _latest;
+
+    /** When the journal was last read to its end, in nanoseconds. */
+    private volatile long _readNanos;
+
+    /** When the latest hotel was found not to follow the journal, in nanoseconds (or 0). */
+    private volatile long _behindSince;
+
+    /** When the hotel can be read again from the snapshot, in nanoseconds. */
+    private long _nextReloadNanos;
+
+    /** Indicates if the last read failed. */
+    private boolean _failing;
+
+    /**
+     * Reads the hotel from a snapshot and the operations already in its journal, and starts following
+     * the journal.
+     *
+     * @param snapshot the snapshot file.
+     * @param pollMillis the interval between reads of the journal, in milliseconds.
+     * @throws IOException if the snapshot cannot be read, is not a snapshot, or is corrupted.
+     */
+    JournalFollower(Path snapshot, long pollMillis) throws IOException {
+        _snapshot = snapshot;
+        _journal = HotelJournal.pathOf(snapshot);
+        _hotel = FollowerHotel.read(snapshot);
+        _read = _hotel.getJournalSequence();
+        _latest = _read;
+        _readNanos = System.nanoTime();
+        _nextReloadNanos = _readNanos;
+        poll();
+        _scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "hva-follow");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _scheduler.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands the latest hotel to the manager, which queries it from then on instead of the one before.
+     *
+     * @return the latest hotel.
+     */
+    synchronized FollowerHotel hotel() {
+        _served = _hotel;
+        return _served;
+    }
+
+    /**
+     * @param hotel the hotel queried, caught up with the operations queued on it.
+     * @return the number of operations recorded in the journal, when it was last read, that the hotel does not include.
+     */
+    long lagOperations(Hotel hotel) {
+        return Math.max(0, _latest - hotel.getJournalSequence());
+    }
+
+    /**
+     * @param hotel the hotel queried, caught up with the operations queued on it.
+     * @return for how long the hotel is known to have been behind the journal, in milliseconds: since the
+     *         journal was last read, if the hotel includes every operation read, or else since it was found
+     *         not to follow the journal.
+     */
+    long lagMillis(Hotel hotel) {
+        long behindSince = _behindSince;
+        long since = lagOperations(hotel) > 0 && behindSince != 0 ? behindSince : _readNanos;
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+    }
+
+    /**
+     * Reads the new records of the journal, reading the hotel again from the snapshot if they do not
+     * follow it. Runs on the follow thread, after the first time.
+     */
+    private void poll() {
+        try {
+            if (_hotel.hasDiverged())
+                reload();
+            if (!read() && reload())
+                read();
+            _failing = false;
+        } catch (IOException | UncheckedIOException e) {
+            // the snapshot or the journal may be being written: they are read again next time
+            if (!_failing)
+                e.printStackTrace();
+            _failing = true;
+        }
+    }
+
+    /**
+     * Reads the records of the journal after the last one read, and queues the operations that follow
+     * the hotel on it.
+     *
+     * @return {@code false} if an operation does not follow the hotel, or the journal started over after
+     *         operations the hotel does not include, {@code true} if it was read to its end.
+     * @throws IOException if the journal cannot be read, or is not a journal.
+     */
+    private boolean read() throws IOException {
+        if (!Files.exists(_journal)) {
+            // the snapshot has no journal yet: nothing was recorded after it
+            caughtUp();
+            return true;
+        }
+        FileChannel channel = FileChannel.open(_journal, StandardOpenOption.READ);
+        try (SnapshotInput in = new SnapshotInput(channel)) {
+            long size = channel.size();
+            if (size < HotelJournal.HEADER_SIZE)
+                // starting over: read next time
+                return true;
+            int version = in.readHeader(HotelJournal.MAGIC);
+            if (version > HotelJournal.VERSION)
+                throw new InvalidObjectException("Unsupported journal version " + version);
+            long start = -1;
+            if (version >= 2) {
+                if (!in.nextChecksummedRecord())
+                    // starting over: read next time
+                    return true;
+                HotelJournal.Operation first = HotelJournal.read(in);
+                if (first.operation() != HotelJournal.START)
+                    throw new StreamCorruptedException("Journal without a start record");
+                start = first.sequence();
+            }
+            long records = in.position();
+            if (_position < 0 || start != _start || size < _position) {
+                // the journal started over since it was last read: it is read again once it follows the hotel
+                _latest = Math.max(_latest, start);
+                if (start > _read)
+                    return behind();
+                _start = start;
+                _position = records;
+            }
+            SnapshotInput tail = new SnapshotInput(channel.position(_position));
+            while (tail.nextChecksummedRecord()) {
+                HotelJournal.Operation operation = HotelJournal.read(tail);
+                _latest = Math.max(_latest, operation.sequence());
+                if (operation.sequence() > _read) {
+                    if (operation.operation() == HotelJournal.START || operation.sequence() != _read + 1)
+                        return behind();
+                    _hotel.enqueue(operation);
+                    _read = operation.sequence();
+                }
+                _position = tail.position();
+            }
+            caughtUp();
+            return true;
+        }
+    }
+
+    /**
+     * Notes that the latest hotel includes, or has queued, every operation of the journal.
+     */
+    private void caughtUp() {
+        _readNanos = System.nanoTime();
+        _behindSince = 0;
+    }
+
+    /**
+     * Notes that the operations of the journal no longer follow the latest hotel.
+     *
+     * @return {@code false}.
+     */
+    private boolean behind() {
+        if (_behindSince == 0)
+            _behindSince = System.nanoTime();
+        return false;
+    }
+
+    /**
+     * Reads the hotel again from the snapshot and its deltas, unless that was done less than
+     * {@link #RELOAD_MILLIS} ago, and reads the journal from its first record for it. A hotel that does not
+     * include more operations than the latest one is discarded, unless the latest one diverged.
+     *
+     * @return {@code true} if the hotel was read.
+     * @throws IOException if the snapshot cannot be read or is corrupted.
+     */
+    private boolean reload() throws IOException {
+        long now = System.nanoTime();
+        if (now - _nextReloadNanos < 0)
+            return false;
+        _nextReloadNanos = now + TimeUnit.MILLISECONDS.toNanos(RELOAD_MILLIS);
+        behind();
+        FollowerHotel hotel = FollowerHotel.read(_snapshot);
+        if (hotel.getJournalSequence() <= _read && !_hotel.hasDiverged()) {
+            hotel.closeVaccinationHistory();
+            return false;
+        }
+        FollowerHotel previous;
+        synchronized (this) {
+            if (_scheduler != null && _scheduler.isShutdown()) {
+                hotel.closeVaccinationHistory();
+                return false;
+            }
+            previous = _hotel;
+            _hotel = hotel;
+            if (previous != _served)
+                previous.closeVaccinationHistory();
+        }
+        _read = hotel.getJournalSequence();
+        _latest = Math.max(_latest, _read);
+        _position = -1;
+        return true;
+    }
+
+    /**
+     * Stops following the journal. The latest hotel is closed, unless it was handed to the manager.
+     */
+    @Override
+    public synchronized void close() {
+        _scheduler.shutdownNow();
+        if (_hotel != _served)
+            _hotel.closeVaccinationHistory();
+    }
+}
@@ -0,0 +1,552 @@
+package hva;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hva.employee.Employee;
+import hva.exceptions.duplicated.DuplicatedAnimalIdException;
+import hva.exceptions.duplicated.DuplicatedEmployeeIdException;
+import hva.exceptions.duplicated.DuplicatedHabitatIdException;
+import hva.exceptions.duplicated.DuplicatedSpeciesIdException;
+import hva.exceptions.duplicated.DuplicatedSpeciesNameException;
+import hva.exceptions.duplicated.DuplicatedTreeIdException;
+import hva.exceptions.duplicated.DuplicatedVaccineIdException;
+import hva.exceptions.unknown.UnknownAnimalIdException;
+import hva.exceptions.unknown.UnknownEmployeeIdException;
+import hva.exceptions.unknown.UnknownHabitatIdException;
+import hva.exceptions.unknown.UnknownSpeciesIdException;
+import hva.exceptions.unknown.UnknownSpeciesNameException;
+import hva.exceptions.unknown.UnknownTreeIdException;
+import hva.exceptions.unknown.UnknownVaccineIdException;
+import hva.exceptions.unknown.UnknownVeterinarianIdException;
+import hva.tree.Tree;
+
+/**
+ * The {@code ReadOnlyHotel} class is a hotel that can only be queried, opened from a memory-mapped
+ * snapshot (see {@link SnapshotFormat}).
+ *
+ * <p>
+ * Opening the hotel maps the snapshot and notes where each section starts, from its table of contents
+ * (see {@link SnapshotContents}), without decoding any entity.
+ * A section is decoded the first time a query needs it, along with the sections it refers to: listing
+ * the vaccines only decodes the species and the vaccines, and looking up an animal decodes the species,
+ * the trees, the habitats and the animals, but not the employees. The vaccination history is decoded last,
+ * when the vaccinations are first needed (see {@link VaccinationHistory}). Satisfaction queries need the
+ * population of species and habitats and who is responsible for them, so they decode the animals and the
+ * employees. The mapped bytes are shared, through the page cache, by every process that opens the snapshot.
+ * </p>
+ *
+ * <p>
+ * Every operation that would change the hotel throws an {@link UnsupportedOperationException}. The hotel is
+ * the one in the snapshot: the operations recorded in its journal since it was saved are not replayed.
+ * A compressed snapshot cannot be mapped, so it is decoded when it is opened. The deltas saved after the
+ * snapshot, if any, are applied when it is opened (see {@link SnapshotDelta}), which decodes the entities
+ * first, but not the vaccination history.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_snapshot: The mapped snapshot, or {@code null} if it was decoded when it was opened.</li>
+ *   <li>_sections: Where the sections not yet decoded start, by tag, in order.</li>
+ *   <li>_tables: The entities decoded so far, which decode their section when one is referred to first.</li>
+ *   <li>_history: The vaccination history, not yet decoded, or {@code null}.</li>
+ *   <li>_decoding: Indicates if a section is being decoded, when entities may be added to the hotel.</li>
+ *   <li>_failure: The error that stopped a section from being decoded, which every later query throws.</li>
+ * </ul>
+ */
+final class ReadOnlyHotel extends Hotel {
+
+    /** Class serial number for serialization purposes. */
+    @Serial
+    private static final long serialVersionUID = 202610171200L;
+
+    /** The mapped snapshot (or {@code null} if it was decoded when it was opened). */
+    private final transient ByteBuffer _snapshot;
+
+    /** Where the sections not yet decoded start, by tag, in order. */
+    private final transient Map<Byte, List<SnapshotReader.Section>> _sections = new HashMap<>();
+
+    /** The entities decoded so far, which decode their section when one is referred to first. */
+    private final transient SnapshotTables _tables = new SnapshotTables() {
+        @Override
+        void decode(byte tag) {
+            ensure(tag);
+        }
+    };
+
+    /** The vaccination history, not yet decoded (or {@code null}). */
+    private transient VaccinationHistory _history;
+
+    /** Indicates if a section is being decoded, when entities may be added to the hotel. */
+    private transient boolean _decoding;
+
+    /** The error that stopped a section from being decoded (or {@code null}). */
+    private transient UncheckedIOException _failure;
+
+    /**
+     * @param snapshot the mapped snapshot, or {@code null} if it is decoded right away.
+     */
+    private ReadOnlyHotel(ByteBuffer snapshot) {
+        _snapshot = snapshot;
+    }
+
+    /**
+     * Opens a snapshot file as a read-only hotel.
+     *
+     * @param path the file.
+     * @return the hotel.
+     * @throws IOException if the file cannot be read, is not a snapshot, or is corrupted.
+     */
+    static ReadOnlyHotel open(Path path) throws IOException {
+        return SnapshotDelta.read(path, () -> readOnce(path), Hotel::closeVaccinationHistory);
+    }
+
+    /**
+     * Reads a snapshot file and its deltas as a read-only hotel, once.
+     *
+     * @param path the file.
+     * @return the hotel.
+     * @throws IOException if the file cannot be read, is not a snapshot, or is corrupted.
+     */
+    private static ReadOnlyHotel readOnce(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (Arrays.equals(SnapshotFormat.readMagic(channel), SnapshotFormat.COMPRESSED_MAGIC)) {
+                ReadOnlyHotel hotel = new ReadOnlyHotel(null);
+                hotel._decoding = true;
+                SnapshotReader.read(path, hotel);
+                SnapshotDelta.apply(path, hotel);
+                hotel._decoding = false;
+                return hotel;
+            }
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new InvalidObjectException("Snapshot too large to be mapped");
+            ReadOnlyHotel hotel = new ReadOnlyHotel(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            hotel.index();
+            if (hotel.getSnapshotLineage() != 0 && !SnapshotDelta.numbers(path).isEmpty())
+                hotel.applyDeltas(path);
+            return hotel;
+        }
+    }
+
+    /**
+     * Notes where each section of the snapshot starts, from its table of contents or stepping over their
+     * records, and reads the hotel-wide state.
+     *
+     * @throws IOException if the snapshot is not in the binary format or is corrupted.
+     */
+    private void index() throws IOException {
+        SnapshotInput in = new SnapshotInput(_snapshot.duplicate());
+        int version = in.readHeader(SnapshotFormat.MAGIC);
+        SnapshotReader.checkVersion(version);
+        _tables.setVersion(version);
+        List<SnapshotReader.Section> history = new ArrayList<>();
+        for (SnapshotReader.Section section : SnapshotContents.read(_snapshot, version)) {
+            byte tag = section.tag();
+            if (tag == SnapshotFormat.HOTEL)
+                decode(section);
+            else if (tag == SnapshotFormat.VACCINATION_HISTORY && section.count() == 1)
+                history.add(SnapshotReader.checkHistoryVersion(section));
+            else if (tag != SnapshotFormat.VACCINATION_HISTORY)
+                _sections.computeIfAbsent(tag, t -> new ArrayList<>()).add(section);
+        }
+        if (!history.isEmpty()) {
+            _history = new VaccinationHistory(this, _tables, _snapshot, history);
+            deferVaccinationHistory(_history);
+        }
+        setChanged(false);
+    }
+
+    /**
+     * Applies the deltas saved after the snapshot, once the entities they change are decoded.
+     *
+     * @param path the snapshot file.
+     * @throws IOException if a delta cannot be read or is corrupted.
+     */
+    private void applyDeltas(Path path) throws IOException {
+        try {
+            ensure(SnapshotFormat.SPECIES, SnapshotFormat.TREES, SnapshotFormat.HABITATS, SnapshotFormat.ANIMALS,
+                SnapshotFormat.EMPLOYEES, SnapshotFormat.VACCINES);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        _decoding = true;
+        try {
+            SnapshotDelta.apply(path, this);
+        } finally {
+            _decoding = false;
+        }
+        setChanged(false);
+    }
+
+    /**
+     * Decodes the given sections, if they were not decoded yet.
+     *
+     * @param tags the tags of the sections.
+     * @throws UncheckedIOException if a section is corrupted, now or when a section was decoded before.
+     */
+    private synchronized void ensure(byte... tags) {
+        if (_failure != null)
+            throw _failure;
+        for (byte tag : tags) {
+            // removed first, so that a section is not decoded again by the lookups it makes
+            List<SnapshotReader.Section> sections = _sections.remove(tag);
+            if (sections == null)
+                continue;
+            try {
+                for (SnapshotReader.Section section : sections)
+                    decode(section);
+            } catch (UncheckedIOException e) {
+                _failure = e;
+                throw e;
+            }
+            if (tag == SnapshotFormat.VACCINES) {
+                // the vaccines count their vaccinations, so they read the history first
+                if (_history != null)
+                    deferVaccinationHistory(_history);
+                ensure(SnapshotFormat.VACCINATIONS);
+            }
+        }
+    }
+
+    /**
+     * Decodes a section. The sections it refers to are decoded as their entities are looked up.
+     *
+     * @param section where the section starts.
+     * @throws UncheckedIOException if the section is corrupted.
+     */
+    private void decode(SnapshotReader.Section section) {
+        boolean decoding = _decoding;
+        _decoding = true;
+        try {
+            SnapshotInput in = new SnapshotInput(_snapshot.duplicate().position((int) section.offset()));
+            in.migrate(section.tag(), section.version(), _tables.byPosition());
+            new SnapshotReader(in, this, null, _tables).readSection(section.tag(), section.count(), section.first());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            _decoding = decoding;
+        }
+    }
+
+    /**
+     * @return an exception for an operation that would change the hotel.
+     */
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Read-only hotel");
+    }
+
+    /**
+     * Rejects entities added to the hotel other than by decoding the snapshot.
+     *
+     * @throws UnsupportedOperationException if no section is being decoded.
+     */
+    private void checkDecoding() {
+        if (!_decoding)
+            throw readOnly();
+    }
+
+    /** @see Hotel#isReadOnly() */
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    /**
+     * Decoding a section adds its entities, but does not change the hotel.
+     *
+     * @see Hotel#hasChanged()
+     */
+    @Override
+    public boolean hasChanged() {
+        return false;
+    }
+
+    // queries: the sections they need are decoded first
+
+    @Override
+    public Species getSpecies(String id) throws UnknownSpeciesIdException {
+        ensure(SnapshotFormat.SPECIES);
+        return super.getSpecies(id);
+    }
+
+    @Override
+    public Species getSpeciesByName(String name) throws UnknownSpeciesNameException {
+        ensure(SnapshotFormat.SPECIES);
+        return super.getSpeciesByName(name);
+    }
+
+    @Override
+    public Tree getTree(String id) throws UnknownTreeIdException {
+        ensure(SnapshotFormat.TREES);
+        return super.getTree(id);
+    }
+
+    @Override
+    public Habitat getHabitat(String id) throws UnknownHabitatIdException {
+        ensure(SnapshotFormat.HABITATS);
+        return super.getHabitat(id);
+    }
+
+    @Override
+    public Animal getAnimal(String id) throws UnknownAnimalIdException {
+        ensure(SnapshotFormat.ANIMALS);
+        return super.getAnimal(id);
+    }
+
+    @Override
+    public Employee getEmployee(String id) throws UnknownEmployeeIdException {
+        ensure(SnapshotFormat.EMPLOYEES);
+        return super.getEmployee(id);
+    }
+
+    @Override
+    public Vaccine getVaccine(String id) throws UnknownVaccineIdException {
+        ensure(SnapshotFormat.VACCINES);
+        return super.getVaccine(id);
+    }
+
+    @Override
+    Collection<Species> allSpecies() {
+        ensure(SnapshotFormat.SPECIES);
+        return super.allSpecies();
+    }
+
+    @Override
+    Collection<Tree> allTrees() {
+        ensure(SnapshotFormat.TREES);
+        return super.allTrees();
+    }
+
+    @Override
+    public Collection<Habitat> allHabitats() {
+        ensure(SnapshotFormat.HABITATS);
+        return super.allHabitats();
+    }
+
+    @Override
+    public Collection<Animal> allAnimals() {
+        ensure(SnapshotFormat.ANIMALS);
+        return super.allAnimals();
+    }
+
+    @Override
+    public Collection<Employee> allEmployees() {
+        ensure(SnapshotFormat.EMPLOYEES);
+        return super.allEmployees();
+    }
+
+    @Override
+    public Collection<Vaccine> allVaccines() {
+        ensure(SnapshotFormat.VACCINES);
+        return super.allVaccines();
+    }
+
+    @Override
+    public Collection<Tree> allTreesInHabitat(String habitatId) throws UnknownHabitatIdException {
+        ensure(SnapshotFormat.HABITATS);
+        return super.allTreesInHabitat(habitatId);
+    }
+
+    @Override
+    public Collection<Animal> allAnimalsInHabitat(String habitatId) throws UnknownHabitatIdException {
+        ensure(SnapshotFormat.ANIMALS);
+        return super.allAnimalsInHabitat(habitatId);
+    }
+
+    @Override
+    public int animalSatisfaction(String animalId) throws UnknownAnimalIdException {
+        ensure(SnapshotFormat.ANIMALS);
+        return super.animalSatisfaction(animalId);
+    }
+
+    @Override
+    public int employeeSatisfaction(String employeeId) throws UnknownEmployeeIdException {
+        ensure(SnapshotFormat.ANIMALS, SnapshotFormat.EMPLOYEES);
+        return super.employeeSatisfaction(employeeId);
+    }
+
+    @Override
+    public int globalSatisfaction() {
+        ensure(SnapshotFormat.ANIMALS, SnapshotFormat.EMPLOYEES);
+        return super.globalSatisfaction();
+    }
+
+    @Override
+    public Collection<Vaccination> allVaccinations() {
+        ensure(SnapshotFormat.VACCINES);
+        return super.allVaccinations();
+    }
+
+    @Override
+    public Collection<Vaccination> animalVaccinations(String animalId) throws UnknownAnimalIdException {
+        ensure(SnapshotFormat.VACCINES);
+        return super.animalVaccinations(animalId);
+    }
+
+    @Override
+    public Collection<Vaccination> veterinarianVaccinations(String veterinarianId) throws UnknownVeterinarianIdException {
+        ensure(SnapshotFormat.VACCINES);
+        return super.veterinarianVaccinations(veterinarianId);
+    }
+
+    @Override
+    public Collection<Vaccination> wrongVaccinations() {
+        ensure(SnapshotFormat.VACCINES);
+        return super.wrongVaccinations();
+    }
+
+    // entities are only added while the snapshot is decoded
+
+    @Override
+    public void addSpecies(String key, Species species) throws DuplicatedSpeciesIdException,
+        DuplicatedSpeciesNameException {
+        checkDecoding();
+        super.addSpecies(key, species);
+    }
+
+    @Override
+    public void addHabitat(String key, Habitat habitat) throws DuplicatedHabitatIdException {
+        checkDecoding();
+        super.addHabitat(key, habitat);
+    }
+
+    @Override
+    public void addAnimal(String key, Animal animal) throws DuplicatedAnimalIdException {
+        checkDecoding();
+        super.addAnimal(key, animal);
+    }
+
+    @Override
+    public void addEmployee(String key, Employee employee) throws DuplicatedEmployeeIdException {
+        checkDecoding();
+        super.addEmployee(key, employee);
+    }
+
+    @Override
+    public void addVaccine(String key, Vaccine vaccine) throws DuplicatedVaccineIdException {
+        checkDecoding();
+        super.addVaccine(key, vaccine);
+    }
+
+    @Override
+    public void addTree(String key, Tree tree) throws DuplicatedTreeIdException {
+        checkDecoding();
+        super.addTree(key, tree);
+    }
+
+    @Override
+    public void addVaccination(Vaccination vaccination) {
+        checkDecoding();
+        super.addVaccination(vaccination);
+    }
+
+    @Override
+    public void addWrongVaccination(Vaccination wrongVaccination) {
+        checkDecoding();
+        super.addWrongVaccination(wrongVaccination);
+    }
+
+    // operations that change the hotel
+
+    @Override
+    public void importFile(String filename) {
+        throw readOnly();
+    }
+
+    @Override
+    public void registerEntry(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public void registerSpecies(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public void registerHabitat(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public void registerAnimal(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public void registerEmployee(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public void registerVaccine(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public Tree registerTree(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public void registerInfluence(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public void registerVaccination(String... fields) {
+        throw readOnly();
+    }
+
+    @Override
+    public void changeHabitatArea(String habitatId, int area) {
+        throw readOnly();
+    }
+
+    @Override
+    public Tree addTreeToHabitat(String habitatId, String treeId, String treeName, String treeAge, String treeDifficulty, String treeType) {
+        throw readOnly();
+    }
+
+    @Override
+    public void transferToHabitat(String animalId, String habitatId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void changeInfluenceOfHabitat(String habitatId, String speciesId, String influence) {
+        throw readOnly();
+    }
+
+    @Override
+    public int advanceSeason() {
+        throw readOnly();
+    }
+
+    @Override
+    public void addResponsability(String employeeId, String responsabilityId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeResponsability(String employeeId, String responsabilityId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void vaccinateAnimal(String vaccineId, String veterinarianId, String animalId) {
+        throw readOnly();
+    }
+}
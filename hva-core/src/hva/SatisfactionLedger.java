@@ -0,0 +1,379 @@
+package hva;
+
+import java.io.Serial;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import hva.employee.Employee;
+import hva.employee.Veterinarian;
+import hva.employee.Zookeeper;
+import hva.enums.SatisfactionMode;
+
+/**
+ * The {@code SatisfactionLedger} class keeps a running total of the satisfaction of every animal and
+ * employee of a {@code Hotel}, so that the global satisfaction can be answered without visiting the whole hotel.
+ *
+ * <p>
+ * The total is split into contributions: one per habitat (the sum of the satisfaction of the animals living
+ * in it) and one per employee. Mutations of the hotel only mark the affected contributions as dirty; the next
+ * query recomputes the dirty contributions and applies the difference to the total. When nothing changed since
+ * the last query, the total is returned in constant time.
+ * </p>
+ *
+ * <p>
+ * Contributions and the total are kept as exact decimal sums of the {@code double} values produced by the
+ * satisfaction strategies, so the total never drifts and is always equal to a full recomputation of the same values.
+ * </p>
+ *
+ * <p>
+ * When many contributions must be recomputed at once, they can be evaluated in {@link SatisfactionMode#PARALLEL}
+ * mode: animals are partitioned by habitat and employees by type, and the partitions are evaluated on the common
+ * fork/join pool. Since exact sums do not depend on the order of the additions, the result is identical to the
+ * sequential evaluation. Each habitat is evaluated by a single task, and evaluating satisfactions only reads the hotel.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_total: The exact sum of all contributions.</li>
+ *   <li>_habitatContributions: The satisfaction of the animals of each habitat, keyed by habitat ID.</li>
+ *   <li>_employeeContributions: The satisfaction of each employee, keyed by employee ID.</li>
+ *   <li>_dirtyHabitats: The habitats whose contribution must be recomputed.</li>
+ *   <li>_dirtyEmployees: The employees whose contribution must be recomputed.</li>
+ *   <li>_zookeepersDirty: Whether every zookeeper must be recomputed (e.g. after a season change).</li>
+ *   <li>_allDirty: Whether every contribution must be recomputed.</li>
+ * </ul>
+ */
+class SatisfactionLedger {
+
+    /** Number of contributions evaluated by each fork/join task. */
+    private static final int PARTITION_SIZE = 16;
+
+    /** The exact sum of all contributions. */
+    private BigDecimal _total = BigDecimal.ZERO;
+
+    /** The satisfaction of the animals of each habitat, keyed by habitat ID. */
+    private Map<String, BigDecimal> _habitatContributions = new HashMap<>();
+
+    /** The satisfaction of each employee, keyed by employee ID. */
+    private Map<String, BigDecimal> _employeeContributions = new HashMap<>();
+
+    /** The habitats whose contribution must be recomputed. */
+    private Set<Habitat> _dirtyHabitats = new HashSet<>();
+
+    /** The employees whose contribution must be recomputed. */
+    private Set<Employee> _dirtyEmployees = new HashSet<>();
+
+    /** Whether every zookeeper must be recomputed. */
+    private boolean _zookeepersDirty = false;
+
+    /** Whether every contribution must be recomputed. */
+    private boolean _allDirty = true;
+
+    /**
+     * Marks a habitat whose population or area changed.
+     *
+     * <p>Both its animals and the zookeepers that work in it are affected.</p>
+     *
+     * @param habitat the habitat that changed.
+     */
+    void habitatChanged(Habitat habitat) {
+        _dirtyHabitats.add(habitat);
+        staffChanged(habitat);
+    }
+
+    /**
+     * Marks a habitat whose influence on some species changed.
+     *
+     * <p>Only its animals are affected.</p>
+     *
+     * @param habitat the habitat that changed.
+     */
+    void influenceChanged(Habitat habitat) {
+        _dirtyHabitats.add(habitat);
+    }
+
+    /**
+     * Marks the zookeepers of a habitat, whose work changed (e.g. trees or zookeepers were added or removed).
+     *
+     * @param habitat the habitat whose zookeepers are affected.
+     */
+    void staffChanged(Habitat habitat) {
+        _dirtyEmployees.addAll(habitat.allZookeepers());
+    }
+
+    /**
+     * Marks the veterinarians of a species, whose work changed (e.g. its population or its veterinarians changed).
+     *
+     * @param species the species whose veterinarians are affected.
+     */
+    void staffChanged(Species species) {
+        _dirtyEmployees.addAll(species.allVeterinarians());
+    }
+
+    /**
+     * Marks an animal that was added to, or removed from, its current habitat.
+     *
+     * @param animal the animal that moved.
+     */
+    void animalMoved(Animal animal) {
+        habitatChanged(animal.getHabitat());
+        staffChanged(animal.getSpecies());
+    }
+
+    /**
+     * Marks an employee whose responsibilities changed, together with the co-workers that share them.
+     *
+     * @param employee the employee that changed.
+     */
+    void employeeChanged(Employee employee) {
+        _dirtyEmployees.add(employee);
+        if (employee instanceof Zookeeper zookeeper) {
+            for (Habitat habitat : zookeeper.allHabitats())
+                staffChanged(habitat);
+        }
+        if (employee instanceof Veterinarian veterinarian) {
+            for (Species species : veterinarian.allSpecies())
+                staffChanged(species);
+        }
+    }
+
+    /**
+     * Marks every zookeeper, since the cleaning effort of the trees changes with the season.
+     */
+    void seasonChanged() {
+        _zookeepersDirty = true;
+    }
+
+    /**
+     * Marks every contribution as dirty.
+     */
+    void invalidate() {
+        _allDirty = true;
+    }
+
+    /**
+     * Returns the exact sum of the satisfaction of all animals and employees, recomputing only the
+     * contributions that were marked since the last call.
+     *
+     * @param habitats all the habitats of the hotel.
+     * @param employees all the employees of the hotel.
+     * @param mode how the marked contributions are evaluated.
+     * @param threshold number of animals and employees below which the evaluation is always sequential.
+     * @return the exact global satisfaction.
+     */
+    BigDecimal total(Collection<Habitat> habitats, Collection<Employee> employees, SatisfactionMode mode, int threshold) {
+        if (_allDirty) {
+            _total = BigDecimal.ZERO;
+            _habitatContributions.clear();
+            _employeeContributions.clear();
+            _dirtyHabitats.addAll(habitats);
+            _dirtyEmployees.addAll(employees);
+            _zookeepersDirty = false;
+            _allDirty = false;
+        }
+        if (_zookeepersDirty) {
+            for (Employee employee : employees) {
+                if (employee instanceof Zookeeper)
+                    _dirtyEmployees.add(employee);
+            }
+            _zookeepersDirty = false;
+        }
+        List<Habitat> dirtyHabitats = new ArrayList<>(_dirtyHabitats);
+        List<Employee> dirtyEmployees = byType(_dirtyEmployees);
+        BigDecimal[] values = evaluate(dirtyHabitats, dirtyEmployees, mode, threshold);
+        for (int i = 0; i < dirtyHabitats.size(); i++)
+            update(_habitatContributions, dirtyHabitats.get(i).getId(), values[i]);
+        for (int i = 0; i < dirtyEmployees.size(); i++)
+            update(_employeeContributions, dirtyEmployees.get(i).getId(), values[dirtyHabitats.size() + i]);
+        _dirtyHabitats.clear();
+        _dirtyEmployees.clear();
+        return _total;
+    }
+
+    /**
+     * Computes the exact sum of the satisfaction of every animal and employee, ignoring the running total.
+     *
+     * @param habitats all the habitats of the hotel.
+     * @param employees all the employees of the hotel.
+     * @param mode how the satisfactions are evaluated.
+     * @param threshold number of animals and employees below which the evaluation is always sequential.
+     * @return the exact global satisfaction.
+     */
+    static BigDecimal recompute(Collection<Habitat> habitats, Collection<Employee> employees, SatisfactionMode mode, int threshold) {
+        BigDecimal satisfaction = BigDecimal.ZERO;
+        for (BigDecimal value : evaluate(new ArrayList<>(habitats), byType(employees), mode, threshold))
+            satisfaction = satisfaction.add(value);
+        return satisfaction;
+    }
+
+    /**
+     * Evaluates the contribution of each habitat and employee.
+     *
+     * @param habitats the habitats to evaluate.
+     * @param employees the employees to evaluate.
+     * @param mode how the contributions are evaluated.
+     * @param threshold number of animals and employees below which the evaluation is always sequential.
+     * @return the contributions of the habitats, followed by the contributions of the employees.
+     */
+    private static BigDecimal[] evaluate(List<Habitat> habitats, List<Employee> employees, SatisfactionMode mode, int threshold) {
+        Evaluation evaluation = new Evaluation(habitats, employees);
+        int work = employees.size();
+        for (Habitat habitat : habitats)
+            work += habitat.getPopulation();
+        if (mode == SatisfactionMode.PARALLEL && work >= threshold)
+            ForkJoinPool.commonPool().invoke(evaluation);
+        else
+            evaluation.evaluateSequentially();
+        return evaluation._values;
+    }
+
+    /**
+     * Orders employees by type (zookeepers first, then veterinarians), so each type forms a contiguous partition.
+     *
+     * @param employees the employees.
+     * @return the employees ordered by type.
+     */
+    private static List<Employee> byType(Collection<Employee> employees) {
+        List<Employee> ordered = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            if (employee instanceof Zookeeper)
+                ordered.add(employee);
+        }
+        for (Employee employee : employees) {
+            if (!(employee instanceof Zookeeper))
+                ordered.add(employee);
+        }
+        return ordered;
+    }
+
+    /**
+     * Replaces a contribution and applies the difference to the total.
+     *
+     * @param contributions the contributions where the value is kept.
+     * @param key the key of the contribution.
+     * @param value the new value of the contribution.
+     */
+    private void update(Map<String, BigDecimal> contributions, String key, BigDecimal value) {
+        BigDecimal previous = contributions.put(key, value);
+        _total = _total.add(value);
+        if (previous != null)
+            _total = _total.subtract(previous);
+    }
+
+    /**
+     * Computes the exact sum of the satisfaction of the animals of a habitat.
+     *
+     * @param habitat the habitat.
+     * @return the exact sum of the satisfaction of its animals.
+     */
+    static BigDecimal habitatSatisfaction(Habitat habitat) {
+        BigDecimal satisfaction = BigDecimal.ZERO;
+        for (Animal animal : habitat.allAnimals())
+            satisfaction = satisfaction.add(exact(animal.satisfaction()));
+        return satisfaction;
+    }
+
+    /**
+     * The {@code Evaluation} class is a fork/join task that evaluates a range of contributions, splitting it
+     * in halves until each task has at most {@link #PARTITION_SIZE} habitats or employees.
+     */
+    private static class Evaluation extends RecursiveAction {
+
+        /** Class serial number for serialization purposes. */
+        @Serial
+        private static final long serialVersionUID = 202610171200L;
+
+        /** The habitats to evaluate. */
+        private final List<Habitat> _habitats;
+
+        /** The employees to evaluate, after the habitats. */
+        private final List<Employee> _employees;
+
+        /** The contributions, shared by all the tasks of the same evaluation. */
+        private final BigDecimal[] _values;
+
+        /** The first contribution evaluated by this task. */
+        private final int _from;
+
+        /** The contribution after the last one evaluated by this task. */
+        private final int _to;
+
+        /**
+         * Creates the root task of an evaluation, covering every habitat and employee.
+         *
+         * @param habitats the habitats to evaluate.
+         * @param employees the employees to evaluate.
+         */
+        Evaluation(List<Habitat> habitats, List<Employee> employees) {
+            this(habitats, employees, new BigDecimal[habitats.size() + employees.size()], 0, habitats.size() + employees.size());
+        }
+
+        /**
+         * Creates a task of an evaluation.
+         *
+         * @param habitats the habitats to evaluate.
+         * @param employees the employees to evaluate.
+         * @param values the contributions.
+         * @param from the first contribution to evaluate.
+         * @param to the contribution after the last one to evaluate.
+         */
+        private Evaluation(List<Habitat> habitats, List<Employee> employees, BigDecimal[] values, int from, int to) {
+            _habitats = habitats;
+            _employees = employees;
+            _values = values;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= PARTITION_SIZE) {
+                evaluateSequentially();
+                return;
+            }
+            int middle = (_from + _to) >>> 1;
+            invokeAll(new Evaluation(_habitats, _employees, _values, _from, middle),
+                    new Evaluation(_habitats, _employees, _values, middle, _to));
+        }
+
+        /**
+         * Evaluates the range of contributions of this task on the calling thread.
+         */
+        void evaluateSequentially() {
+            for (int i = _from; i < _to; i++) {
+                if (i < _habitats.size())
+                    _values[i] = habitatSatisfaction(_habitats.get(i));
+                else
+                    _values[i] = exact(_employees.get(i - _habitats.size()).satisfaction());
+            }
+        }
+    }
+
+    /**
+     * Converts a satisfaction value to its exact decimal representation.
+     *
+     * @param value the value.
+     * @return the exact decimal representation of the value.
+     */
+    static BigDecimal exact(double value) {
+        return new BigDecimal(value);
+    }
+
+    /**
+     * Rounds an exact satisfaction to the nearest integer, as shown to the user.
+     *
+     * @param satisfaction the exact satisfaction.
+     * @return the rounded satisfaction.
+     */
+    static int round(BigDecimal satisfaction) {
+        return (int) Math.round(satisfaction.doubleValue());
+    }
+}
@@ -0,0 +1,86 @@
+package hva;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import hva.enums.Season;
+
+/**
+ * The {@code SeasonClock} class represents the hotel-wide calendar: the number of seasons that have passed
+ * since the hotel was created, which always starts in spring.
+ * 
+ * <p>
+ * Trees keep a reference to the clock of their hotel instead of a state of their own, so advancing the season
+ * is a single increment, regardless of the number of trees.
+ * </p>
+ * 
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_elapsedSeasons: The number of seasons that have passed since the hotel was created.</li>
+ * </ul>
+ */
+public class SeasonClock implements Serializable {
+
+    /** Class serial number for serialization purposes. */
+    @Serial
+    private static final long serialVersionUID = 202610171200L;
+
+    /** The seasons, in order, cached because {@link Season#values()} copies them on every call. */
+    private static final Season[] SEASONS = Season.values();
+
+    /** The number of seasons that have passed since the hotel was created. */
+    private int _elapsedSeasons = 0;
+
+    /**
+     * Constructs a clock for a new hotel, in spring.
+     */
+    public SeasonClock() {
+    }
+
+    /**
+     * Constructs a clock that has already gone through the given number of seasons, for the trees of a hotel
+     * saved with Java serialization, which did not record how many seasons had passed.
+     * 
+     * @param elapsedSeasons the number of seasons that have passed.
+     */
+    public SeasonClock(int elapsedSeasons) {
+        _elapsedSeasons = elapsedSeasons;
+    }
+
+    /**
+     * Returns the number of seasons that have passed since the hotel was created.
+     * 
+     * @return the number of elapsed seasons.
+     */
+    public int getElapsedSeasons() {
+        return _elapsedSeasons;
+    }
+
+    /**
+     * Returns the current season.
+     * 
+     * @return the current season.
+     */
+    public Season getSeason() {
+        return SEASONS[_elapsedSeasons % SEASONS.length];
+    }
+
+    /**
+     * Advances the clock to the next season.
+     * 
+     * @return the new current season.
+     */
+    public Season advance() {
+        _elapsedSeasons++;
+        return getSeason();
+    }
+
+    /**
+     * Sets the number of elapsed seasons, when the hotel is restored from a snapshot.
+     * 
+     * @param elapsedSeasons the number of seasons that have passed since the hotel was created.
+     */
+    void restore(int elapsedSeasons) {
+        _elapsedSeasons = elapsedSeasons;
+    }
+}
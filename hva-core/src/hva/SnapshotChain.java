@@ -0,0 +1,185 @@
+package hva;
+
+import java.nio.file.Path;
+
+/**
+ * The {@code SnapshotChain} class follows the snapshot a hotel was last saved in, or read from, and the
+ * deltas saved after it (see {@link SnapshotDelta}), so the next save can be a delta that extends them.
+ *
+ * <p>
+ * A snapshot and its deltas share a lineage, a random number written in all of them, so a delta is never
+ * applied to a snapshot it does not extend. Each delta also names the journal sequence number of the save
+ * it follows. The chain notes the sequence number of the last save captured in it, which the next delta
+ * follows, and the number of the last delta. A save is captured before it is written, so both are taken
+ * when a save is captured, on the thread that changes the hotel, and the rest as saves are written, on
+ * the save thread.
+ * </p>
+ *
+ * <p>
+ * A chain whose save failed is broken: the deltas captured after that save are not written, and the next
+ * save writes a whole snapshot, which starts a new chain. The chain also counts the deltas, and their bytes,
+ * saved since the snapshot was last written, to tell when they are folded into a new snapshot.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_path: The snapshot file.</li>
+ *   <li>_lineage: The lineage of the snapshot and of its deltas, or 0 if deltas cannot extend it.</li>
+ *   <li>_sequence: The journal sequence number of the last save captured in the chain.</li>
+ *   <li>_lastDelta: The number of the last delta captured in the chain.</li>
+ *   <li>_deltas: The number of deltas saved since the snapshot was written.</li>
+ *   <li>_deltaBytes: The number of bytes of those deltas.</li>
+ *   <li>_snapshotBytes: The number of bytes of the snapshot.</li>
+ *   <li>_broken: Indicates if a save of the chain failed.</li>
+ * </ul>
+ */
+final class SnapshotChain {
+
+    /** The snapshot file. */
+    private final Path _path;
+
+    /** The lineage of the snapshot and of its deltas (or 0 if deltas cannot extend it). */
+    private final long _lineage;
+
+    /** The journal sequence number of the last save captured in the chain. */
+    private long _sequence;
+
+    /** The number of the last delta captured in the chain. */
+    private int _lastDelta;
+
+    /** The number of deltas saved since the snapshot was written. */
+    private int _deltas;
+
+    /** The number of bytes of those deltas. */
+    private long _deltaBytes;
+
+    /** The number of bytes of the snapshot. */
+    private long _snapshotBytes;
+
+    /** Indicates if a save of the chain failed. */
+    private boolean _broken;
+
+    /**
+     * @param path the snapshot file.
+     * @param lineage the lineage of the snapshot, or 0 if deltas cannot extend it.
+     * @param sequence the journal sequence number of the snapshot.
+     */
+    SnapshotChain(Path path, long lineage, long sequence) {
+        _path = path.toAbsolutePath();
+        _lineage = lineage;
+        _sequence = sequence;
+    }
+
+    /**
+     * @return the lineage of the snapshot and of its deltas, or 0 if deltas cannot extend it.
+     */
+    long lineage() {
+        return _lineage;
+    }
+
+    /**
+     * @param path a snapshot file.
+     * @return {@code true} if a save to the file can be a delta that extends this chain.
+     */
+    synchronized boolean extendsTo(Path path) {
+        return _lineage != 0 && !_broken && _path.equals(path.toAbsolutePath());
+    }
+
+    /**
+     * @return the journal sequence number of the last save captured in the chain.
+     */
+    synchronized long sequence() {
+        return _sequence;
+    }
+
+    /**
+     * @return the number of the last delta captured in the chain, or 0.
+     */
+    synchronized int lastDelta() {
+        return _lastDelta;
+    }
+
+    /**
+     * Takes the number of a new delta, when it is captured.
+     *
+     * @param sequence the journal sequence number of the delta.
+     * @return the number of the delta.
+     */
+    synchronized int nextDelta(long sequence) {
+        _sequence = sequence;
+        return ++_lastDelta;
+    }
+
+    /**
+     * Notes that the delta waiting to be written now also holds a later save.
+     *
+     * @param sequence the journal sequence number of the later save.
+     */
+    synchronized void extend(long sequence) {
+        _sequence = sequence;
+    }
+
+    /**
+     * Notes the deltas found next to the snapshot when it is read.
+     *
+     * @param lastDelta the number of the last delta.
+     * @param deltas the number of deltas.
+     * @param deltaBytes their number of bytes.
+     * @param sequence the journal sequence number of the last delta.
+     */
+    synchronized void restore(int lastDelta, int deltas, long deltaBytes, long sequence) {
+        _lastDelta = lastDelta;
+        _deltas = deltas;
+        _deltaBytes = deltaBytes;
+        _sequence = sequence;
+    }
+
+    /**
+     * @param bytes the number of bytes of the snapshot, once it is written.
+     */
+    synchronized void snapshotWritten(long bytes) {
+        _snapshotBytes = bytes;
+    }
+
+    /**
+     * @param bytes the number of bytes of a delta, once it is written.
+     */
+    synchronized void deltaWritten(long bytes) {
+        _deltas++;
+        _deltaBytes += bytes;
+    }
+
+    /**
+     * Notes that the deltas written so far were folded into a new snapshot.
+     *
+     * @param bytes the number of bytes of the new snapshot.
+     */
+    synchronized void compacted(long bytes) {
+        _snapshotBytes = bytes;
+        _deltas = 0;
+        _deltaBytes = 0;
+    }
+
+    /**
+     * Breaks the chain, when one of its saves failed.
+     */
+    synchronized void broken() {
+        _broken = true;
+    }
+
+    /**
+     * @return whether a save of the chain failed.
+     */
+    synchronized boolean isBroken() {
+        return _broken;
+    }
+
+    /**
+     * @param maxDeltas the most deltas kept after the snapshot.
+     * @param maxDeltaPercent the most bytes of deltas kept after the snapshot, in percent of its own.
+     * @return {@code true} if the deltas should be folded into a new snapshot.
+     */
+    synchronized boolean needsCompaction(int maxDeltas, int maxDeltaPercent) {
+        return _deltas > maxDeltas || _deltaBytes * 100 > _snapshotBytes * maxDeltaPercent;
+    }
+}
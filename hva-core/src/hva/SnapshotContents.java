@@ -0,0 +1,185 @@
+package hva;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code SnapshotContents} class finds the sections of a snapshot that is not compressed, without
+ * reading their records (see {@link SnapshotFormat}).
+ *
+ * <p>
+ * Since version 5, a snapshot ends with a table of contents, which is found through the trailer at the end
+ * of the file, so the sections are found by reading two small blocks of the file, however many there are.
+ * A reader then reads the bytes of the sections it needs, and only those: the sections with a tag it does
+ * not know, or that it does not need yet, such as the vaccination history, are never read at all.
+ * </p>
+ *
+ * <p>
+ * The sections of a version 4 snapshot are found by reading the header of each of them, which holds the
+ * length of its records. Earlier versions do not know the lengths of their sections, so their records are
+ * stepped over one by one, which is only done for snapshots in memory.
+ * </p>
+ */
+final class SnapshotContents {
+
+    /** The size of the header of a snapshot: its magic bytes and version. */
+    private static final int HEADER_SIZE = SnapshotFormat.MAGIC.length + Integer.BYTES;
+
+    /** Not instantiable. */
+    private SnapshotContents() {
+    }
+
+    /**
+     * Finds the sections of a snapshot file of version 4 or later.
+     *
+     * @param channel the snapshot file.
+     * @param version the version of the snapshot.
+     * @return the sections, in the order of the file.
+     * @throws IOException if the file cannot be read or is corrupted.
+     */
+    static List<SnapshotReader.Section> read(FileChannel channel, int version) throws IOException {
+        if (version < 5)
+            return index(channel);
+        long size = channel.size();
+        long position = trailer(SnapshotReader.readBytes(channel, Math.max(size - SnapshotFormat.TRAILER_SIZE, 0), (int) Math.min(size, SnapshotFormat.TRAILER_SIZE)), size);
+        ByteBuffer contents = SnapshotReader.readBytes(channel, position, (int) (size - SnapshotFormat.TRAILER_SIZE - position));
+        return contents(new SnapshotInput(contents), position);
+    }
+
+    /**
+     * Finds the sections of a snapshot in memory, of any version.
+     *
+     * @param snapshot the bytes of the snapshot.
+     * @param version the version of the snapshot.
+     * @return the sections, in the order of the snapshot.
+     * @throws IOException if the snapshot is corrupted.
+     */
+    static List<SnapshotReader.Section> read(ByteBuffer snapshot, int version) throws IOException {
+        if (version < 5)
+            return index(snapshot, version);
+        int size = snapshot.limit();
+        long position = trailer(snapshot.duplicate().position(Math.max(size - SnapshotFormat.TRAILER_SIZE, 0)).slice(), size);
+        ByteBuffer contents = snapshot.duplicate().position((int) position).limit(size - SnapshotFormat.TRAILER_SIZE);
+        return contents(new SnapshotInput(contents), position);
+    }
+
+    /**
+     * Checks the trailer of a snapshot and reads the position of its table of contents.
+     *
+     * @param trailer the last bytes of the snapshot.
+     * @param size the size of the snapshot.
+     * @return the position of the table of contents.
+     * @throws IOException if the snapshot is truncated or has no table of contents.
+     */
+    private static long trailer(ByteBuffer trailer, long size) throws IOException {
+        if (trailer.remaining() < SnapshotFormat.TRAILER_SIZE || size < HEADER_SIZE + 1 + SnapshotFormat.TRAILER_SIZE)
+            throw new EOFException("Truncated snapshot");
+        long position = trailer.getLong(trailer.position());
+        byte[] magic = new byte[SnapshotFormat.CONTENTS_MAGIC.length];
+        trailer.get(trailer.position() + Long.BYTES, magic);
+        if (!Arrays.equals(magic, SnapshotFormat.CONTENTS_MAGIC))
+            // a snapshot cut short keeps the position of its sections but loses its end
+            throw new EOFException("Truncated snapshot");
+        if (position <= HEADER_SIZE || position > size - SnapshotFormat.TRAILER_SIZE)
+            throw new StreamCorruptedException("Table of contents at " + position);
+        return position;
+    }
+
+    /**
+     * Reads a table of contents.
+     *
+     * @param in the input over the table of contents.
+     * @param position the position of the table of contents, which the sections come before.
+     * @return the sections, in the order of the snapshot.
+     * @throws IOException if the table of contents is corrupted.
+     */
+    private static List<SnapshotReader.Section> contents(SnapshotInput in, long position) throws IOException {
+        in.nextRecord();
+        int size = in.readVarInt();
+        List<SnapshotReader.Section> sections = new ArrayList<>(Math.min(size, 1024));
+        int[] next = new int[256];
+        for (int i = 0; i < size; i++) {
+            byte tag = (byte) in.readByte();
+            int version = in.readVarInt();
+            long offset = in.readVarLong();
+            int count = in.readVarInt();
+            int length = in.readVarInt();
+            if (tag == SnapshotFormat.END || version < 1 || offset < HEADER_SIZE || offset + length >= position || count > length)
+                throw new StreamCorruptedException("Section " + tag + " of " + count + " records in " + length + " bytes at " + offset);
+            sections.add(new SnapshotReader.Section(tag, version, offset, count, length, next[tag & 0xFF]));
+            next[tag & 0xFF] += count;
+        }
+        return sections;
+    }
+
+    /**
+     * Locates the sections of a version 4 snapshot file, reading only their headers.
+     *
+     * @param channel the snapshot file.
+     * @return the sections, in the order of the file.
+     * @throws IOException if the file cannot be read or is corrupted.
+     */
+    private static List<SnapshotReader.Section> index(FileChannel channel) throws IOException {
+        List<SnapshotReader.Section> sections = new ArrayList<>();
+        int[] next = new int[256];
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        while (true) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, position + header.position()) >= 0)
+                ;
+            SnapshotInput in = new SnapshotInput(header.flip());
+            byte tag = in.readSectionTag();
+            if (tag == SnapshotFormat.END)
+                return sections;
+            int count = in.readSectionCount();
+            int length = in.readSectionLength();
+            long offset = position + in.position();
+            if (length < 0 || offset + length > size)
+                throw new EOFException("Truncated snapshot");
+            if (count < 0 || count > length)
+                throw new StreamCorruptedException("Section of " + count + " records in " + length + " bytes");
+            sections.add(new SnapshotReader.Section(tag, SnapshotFormat.LEGACY_SECTION_VERSION, offset, count, length, next[tag & 0xFF]));
+            next[tag & 0xFF] += count;
+            position = offset + length;
+        }
+    }
+
+    /**
+     * Locates the sections of a snapshot in memory before version 5, stepping over their records.
+     *
+     * @param snapshot the bytes of the snapshot.
+     * @param version the version of the snapshot.
+     * @return the sections, in the order of the snapshot.
+     * @throws IOException if the snapshot is corrupted.
+     */
+    private static List<SnapshotReader.Section> index(ByteBuffer snapshot, int version) throws IOException {
+        List<SnapshotReader.Section> sections = new ArrayList<>();
+        int[] next = new int[256];
+        SnapshotInput in = new SnapshotInput(snapshot.duplicate().position(HEADER_SIZE));
+        for (byte tag = in.readSectionTag(); tag != SnapshotFormat.END; tag = in.readSectionTag()) {
+            int count = in.readSectionCount();
+            int length = version >= 4 ? in.readSectionLength() : -1;
+            long offset = in.position();
+            sections.add(new SnapshotReader.Section(tag, SnapshotFormat.LEGACY_SECTION_VERSION, offset, count, length, next[tag & 0xFF]));
+            next[tag & 0xFF] += count;
+            if (length >= 0) {
+                // since version 4 the records of a section are stepped over at once
+                if (offset + length > snapshot.limit())
+                    throw new EOFException("Truncated snapshot");
+                in = new SnapshotInput(snapshot.duplicate().position((int) (offset + length)));
+            } else {
+                for (int i = 0; i < count; i++)
+                    in.skipRecord();
+            }
+        }
+        return sections;
+    }
+}
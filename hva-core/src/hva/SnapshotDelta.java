@@ -0,0 +1,350 @@
+package hva;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import hva.enums.SnapshotCompression;
+
+/**
+ * The {@code SnapshotDelta} class reads, folds and removes the deltas of a snapshot: the files next to
+ * it, named after it with {@code .delta.} and a number, each holding what changed in the hotel since
+ * the save before it (see {@link SnapshotFormat}).
+ *
+ * <p>
+ * Once a hotel was saved in a snapshot, the next saves to the same file only write the entities registered
+ * or changed since the save before, which the hotel records (see {@link HotelChanges}), so a save costs as
+ * much as what changed. The deltas are written by {@link SnapshotWriter}, and the saves that write them
+ * are chosen by {@link SnapshotSaver}. A snapshot and its deltas share a lineage, and each delta names the
+ * journal sequence number of the save it follows, so the deltas of another snapshot, or deltas that do not
+ * follow one another, are never applied.
+ * </p>
+ *
+ * <p>
+ * When a snapshot is read, its deltas are applied in order, stopping at the first one that does not follow
+ * the hotel. Deltas that the snapshot already includes, left over when the snapshot was rewritten, are
+ * skipped. Once there are too many deltas, or they are too large next to the snapshot, they are folded
+ * into a new snapshot with the same lineage (see {@link #compact}), on the save thread, and removed.
+ * A whole snapshot that starts a new lineage removes the deltas of the previous one.
+ * </p>
+ *
+ * <p>
+ * A save may replace the snapshot, or add and remove deltas, while another thread or process reads them:
+ * a reader of the snapshot before it was folded may find its deltas gone, or a journal that starts after
+ * them. Readers go through {@link #read(Path, Read, Consumer)}, which reads the files again when a save
+ * changed them as they were read.
+ * </p>
+ */
+final class SnapshotDelta {
+
+    /** The most times the files of a snapshot are read, when saves keep changing them as they are read. */
+    private static final int MAX_READS = 10;
+
+    /**
+     * Reads a hotel, or another view of a snapshot, from the snapshot file and its deltas, and whatever
+     * else is read with them.
+     *
+     * @param <T> what is read.
+     */
+    interface Read<T> {
+
+        /**
+         * @return what was read.
+         * @throws IOException if the files cannot be read or are corrupted.
+         */
+        T read() throws IOException;
+    }
+
+    /**
+     * What a save changes in the files of a snapshot: the snapshot itself, which is replaced as a whole, and
+     * the numbers of its deltas.
+     *
+     * @param file the key of the snapshot file, if the file system has one, or {@code null}.
+     * @param modified when the snapshot file was last modified, or {@code null} if there is none.
+     * @param size the size of the snapshot file, or -1 if there is none.
+     * @param deltas the numbers of the deltas.
+     */
+    private record Generation(Object file, FileTime modified, long size, List<Integer> deltas) {
+
+        /**
+         * @param snapshot the snapshot file.
+         * @return the current generation of the files of the snapshot.
+         * @throws IOException if the directory of the snapshot cannot be read.
+         */
+        static Generation of(Path snapshot) throws IOException {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(snapshot, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return new Generation(null, null, -1, List.of());
+            }
+            return new Generation(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size(), numbers(snapshot));
+        }
+    }
+
+    /** Not instantiable. */
+    private SnapshotDelta() {
+    }
+
+    /**
+     * Reads the files of a snapshot, again if a save changed them meanwhile, up to {@link #MAX_READS}
+     * times: if the read failed, as when a delta it was about to read was removed, or if it may mix two
+     * saves, as when the snapshot it read was folded with its deltas and they were removed before they
+     * were listed. The last read is kept, whether saves changed the files or not; the others are discarded.
+     * The read must release what it holds when it fails.
+     *
+     * @param <T> what is read.
+     * @param snapshot the snapshot file.
+     * @param read reads the files.
+     * @param discard releases what was read, when it is read again.
+     * @return what was read.
+     * @throws IOException if the files cannot be read or are corrupted, and were not changed by a save.
+     */
+    static <T> T read(Path snapshot, Read<T> read, Consumer<T> discard) throws IOException {
+        for (int reads = 1; ; reads++) {
+            Generation generation = Generation.of(snapshot);
+            T result;
+            try {
+                result = read.read();
+            } catch (IOException | UncheckedIOException e) {
+                if (reads == MAX_READS || generation.equals(Generation.of(snapshot)))
+                    throw e;
+                continue;
+            }
+            try {
+                if (reads == MAX_READS || generation.equals(Generation.of(snapshot)))
+                    return result;
+            } catch (IOException e) {
+                discard.accept(result);
+                throw e;
+            }
+            discard.accept(result);
+        }
+    }
+
+    /**
+     * @param snapshot the snapshot file.
+     * @param number the number of a delta.
+     * @return the file of the delta.
+     */
+    static Path pathOf(Path snapshot, int number) {
+        Path absolute = snapshot.toAbsolutePath();
+        return absolute.resolveSibling(absolute.getFileName() + ".delta." + number);
+    }
+
+    /**
+     * @return a new lineage, for a snapshot that starts a chain of deltas.
+     */
+    static long newLineage() {
+        long lineage;
+        do
+            lineage = ThreadLocalRandom.current().nextLong();
+        while (lineage == 0);
+        return lineage;
+    }
+
+    /**
+     * Finds the deltas of a snapshot.
+     *
+     * @param snapshot the snapshot file.
+     * @return the numbers of its deltas, in order.
+     * @throws IOException if the directory of the snapshot cannot be read.
+     */
+    static List<Integer> numbers(Path snapshot) throws IOException {
+        Path absolute = snapshot.toAbsolutePath();
+        String prefix = absolute.getFileName() + ".delta.";
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(absolute.getParent())) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(prefix))
+                    continue;
+                try {
+                    int number = Integer.parseInt(name.substring(prefix.length()));
+                    if (number > 0)
+                        numbers.add(number);
+                } catch (NumberFormatException e) {
+                    // another file, such as a delta being written
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Applies the deltas of a snapshot to the hotel just read from it, and sets the chain the hotel is
+     * saved in from then on. The hotel then records its changes, so its next save can be a delta.
+     *
+     * @param snapshot the snapshot file.
+     * @param hotel the hotel read from the snapshot.
+     * @throws IOException if a delta cannot be read or is corrupted.
+     */
+    static void apply(Path snapshot, Hotel hotel) throws IOException {
+        long lineage = hotel.getSnapshotLineage();
+        SnapshotChain chain = new SnapshotChain(snapshot, lineage, hotel.getJournalSequence());
+        chain.snapshotWritten(Files.size(snapshot));
+        if (lineage != 0) {
+            int last = 0;
+            int deltas = 0;
+            long bytes = 0;
+            for (int number : numbers(snapshot)) {
+                Path delta = pathOf(snapshot, number);
+                if (!apply(delta, hotel, lineage))
+                    break;
+                last = number;
+                deltas++;
+                bytes += Files.size(delta);
+            }
+            chain.restore(last, deltas, bytes, hotel.getJournalSequence());
+            hotel.takeChanges();
+        }
+        hotel.setSnapshotChain(chain);
+    }
+
+    /**
+     * Applies a delta to a hotel, if it follows the hotel.
+     *
+     * @param delta the delta file.
+     * @param hotel the hotel.
+     * @param lineage the lineage of the snapshot the hotel was read from.
+     * @return {@code true} if the delta was applied or the hotel already includes it, {@code false} if it
+     *         does not follow the hotel.
+     * @throws IOException if the delta cannot be read or is corrupted.
+     */
+    private static boolean apply(Path delta, Hotel hotel, long lineage) throws IOException {
+        try (SnapshotInput in = new SnapshotInput(FileChannel.open(delta, StandardOpenOption.READ))) {
+            int version = in.readHeader(SnapshotFormat.DELTA_MAGIC);
+            if (version > SnapshotFormat.DELTA_VERSION)
+                throw new InvalidObjectException("Unsupported delta version " + version);
+            readHotelHeader(in, version);
+            long deltaLineage = in.readVarLong();
+            long previousSequence = in.readVarLong();
+            long sequence = in.readVarLong();
+            int elapsedSeasons = in.readVarInt();
+            if (deltaLineage != lineage)
+                return false;
+            if (sequence <= hotel.getJournalSequence())
+                // folded into the snapshot, which was rewritten before the delta was removed
+                return true;
+            if (previousSequence != hotel.getJournalSequence())
+                return false;
+
+            // the records refer to entities by ID, as in version 2 snapshots
+            SnapshotTables tables = new SnapshotTables();
+            tables.setVersion(2);
+            SnapshotReader reader = new SnapshotReader(in, hotel, null, tables);
+            for (byte tag = in.readSectionTag(); tag != SnapshotFormat.END; tag = in.readSectionTag()) {
+                in.migrate(tag, version >= 2 ? in.readSectionVersion() : SnapshotFormat.LEGACY_SECTION_VERSION, false);
+                int count = in.readSectionCount();
+                switch (tag) {
+                    case SnapshotFormat.SPECIES, SnapshotFormat.TREES, SnapshotFormat.HABITATS,
+                        SnapshotFormat.ANIMALS, SnapshotFormat.EMPLOYEES, SnapshotFormat.VACCINES -> reader.readSection(tag, count, 0);
+                    case SnapshotFormat.CHANGED_HABITATS, SnapshotFormat.CHANGED_ANIMALS,
+                        SnapshotFormat.CHANGED_EMPLOYEES -> reader.readChanges(tag, count);
+                    case SnapshotFormat.VACCINATION_HISTORY -> readVaccinations(in, reader, hotel, count);
+                    default -> {
+                        // a section of a later version of the format
+                        for (int i = 0; i < count; i++)
+                            in.skipRecord();
+                    }
+                }
+            }
+            hotel.getSeasonClock().restore(elapsedSeasons);
+            hotel.restoreJournalSequence(sequence);
+            return true;
+        }
+    }
+
+    /**
+     * Reads the header of the hotel section of a delta, which comes first, and loads its record.
+     *
+     * @param in the input of the delta, after its version.
+     * @param version the version of the delta.
+     * @throws IOException if the delta cannot be read or does not start with a hotel record.
+     */
+    static void readHotelHeader(SnapshotInput in, int version) throws IOException {
+        if (in.readSectionTag() != SnapshotFormat.HOTEL)
+            throw new StreamCorruptedException("Delta without a hotel record");
+        in.migrate(SnapshotFormat.HOTEL, version >= 2 ? in.readSectionVersion() : SnapshotFormat.LEGACY_SECTION_VERSION, false);
+        if (in.readSectionCount() != 1)
+            throw new StreamCorruptedException("Delta without a hotel record");
+        in.nextRecord();
+    }
+
+    /**
+     * Reads the vaccinations of a delta, which follow those already in the hotel.
+     *
+     * @param in the input of the delta.
+     * @param reader the reader of the delta.
+     * @param hotel the hotel.
+     * @param count the number of records of the section.
+     * @throws IOException if the section cannot be read or is corrupted.
+     */
+    private static void readVaccinations(SnapshotInput in, SnapshotReader reader, Hotel hotel, int count) throws IOException {
+        List<Vaccination> vaccinations = new ArrayList<>();
+        List<Vaccination> wrongVaccinations = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                in.nextRecord();
+                reader.readVaccinationHistory(vaccinations, wrongVaccinations);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw SnapshotReader.corrupted(e);
+        }
+        hotel.restoreLaterVaccinations(vaccinations, wrongVaccinations);
+    }
+
+    /**
+     * Folds the deltas of a snapshot into a new snapshot with the same lineage, which replaces it, and
+     * removes them. The hotel is read again from the files, so the hotel being saved is not touched.
+     *
+     * @param snapshot the snapshot file.
+     * @param chain the chain of the snapshot.
+     * @param compression how much the new snapshot is compressed.
+     * @throws IOException if the snapshot or its deltas cannot be read, or the new snapshot cannot be written.
+     */
+    static void compact(Path snapshot, SnapshotChain chain, SnapshotCompression compression) throws IOException {
+        Hotel hotel = SnapshotReader.read(snapshot);
+        try {
+            apply(snapshot, hotel);
+            SnapshotChain folded = hotel.getSnapshotChain();
+            if (folded.lineage() != chain.lineage())
+                return;
+            SnapshotWriter.write(new SnapshotImage(hotel, folded), snapshot, compression);
+            chain.compacted(Files.size(snapshot));
+            delete(snapshot, folded.lastDelta());
+        } finally {
+            hotel.closeVaccinationHistory();
+        }
+    }
+
+    /**
+     * Removes the deltas of a snapshot, up to a given one.
+     *
+     * @param snapshot the snapshot file.
+     * @param last the number of the last delta to remove.
+     * @throws IOException if a delta cannot be removed.
+     */
+    static void delete(Path snapshot, int last) throws IOException {
+        for (int number : numbers(snapshot))
+            if (number <= last)
+                Files.deleteIfExists(pathOf(snapshot, number));
+    }
+}
@@ -0,0 +1,116 @@
+package hva;
+
+import java.io.IOException;
+
+import hva.enums.SnapshotEntity;
+
+/**
+ * The {@code SnapshotDiff} class compares two saved hotels, telling a {@link SnapshotDiffListener} of the
+ * entities added, removed or changed from the earlier to the later.
+ *
+ * <p>
+ * Neither hotel is built: both are read as streams of entities sorted by ID (see {@link SnapshotStream}),
+ * which are walked side by side, type by type, so the memory used depends on how the records are laid out
+ * in the snapshots, not on how many there are. Two entities with the same ID are compared by the lines that
+ * describe them.
+ * </p>
+ *
+ * <p>
+ * The vaccination histories are walked side by side as well, from their first vaccination. A history only
+ * grows, so once the histories differ the rest of the earlier one is reported as removed and the rest of the
+ * later one as added; the later history of the same hotel only has vaccinations added.
+ * </p>
+ */
+final class SnapshotDiff {
+
+    /** Not instantiable. */
+    private SnapshotDiff() {
+    }
+
+    /**
+     * Compares two saved hotels.
+     *
+     * @param earlier the earlier hotel.
+     * @param later the later hotel.
+     * @param listener told of the differences, as they are found.
+     * @throws IOException if a snapshot is corrupted.
+     */
+    static void compare(SnapshotStream earlier, SnapshotStream later, SnapshotDiffListener listener) throws IOException {
+        for (SnapshotEntity entity : SnapshotEntity.values()) {
+            if (entity == SnapshotEntity.VACCINATION)
+                compare(earlier.vaccinations(), later.vaccinations(), listener);
+            else
+                compare(entity, earlier.entities(tagOf(entity)), later.entities(tagOf(entity)), listener);
+        }
+    }
+
+    /**
+     * @param entity a type of entity other than vaccinations.
+     * @return the tag of its sections.
+     */
+    private static byte tagOf(SnapshotEntity entity) {
+        return switch (entity) {
+            case SPECIES -> SnapshotFormat.SPECIES;
+            case TREE -> SnapshotFormat.TREES;
+            case HABITAT -> SnapshotFormat.HABITATS;
+            case ANIMAL -> SnapshotFormat.ANIMALS;
+            case EMPLOYEE -> SnapshotFormat.EMPLOYEES;
+            case VACCINE -> SnapshotFormat.VACCINES;
+            case VACCINATION -> SnapshotFormat.VACCINATION_HISTORY;
+        };
+    }
+
+    /**
+     * Compares the entities of a type, merging them by ID.
+     *
+     * @param entity the type of the entities.
+     * @param earlier the entities of the earlier hotel.
+     * @param later the entities of the later hotel.
+     * @param listener told of the differences.
+     * @throws IOException if a snapshot is corrupted.
+     */
+    private static void compare(SnapshotEntity entity, SnapshotStream.Entities earlier, SnapshotStream.Entities later,
+            SnapshotDiffListener listener) throws IOException {
+        SnapshotStream.Entry before = earlier.next();
+        SnapshotStream.Entry after = later.next();
+        while (before != null || after != null) {
+            int order = before == null ? 1 : after == null ? -1 : String.CASE_INSENSITIVE_ORDER.compare(before.id(), after.id());
+            if (order < 0) {
+                listener.removed(entity, before.id(), before.description());
+                before = earlier.next();
+            } else if (order > 0) {
+                listener.added(entity, after.id(), after.description());
+                after = later.next();
+            } else {
+                if (!before.description().equals(after.description()))
+                    listener.changed(entity, after.id(), before.description(), after.description());
+                before = earlier.next();
+                after = later.next();
+            }
+        }
+    }
+
+    /**
+     * Compares the vaccination histories, named by the positions of the vaccinations, from 1.
+     *
+     * @param earlier the history of the earlier hotel.
+     * @param later the history of the later hotel.
+     * @param listener told of the differences.
+     * @throws IOException if a snapshot is corrupted.
+     */
+    private static void compare(SnapshotStream.Vaccinations earlier, SnapshotStream.Vaccinations later,
+            SnapshotDiffListener listener) throws IOException {
+        int position = 1;
+        String before = earlier.next();
+        String after = later.next();
+        while (before != null && before.equals(after)) {
+            before = earlier.next();
+            after = later.next();
+            position++;
+        }
+        for (int removed = position; before != null; before = earlier.next(), removed++)
+            listener.removed(SnapshotEntity.VACCINATION, "#" + removed, before);
+        for (int added = position; after != null; after = later.next(), added++)
+            listener.added(SnapshotEntity.VACCINATION, "#" + added, after);
+    }
+}
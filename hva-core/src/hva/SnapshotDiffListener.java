@@ -0,0 +1,46 @@
+package hva;
+
+import hva.enums.SnapshotEntity;
+
+/**
+ * The {@code SnapshotDiffListener} interface is told of the differences between two saved hotels, as they
+ * are found (see {@link HotelManager#compareFiles(String, String, SnapshotDiffListener)}).
+ *
+ * <p>
+ * The differences are reported type by type, in the order of {@link SnapshotEntity}, and in the order of
+ * the IDs of the entities within each type, so a listener can write them out without keeping them. Each
+ * entity is described by a line in the style of the listings of the hotel, such as
+ * {@code ANIMAL|id|name|species|health|habitat}, whose lists are sorted by ID. Vaccinations have no ID:
+ * they are named by their position in the vaccination history, such as {@code #12}.
+ * </p>
+ */
+public interface SnapshotDiffListener {
+
+    /**
+     * Called for an entity that is only in the later hotel.
+     *
+     * @param entity the type of the entity.
+     * @param id the ID of the entity.
+     * @param description the entity in the later hotel.
+     */
+    void added(SnapshotEntity entity, String id, String description);
+
+    /**
+     * Called for an entity that is only in the earlier hotel.
+     *
+     * @param entity the type of the entity.
+     * @param id the ID of the entity.
+     * @param description the entity in the earlier hotel.
+     */
+    void removed(SnapshotEntity entity, String id, String description);
+
+    /**
+     * Called for an entity that is in both hotels, but differs.
+     *
+     * @param entity the type of the entity.
+     * @param id the ID of the entity.
+     * @param before the entity in the earlier hotel.
+     * @param after the entity in the later hotel.
+     */
+    void changed(SnapshotEntity entity, String id, String before, String after);
+}
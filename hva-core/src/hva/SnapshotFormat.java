@@ -0,0 +1,229 @@
+package hva;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The {@code SnapshotFormat} class holds the constants of the binary snapshot format, in which
+ * {@link HotelManager} saves hotels.
+ *
+ * <p>
+ * A snapshot starts with the {@link #MAGIC} bytes and the format version (a 4-byte big-endian
+ * integer). Then comes a sequence of sections, each made of a one-byte tag, the number of records
+ * (a varint) and the records; the {@link #END} tag closes the snapshot. Every record is prefixed by
+ * its length (a varint), so fields added to a record by a later version are skipped by older readers.
+ * </p>
+ *
+ * <p>
+ * The sections come in dependency order and their records are sorted by ID, except the animals, which
+ * come habitat by habitat. Numbers are varints (zigzag-encoded when they may be negative) and strings are
+ * UTF-8 bytes prefixed by their length.
+ * </p>
+ *
+ * <p>
+ * Since version 3, records refer to other entities by the position of their record in its section
+ * (a varint), so the sections are flat tables that are read in one pass, resolving each reference with
+ * an array access (see {@link SnapshotTables}). The species of a vaccine are still named by ID, as the
+ * vaccine was given them. Earlier versions refer to entities by ID.
+ * </p>
+ *
+ * <p>
+ * Since version 4, the count of a section is followed by the number of bytes of its records (a varint),
+ * so a reader can find every section without reading their records, and a section has at most
+ * {@link #SECTION_RECORDS} records: the records of a larger one are split in consecutive sections with
+ * the same tag, numbered on from the ones before. Sections can then be decoded in parallel (see
+ * {@link SnapshotReader}). The vaccination history is split the same way, in sections of a single record.
+ * </p>
+ *
+ * <p>
+ * Since version 5, the tag of a section is followed by the version of the layout of its records (a varint),
+ * so the records of one type can change without the format of the others changing with them: a reader
+ * upgrades the records of an older section as it reads them, through the migrations registered for its
+ * tag (see {@link SnapshotMigrations}), steps over the sections it does not know or does not need, and only
+ * rejects the sections it needs whose version is later than its own (see {@link #sectionVersion(byte)}).
+ * The sections of earlier versions of the format, and of version 1 deltas, are version 1 sections.
+ * </p>
+ *
+ * <p>
+ * Since version 5, the {@link #END} tag is also followed by a table of contents, a record with the number
+ * of sections and, for each of them in the order of the file, its tag (a byte), its version, the position
+ * of its first record in the file and its count and length, as in its header (varints). The snapshot then
+ * ends with a trailer of {@link #TRAILER_SIZE} bytes: the position of the table of contents (an 8-byte
+ * big-endian integer) and the {@link #CONTENTS_MAGIC} bytes. A reader of a snapshot file finds every section by
+ * reading the end of the file, and then reads only the sections it needs (see {@link SnapshotContents}).
+ * </p>
+ *
+ * <p>
+ * Since version 2, the vaccinations are kept in a {@link #VACCINATION_HISTORY} section made of a single
+ * record, so a reader can step over the whole history with one seek and decode it only when it is needed
+ * (see {@link VaccinationHistory}). Version 1 snapshots have a {@link #VACCINATIONS} section instead,
+ * with a record per vaccination.
+ * </p>
+ *
+ * <p>
+ * A compressed snapshot starts with the {@link #COMPRESSED_MAGIC} bytes and the version of the
+ * compressed format (a 4-byte big-endian integer), followed by a single zlib stream holding a whole
+ * snapshot as described above.
+ * </p>
+ *
+ * <p>
+ * A snapshot may be followed by deltas: files next to it, named after it with {@code .delta.} and a
+ * number, each holding what changed in the hotel since the save before it (see {@link SnapshotDelta}).
+ * A delta starts with the {@link #DELTA_MAGIC} bytes and its version, followed by sections as above,
+ * without their byte lengths nor a table of contents; since version 2, the tag of each section is followed
+ * by its version, as in a snapshot. Its hotel record holds the lineage of the snapshot it extends, the journal
+ * sequence numbers of the save it follows and of its own, and the elapsed seasons. Its records refer
+ * to entities by ID, like version 2 snapshots: the {@link #SPECIES} to {@link #VACCINES} sections hold
+ * the entities registered since the save before, the {@link #CHANGED_HABITATS}, {@link #CHANGED_ANIMALS}
+ * and {@link #CHANGED_EMPLOYEES} sections hold the whole state of the older entities that changed, in
+ * the records of their type, and a {@link #VACCINATION_HISTORY} section holds the new vaccinations.
+ * </p>
+ *
+ * <p>Snapshots written by Java serialization (before this format existed) start with other bytes, so
+ * {@link #isSnapshot(Path)} tells them apart from snapshots in this format, compressed or not.</p>
+ */
+final class SnapshotFormat {
+
+    /** The first bytes of every snapshot. */
+    static final byte[] MAGIC = { 'H', 'V', 'A', 'S' };
+
+    /** The version of the format written by this code. */
+    static final int VERSION = 5;
+
+    /** The version of the sections of snapshots before version 5, and of version 1 deltas. */
+    static final int LEGACY_SECTION_VERSION = 1;
+
+    /** The last bytes of every snapshot since version 5, after the position of its table of contents. */
+    static final byte[] CONTENTS_MAGIC = { 'H', 'V', 'A', 'T' };
+
+    /** The size of the trailer of a snapshot since version 5: the position of its table of contents and magic bytes. */
+    static final int TRAILER_SIZE = Long.BYTES + 4;
+
+    /** The most records, or vaccinations of the history, in a section. */
+    static final int SECTION_RECORDS = 16384;
+
+    /** The first bytes of every compressed snapshot. */
+    static final byte[] COMPRESSED_MAGIC = { 'H', 'V', 'A', 'Z' };
+
+    /** The version of the compressed format written by this code. */
+    static final int COMPRESSED_VERSION = 1;
+
+    /** The size of the header of a compressed snapshot: its magic bytes and version. */
+    static final int COMPRESSED_HEADER_SIZE = 8;
+
+    /** The first bytes of every delta. */
+    static final byte[] DELTA_MAGIC = { 'H', 'V', 'A', 'D' };
+
+    /** The version of the delta format written by this code. */
+    static final int DELTA_VERSION = 2;
+
+    /** Tag that closes the snapshot. */
+    static final byte END = 0;
+
+    /**
+     * Tag of the section with the hotel-wide state (a single record): the elapsed seasons, the number of
+     * entities of each type, the sequence number of the last operation of the journal it includes and the
+     * lineage of the snapshot, which the deltas that extend it repeat (missing in snapshots without deltas).
+     */
+    static final byte HOTEL = 1;
+
+    /** Tag of the species section. */
+    static final byte SPECIES = 2;
+
+    /** Tag of the trees section. */
+    static final byte TREES = 3;
+
+    /** Tag of the habitats section. */
+    static final byte HABITATS = 4;
+
+    /** Tag of the animals section. */
+    static final byte ANIMALS = 5;
+
+    /** Tag of the employees section. */
+    static final byte EMPLOYEES = 6;
+
+    /** Tag of the vaccines section. */
+    static final byte VACCINES = 7;
+
+    /** Tag of the vaccinations section (in the order they happened), in version 1 snapshots. */
+    static final byte VACCINATIONS = 8;
+
+    /**
+     * Tag of the vaccination history section: a single record with the number of vaccinations followed
+     * by the fields of each of them, in the order they happened. Since version 4, the history may be split
+     * in several such sections. In version 1 sections, each vaccination ends with whether the vaccine was
+     * wrong (a byte); since version 2, a bitmap of the wrong vaccinations (a bit per vaccination, from the
+     * lowest bit of its first byte) comes before the references of the vaccinations instead.
+     */
+    static final byte VACCINATION_HISTORY = 9;
+
+    /** Tag of the section of a delta with the habitats that changed since the save before it. */
+    static final byte CHANGED_HABITATS = 10;
+
+    /** Tag of the section of a delta with the animals that changed since the save before it. */
+    static final byte CHANGED_ANIMALS = 11;
+
+    /** Tag of the section of a delta with the employees that changed since the save before it. */
+    static final byte CHANGED_EMPLOYEES = 12;
+
+    /** Type of a deciduous tree record. */
+    static final byte DECIDUOUS_TREE = 0;
+
+    /** Type of an evergreen tree record. */
+    static final byte EVERGREEN_TREE = 1;
+
+    /** Type of a zookeeper record. */
+    static final byte ZOOKEEPER = 0;
+
+    /** Type of a veterinarian record. */
+    static final byte VETERINARIAN = 1;
+
+    /** Not instantiable. */
+    private SnapshotFormat() {
+    }
+
+    /**
+     * @param tag the tag of a section.
+     * @return the version of the layout of its records written by this code, or 0 if the tag is unknown.
+     */
+    static int sectionVersion(byte tag) {
+        return switch (tag) {
+            case VACCINATION_HISTORY -> 2;
+            case HOTEL, SPECIES, TREES, HABITATS, ANIMALS, EMPLOYEES, VACCINES, VACCINATIONS,
+                CHANGED_HABITATS, CHANGED_ANIMALS, CHANGED_EMPLOYEES -> 1;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Checks if a file starts with the magic bytes of a snapshot, compressed or not.
+     *
+     * @param path the file.
+     * @return {@code true} if the file is a snapshot in this format.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byte[] magic = readMagic(channel);
+            return Arrays.equals(magic, MAGIC) || Arrays.equals(magic, COMPRESSED_MAGIC);
+        }
+    }
+
+    /**
+     * Reads the magic bytes at the current position of a channel.
+     *
+     * @param channel the channel.
+     * @return the magic bytes, or an empty array if the channel ends before them.
+     * @throws IOException if the channel cannot be read.
+     */
+    static byte[] readMagic(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        while (magic.hasRemaining() && channel.read(magic) >= 0)
+            ;
+        return magic.hasRemaining() ? new byte[0] : magic.array();
+    }
+}
@@ -0,0 +1,522 @@
+package hva;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import hva.employee.Employee;
+import hva.employee.Veterinarian;
+import hva.employee.Zookeeper;
+import hva.enums.HabitatInfluence;
+import hva.enums.VaccineDamage;
+import hva.tree.Tree;
+
+/**
+ * The {@code SnapshotImage} class is a frozen view of a hotel at one point in time, from which a
+ * snapshot can be written while the hotel keeps changing (see {@link SnapshotWriter}).
+ *
+ * <p>
+ * Capturing an image does no encoding and no I/O. Species, trees and vaccines never change once they
+ * are registered, so the image only keeps references to them. Of the other entities, only the state
+ * that operations can change is copied: the area, trees and influences of each habitat, the habitat
+ * and health events of each animal and the responsibilities of each employee. Vaccinations are only
+ * ever added, so copying the two lists of vaccinations is enough to freeze them. Other entities are
+ * kept by reference, so the snapshot can refer to them by their position in their section.
+ * </p>
+ *
+ * <p>
+ * The image also records how many times the hotel had been modified when it was captured, so the
+ * hotel is only marked as saved if nothing changed while the snapshot was written.
+ * </p>
+ *
+ * <p>
+ * An image may also be a delta (see {@link SnapshotDelta}): it then holds only the entities registered
+ * since the last save, the older entities that changed and the new vaccinations, taken from the changes
+ * the hotel recorded (see {@link HotelChanges}), so capturing it costs as much as what changed. A delta
+ * waiting to be written can be merged with a later one, so it is written once, with both.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_elapsedSeasons: The number of seasons elapsed in the hotel.</li>
+ *   <li>_journalSequence: The sequence number of the last operation of the hotel.</li>
+ *   <li>_modifications: The number of modifications of the hotel.</li>
+ *   <li>_chain: The chain the image is saved in, or {@code null}.</li>
+ *   <li>_lineage: The lineage of the snapshot, or 0 if deltas cannot extend it.</li>
+ *   <li>_delta: The number of the delta, or 0 if the image is a whole snapshot.</li>
+ *   <li>_previousSequence: The journal sequence number of the save a delta follows.</li>
+ *   <li>_species: The species, ordered by ID.</li>
+ *   <li>_trees: The trees, ordered by ID.</li>
+ *   <li>_habitats: The state of each habitat, ordered by ID.</li>
+ *   <li>_animals: The state of each animal, habitat by habitat.</li>
+ *   <li>_employees: The state of each employee, ordered by ID.</li>
+ *   <li>_vaccines: The vaccines, ordered by ID.</li>
+ *   <li>_vaccinations: The vaccinations, in the order they happened.</li>
+ *   <li>_wrongVaccinations: The vaccinations in which the vaccine was wrong.</li>
+ *   <li>_changedHabitats: The state of each older habitat that changed, in a delta.</li>
+ *   <li>_changedAnimals: The state of each older animal that changed, in a delta.</li>
+ *   <li>_changedEmployees: The state of each older employee that changed, in a delta.</li>
+ * </ul>
+ */
+final class SnapshotImage {
+
+    /**
+     * The state of a habitat.
+     *
+     * @param habitat the habitat (its ID and name never change).
+     * @param area the area of the habitat.
+     * @param trees the trees of the habitat, ordered by ID.
+     * @param influencedSpecies the species whose influence was changed.
+     * @param influences the influence on each of those species.
+     */
+    record HabitatImage(Habitat habitat, int area, Tree[] trees, Species[] influencedSpecies, HabitatInfluence[] influences) { }
+
+    /**
+     * The state of an animal.
+     *
+     * @param animal the animal (its ID, name and species never change).
+     * @param habitat the habitat of the animal.
+     * @param healthEvents the effects of the vaccines the animal took.
+     */
+    record AnimalImage(Animal animal, Habitat habitat, VaccineDamage[] healthEvents) { }
+
+    /**
+     * The state of an employee.
+     *
+     * @param employee the employee (its ID, name and type never change).
+     * @param responsibilities the species or habitats the employee is responsible for, ordered by ID.
+     */
+    record EmployeeImage(Employee employee, Object[] responsibilities) { }
+
+    /** The number of seasons elapsed in the hotel. */
+    private final int _elapsedSeasons;
+
+    /** The sequence number of the last operation of the hotel. */
+    private final long _journalSequence;
+
+    /** The number of modifications of the hotel. */
+    private final long _modifications;
+
+    /** The chain the image is saved in (or {@code null}). */
+    private final SnapshotChain _chain;
+
+    /** The lineage of the snapshot (or 0 if deltas cannot extend it). */
+    private final long _lineage;
+
+    /** The number of the delta (or 0 if the image is a whole snapshot). */
+    private final int _delta;
+
+    /** The journal sequence number of the save a delta follows. */
+    private final long _previousSequence;
+
+    /** The species, ordered by ID. */
+    private final Species[] _species;
+
+    /** The trees, ordered by ID. */
+    private final Tree[] _trees;
+
+    /** The state of each habitat, ordered by ID. */
+    private final HabitatImage[] _habitats;
+
+    /** The state of each animal, habitat by habitat. */
+    private final AnimalImage[] _animals;
+
+    /** The state of each employee, ordered by ID. */
+    private final EmployeeImage[] _employees;
+
+    /** The vaccines, ordered by ID. */
+    private final Vaccine[] _vaccines;
+
+    /** The vaccinations, in the order they happened. */
+    private final Vaccination[] _vaccinations;
+
+    /** The vaccinations in which the vaccine was wrong. */
+    private final Vaccination[] _wrongVaccinations;
+
+    /** The state of each older habitat that changed, in a delta. */
+    private final HabitatImage[] _changedHabitats;
+
+    /** The state of each older animal that changed, in a delta. */
+    private final AnimalImage[] _changedAnimals;
+
+    /** The state of each older employee that changed, in a delta. */
+    private final EmployeeImage[] _changedEmployees;
+
+    /**
+     * Captures the current state of a hotel. It must not be changed by another thread meanwhile.
+     *
+     * @param hotel the hotel.
+     */
+    SnapshotImage(Hotel hotel) {
+        this(hotel, null);
+    }
+
+    /**
+     * Captures the current state of a hotel, as the snapshot of a chain. It must not be changed by another
+     * thread meanwhile.
+     *
+     * @param hotel the hotel.
+     * @param chain the chain the snapshot starts, or {@code null} if deltas will not extend it.
+     */
+    SnapshotImage(Hotel hotel, SnapshotChain chain) {
+        _elapsedSeasons = hotel.getSeasonClock().getElapsedSeasons();
+        _journalSequence = hotel.getJournalSequence();
+        _modifications = hotel.getModificationCount();
+        _chain = chain;
+        _lineage = chain != null ? chain.lineage() : 0;
+        _delta = 0;
+        _previousSequence = 0;
+        _changedHabitats = new HabitatImage[0];
+        _changedAnimals = new AnimalImage[0];
+        _changedEmployees = new EmployeeImage[0];
+        _species = hotel.allSpecies().toArray(new Species[0]);
+        _trees = hotel.allTrees().toArray(new Tree[0]);
+        _vaccines = hotel.allVaccines().toArray(new Vaccine[0]);
+        _vaccinations = hotel.allVaccinations().toArray(new Vaccination[0]);
+        _wrongVaccinations = hotel.wrongVaccinations().toArray(new Vaccination[0]);
+
+        Collection<Habitat> habitats = hotel.allHabitats();
+        _habitats = new HabitatImage[habitats.size()];
+        int population = 0;
+        for (Habitat habitat : habitats)
+            population += habitat.getPopulation();
+        _animals = new AnimalImage[population];
+        int h = 0;
+        int a = 0;
+        for (Habitat habitat : habitats) {
+            _habitats[h++] = captureHabitat(habitat);
+            // animals are kept habitat by habitat, so each habitat is filled in one go when the snapshot is read
+            for (Animal animal : habitat.allAnimals())
+                _animals[a++] = new AnimalImage(animal, habitat, animal.healthEvents().toArray(new VaccineDamage[0]));
+        }
+
+        Collection<Employee> employees = hotel.allEmployees();
+        _employees = new EmployeeImage[employees.size()];
+        int e = 0;
+        for (Employee employee : employees)
+            _employees[e++] = captureEmployee(employee);
+    }
+
+    /**
+     * Captures what changed in a hotel since it was last saved, as a delta. It must not be changed by
+     * another thread meanwhile.
+     *
+     * @param hotel the hotel.
+     * @param changes the changes recorded since the last save (see {@link Hotel#takeChanges()}).
+     * @param chain the chain the delta extends.
+     * @param delta the number of the delta.
+     * @param previousSequence the journal sequence number of the save the delta follows.
+     */
+    SnapshotImage(Hotel hotel, HotelChanges changes, SnapshotChain chain, int delta, long previousSequence) {
+        _elapsedSeasons = hotel.getSeasonClock().getElapsedSeasons();
+        _journalSequence = hotel.getJournalSequence();
+        _modifications = hotel.getModificationCount();
+        _chain = chain;
+        _lineage = chain.lineage();
+        _delta = delta;
+        _previousSequence = previousSequence;
+        _species = changes.species().toArray(new Species[0]);
+        _trees = changes.trees().toArray(new Tree[0]);
+        _vaccines = changes.vaccines().toArray(new Vaccine[0]);
+        _vaccinations = changes.vaccinations().toArray(new Vaccination[0]);
+        _wrongVaccinations = changes.wrongVaccinations().toArray(new Vaccination[0]);
+
+        // the entities registered since the last save are whole records, even if they changed since
+        List<Habitat> habitats = changes.habitats();
+        _habitats = new HabitatImage[habitats.size()];
+        for (int i = 0; i < _habitats.length; i++)
+            _habitats[i] = captureHabitat(habitats.get(i));
+        List<Animal> animals = changes.animals();
+        _animals = new AnimalImage[animals.size()];
+        for (int i = 0; i < _animals.length; i++)
+            _animals[i] = captureAnimal(animals.get(i));
+        List<Employee> employees = changes.employees();
+        _employees = new EmployeeImage[employees.size()];
+        for (int i = 0; i < _employees.length; i++)
+            _employees[i] = captureEmployee(employees.get(i));
+
+        _changedHabitats = older(changes.changedHabitats(), habitats).stream().map(SnapshotImage::captureHabitat).toArray(HabitatImage[]::new);
+        _changedAnimals = older(changes.changedAnimals(), animals).stream().map(SnapshotImage::captureAnimal).toArray(AnimalImage[]::new);
+        _changedEmployees = older(changes.changedEmployees(), employees).stream().map(SnapshotImage::captureEmployee).toArray(EmployeeImage[]::new);
+    }
+
+    /**
+     * Merges a delta waiting to be written with a later one, captured since, into a delta that holds both.
+     * The merged delta takes the place of the earlier one in the chain.
+     *
+     * @param earlier the delta waiting to be written.
+     * @param later the later delta.
+     */
+    private SnapshotImage(SnapshotImage earlier, SnapshotImage later) {
+        _elapsedSeasons = later._elapsedSeasons;
+        _journalSequence = later._journalSequence;
+        _modifications = later._modifications;
+        _chain = earlier._chain;
+        _lineage = earlier._lineage;
+        _delta = earlier._delta;
+        _previousSequence = earlier._previousSequence;
+        _species = concat(earlier._species, later._species, Species[]::new);
+        _trees = concat(earlier._trees, later._trees, Tree[]::new);
+        _vaccines = concat(earlier._vaccines, later._vaccines, Vaccine[]::new);
+        _vaccinations = concat(earlier._vaccinations, later._vaccinations, Vaccination[]::new);
+        _wrongVaccinations = concat(earlier._wrongVaccinations, later._wrongVaccinations, Vaccination[]::new);
+
+        // an entity new in the earlier delta stays new, with its later state if it changed since
+        Map<Object, HabitatImage> habitats = byEntity(later._changedHabitats, HabitatImage::habitat);
+        Map<Object, AnimalImage> animals = byEntity(later._changedAnimals, AnimalImage::animal);
+        Map<Object, EmployeeImage> employees = byEntity(later._changedEmployees, EmployeeImage::employee);
+        _habitats = concat(latest(earlier._habitats, habitats, HabitatImage::habitat), later._habitats, HabitatImage[]::new);
+        _animals = concat(latest(earlier._animals, animals, AnimalImage::animal), later._animals, AnimalImage[]::new);
+        _employees = concat(latest(earlier._employees, employees, EmployeeImage::employee), later._employees, EmployeeImage[]::new);
+        _changedHabitats = concat(latest(earlier._changedHabitats, habitats, HabitatImage::habitat), habitats.values().toArray(new HabitatImage[0]), HabitatImage[]::new);
+        _changedAnimals = concat(latest(earlier._changedAnimals, animals, AnimalImage::animal), animals.values().toArray(new AnimalImage[0]), AnimalImage[]::new);
+        _changedEmployees = concat(latest(earlier._changedEmployees, employees, EmployeeImage::employee), employees.values().toArray(new EmployeeImage[0]), EmployeeImage[]::new);
+    }
+
+    /**
+     * Merges a delta waiting to be written with a later one (see {@link #SnapshotImage(SnapshotImage, SnapshotImage)}).
+     *
+     * @param later the later delta, captured since this one.
+     * @return the delta that holds both, which takes the place of this one.
+     */
+    SnapshotImage merge(SnapshotImage later) {
+        return new SnapshotImage(this, later);
+    }
+
+    /**
+     * @param changed the entities that changed.
+     * @param added the entities registered since the last save.
+     * @return the entities that changed, except those registered since the last save.
+     */
+    private static <T> List<T> older(Set<T> changed, List<T> added) {
+        if (added.isEmpty())
+            return new ArrayList<>(changed);
+        Set<T> recent = Collections.newSetFromMap(new IdentityHashMap<>());
+        recent.addAll(added);
+        List<T> older = new ArrayList<>();
+        for (T entity : changed)
+            if (!recent.contains(entity))
+                older.add(entity);
+        return older;
+    }
+
+    /**
+     * @param images the states of some entities.
+     * @param entity the entity of a state.
+     * @return the states, by entity.
+     */
+    private static <T> Map<Object, T> byEntity(T[] images, Function<T, Object> entity) {
+        Map<Object, T> byEntity = new IdentityHashMap<>();
+        for (T image : images)
+            byEntity.put(entity.apply(image), image);
+        return byEntity;
+    }
+
+    /**
+     * Replaces the earlier states of some entities by their later ones, which are removed from the later states.
+     *
+     * @param earlier the earlier states.
+     * @param later the later states of some entities, by entity.
+     * @param entity the entity of a state.
+     * @return the latest state of each entity of the earlier states.
+     */
+    private static <T> T[] latest(T[] earlier, Map<Object, T> later, Function<T, Object> entity) {
+        T[] latest = earlier.clone();
+        for (int i = 0; i < latest.length; i++) {
+            T image = later.remove(entity.apply(latest[i]));
+            if (image != null)
+                latest[i] = image;
+        }
+        return latest;
+    }
+
+    /**
+     * @param first an array.
+     * @param second another array.
+     * @param array creates an array of a given length.
+     * @return the elements of both arrays, in order.
+     */
+    private static <T> T[] concat(T[] first, T[] second, IntFunction<T[]> array) {
+        T[] both = array.apply(first.length + second.length);
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+
+    /**
+     * @param animal the animal.
+     * @return the current state of the animal.
+     */
+    private static AnimalImage captureAnimal(Animal animal) {
+        return new AnimalImage(animal, animal.getHabitat(), animal.healthEvents().toArray(new VaccineDamage[0]));
+    }
+
+    /**
+     * @param habitat the habitat.
+     * @return the current state of the habitat.
+     */
+    private static HabitatImage captureHabitat(Habitat habitat) {
+        Tree[] trees = habitat.allTrees().toArray(new Tree[0]);
+        Map<Species, HabitatInfluence> influences = habitat.influences();
+        Species[] species = new Species[influences.size()];
+        HabitatInfluence[] values = new HabitatInfluence[influences.size()];
+        int i = 0;
+        for (Map.Entry<Species, HabitatInfluence> influence : influences.entrySet()) {
+            species[i] = influence.getKey();
+            values[i++] = influence.getValue();
+        }
+        return new HabitatImage(habitat, habitat.getArea(), trees, species, values);
+    }
+
+    /**
+     * @param employee the employee.
+     * @return the current state of the employee.
+     */
+    private static EmployeeImage captureEmployee(Employee employee) {
+        Object[] responsibilities;
+        if (employee instanceof Veterinarian veterinarian)
+            responsibilities = veterinarian.allSpecies().toArray();
+        else
+            responsibilities = ((Zookeeper) employee).allHabitats().toArray();
+        return new EmployeeImage(employee, responsibilities);
+    }
+
+    /**
+     * @return the number of seasons elapsed in the hotel.
+     */
+    int elapsedSeasons() {
+        return _elapsedSeasons;
+    }
+
+    /**
+     * @return the sequence number of the last operation of the hotel.
+     */
+    long journalSequence() {
+        return _journalSequence;
+    }
+
+    /**
+     * @return the number of modifications of the hotel when the image was captured.
+     */
+    long modifications() {
+        return _modifications;
+    }
+
+    /**
+     * @return the chain the image is saved in, or {@code null}.
+     */
+    SnapshotChain chain() {
+        return _chain;
+    }
+
+    /**
+     * @return the lineage of the snapshot, or 0 if deltas cannot extend it.
+     */
+    long lineage() {
+        return _lineage;
+    }
+
+    /**
+     * @return whether the image is a delta rather than a whole snapshot.
+     */
+    boolean isDelta() {
+        return _delta != 0;
+    }
+
+    /**
+     * @return the number of the delta, or 0 if the image is a whole snapshot.
+     */
+    int delta() {
+        return _delta;
+    }
+
+    /**
+     * @return the journal sequence number of the save a delta follows.
+     */
+    long previousSequence() {
+        return _previousSequence;
+    }
+
+    /**
+     * @return the species, ordered by ID.
+     */
+    Species[] species() {
+        return _species;
+    }
+
+    /**
+     * @return the trees, ordered by ID.
+     */
+    Tree[] trees() {
+        return _trees;
+    }
+
+    /**
+     * @return the state of each habitat, ordered by ID.
+     */
+    HabitatImage[] habitats() {
+        return _habitats;
+    }
+
+    /**
+     * @return the state of each animal, habitat by habitat.
+     */
+    AnimalImage[] animals() {
+        return _animals;
+    }
+
+    /**
+     * @return the state of each employee, ordered by ID.
+     */
+    EmployeeImage[] employees() {
+        return _employees;
+    }
+
+    /**
+     * @return the vaccines, ordered by ID.
+     */
+    Vaccine[] vaccines() {
+        return _vaccines;
+    }
+
+    /**
+     * @return the vaccinations, in the order they happened.
+     */
+    Vaccination[] vaccinations() {
+        return _vaccinations;
+    }
+
+    /**
+     * @return the vaccinations in which the vaccine was wrong.
+     */
+    Vaccination[] wrongVaccinations() {
+        return _wrongVaccinations;
+    }
+
+    /**
+     * @return the state of each older habitat that changed, in a delta.
+     */
+    HabitatImage[] changedHabitats() {
+        return _changedHabitats;
+    }
+
+    /**
+     * @return the state of each older animal that changed, in a delta.
+     */
+    AnimalImage[] changedAnimals() {
+        return _changedAnimals;
+    }
+
+    /**
+     * @return the state of each older employee that changed, in a delta.
+     */
+    EmployeeImage[] changedEmployees() {
+        return _changedEmployees;
+    }
+}
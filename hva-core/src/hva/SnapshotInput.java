@@ -0,0 +1,433 @@
+package hva;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code SnapshotInput} class reads the primitives of the snapshot format (see {@link SnapshotFormat})
+ * from a channel, through a buffer. The channel is a file, or decompresses what is read from it
+ * (see {@link InflatingChannel}).
+ *
+ * <p>
+ * {@link #nextRecord()} loads a whole record, whose fields are then read in order. Fields missing at the
+ * end of a record are reported as a corrupted snapshot; fields left unread are skipped with the record.
+ * {@link #nextChecksummedRecord()} reads the records of a journal (see {@link HotelJournal}), and
+ * {@link #skipRecord()} steps over a record that is read later, if at all.
+ * </p>
+ *
+ * <p>
+ * The records of a section of an older version are upgraded as they are loaded, once the input is told
+ * the version of the section (see {@link #migrate(byte, int, boolean)}), so they are read in the layout
+ * of the current version.
+ * </p>
+ *
+ * <p>
+ * An input can also read bytes that are already in memory, such as a memory-mapped snapshot
+ * (see {@link ReadOnlyHotel}), without copying them.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_channel: The channel from which the snapshot is read, or {@code null} if it is in memory.</li>
+ *   <li>_buffer: The bytes read from the channel, or in memory, and not yet consumed.</li>
+ *   <li>_record: The bytes of the current record.</li>
+ *   <li>_recordLength: The number of bytes of the current record.</li>
+ *   <li>_recordPosition: The position of the next field in the current record.</li>
+ *   <li>_migrations: The migrations that upgrade each record loaded, in order, or {@code null}.</li>
+ *   <li>_byPosition: Indicates if the records upgraded refer to other entities by position.</li>
+ *   <li>_migrated: The output where a record is upgraded, or {@code null} before the first one.</li>
+ * </ul>
+ */
+final class SnapshotInput implements Closeable {
+
+    /** Size of the buffer behind the channel. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The channel from which the snapshot is read (or {@code null} if it is in memory). */
+    private final ReadableByteChannel _channel;
+
+    /** The bytes read from the channel, or in memory, and not yet consumed. */
+    private final ByteBuffer _buffer;
+
+    /** The bytes of the current record. */
+    private byte[] _record = new byte[256];
+
+    /** The number of bytes of the current record. */
+    private int _recordLength;
+
+    /** The position of the next field in the current record. */
+    private int _recordPosition;
+
+    /** The migrations that upgrade each record loaded, in order (or {@code null}). */
+    private SnapshotMigrations.Migration[] _migrations;
+
+    /** Indicates if the records upgraded refer to other entities by position. */
+    private boolean _byPosition;
+
+    /** The output where a record is upgraded (or {@code null} before the first one). */
+    private SnapshotOutput _migrated;
+
+    /**
+     * Creates an input that reads from the given channel, from its current position.
+     *
+     * @param channel the channel.
+     */
+    SnapshotInput(ReadableByteChannel channel) {
+        _channel = channel;
+        _buffer = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+    }
+
+    /**
+     * Creates an input that reads bytes in memory, from their current position to their limit.
+     *
+     * @param bytes the bytes.
+     */
+    SnapshotInput(ByteBuffer bytes) {
+        _channel = null;
+        _buffer = bytes;
+    }
+
+    /**
+     * Reads the magic bytes and the version of the format.
+     *
+     * @param expected the expected magic bytes.
+     * @return the version of the format.
+     * @throws IOException if the channel cannot be read or does not start with the magic bytes.
+     */
+    int readHeader(byte[] expected) throws IOException {
+        byte[] magic = new byte[expected.length];
+        for (int i = 0; i < magic.length; i++)
+            magic[i] = readRawByte();
+        if (!Arrays.equals(magic, expected))
+            throw new StreamCorruptedException("Unexpected file format");
+        int version = 0;
+        for (int i = 0; i < 4; i++)
+            version = (version << 8) | (readRawByte() & 0xFF);
+        return version;
+    }
+
+    /**
+     * Reads the tag of the next section.
+     *
+     * @return the tag, {@link SnapshotFormat#END} at the end of the snapshot.
+     * @throws IOException if the channel cannot be read.
+     */
+    byte readSectionTag() throws IOException {
+        return readRawByte();
+    }
+
+    /**
+     * Reads the number of records of the current section.
+     *
+     * @return the number of records.
+     * @throws IOException if the channel cannot be read.
+     */
+    int readSectionCount() throws IOException {
+        return readRawVarInt();
+    }
+
+    /**
+     * Reads the number of bytes of the records of the current section, in snapshots since version 4.
+     *
+     * @return the number of bytes.
+     * @throws IOException if the channel cannot be read.
+     */
+    int readSectionLength() throws IOException {
+        return readRawVarInt();
+    }
+
+    /**
+     * Reads the version of the current section, in snapshots since version 5 and deltas since version 2.
+     *
+     * @return the version.
+     * @throws IOException if the channel cannot be read.
+     */
+    int readSectionVersion() throws IOException {
+        return readRawVarInt();
+    }
+
+    /**
+     * Upgrades the records loaded from now on, which belong to a section of the given version, to the
+     * layout of the current version of their section.
+     *
+     * @param tag the tag of the section.
+     * @param version the version of the section.
+     * @param byPosition {@code true} if the records refer to other entities by position, {@code false} by ID.
+     * @throws InvalidObjectException if the section is of a later version than this code, or cannot be upgraded.
+     */
+    void migrate(byte tag, int version, boolean byPosition) throws InvalidObjectException {
+        _migrations = SnapshotMigrations.of(tag, version);
+        _byPosition = byPosition;
+    }
+
+    /**
+     * Loads the next record, whose fields are read next.
+     *
+     * @throws IOException if the channel cannot be read or the record is truncated.
+     */
+    void nextRecord() throws IOException {
+        loadRecord(readRawVarInt());
+        if (_migrations != null)
+            upgradeRecord();
+    }
+
+    /**
+     * Upgrades the current record, from the version of its section to the current one, one version at a time.
+     *
+     * @throws IOException if the record is corrupted.
+     */
+    private void upgradeRecord() throws IOException {
+        if (_migrated == null)
+            _migrated = new SnapshotOutput();
+        for (SnapshotMigrations.Migration migration : _migrations) {
+            migration.migrate(this, _migrated, _byPosition);
+            int length = _migrated.recordLength();
+            if (length > _record.length)
+                _record = new byte[Math.max(length, 2 * _record.length)];
+            _migrated.takeRecord(_record);
+            _recordLength = length;
+            _recordPosition = 0;
+        }
+    }
+
+    /**
+     * Loads the next record, written with {@link SnapshotOutput#endChecksummedRecord()}, whose fields are read next.
+     *
+     * <p>A record cut short by the end of the channel, or whose checksum does not match, is reported
+     * as missing, so a reader stops at the last record that was completely written. Only inputs that
+     * read a file have checksummed records.</p>
+     *
+     * @return {@code true} if a whole, intact record was loaded.
+     * @throws IOException if the channel cannot be read.
+     */
+    boolean nextChecksummedRecord() throws IOException {
+        try {
+            long size = ((SeekableByteChannel) _channel).size();
+            if (position() == size)
+                return false;
+            int length = readRawVarInt();
+            if (length + 4L > size - position())
+                return false;
+            loadRecord(length);
+            int checksum = 0;
+            for (int i = 0; i < 4; i++)
+                checksum = (checksum << 8) | (readRawByte() & 0xFF);
+            CRC32 crc = new CRC32();
+            crc.update(_record, 0, _recordLength);
+            return checksum == (int) crc.getValue();
+        } catch (EOFException | StreamCorruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Skips the next record without loading it. Only inputs that read a file can skip records.
+     *
+     * @throws IOException if the channel cannot be read or the record is truncated.
+     */
+    void skipRecord() throws IOException {
+        skip(readRawVarInt());
+    }
+
+    /**
+     * Steps over bytes, such as the records of a section whose length is known. Only a file can be
+     * stepped over beyond what is buffered.
+     *
+     * @param length the number of bytes.
+     * @throws IOException if the position of the file cannot be changed or it ends before.
+     */
+    void skip(int length) throws IOException {
+        if (length <= _buffer.remaining()) {
+            _buffer.position(_buffer.position() + length);
+            return;
+        }
+        if (_channel == null)
+            throw new EOFException("Truncated snapshot");
+        SeekableByteChannel file = (SeekableByteChannel) _channel;
+        long next = position() + length;
+        if (next > file.size())
+            throw new EOFException("Truncated snapshot");
+        file.position(next);
+        _buffer.limit(0);
+    }
+
+    /**
+     * @return the position in the file, or in memory, of the next byte to be read.
+     * @throws IOException if the position of the file cannot be read.
+     */
+    long position() throws IOException {
+        if (_channel == null)
+            return _buffer.position();
+        return ((SeekableByteChannel) _channel).position() - _buffer.remaining();
+    }
+
+    /**
+     * Loads a record of the given length, whose fields are read next.
+     *
+     * @param length the number of bytes of the record.
+     * @throws IOException if the channel cannot be read or the record is truncated.
+     */
+    private void loadRecord(int length) throws IOException {
+        if (length > _record.length)
+            _record = new byte[Math.max(length, 2 * _record.length)];
+        int filled = 0;
+        while (filled < length) {
+            if (!_buffer.hasRemaining())
+                fill();
+            int chunk = Math.min(length - filled, _buffer.remaining());
+            _buffer.get(_record, filled, chunk);
+            filled += chunk;
+        }
+        _recordLength = length;
+        _recordPosition = 0;
+    }
+
+    /**
+     * @return {@code true} if the current record has fields left.
+     */
+    boolean hasMoreFields() {
+        return _recordPosition < _recordLength;
+    }
+
+    /**
+     * Reads a byte field of the current record.
+     *
+     * @return the byte, as an unsigned value.
+     * @throws StreamCorruptedException if the record has no fields left.
+     */
+    int readByte() throws StreamCorruptedException {
+        if (_recordPosition >= _recordLength)
+            throw new StreamCorruptedException("Truncated record");
+        return _record[_recordPosition++] & 0xFF;
+    }
+
+    /**
+     * Reads a non-negative integer field of the current record.
+     *
+     * @return the integer.
+     * @throws StreamCorruptedException if the record ends before the integer or the integer is too long.
+     */
+    int readVarInt() throws StreamCorruptedException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new StreamCorruptedException("Malformed integer");
+    }
+
+    /**
+     * Reads a non-negative long integer field of the current record.
+     *
+     * @return the long integer.
+     * @throws StreamCorruptedException if the record ends before the integer or the integer is too long.
+     */
+    long readVarLong() throws StreamCorruptedException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new StreamCorruptedException("Malformed integer");
+    }
+
+    /**
+     * Reads an integer field of the current record that may be negative.
+     *
+     * @return the integer.
+     * @throws StreamCorruptedException if the record ends before the integer or the integer is too long.
+     */
+    int readSignedVarInt() throws StreamCorruptedException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a string field of the current record.
+     *
+     * @return the string.
+     * @throws StreamCorruptedException if the record ends before the string.
+     */
+    String readString() throws StreamCorruptedException {
+        int length = readVarInt();
+        if (length > _recordLength - _recordPosition)
+            throw new StreamCorruptedException("Truncated record");
+        String value = new String(_record, _recordPosition, length, StandardCharsets.UTF_8);
+        _recordPosition += length;
+        return value;
+    }
+
+    /**
+     * Closes the channel, if any.
+     *
+     * @throws IOException if the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_channel != null)
+            _channel.close();
+    }
+
+    /**
+     * Reads a byte outside any record.
+     *
+     * @return the byte.
+     * @throws IOException if the channel cannot be read or has ended.
+     */
+    private byte readRawByte() throws IOException {
+        if (!_buffer.hasRemaining())
+            fill();
+        return _buffer.get();
+    }
+
+    /**
+     * Reads a non-negative integer outside any record.
+     *
+     * @return the integer.
+     * @throws IOException if the channel cannot be read or the integer is too long.
+     */
+    private int readRawVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readRawByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0)
+                    throw new StreamCorruptedException("Malformed length");
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed length");
+    }
+
+    /**
+     * Refills the buffer from the channel.
+     *
+     * @throws IOException if the channel cannot be read or has ended.
+     */
+    private void fill() throws IOException {
+        if (_channel == null)
+            throw new EOFException("Truncated snapshot");
+        _buffer.clear();
+        int read;
+        do {
+            read = _channel.read(_buffer);
+        } while (read == 0);
+        _buffer.flip();
+        if (read < 0)
+            throw new EOFException("Truncated snapshot");
+    }
+}
@@ -0,0 +1,142 @@
+package hva;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code SnapshotMigrations} class holds the migrations that upgrade the records of a section of a
+ * snapshot from one version of its layout to the next (see {@link SnapshotFormat}).
+ *
+ * <p>
+ * A record of an older section is upgraded as it is loaded (see {@link SnapshotInput#migrate}), by the
+ * migrations from its version to the current one of its tag, one after the other, so the readers only
+ * know the current layout of each section. A migration reads the fields of the record in the layout of
+ * its version and writes them in the layout of the next one; it is only given the record, and whether
+ * it refers to other entities by position or by ID, so the records of a section are upgraded one at a
+ * time, while they are streamed.
+ * </p>
+ *
+ * <p>
+ * A section whose version is later than the current one of its tag, or that no migrations lead from, cannot
+ * be read. Sections with a tag this code does not know are never read, so they are never upgraded either.
+ * </p>
+ */
+final class SnapshotMigrations {
+
+    /**
+     * Upgrades a record from one version of its section to the next.
+     */
+    @FunctionalInterface
+    interface Migration {
+
+        /**
+         * @param in the input, whose current record is in the layout of the older version.
+         * @param out where the record is written, in the layout of the next version, without being ended.
+         * @param byPosition {@code true} if the record refers to other entities by position, {@code false} by ID.
+         * @throws IOException if the record is corrupted.
+         */
+        void migrate(SnapshotInput in, SnapshotOutput out, boolean byPosition) throws IOException;
+    }
+
+    /** The migrations, by the tag of their section and the version they upgrade from. */
+    private static final Map<Integer, Migration> MIGRATIONS = new ConcurrentHashMap<>();
+
+    static {
+        register(SnapshotFormat.VACCINATION_HISTORY, 1, SnapshotMigrations::wrongVaccinationsBitmap);
+    }
+
+    /** Not instantiable. */
+    private SnapshotMigrations() {
+    }
+
+    /**
+     * Registers the migration of the records of the sections with a tag from a version to the next.
+     *
+     * @param tag the tag of the sections.
+     * @param from the version the migration upgrades from.
+     * @param migration the migration.
+     */
+    static void register(byte tag, int from, Migration migration) {
+        MIGRATIONS.put(key(tag, from), migration);
+    }
+
+    /**
+     * Finds the migrations that upgrade the records of a section to the current version of its tag.
+     *
+     * @param tag the tag of the section.
+     * @param version the version of the section.
+     * @return the migrations, in order, or {@code null} if the records need no upgrade.
+     * @throws InvalidObjectException if the version of the section is later than the current one, or
+     *         no migrations lead from it.
+     */
+    static Migration[] of(byte tag, int version) throws InvalidObjectException {
+        int current = SnapshotFormat.sectionVersion(tag);
+        if (version == current || current == 0)
+            // a section with an unknown tag is stepped over
+            return null;
+        if (version > current || version < 1)
+            throw new InvalidObjectException("Unsupported version " + version + " of section " + tag);
+        Migration[] migrations = new Migration[current - version];
+        for (int i = 0; i < migrations.length; i++) {
+            migrations[i] = MIGRATIONS.get(key(tag, version + i));
+            if (migrations[i] == null)
+                throw new InvalidObjectException("No migration of section " + tag + " from version " + (version + i));
+        }
+        return migrations;
+    }
+
+    /**
+     * @param tag the tag of a section.
+     * @param from a version of the section.
+     * @return the key of the migration from that version.
+     */
+    private static int key(byte tag, int from) {
+        return (tag & 0xFF) << 24 | from;
+    }
+
+    /**
+     * Upgrades a vaccination history record from version 1, where each vaccination ends with whether the
+     * vaccine was wrong, to version 2, where a bitmap of the wrong vaccinations comes before the references.
+     *
+     * @param in the input, whose current record is a version 1 history record.
+     * @param out where the version 2 record is written.
+     * @param byPosition {@code true} if the vaccinations refer to entities by position, {@code false} by ID.
+     * @throws IOException if the record is corrupted.
+     */
+    private static void wrongVaccinationsBitmap(SnapshotInput in, SnapshotOutput out, boolean byPosition) throws IOException {
+        int count = in.readVarInt();
+        // the references of the whole record are read before the bitmap is written; the arrays grow as they
+        // are read, so a corrupted count does not make room for more than the record holds
+        int[] positions = new int[byPosition ? 3 * Math.min(count, 1024) : 0];
+        String[] ids = new String[byPosition ? 0 : 3 * Math.min(count, 1024)];
+        BitSet wrong = new BitSet();
+        for (int i = 0; i < count; i++) {
+            if (byPosition && positions.length < 3 * i + 3)
+                positions = Arrays.copyOf(positions, 2 * positions.length);
+            if (!byPosition && ids.length < 3 * i + 3)
+                ids = Arrays.copyOf(ids, 2 * ids.length);
+            for (int j = 3 * i; j < 3 * i + 3; j++) {
+                if (byPosition)
+                    positions[j] = in.readVarInt();
+                else
+                    ids[j] = in.readString();
+            }
+            if (in.readByte() != 0)
+                wrong.set(i);
+        }
+        out.writeVarInt(count);
+        byte[] bitmap = Arrays.copyOf(wrong.toByteArray(), (count + 7) / 8);
+        for (byte flags : bitmap)
+            out.writeByte(flags);
+        for (int j = 0; j < 3 * count; j++) {
+            if (byPosition)
+                out.writeVarInt(positions[j]);
+            else
+                out.writeString(ids[j]);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package hva;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code SnapshotOutput} class writes the primitives of the snapshot format (see {@link SnapshotFormat})
+ * to a channel, through a buffer. The channel is a file, or compresses what is written to it
+ * (see {@link DeflatingChannel}).
+ *
+ * <p>
+ * Fields are appended to the current record; {@link #endRecord()} writes it, prefixed by its length.
+ * Section tags and counts are written outside records. The same records, followed by a checksum, make
+ * up the journal of a hotel (see {@link HotelJournal}).
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_channel: The channel where the snapshot is written.</li>
+ *   <li>_buffer: The bytes not yet written to the channel.</li>
+ *   <li>_record: The fields of the current record.</li>
+ *   <li>_recordLength: The number of bytes of the current record.</li>
+ * </ul>
+ */
+final class SnapshotOutput implements Closeable {
+
+    /** Size of the buffer in front of the channel. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The channel where the snapshot is written. */
+    private final WritableByteChannel _channel;
+
+    /** The bytes not yet written to the channel. */
+    private final ByteBuffer _buffer;
+
+    /** The fields of the current record. */
+    private byte[] _record = new byte[256];
+
+    /** The number of bytes of the current record. */
+    private int _recordLength;
+
+    /**
+     * Creates an output that writes to the given channel, from its current position.
+     *
+     * @param channel the channel.
+     */
+    SnapshotOutput(WritableByteChannel channel) {
+        _channel = channel;
+        // a file is written from direct memory without copying it; other channels read the buffer as an array
+        _buffer = channel instanceof FileChannel ? ByteBuffer.allocateDirect(BUFFER_SIZE) : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Creates an output whose records are taken back rather than written, such as a record being upgraded
+     * to a later version of its section (see {@link SnapshotMigrations}).
+     */
+    SnapshotOutput() {
+        _channel = null;
+        _buffer = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Writes the magic bytes and the version of the format.
+     *
+     * @param magic the magic bytes.
+     * @param version the version of the format.
+     * @throws IOException if the channel cannot be written.
+     */
+    void writeHeader(byte[] magic, int version) throws IOException {
+        put(magic, 0, magic.length);
+        put(new byte[] { (byte) (version >>> 24), (byte) (version >>> 16), (byte) (version >>> 8), (byte) version }, 0, 4);
+    }
+
+    /**
+     * Starts a section of a delta, of the current version of its tag.
+     *
+     * @param tag the tag of the section.
+     * @param count the number of records of the section.
+     * @throws IOException if the channel cannot be written.
+     */
+    void beginSection(byte tag, int count) throws IOException {
+        writeByte(tag);
+        writeVarInt(SnapshotFormat.sectionVersion(tag));
+        writeVarInt(count);
+        flushRecord(false);
+    }
+
+    /**
+     * Starts a section whose records were encoded apart, of the current version of its tag.
+     *
+     * @param tag the tag of the section.
+     * @param count the number of records of the section.
+     * @param length the number of bytes of the records.
+     * @throws IOException if the channel cannot be written.
+     */
+    void beginSection(byte tag, int count, int length) throws IOException {
+        writeByte(tag);
+        writeVarInt(SnapshotFormat.sectionVersion(tag));
+        writeVarInt(count);
+        writeVarInt(length);
+        flushRecord(false);
+    }
+
+    /**
+     * Closes the snapshot with the {@link SnapshotFormat#END} tag.
+     *
+     * @throws IOException if the channel cannot be written.
+     */
+    void writeEnd() throws IOException {
+        writeByte(SnapshotFormat.END);
+        flushRecord(false);
+    }
+
+    /**
+     * Writes the current record, prefixed by its length, and starts a new one.
+     *
+     * @throws IOException if the channel cannot be written.
+     */
+    void endRecord() throws IOException {
+        flushRecord(true);
+    }
+
+    /**
+     * Writes the current record, prefixed by its length and followed by the CRC-32 of its bytes,
+     * and starts a new one. Used where a record may be torn by a crash.
+     *
+     * @throws IOException if the channel cannot be written.
+     */
+    void endChecksummedRecord() throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(_record, 0, _recordLength);
+        int checksum = (int) crc.getValue();
+        flushRecord(true);
+        put(new byte[] { (byte) (checksum >>> 24), (byte) (checksum >>> 16), (byte) (checksum >>> 8), (byte) checksum }, 0, 4);
+    }
+
+    /**
+     * Appends a byte to the current record.
+     *
+     * @param value the byte.
+     */
+    void writeByte(int value) {
+        ensureRecordCapacity(1);
+        _record[_recordLength++] = (byte) value;
+    }
+
+    /**
+     * Appends a non-negative integer to the current record, as a varint.
+     *
+     * @param value the integer.
+     */
+    void writeVarInt(int value) {
+        ensureRecordCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            _record[_recordLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        _record[_recordLength++] = (byte) value;
+    }
+
+    /**
+     * Appends a non-negative long integer to the current record, as a varint.
+     *
+     * @param value the long integer.
+     */
+    void writeVarLong(long value) {
+        ensureRecordCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            _record[_recordLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        _record[_recordLength++] = (byte) value;
+    }
+
+    /**
+     * Appends an integer that may be negative to the current record, as a zigzag-encoded varint.
+     *
+     * @param value the integer.
+     */
+    void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Appends a string to the current record, as its UTF-8 bytes prefixed by their number.
+     *
+     * @param value the string.
+     */
+    void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        ensureRecordCapacity(bytes.length);
+        System.arraycopy(bytes, 0, _record, _recordLength, bytes.length);
+        _recordLength += bytes.length;
+    }
+
+    /**
+     * @return the number of bytes of the current record.
+     */
+    int recordLength() {
+        return _recordLength;
+    }
+
+    /**
+     * Copies the current record out of the output, and starts a new one.
+     *
+     * @param record where the record is copied, with room for {@link #recordLength()} bytes.
+     */
+    void takeRecord(byte[] record) {
+        System.arraycopy(_record, 0, record, 0, _recordLength);
+        _recordLength = 0;
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     *
+     * @throws IOException if the channel cannot be written.
+     */
+    void flush() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining())
+            _channel.write(_buffer);
+        _buffer.clear();
+    }
+
+    /**
+     * Writes the buffered bytes to the channel and, if it is a file, forces them to the storage device.
+     *
+     * @throws IOException if the channel cannot be written.
+     */
+    void force() throws IOException {
+        flush();
+        if (_channel instanceof FileChannel file)
+            file.force(false);
+    }
+
+    /**
+     * Writes the buffered bytes and closes the channel.
+     *
+     * @throws IOException if the channel cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            _channel.close();
+        }
+    }
+
+    /**
+     * Moves the current record to the buffer.
+     *
+     * @param prefixed {@code true} if the record is prefixed by its length.
+     * @throws IOException if the channel cannot be written.
+     */
+    private void flushRecord(boolean prefixed) throws IOException {
+        int length = _recordLength;
+        if (prefixed) {
+            byte[] prefix = new byte[5];
+            int prefixLength = 0;
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                prefix[prefixLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            prefix[prefixLength++] = (byte) value;
+            put(prefix, 0, prefixLength);
+        }
+        put(_record, 0, length);
+        _recordLength = 0;
+    }
+
+    /**
+     * Copies bytes to the buffer, writing it to the channel whenever it is full.
+     *
+     * @param bytes the bytes.
+     * @param offset the first byte.
+     * @param length the number of bytes.
+     * @throws IOException if the channel cannot be written.
+     */
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!_buffer.hasRemaining())
+                flush();
+            int chunk = Math.min(length, _buffer.remaining());
+            _buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Makes room in the current record.
+     *
+     * @param length the number of bytes about to be appended.
+     */
+    private void ensureRecordCapacity(int length) {
+        if (_recordLength + length > _record.length)
+            _record = Arrays.copyOf(_record, Math.max(_recordLength + length, 2 * _record.length));
+    }
+}
@@ -0,0 +1,848 @@
+package hva;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import hva.employee.Employee;
+import hva.employee.Veterinarian;
+import hva.employee.Zookeeper;
+import hva.enums.HabitatInfluence;
+import hva.enums.VaccineDamage;
+import hva.tree.DeciduousTree;
+import hva.tree.EvergreenTree;
+import hva.tree.Tree;
+
+/**
+ * The {@code SnapshotReader} class rebuilds a hotel from a snapshot in the binary format (see {@link SnapshotFormat}).
+ *
+ * <p>
+ * The entities are created with their public constructors and linked with the same methods the hotel
+ * uses when they are registered, so strategies, tree states and back-pointers are rebuilt rather than
+ * read. Sections with an unknown tag, and fields added at the end of a record by a later version of the
+ * format, are skipped. The records of a section of an older version are upgraded as they are read (see
+ * {@link SnapshotMigrations}).
+ * </p>
+ *
+ * <p>
+ * Each record is read in two steps: the entity is created and put in the tables, then it is linked
+ * into the hotel and into the entities it belongs to. A snapshot file of version 4 or later that is not
+ * compressed is read section by section on the common fork/join pool, while the entities are linked by
+ * the thread that reads the hotel, in the order of the file (see {@link #readInParallel}). Its sections
+ * are found through its table of contents (see {@link SnapshotContents}), so only the bytes of the
+ * sections the hotel is made of are read.
+ * </p>
+ *
+ * <p>
+ * Compressed snapshots are recognised by their magic bytes and decompressed while they are read (see
+ * {@link InflatingChannel}), so a hotel is loaded the same way however it was saved.
+ * </p>
+ *
+ * <p>
+ * The vaccination history of a snapshot file that is not compressed is stepped over and handed to the
+ * hotel to be read when it is first needed (see {@link VaccinationHistory}), so opening a hotel takes
+ * about the same time however long its history is. A compressed snapshot cannot be read out of order,
+ * so its history is read with the rest.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_in: The input from which the snapshot is read.</li>
+ *   <li>_hotel: The hotel being rebuilt.</li>
+ *   <li>_path: The snapshot file, whose vaccination history is read later, or {@code null}.</li>
+ *   <li>_history: The vaccination history sections that were stepped over, to be read later.</li>
+ *   <li>_tables: The entities read so far, to which later records refer by position.</li>
+ * </ul>
+ */
+final class SnapshotReader {
+
+    /**
+     * A section of a snapshot file, located without being read.
+     *
+     * @param tag the tag of the section.
+     * @param version the version of the section, whose records are upgraded as they are read.
+     * @param offset the position in the file of its first record.
+     * @param count the number of records of the section.
+     * @param length the number of bytes of its records, or -1 before version 4.
+     * @param first the position of its first record among the records of the sections with the same tag.
+     */
+    record Section(byte tag, int version, long offset, int count, int length, int first) { }
+
+    /** What is left to link an entity into the hotel once its record is read. */
+    @FunctionalInterface
+    private interface Link {
+
+        /** Nothing left to link. */
+        Link NOTHING = () -> { };
+
+        /**
+         * Links the entity into the hotel and into the entities it belongs to.
+         *
+         * @throws Exception if the entity is duplicated or refers to unknown entities.
+         */
+        void link() throws Exception;
+    }
+
+    /**
+     * The sections decoded in parallel after the hotel record, in phases: the records of each phase only
+     * refer to entities of the earlier ones.
+     */
+    private static final byte[][] PHASES = {
+        { SnapshotFormat.SPECIES, SnapshotFormat.TREES },
+        { SnapshotFormat.HABITATS },
+        { SnapshotFormat.ANIMALS, SnapshotFormat.EMPLOYEES, SnapshotFormat.VACCINES },
+    };
+
+    /** The input from which the snapshot is read. */
+    private final SnapshotInput _in;
+
+    /** The hotel being rebuilt. */
+    private final Hotel _hotel;
+
+    /** The snapshot file, whose vaccination history is read later (or {@code null} to read it with the rest). */
+    private final Path _path;
+
+    /** The vaccination history sections that were stepped over, to be read later. */
+    private final List<Section> _history = new ArrayList<>();
+
+    /** The entities read so far, to which later records refer by position. */
+    private final SnapshotTables _tables;
+
+    /**
+     * @param in the input from which the snapshot is read.
+     * @param hotel the hotel being rebuilt, still empty.
+     * @param path the snapshot file, if the vaccination history is read later, or {@code null}.
+     * @param tables the entities read so far from the snapshot.
+     */
+    SnapshotReader(SnapshotInput in, Hotel hotel, Path path, SnapshotTables tables) {
+        _in = in;
+        _hotel = hotel;
+        _path = path;
+        _tables = tables;
+    }
+
+    /**
+     * Reads a hotel from a snapshot file, compressed or not.
+     *
+     * @param path the file.
+     * @return the hotel, marked as unchanged.
+     * @throws IOException if the file cannot be read, is not a snapshot, or is corrupted.
+     */
+    static Hotel read(Path path) throws IOException {
+        Hotel hotel = new Hotel();
+        read(path, hotel);
+        return hotel;
+    }
+
+    /**
+     * Reads a snapshot file, compressed or not, into an empty hotel.
+     *
+     * @param path the file.
+     * @param hotel the hotel, which is marked as unchanged.
+     * @throws IOException if the file cannot be read, is not a snapshot, or is corrupted.
+     */
+    static void read(Path path, Hotel hotel) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (!Arrays.equals(SnapshotFormat.readMagic(channel), SnapshotFormat.COMPRESSED_MAGIC)) {
+                SnapshotInput header = new SnapshotInput(readBytes(channel, 0, SnapshotFormat.MAGIC.length + Integer.BYTES));
+                int version = header.readHeader(SnapshotFormat.MAGIC);
+                if (version >= 4) {
+                    readInParallel(channel, path, hotel, version);
+                    return;
+                }
+                channel.position(0);
+                try (SnapshotInput in = new SnapshotInput(channel)) {
+                    new SnapshotReader(in, hotel, path, new SnapshotTables()).readHotel();
+                    return;
+                }
+            }
+            ByteBuffer version = ByteBuffer.allocate(Integer.BYTES);
+            while (version.hasRemaining() && channel.read(version) >= 0)
+                ;
+            if (version.hasRemaining())
+                throw new EOFException("Truncated snapshot");
+            if (version.getInt(0) > SnapshotFormat.COMPRESSED_VERSION)
+                throw new InvalidObjectException("Unsupported compressed snapshot version " + version.getInt(0));
+            InflatingChannel inflating = new InflatingChannel(channel);
+            try (SnapshotInput in = new SnapshotInput(inflating)) {
+                new SnapshotReader(in, hotel, null, new SnapshotTables()).readHotel();
+                // the checksum of the compressed bytes is only checked at the end of the stream
+                inflating.finish();
+            }
+        }
+    }
+
+    /**
+     * Reads the header and every section of the snapshot, in order.
+     *
+     * @throws IOException if the snapshot cannot be read or is corrupted.
+     */
+    private void readHotel() throws IOException {
+        int version = _in.readHeader(SnapshotFormat.MAGIC);
+        checkVersion(version);
+        _tables.setVersion(version);
+        int[] next = new int[256];
+        for (byte tag = _in.readSectionTag(); tag != SnapshotFormat.END; tag = _in.readSectionTag()) {
+            int sectionVersion = version >= 5 ? _in.readSectionVersion() : SnapshotFormat.LEGACY_SECTION_VERSION;
+            int count = _in.readSectionCount();
+            int length = version >= 4 ? _in.readSectionLength() : -1;
+            int first = next[tag & 0xFF];
+            next[tag & 0xFF] += count;
+            if (tag == SnapshotFormat.VACCINATION_HISTORY && _path != null) {
+                skipVaccinationHistory(sectionVersion, count, length);
+            } else {
+                _in.migrate(tag, sectionVersion, _tables.byPosition());
+                readSection(tag, count, first);
+            }
+        }
+        if (!_history.isEmpty())
+            _hotel.deferVaccinationHistory(new VaccinationHistory(_hotel, _tables, FileChannel.open(_path, StandardOpenOption.READ), _history));
+        _hotel.setChanged(false);
+    }
+
+    /**
+     * Reads a snapshot file of version 4 or later, which is not compressed, into an empty hotel.
+     *
+     * <p>
+     * The sections are located without being read (see {@link SnapshotContents}). After the hotel record, the sections
+     * are decoded in phases, each of which only refers to entities of the earlier ones (see {@link #PHASES}).
+     * The sections of a phase are read and parsed on the common fork/join pool, a few ahead of the one
+     * being linked, and their entities are linked into the hotel in the order of the file, by this thread
+     * alone. The vaccination history is stepped over and read when it is first needed.
+     * </p>
+     *
+     * @param channel the snapshot file.
+     * @param path the snapshot file, opened again for the vaccination history.
+     * @param hotel the hotel, which is marked as unchanged.
+     * @param version the version of the snapshot.
+     * @throws IOException if the file cannot be read or is corrupted.
+     */
+    private static void readInParallel(FileChannel channel, Path path, Hotel hotel, int version) throws IOException {
+        checkVersion(version);
+        SnapshotTables tables = new SnapshotTables();
+        tables.setVersion(version);
+        List<Section> sections = SnapshotContents.read(channel, version);
+        List<Section> history = new ArrayList<>();
+        for (Section section : sections) {
+            if (section.tag() == SnapshotFormat.HOTEL)
+                new SnapshotReader(input(channel, section, tables.byPosition()), hotel, null, tables).readSection(section.tag(), section.count(), section.first());
+            else if (section.tag() == SnapshotFormat.VACCINATION_HISTORY)
+                history.add(checkHistoryVersion(section));
+        }
+        for (byte[] phase : PHASES) {
+            List<Section> parsed = new ArrayList<>();
+            for (Section section : sections)
+                for (byte tag : phase)
+                    if (section.tag() == tag)
+                        parsed.add(section);
+            readPhase(channel, parsed, hotel, tables);
+        }
+        if (!history.isEmpty())
+            hotel.deferVaccinationHistory(new VaccinationHistory(hotel, tables, FileChannel.open(path, StandardOpenOption.READ), history));
+        hotel.setChanged(false);
+    }
+
+    /**
+     * Decodes the sections of a phase: their records are parsed on the common fork/join pool, a few ahead of
+     * the section being linked, and linked into the hotel in order.
+     *
+     * @param channel the snapshot file.
+     * @param sections the sections of the phase, in the order of the file.
+     * @param hotel the hotel being rebuilt.
+     * @param tables the entities read so far from the snapshot.
+     * @throws IOException if a section cannot be read or is corrupted.
+     */
+    private static void readPhase(FileChannel channel, List<Section> sections, Hotel hotel, SnapshotTables tables) throws IOException {
+        int window = 2 * ForkJoinPool.getCommonPoolParallelism() + 2;
+        Deque<CompletableFuture<List<Link>>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < sections.size() || !pending.isEmpty()) {
+                while (next < sections.size() && pending.size() < window) {
+                    Section section = sections.get(next++);
+                    pending.add(CompletableFuture.supplyAsync(() -> parse(channel, section, hotel, tables), ForkJoinPool.commonPool()));
+                }
+                List<Link> links = SnapshotWriter.join(pending.remove());
+                try {
+                    for (Link link : links)
+                        link.link();
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw corrupted(e);
+                }
+            }
+        } finally {
+            // a failed load does not leave sections being parsed
+            for (CompletableFuture<List<Link>> section : pending)
+                section.cancel(false);
+        }
+    }
+
+    /**
+     * Reads and parses the records of a section, on a thread of the pool.
+     *
+     * @param channel the snapshot file.
+     * @param section the section.
+     * @param hotel the hotel being rebuilt.
+     * @param tables the entities read so far from the snapshot.
+     * @return what is left to link each entity of the section into the hotel, in order.
+     * @throws UncheckedIOException if the section cannot be read or is corrupted.
+     */
+    private static List<Link> parse(FileChannel channel, Section section, Hotel hotel, SnapshotTables tables) {
+        try {
+            SnapshotReader reader = new SnapshotReader(input(channel, section, tables.byPosition()), hotel, null, tables);
+            List<Link> links = new ArrayList<>(section.count());
+            try {
+                for (int i = 0; i < section.count(); i++) {
+                    reader._in.nextRecord();
+                    links.add(reader.readRecord(section.tag(), section.first() + i));
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw corrupted(e);
+            }
+            return links;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the records of a section whose length is known.
+     *
+     * @param channel the snapshot file.
+     * @param section the section.
+     * @param byPosition {@code true} if the records refer to other entities by position, {@code false} by ID.
+     * @return an input over the records of the section, which upgrades them to the current version of the section.
+     * @throws IOException if the file cannot be read, the section is truncated, or its version cannot be read.
+     */
+    static SnapshotInput input(FileChannel channel, Section section, boolean byPosition) throws IOException {
+        SnapshotInput in = new SnapshotInput(readBytes(channel, section.offset(), section.length()));
+        in.migrate(section.tag(), section.version(), byPosition);
+        return in;
+    }
+
+    /**
+     * Reads bytes at a position of a file, without moving the position of the channel.
+     *
+     * @param channel the file.
+     * @param offset the position of the bytes.
+     * @param length the number of bytes.
+     * @return the bytes.
+     * @throws IOException if the file cannot be read or is shorter than expected.
+     */
+    static ByteBuffer readBytes(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        while (bytes.hasRemaining())
+            if (channel.read(bytes, offset + bytes.position()) < 0)
+                throw new EOFException("Truncated snapshot");
+        return bytes.flip();
+    }
+
+    /**
+     * Checks that the version of a snapshot can be read.
+     *
+     * @param version the version of the snapshot format.
+     * @throws InvalidObjectException if the version is later than the one of this code.
+     */
+    static void checkVersion(int version) throws InvalidObjectException {
+        if (version > SnapshotFormat.VERSION)
+            throw new InvalidObjectException("Unsupported snapshot version " + version);
+    }
+
+    /**
+     * Reads the records of a section, which come next in the input, linking each entity into the hotel as
+     * it is read.
+     *
+     * @param tag the tag of the section.
+     * @param count the number of records of the section.
+     * @param first the position of the first record among the records of the sections with the same tag.
+     * @throws IOException if the section cannot be read or is corrupted.
+     */
+    void readSection(byte tag, int count, int first) throws IOException {
+        try {
+            for (int i = 0; i < count; i++) {
+                _in.nextRecord();
+                readRecord(tag, first + i).link();
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw corrupted(e);
+        }
+    }
+
+    /**
+     * Reads a section of a delta with the state of entities that changed (see {@link SnapshotDelta}),
+     * which already are in the hotel, and gives it to them. The records refer to other entities by ID.
+     *
+     * @param tag the tag of the section.
+     * @param count the number of records of the section.
+     * @throws IOException if the section cannot be read or is corrupted.
+     */
+    void readChanges(byte tag, int count) throws IOException {
+        try {
+            for (int i = 0; i < count; i++) {
+                _in.nextRecord();
+                switch (tag) {
+                    case SnapshotFormat.CHANGED_HABITATS -> readHabitatChange();
+                    case SnapshotFormat.CHANGED_ANIMALS -> readAnimalChange();
+                    case SnapshotFormat.CHANGED_EMPLOYEES -> readEmployeeChange();
+                    default -> throw new StreamCorruptedException("Unknown delta section " + tag);
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw corrupted(e);
+        }
+    }
+
+    /**
+     * Reads the state of a habitat that changed. Trees are never taken from a habitat and influences are
+     * never removed, so the ones in the record are added to those it has.
+     *
+     * @throws Exception if the record is corrupted or refers to unknown entities.
+     */
+    private void readHabitatChange() throws Exception {
+        Habitat habitat = _hotel.getHabitat(_in.readString());
+        _in.readString(); // the name never changes
+        habitat.changeArea(_in.readSignedVarInt());
+        for (int trees = _in.readVarInt(); trees > 0; trees--)
+            habitat.addTree(readTreeReference());
+        HabitatInfluence[] influences = HabitatInfluence.values();
+        for (int count = _in.readVarInt(); count > 0; count--)
+            habitat.changeInfluenceOnSpecies(readSpeciesReference(), influences[_in.readByte()]);
+    }
+
+    /**
+     * Reads the state of an animal that changed: it is moved to its habitat and takes the vaccines it took
+     * since, as health events are only ever added.
+     *
+     * @throws Exception if the record is corrupted or refers to unknown entities.
+     */
+    private void readAnimalChange() throws Exception {
+        Animal animal = _hotel.getAnimal(_in.readString());
+        _in.readString(); // the name and the species never change
+        readSpeciesReference();
+        Habitat habitat = readHabitatReference();
+        if (habitat != animal.getHabitat())
+            animal.changeHabitat(habitat);
+        int taken = animal.healthEvents().size();
+        int events = _in.readVarInt();
+        if (events < taken)
+            throw new StreamCorruptedException("Animal " + animal.getId() + " with fewer health events than before");
+        VaccineDamage[] damages = VaccineDamage.values();
+        for (int i = 0; i < events; i++) {
+            VaccineDamage damage = damages[_in.readByte()];
+            if (i >= taken)
+                animal.takeVaccine(damage);
+        }
+    }
+
+    /**
+     * Reads the state of an employee that changed: the responsibilities it no longer has are taken from it
+     * and the others are assigned to it.
+     *
+     * @throws Exception if the record is corrupted or refers to unknown entities.
+     */
+    private void readEmployeeChange() throws Exception {
+        int type = _in.readByte();
+        Employee employee = _hotel.getEmployee(_in.readString());
+        _in.readString(); // the name never changes
+        int responsibilities = _in.readVarInt();
+        if (type == SnapshotFormat.VETERINARIAN && employee instanceof Veterinarian veterinarian) {
+            Set<Species> species = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < responsibilities; i++)
+                species.add(readSpeciesReference());
+            for (Species responsibility : new ArrayList<>(veterinarian.allSpecies()))
+                if (!species.contains(responsibility))
+                    veterinarian.unassignSpecies(responsibility);
+            for (Species responsibility : species)
+                veterinarian.assignSpecies(responsibility);
+        } else if (type == SnapshotFormat.ZOOKEEPER && employee instanceof Zookeeper zookeeper) {
+            Set<Habitat> habitats = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < responsibilities; i++)
+                habitats.add(readHabitatReference());
+            for (Habitat responsibility : new ArrayList<>(zookeeper.allHabitats()))
+                if (!habitats.contains(responsibility))
+                    zookeeper.unassignHabitat(responsibility);
+            for (Habitat responsibility : habitats)
+                zookeeper.assignHabitat(responsibility);
+        } else {
+            throw new StreamCorruptedException("Employee " + employee.getId() + " of another type " + type);
+        }
+    }
+
+    /**
+     * Reports an entity that cannot be rebuilt as a corrupted snapshot.
+     *
+     * @param cause a duplicated or unknown ID, or an unknown enum constant.
+     * @return the exception to throw.
+     */
+    static StreamCorruptedException corrupted(Exception cause) {
+        // the snapshot does not describe a consistent hotel
+        StreamCorruptedException corrupted = new StreamCorruptedException(cause.toString());
+        corrupted.initCause(cause);
+        return corrupted;
+    }
+
+    /**
+     * Steps over a vaccination history section, remembering where its records are.
+     *
+     * @param version the version of the section.
+     * @param count the number of records of the section.
+     * @param length the number of bytes of its records, or -1 before version 4.
+     * @throws IOException if the snapshot cannot be read or is corrupted.
+     */
+    private void skipVaccinationHistory(int version, int count, int length) throws IOException {
+        if (count != 1)
+            throw new StreamCorruptedException("Vaccination history with " + count + " records");
+        _history.add(checkHistoryVersion(new Section(SnapshotFormat.VACCINATION_HISTORY, version, _in.position(), count, length, _history.size())));
+        if (length >= 0)
+            _in.skip(length);
+        else
+            _in.skipRecord();
+    }
+
+    /**
+     * Checks that a vaccination history section that is stepped over can be read when it is needed, so an
+     * unsupported version is reported when the snapshot is read rather than when the history is first used.
+     *
+     * @param section the section.
+     * @return the section.
+     * @throws InvalidObjectException if the version of the section is later than the one of this code.
+     */
+    static Section checkHistoryVersion(Section section) throws InvalidObjectException {
+        SnapshotMigrations.of(section.tag(), section.version());
+        return section;
+    }
+
+    /**
+     * Reads the current record of a section. The entity is created and put in the tables, but it is
+     * only added to the hotel, and to the entities it belongs to, by the link that is returned.
+     *
+     * @param tag the tag of the section.
+     * @param position the position of the record among the records of the sections with the same tag.
+     * @return what is left to link the entity into the hotel.
+     * @throws Exception if the record is corrupted or refers to entities that do not exist.
+     */
+    private Link readRecord(byte tag, int position) throws Exception {
+        return switch (tag) {
+            case SnapshotFormat.HOTEL -> readHotelState();
+            case SnapshotFormat.SPECIES -> readSpecies(position);
+            case SnapshotFormat.TREES -> readTree(position);
+            case SnapshotFormat.HABITATS -> readHabitat(position);
+            case SnapshotFormat.ANIMALS -> readAnimal(position);
+            case SnapshotFormat.EMPLOYEES -> readEmployee(position);
+            case SnapshotFormat.VACCINES -> readVaccine(position);
+            case SnapshotFormat.VACCINATIONS -> readVaccination();
+            case SnapshotFormat.VACCINATION_HISTORY -> readVaccinationHistory();
+            default -> Link.NOTHING; // a section of a later version of the format
+        };
+    }
+
+    /**
+     * Reads the hotel record: the elapsed seasons, the number of entities of each type, for
+     * which room is made in the hotel and in the tables, the sequence number of its last journaled
+     * operation (missing in snapshots saved before the journal existed) and the lineage of the snapshot
+     * (missing in snapshots saved before deltas existed).
+     *
+     * @return nothing left to link.
+     * @throws Exception if the record is corrupted.
+     */
+    private Link readHotelState() throws Exception {
+        _hotel.getSeasonClock().restore(_in.readVarInt());
+        int species = _in.readVarInt();
+        int trees = _in.readVarInt();
+        int habitats = _in.readVarInt();
+        int animals = _in.readVarInt();
+        int employees = _in.readVarInt();
+        int vaccines = _in.readVarInt();
+        _hotel.ensureCapacity(species, trees, habitats, animals, employees, vaccines);
+        if (_tables.byPosition())
+            _tables.allocate(species, trees, habitats, animals, employees, vaccines);
+        if (_in.hasMoreFields())
+            _hotel.restoreJournalSequence(_in.readVarLong());
+        if (_in.hasMoreFields())
+            _hotel.restoreSnapshotLineage(_in.readVarLong());
+        return Link.NOTHING;
+    }
+
+    /**
+     * Reads a species record.
+     *
+     * @param position the position of the record among the species records.
+     * @return adds the species to the hotel.
+     * @throws Exception if the record is corrupted.
+     */
+    private Link readSpecies(int position) throws Exception {
+        String id = _in.readString();
+        Species species = new Species(id, _in.readString());
+        if (_tables.byPosition())
+            _tables.put(position, species);
+        return () -> _hotel.addSpecies(id, species);
+    }
+
+    /**
+     * Reads a tree record.
+     *
+     * @param position the position of the record among the tree records.
+     * @return adds the tree to the hotel.
+     * @throws Exception if the record is corrupted.
+     */
+    private Link readTree(int position) throws Exception {
+        String id = _in.readString();
+        String name = _in.readString();
+        int type = _in.readByte();
+        int plantingAge = _in.readSignedVarInt();
+        int plantingSeason = _in.readSignedVarInt();
+        int difficulty = _in.readSignedVarInt();
+        Tree tree = switch (type) {
+            case SnapshotFormat.DECIDUOUS_TREE -> new DeciduousTree(id, name, plantingAge, plantingSeason, difficulty, _hotel.getSeasonClock());
+            case SnapshotFormat.EVERGREEN_TREE -> new EvergreenTree(id, name, plantingAge, plantingSeason, difficulty, _hotel.getSeasonClock());
+            default -> throw new StreamCorruptedException("Unknown tree type " + type);
+        };
+        if (_tables.byPosition())
+            _tables.put(position, tree);
+        return () -> _hotel.addTree(id, tree);
+    }
+
+    /**
+     * Reads a habitat record.
+     *
+     * @param position the position of the record among the habitat records.
+     * @return adds the habitat to the hotel.
+     * @throws Exception if the record is corrupted or refers to unknown entities.
+     */
+    private Link readHabitat(int position) throws Exception {
+        String id = _in.readString();
+        Habitat habitat = new Habitat(id, _in.readString(), _in.readSignedVarInt());
+        for (int trees = _in.readVarInt(); trees > 0; trees--)
+            habitat.addTree(readTreeReference());
+        HabitatInfluence[] influences = HabitatInfluence.values();
+        for (int count = _in.readVarInt(); count > 0; count--)
+            habitat.changeInfluenceOnSpecies(readSpeciesReference(), influences[_in.readByte()]);
+        if (_tables.byPosition())
+            _tables.put(position, habitat);
+        return () -> _hotel.addHabitat(id, habitat);
+    }
+
+    /**
+     * Reads an animal record.
+     *
+     * @param position the position of the record among the animal records.
+     * @return adds the animal to the hotel, to its species and to its habitat.
+     * @throws Exception if the record is corrupted or refers to unknown entities.
+     */
+    private Link readAnimal(int position) throws Exception {
+        String id = _in.readString();
+        String name = _in.readString();
+        Species species = readSpeciesReference();
+        Habitat habitat = readHabitatReference();
+        Animal animal = new Animal(id, name, species, habitat);
+        VaccineDamage[] damages = VaccineDamage.values();
+        for (int events = _in.readVarInt(); events > 0; events--)
+            animal.takeVaccine(damages[_in.readByte()]);
+        if (_tables.byPosition())
+            _tables.put(position, animal);
+        return () -> {
+            _hotel.addAnimal(id, animal);
+            species.addAnimal(animal);
+            habitat.restoreAnimal(animal);
+        };
+    }
+
+    /**
+     * Reads an employee record.
+     *
+     * @param position the position of the record among the employee records.
+     * @return assigns the employee its responsibilities, which know who is responsible for them, and adds
+     *         the employee to the hotel.
+     * @throws Exception if the record is corrupted or refers to unknown entities.
+     */
+    private Link readEmployee(int position) throws Exception {
+        int type = _in.readByte();
+        String id = _in.readString();
+        String name = _in.readString();
+        int responsibilities = _in.readVarInt();
+        Employee employee;
+        Link assign;
+        if (type == SnapshotFormat.VETERINARIAN) {
+            Veterinarian veterinarian = new Veterinarian(id, name);
+            Species[] species = new Species[responsibilities];
+            for (int i = 0; i < species.length; i++)
+                species[i] = readSpeciesReference();
+            employee = veterinarian;
+            assign = () -> {
+                for (Species responsibility : species)
+                    veterinarian.assignSpecies(responsibility);
+            };
+        } else if (type == SnapshotFormat.ZOOKEEPER) {
+            Zookeeper zookeeper = new Zookeeper(id, name);
+            Habitat[] habitats = new Habitat[responsibilities];
+            for (int i = 0; i < habitats.length; i++)
+                habitats[i] = readHabitatReference();
+            employee = zookeeper;
+            assign = () -> {
+                for (Habitat responsibility : habitats)
+                    zookeeper.assignHabitat(responsibility);
+            };
+        } else {
+            throw new StreamCorruptedException("Unknown employee type " + type);
+        }
+        if (_tables.byPosition())
+            _tables.put(position, employee);
+        return () -> {
+            assign.link();
+            _hotel.addEmployee(id, employee);
+        };
+    }
+
+    /**
+     * Reads a vaccine record.
+     *
+     * @param position the position of the record among the vaccine records.
+     * @return adds the vaccine to the hotel.
+     * @throws Exception if the record is corrupted.
+     */
+    private Link readVaccine(int position) throws Exception {
+        String id = _in.readString();
+        String name = _in.readString();
+        Map<String, Species> species = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String[] speciesIds = new String[_in.readVarInt()];
+        for (int i = 0; i < speciesIds.length; i++)
+            // by ID in every version, as the vaccine named the species, which may differ in case from their IDs
+            speciesIds[i] = _in.readString();
+        Vaccine vaccine = new Vaccine(id, name, species);
+        if (_tables.byPosition())
+            _tables.put(position, vaccine);
+        // the species are looked up when the vaccine is linked, as the hotel is only read by the thread linking it
+        return () -> {
+            for (String speciesId : speciesIds)
+                species.put(speciesId, _hotel.getSpecies(speciesId));
+            _hotel.addVaccine(id, vaccine);
+        };
+    }
+
+    /**
+     * Reads a vaccination record, of a version 1 snapshot. The effect of the vaccine on the animal is already
+     * in the animal record.
+     *
+     * @return nothing left to link.
+     * @throws Exception if the record is corrupted or refers to unknown entities.
+     */
+    private Link readVaccination() throws Exception {
+        Vaccination vaccination = readVaccinationReferences();
+        boolean wrong = _in.readByte() != 0;
+        _hotel.addVaccination(vaccination);
+        if (wrong)
+            _hotel.addWrongVaccination(vaccination);
+        return Link.NOTHING;
+    }
+
+    /**
+     * Reads a vaccination history record, the current record of the input, into a hotel that holds every
+     * other entity of the snapshot.
+     *
+     * @return nothing left to link.
+     * @throws Exception if the record is corrupted or refers to entities that do not exist.
+     */
+    private Link readVaccinationHistory() throws Exception {
+        List<Vaccination> vaccinations = new ArrayList<>();
+        List<Vaccination> wrongVaccinations = new ArrayList<>();
+        readVaccinationHistory(vaccinations, wrongVaccinations);
+        _hotel.restoreVaccinationHistory(vaccinations, wrongVaccinations);
+        return Link.NOTHING;
+    }
+
+    /**
+     * Reads the vaccinations of a vaccination history record, the current record of the input, without adding
+     * them to the hotel.
+     *
+     * @param vaccinations the vaccinations read so far, to which those of the record are added.
+     * @param wrongVaccinations the wrong vaccinations read so far, to which those of the record are added.
+     * @throws Exception if the record is corrupted or refers to entities that do not exist.
+     */
+    void readVaccinationHistory(List<Vaccination> vaccinations, List<Vaccination> wrongVaccinations) throws Exception {
+        int count = _in.readVarInt();
+        // the bitmap grows as it is read, so a corrupted count does not make room for more than the record holds
+        BitSet wrong = new BitSet();
+        for (int i = 0; i < count; i += 8)
+            for (int flags = _in.readByte(), bit = i; flags != 0; flags >>>= 1, bit++)
+                if ((flags & 1) != 0)
+                    wrong.set(bit);
+        for (int i = 0; i < count; i++) {
+            Vaccination vaccination = readVaccinationReferences();
+            vaccinations.add(vaccination);
+            if (wrong.get(i))
+                wrongVaccinations.add(vaccination);
+        }
+    }
+
+    /**
+     * Reads the references to the vaccine, the veterinarian and the animal of a vaccination.
+     *
+     * @return the vaccination.
+     * @throws Exception if the references are corrupted or refer to entities that do not exist.
+     */
+    private Vaccination readVaccinationReferences() throws Exception {
+        Vaccine vaccine = _tables.byPosition() ? _tables.vaccine(_in.readVarInt()) : _hotel.getVaccine(_in.readString());
+        Employee employee = _tables.byPosition() ? _tables.employee(_in.readVarInt()) : _hotel.getEmployee(_in.readString());
+        Animal animal = _tables.byPosition() ? _tables.animal(_in.readVarInt()) : _hotel.getAnimal(_in.readString());
+        if (!(employee instanceof Veterinarian veterinarian))
+            throw new StreamCorruptedException("Vaccination by " + employee.getId() + ", who is not a veterinarian");
+        return new Vaccination(vaccine, veterinarian, animal);
+    }
+
+    /**
+     * Reads a reference to a species: its position in its section, or its ID before version 3.
+     *
+     * @return the species.
+     * @throws Exception if the reference is corrupted or refers to a species that does not exist.
+     */
+    private Species readSpeciesReference() throws Exception {
+        return _tables.byPosition() ? _tables.species(_in.readVarInt()) : _hotel.getSpecies(_in.readString());
+    }
+
+    /**
+     * Reads a reference to a tree: its position in its section, or its ID before version 3.
+     *
+     * @return the tree.
+     * @throws Exception if the reference is corrupted or refers to a tree that does not exist.
+     */
+    private Tree readTreeReference() throws Exception {
+        return _tables.byPosition() ? _tables.tree(_in.readVarInt()) : _hotel.getTree(_in.readString());
+    }
+
+    /**
+     * Reads a reference to a habitat: its position in its section, or its ID before version 3.
+     *
+     * @return the habitat.
+     * @throws Exception if the reference is corrupted or refers to a habitat that does not exist.
+     */
+    private Habitat readHabitatReference() throws Exception {
+        return _tables.byPosition() ? _tables.habitat(_in.readVarInt()) : _hotel.getHabitat(_in.readString());
+    }
+}
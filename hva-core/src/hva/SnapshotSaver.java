@@ -0,0 +1,236 @@
+package hva;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import hva.enums.SnapshotCompression;
+
+/**
+ * The {@code SnapshotSaver} class writes snapshots of hotels in the background, one at a time.
+ *
+ * <p>
+ * A save captures a {@link SnapshotImage} of the hotel on the calling thread, which is cheap, and writes
+ * it on a save thread, while the hotel keeps changing. Saves requested while a snapshot is being written
+ * coalesce instead of queuing: there is at most one save waiting, holding the latest image, and every
+ * caller that asked for it gets the same future. A save of a state that is already being written, or
+ * already waiting, returns the future of that save.
+ * </p>
+ *
+ * <p>
+ * When a snapshot is written, the hotel is marked as saved as it was when the image was captured (it
+ * remains changed if it was modified since) and its journal is cleared if it holds nothing newer.
+ * Save threads are not daemons, so the application does not end in the middle of a save.
+ * </p>
+ *
+ * <p>
+ * Once a hotel was saved in, or read from, a snapshot, a save to the same file only captures and writes
+ * what changed since the save before, as a delta of the snapshot (see {@link SnapshotDelta}). A delta
+ * waiting to be written is merged with a later one instead of being replaced. The first save to a file,
+ * a save after a failed one, or any save if deltas are disabled, writes a whole snapshot, which starts a
+ * new lineage. After a delta is written, the save thread folds the deltas into a new snapshot if there
+ * are more than {@code maxDeltas} of them, or they hold more than {@code maxDeltaPercent} percent of the
+ * bytes of the snapshot.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_running: The save being written, or {@code null}.</li>
+ *   <li>_pending: The save waiting for the running one to finish, or {@code null}.</li>
+ *   <li>_maxDeltas: The most deltas kept after a snapshot, or 0 to write whole snapshots only.</li>
+ *   <li>_maxDeltaPercent: The most bytes of deltas kept after a snapshot, in percent of its own.</li>
+ * </ul>
+ */
+final class SnapshotSaver {
+
+    /**
+     * A requested save.
+     *
+     * @param hotel the hotel.
+     * @param path the snapshot file.
+     * @param compression how much the snapshot is compressed.
+     * @param image the image of the hotel to write.
+     * @param future the future completed with the number of bytes written, when the snapshot is written.
+     */
+    private record Request(Hotel hotel, Path path, SnapshotCompression compression, SnapshotImage image, CompletableFuture<Long> future) {
+
+        /**
+         * @param hotel a hotel.
+         * @param path a snapshot file.
+         * @param compression how much the snapshot is compressed.
+         * @param modifications the number of modifications of the hotel.
+         * @return {@code true} if this save writes the given state of the hotel to the file, compressed as given.
+         */
+        boolean writes(Hotel hotel, Path path, SnapshotCompression compression, long modifications) {
+            return this.hotel == hotel && this.path.equals(path) && this.compression == compression
+                && image.modifications() == modifications;
+        }
+    }
+
+    /** The save being written, or {@code null}. */
+    private Request _running;
+
+    /** The save waiting for the running one to finish, or {@code null}. */
+    private Request _pending;
+
+    /** The most deltas kept after a snapshot (or 0 to write whole snapshots only). */
+    private volatile int _maxDeltas;
+
+    /** The most bytes of deltas kept after a snapshot, in percent of its own. */
+    private volatile int _maxDeltaPercent;
+
+    /**
+     * Sets when saves are deltas and when the deltas are folded into a new snapshot, from the next save.
+     *
+     * @param maxDeltas the most deltas kept after a snapshot, or 0 to write whole snapshots only.
+     * @param maxDeltaPercent the most bytes of deltas kept after a snapshot, in percent of its own.
+     */
+    void setDeltaLimits(int maxDeltas, int maxDeltaPercent) {
+        _maxDeltas = Math.max(0, maxDeltas);
+        _maxDeltaPercent = Math.max(0, maxDeltaPercent);
+    }
+
+    /**
+     * Saves the current state of a hotel in the background. It must not be changed by another thread
+     * while its image is captured.
+     *
+     * @param hotel the hotel.
+     * @param path the snapshot file.
+     * @param compression how much the snapshot is compressed.
+     * @return a future completed with the number of bytes written, of the snapshot or of its delta, when
+     *         it is written, or completed exceptionally with the {@link IOException} that prevented it.
+     */
+    synchronized CompletableFuture<Long> save(Hotel hotel, Path path, SnapshotCompression compression) {
+        long modifications = hotel.getModificationCount();
+        if (_pending != null && _pending.writes(hotel, path, compression, modifications))
+            return _pending.future();
+        if (_pending == null && _running != null && _running.writes(hotel, path, compression, modifications))
+            return _running.future();
+
+        SnapshotImage image = capture(hotel, path);
+        if (_running == null) {
+            _running = new Request(hotel, path, compression, image, new CompletableFuture<>());
+            start(_running);
+            return _running.future();
+        }
+        // the waiting save, if any, is replaced by this one, which is newer or holds it
+        CompletableFuture<Long> future = _pending != null ? _pending.future() : new CompletableFuture<>();
+        _pending = new Request(hotel, path, compression, image, future);
+        return future;
+    }
+
+    /**
+     * Captures an image of a hotel: a delta of the chain the hotel was last saved in or read from, if
+     * the save is to the same file, or else a whole snapshot that starts a new chain.
+     *
+     * @param hotel the hotel.
+     * @param path the snapshot file.
+     * @return the image.
+     */
+    private SnapshotImage capture(Hotel hotel, Path path) {
+        SnapshotChain chain = hotel.getSnapshotChain();
+        // a whole snapshot waiting to be written is replaced by another, as a delta would not follow it
+        boolean deltaPending = _pending != null && _pending.image().chain() == chain && _pending.image().isDelta();
+        if (_maxDeltas > 0 && chain != null && chain.extendsTo(path) && (_pending == null || deltaPending)) {
+            HotelChanges changes = hotel.takeChanges();
+            if (changes.isTracked()) {
+                long sequence = hotel.getJournalSequence();
+                if (deltaPending) {
+                    SnapshotImage earlier = _pending.image();
+                    chain.extend(sequence);
+                    return earlier.merge(new SnapshotImage(hotel, changes, chain, earlier.delta(), earlier.previousSequence()));
+                }
+                long previousSequence = chain.sequence();
+                return new SnapshotImage(hotel, changes, chain, chain.nextDelta(sequence), previousSequence);
+            }
+        }
+        hotel.takeChanges();
+        SnapshotChain started = new SnapshotChain(path, SnapshotDelta.newLineage(), hotel.getJournalSequence());
+        hotel.setSnapshotChain(started);
+        return new SnapshotImage(hotel, started);
+    }
+
+    /**
+     * Writes a snapshot on a new save thread.
+     *
+     * @param request the save.
+     */
+    private void start(Request request) {
+        new Thread(() -> write(request), "hva-save").start();
+    }
+
+    /**
+     * Writes a snapshot or a delta, then folds the deltas into a new snapshot if needed, then starts the
+     * waiting save, if any.
+     *
+     * @param request the save.
+     */
+    private void write(Request request) {
+        SnapshotImage image = request.image();
+        SnapshotChain chain = image.chain();
+        Throwable failure = null;
+        long bytes = 0;
+        boolean compact = false;
+        try {
+            if (image.isDelta()) {
+                if (chain.isBroken())
+                    throw new IOException("The save before " + SnapshotDelta.pathOf(request.path(), image.delta()) + " failed");
+                bytes = SnapshotWriter.writeDelta(image, request.path());
+                chain.deltaWritten(bytes);
+                compact = chain.needsCompaction(_maxDeltas, _maxDeltaPercent);
+            } else {
+                SnapshotWriter.write(image, request.path(), request.compression());
+                bytes = Files.size(request.path());
+                chain.snapshotWritten(bytes);
+                deleteDeltas(request.path());
+            }
+            request.hotel().markSaved(image.modifications());
+            request.hotel().journalSaved(request.path(), image.journalSequence());
+        } catch (IOException | RuntimeException e) {
+            // the deltas captured after this save would not follow the file
+            chain.broken();
+            failure = e;
+        }
+        if (failure == null)
+            request.future().complete(bytes);
+        else
+            request.future().completeExceptionally(failure);
+        if (compact)
+            compact(request);
+        synchronized (this) {
+            _running = _pending;
+            _pending = null;
+            if (_running != null)
+                start(_running);
+        }
+    }
+
+    /**
+     * Removes the deltas of the previous lineage of a snapshot, once a whole snapshot replaced them.
+     *
+     * @param path the snapshot file.
+     */
+    private static void deleteDeltas(Path path) {
+        try {
+            SnapshotDelta.delete(path, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            // they are not applied to the new snapshot, whose lineage is another
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Folds the deltas of a snapshot into a new snapshot, on the save thread.
+     *
+     * @param request the save that wrote the last delta.
+     */
+    private static void compact(Request request) {
+        try {
+            SnapshotDelta.compact(request.path(), request.image().chain(), request.compression());
+        } catch (IOException | RuntimeException e) {
+            // the deltas are still there, and are folded after a later save
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,979 @@
+package hva;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import hva.enums.HabitatInfluence;
+import hva.enums.VaccineDamage;
+
+/**
+ * The {@code SnapshotStream} class reads a saved hotel, a snapshot file and its deltas, as streams of
+ * entities sorted by ID and of vaccinations in the order they happened, without building the hotel
+ * (see {@link SnapshotDiff}).
+ *
+ * <p>
+ * The snapshot is memory-mapped, as for a {@link ReadOnlyHotel}, and a compressed snapshot is first
+ * inflated to a temporary file. Only its table of contents, or the headers of its sections before version 5,
+ * are read when it is opened (see {@link SnapshotContents}). The records of a section of an older version
+ * are upgraded as they are read (see {@link SnapshotMigrations}), except the vaccinations, which are read
+ * in place in the layout of their section. The records
+ * of a section are sorted by ID, except the animals, which come habitat by habitat, so the records of each
+ * type are read as runs of increasing IDs, merged as they are read: only the record at the head of each
+ * run is decoded at a time. The runs are found by stepping over the records once, reading only their IDs.
+ * </p>
+ *
+ * <p>
+ * Since version 3, records refer to other entities by their position (see {@link SnapshotFormat}), which
+ * is turned into an ID by reading the record at that position. To find it, the position of every
+ * {@link #STRIDE}th record of a section is noted the first time it is referred to, and the records in
+ * between are stepped over. Each entity is described by a line in the style of the listings of the hotel,
+ * whose lists are sorted by ID, so two entities are the same if their lines are.
+ * </p>
+ *
+ * <p>
+ * The deltas of the snapshot, which are small next to it, are read when it is opened, in the same order
+ * and with the same checks as when a hotel is loaded (see {@link SnapshotDelta}). The entities they hold
+ * replace those of the snapshot with the same IDs as the streams are read, and their vaccinations follow
+ * those of the snapshot. The journal of the snapshot, which holds the operations not yet saved, is not read.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_snapshot: The bytes of the snapshot, memory-mapped.</li>
+ *   <li>_temporary: The file the snapshot was inflated to, or {@code null} if it was not compressed.</li>
+ *   <li>_version: The version of the snapshot.</li>
+ *   <li>_sections: The sections of each tag, in the order of the file.</li>
+ *   <li>_sequence: The journal sequence number of the snapshot.</li>
+ *   <li>_lineage: The lineage of the snapshot, or 0 if it has no deltas.</li>
+ *   <li>_index: The positions in the snapshot of every {@link #STRIDE}th record of the sections of each tag
+ *       referred to so far.</li>
+ *   <li>_lookupBytes: The bytes through which references are resolved.</li>
+ *   <li>_lookup: Reads the records referred to.</li>
+ *   <li>_lastPositions: The position last referred to in the sections of each tag.</li>
+ *   <li>_lastIds: The ID of the entity at that position.</li>
+ *   <li>_changes: The entities of each type in the deltas, by ID.</li>
+ *   <li>_laterVaccinations: The vaccinations in the deltas.</li>
+ * </ul>
+ */
+final class SnapshotStream implements Closeable {
+
+    /** Number of records between two positions noted in the index of a section. */
+    private static final int STRIDE = 16;
+
+    /** The bytes of the snapshot, memory-mapped. */
+    private final ByteBuffer _snapshot;
+
+    /** The file the snapshot was inflated to (or {@code null} if it was not compressed). */
+    private final Path _temporary;
+
+    /** The version of the snapshot. */
+    private final int _version;
+
+    /** The sections of each tag, in the order of the file. */
+    private final Map<Byte, List<SnapshotReader.Section>> _sections = new HashMap<>();
+
+    /** The journal sequence number of the snapshot. */
+    private long _sequence;
+
+    /** The lineage of the snapshot (or 0 if it has no deltas). */
+    private long _lineage;
+
+    /** The positions in the snapshot of every {@link #STRIDE}th record of the sections of each tag referred to so far. */
+    private final Map<Byte, int[][]> _index = new HashMap<>();
+
+    /** The bytes through which references are resolved. */
+    private final ByteBuffer _lookupBytes;
+
+    /** Reads the records referred to. */
+    private final SnapshotInput _lookup;
+
+    /** The position last referred to in the sections of each tag. */
+    private final int[] _lastPositions = new int[256];
+
+    /** The ID of the entity at that position. */
+    private final String[] _lastIds = new String[256];
+
+    /** The entities of each type in the deltas, by ID. */
+    private final Map<Byte, NavigableMap<String, Entry>> _changes = new HashMap<>();
+
+    /** The vaccinations in the deltas. */
+    private final List<String> _laterVaccinations = new ArrayList<>();
+
+    /**
+     * An entity read from a saved hotel.
+     *
+     * @param id the ID of the entity.
+     * @param description the line that describes the entity.
+     */
+    record Entry(String id, String description) { }
+
+    /**
+     * Notes where the sections of a snapshot are, stepping over their records, and reads the hotel-wide state.
+     *
+     * @param snapshot the bytes of the snapshot.
+     * @param temporary the file the snapshot was inflated to, or {@code null}.
+     * @throws IOException if the snapshot is not in the binary format or is corrupted.
+     */
+    private SnapshotStream(ByteBuffer snapshot, Path temporary) throws IOException {
+        _snapshot = snapshot;
+        _temporary = temporary;
+        _lookupBytes = snapshot.duplicate();
+        _lookup = new SnapshotInput(_lookupBytes);
+        SnapshotInput in = new SnapshotInput(_snapshot.duplicate());
+        _version = in.readHeader(SnapshotFormat.MAGIC);
+        SnapshotReader.checkVersion(_version);
+        for (SnapshotReader.Section section : SnapshotContents.read(_snapshot, _version))
+            _sections.computeIfAbsent(section.tag(), t -> new ArrayList<>()).add(section);
+        readHotelState();
+    }
+
+    /**
+     * Opens a saved hotel: a snapshot file, compressed or not, and its deltas.
+     *
+     * @param path the snapshot file.
+     * @return the saved hotel.
+     * @throws IOException if the file cannot be read, is not a snapshot, or it or a delta is corrupted.
+     */
+    static SnapshotStream open(Path path) throws IOException {
+        return SnapshotDelta.read(path, () -> openOnce(path), SnapshotStream::close);
+    }
+
+    /**
+     * Opens a saved hotel, once.
+     *
+     * @param path the snapshot file.
+     * @return the saved hotel.
+     * @throws IOException if the file cannot be read, is not a snapshot, or it or a delta is corrupted.
+     */
+    private static SnapshotStream openOnce(Path path) throws IOException {
+        Path temporary = null;
+        try {
+            ByteBuffer snapshot;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (Arrays.equals(SnapshotFormat.readMagic(channel), SnapshotFormat.COMPRESSED_MAGIC)) {
+                    temporary = inflate(channel);
+                    try (FileChannel inflated = FileChannel.open(temporary, StandardOpenOption.READ)) {
+                        snapshot = map(inflated);
+                    }
+                } else {
+                    snapshot = map(channel);
+                }
+            }
+            SnapshotStream stream = new SnapshotStream(snapshot, temporary);
+            stream.readDeltas(path);
+            return stream;
+        } catch (IOException | RuntimeException e) {
+            if (temporary != null)
+                delete(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Inflates a compressed snapshot to a temporary file.
+     *
+     * @param channel the compressed snapshot, positioned after its magic bytes.
+     * @return the temporary file, which holds the snapshot as if it was not compressed.
+     * @throws IOException if the snapshot cannot be read or inflated, or the file cannot be written.
+     */
+    private static Path inflate(FileChannel channel) throws IOException {
+        ByteBuffer version = SnapshotReader.readBytes(channel, SnapshotFormat.MAGIC.length, Integer.BYTES);
+        if (version.getInt(0) > SnapshotFormat.COMPRESSED_VERSION)
+            throw new InvalidObjectException("Unsupported compressed snapshot version " + version.getInt(0));
+        channel.position(SnapshotFormat.COMPRESSED_HEADER_SIZE);
+        Path temporary = Files.createTempFile("hva-", ".snapshot");
+        try (InflatingChannel inflating = new InflatingChannel(channel);
+                FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            // the checksum of the compressed bytes is checked as the stream ends
+            while (inflating.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    out.write(buffer);
+                buffer.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(temporary);
+            throw e;
+        }
+        return temporary;
+    }
+
+    /**
+     * @param channel a snapshot file.
+     * @return its bytes, memory-mapped.
+     * @throws IOException if the file cannot be mapped.
+     */
+    private static ByteBuffer map(FileChannel channel) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE)
+            throw new InvalidObjectException("Snapshot too large to be mapped");
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    /**
+     * Removes a temporary file, or has it removed when the program ends if it is still in use.
+     *
+     * @param temporary the file.
+     */
+    private static void delete(Path temporary) {
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+            // a mapped file cannot be removed on some systems
+            temporary.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Removes the file the snapshot was inflated to, if any.
+     */
+    @Override
+    public void close() {
+        if (_temporary != null)
+            delete(_temporary);
+    }
+
+    /**
+     * @param section a section of the snapshot.
+     * @param offset a position in the section.
+     * @return an input over the snapshot, from that position, which upgrades the records of the section.
+     * @throws InvalidObjectException if the version of the section is later than the one of this code.
+     */
+    private SnapshotInput input(SnapshotReader.Section section, long offset) throws InvalidObjectException {
+        SnapshotInput in = new SnapshotInput(_snapshot.duplicate().position((int) offset));
+        in.migrate(section.tag(), section.version(), byPosition());
+        return in;
+    }
+
+    /**
+     * @param tag the tag of a section.
+     * @return the sections with that tag, in the order of the file.
+     */
+    private List<SnapshotReader.Section> sections(byte tag) {
+        return _sections.getOrDefault(tag, List.of());
+    }
+
+    /**
+     * Reads the journal sequence number and the lineage of the snapshot, from its hotel record.
+     *
+     * @throws IOException if the record is corrupted.
+     */
+    private void readHotelState() throws IOException {
+        List<SnapshotReader.Section> hotel = sections(SnapshotFormat.HOTEL);
+        if (hotel.isEmpty() || hotel.get(0).count() == 0)
+            return;
+        SnapshotInput in = input(hotel.get(0), hotel.get(0).offset());
+        in.nextRecord();
+        // the elapsed seasons and the number of entities of each type
+        for (int i = 0; i < 7; i++)
+            in.readVarInt();
+        if (in.hasMoreFields())
+            _sequence = in.readVarLong();
+        if (in.hasMoreFields())
+            _lineage = in.readVarLong();
+    }
+
+    /**
+     * Reads the deltas of the snapshot, in order, stopping at the first one that does not follow it.
+     *
+     * @param path the snapshot file.
+     * @throws IOException if a delta cannot be read or is corrupted.
+     */
+    private void readDeltas(Path path) throws IOException {
+        if (_lineage == 0)
+            return;
+        long sequence = _sequence;
+        for (int number : SnapshotDelta.numbers(path)) {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(SnapshotDelta.pathOf(path, number)));
+            SnapshotInput in = new SnapshotInput(bytes);
+            int version = in.readHeader(SnapshotFormat.DELTA_MAGIC);
+            if (version > SnapshotFormat.DELTA_VERSION)
+                throw new InvalidObjectException("Unsupported delta version " + version);
+            SnapshotDelta.readHotelHeader(in, version);
+            long lineage = in.readVarLong();
+            long previousSequence = in.readVarLong();
+            long deltaSequence = in.readVarLong();
+            if (lineage != _lineage)
+                break;
+            if (deltaSequence <= sequence)
+                // folded into the snapshot, which was rewritten before the delta was removed
+                continue;
+            if (previousSequence != sequence)
+                break;
+            readDelta(in, bytes, version);
+            sequence = deltaSequence;
+        }
+    }
+
+    /**
+     * Reads the sections of a delta, after its hotel record. Its records refer to entities by ID.
+     *
+     * @param in the input of the delta.
+     * @param bytes the bytes of the delta.
+     * @param version the version of the delta.
+     * @throws IOException if the delta is corrupted.
+     */
+    private void readDelta(SnapshotInput in, ByteBuffer bytes, int version) throws IOException {
+        for (byte tag = in.readSectionTag(); tag != SnapshotFormat.END; tag = in.readSectionTag()) {
+            int sectionVersion = version >= 2 ? in.readSectionVersion() : SnapshotFormat.LEGACY_SECTION_VERSION;
+            in.migrate(tag, sectionVersion, false);
+            int count = in.readSectionCount();
+            byte type = switch (tag) {
+                case SnapshotFormat.CHANGED_HABITATS -> SnapshotFormat.HABITATS;
+                case SnapshotFormat.CHANGED_ANIMALS -> SnapshotFormat.ANIMALS;
+                case SnapshotFormat.CHANGED_EMPLOYEES -> SnapshotFormat.EMPLOYEES;
+                default -> tag;
+            };
+            for (int i = 0; i < count; i++) {
+                if (type == SnapshotFormat.VACCINATION_HISTORY) {
+                    ByteBuffer record = bytes.duplicate().position((int) in.position());
+                    try {
+                        int end = varInt(record);
+                        end += record.position();
+                        int vaccinations = varInt(record);
+                        int bitmap = skipBitmap(record, vaccinations, sectionVersion, end);
+                        for (int j = 0; j < vaccinations; j++)
+                            _laterVaccinations.add(readVaccination(record, false, bitmap, j));
+                        if (record.position() > end)
+                            throw new StreamCorruptedException("Truncated record");
+                    } catch (RuntimeException e) {
+                        throw SnapshotReader.corrupted(e);
+                    }
+                    in.skipRecord();
+                } else if (type >= SnapshotFormat.SPECIES && type <= SnapshotFormat.VACCINES) {
+                    in.nextRecord();
+                    Entry entry = readEntry(type, in, false);
+                    _changes.computeIfAbsent(type, t -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER)).put(entry.id(), entry);
+                } else {
+                    // a section of a later version of the format
+                    in.skipRecord();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the records of the snapshot refer to entities by position.
+     */
+    private boolean byPosition() {
+        return _version >= 3;
+    }
+
+    /**
+     * Starts reading the entities of a type, in the order of their IDs.
+     *
+     * @param tag the tag of the sections of the type.
+     * @return the entities.
+     * @throws IOException if the snapshot is corrupted.
+     */
+    Entities entities(byte tag) throws IOException {
+        return new Entities(tag);
+    }
+
+    /**
+     * Starts reading the vaccinations, in the order they happened.
+     *
+     * @return the vaccinations.
+     */
+    Vaccinations vaccinations() {
+        return new Vaccinations();
+    }
+
+    /**
+     * Reads the ID of the current record of an input.
+     *
+     * @param tag the tag of the section of the record.
+     * @param in the input.
+     * @return the ID of the entity.
+     * @throws IOException if the record is corrupted.
+     */
+    private static String readId(byte tag, SnapshotInput in) throws IOException {
+        if (tag == SnapshotFormat.EMPLOYEES)
+            in.readByte(); // the type of the employee
+        return in.readString();
+    }
+
+    /**
+     * Reads a reference to another entity, in the current record of an input.
+     *
+     * @param tag the tag of the sections of the entity referred to.
+     * @param in the input.
+     * @param byPosition {@code true} if the reference is a position, {@code false} if it is an ID.
+     * @return the ID of the entity referred to.
+     * @throws IOException if the record is corrupted or refers to a record that does not exist.
+     */
+    private String readReference(byte tag, SnapshotInput in, boolean byPosition) throws IOException {
+        return byPosition ? idAt(tag, in.readVarInt()) : in.readString();
+    }
+
+    /**
+     * Finds the ID of the entity at a position of the sections of a tag.
+     *
+     * @param tag the tag of the sections.
+     * @param position the position of the record of the entity, among the records with that tag.
+     * @return the ID of the entity.
+     * @throws IOException if there is no such record, or it is corrupted.
+     */
+    private String idAt(byte tag, int position) throws IOException {
+        int slot = tag & 0xFF;
+        if (_lastIds[slot] != null && _lastPositions[slot] == position)
+            // the animals of a habitat, which come together, refer to the same habitat
+            return _lastIds[slot];
+        List<SnapshotReader.Section> sections = sections(tag);
+        int[][] index = index(tag, sections);
+        int low = 0;
+        int high = sections.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            SnapshotReader.Section section = sections.get(middle);
+            if (position < section.first()) {
+                high = middle - 1;
+            } else if (position >= section.first() + section.count()) {
+                low = middle + 1;
+            } else {
+                int record = position - section.first();
+                _lookup.migrate(tag, section.version(), byPosition());
+                _lookupBytes.position(index[middle][record / STRIDE]);
+                for (int i = record % STRIDE; i > 0; i--)
+                    _lookup.skipRecord();
+                _lookup.nextRecord();
+                String id = readId(tag, _lookup);
+                _lastPositions[slot] = position;
+                _lastIds[slot] = id;
+                return id;
+            }
+        }
+        throw new StreamCorruptedException("Reference to record " + position + " of missing section " + tag);
+    }
+
+    /**
+     * Notes the position of every {@link #STRIDE}th record of the sections of a tag, if it was not yet.
+     *
+     * @param tag the tag of the sections.
+     * @param sections the sections.
+     * @return for each section, the positions in the snapshot of its records whose positions in the section
+     *         are multiples of {@link #STRIDE}.
+     * @throws IOException if a section is corrupted.
+     */
+    private int[][] index(byte tag, List<SnapshotReader.Section> sections) throws IOException {
+        int[][] index = _index.get(tag);
+        if (index == null) {
+            index = new int[sections.size()][];
+            for (int s = 0; s < index.length; s++) {
+                SnapshotReader.Section section = sections.get(s);
+                int[] offsets = new int[(section.count() + STRIDE - 1) / STRIDE];
+                SnapshotInput in = input(section, section.offset());
+                for (int i = 0; i < section.count(); i++) {
+                    if (i % STRIDE == 0)
+                        offsets[i / STRIDE] = (int) in.position();
+                    in.skipRecord();
+                }
+                index[s] = offsets;
+            }
+            _index.put(tag, index);
+        }
+        return index;
+    }
+
+    /**
+     * Reads an entity, from the current record of an input.
+     *
+     * @param tag the tag of the section of the record.
+     * @param in the input.
+     * @param byPosition {@code true} if the record refers to other entities by position, {@code false} by ID.
+     * @return the entity.
+     * @throws IOException if the record is corrupted or refers to records that do not exist.
+     */
+    private Entry readEntry(byte tag, SnapshotInput in, boolean byPosition) throws IOException {
+        try {
+            return switch (tag) {
+                case SnapshotFormat.SPECIES -> readSpecies(in);
+                case SnapshotFormat.TREES -> readTree(in);
+                case SnapshotFormat.HABITATS -> readHabitat(in, byPosition);
+                case SnapshotFormat.ANIMALS -> readAnimal(in, byPosition);
+                case SnapshotFormat.EMPLOYEES -> readEmployee(in, byPosition);
+                case SnapshotFormat.VACCINES -> readVaccine(in);
+                default -> throw new StreamCorruptedException("Unknown entity section " + tag);
+            };
+        } catch (RuntimeException e) {
+            // an unknown enum constant
+            throw SnapshotReader.corrupted(e);
+        }
+    }
+
+    /**
+     * @param in the input, whose current record is a species record.
+     * @return the species.
+     * @throws IOException if the record is corrupted.
+     */
+    private static Entry readSpecies(SnapshotInput in) throws IOException {
+        String id = in.readString();
+        return new Entry(id, "ESPÉCIE|" + id + "|" + in.readString());
+    }
+
+    /**
+     * @param in the input, whose current record is a tree record.
+     * @return the tree, with its age and season when it was planted.
+     * @throws IOException if the record is corrupted.
+     */
+    private static Entry readTree(SnapshotInput in) throws IOException {
+        String id = in.readString();
+        String name = in.readString();
+        String type = switch (in.readByte()) {
+            case SnapshotFormat.DECIDUOUS_TREE -> "CADUCA";
+            case SnapshotFormat.EVERGREEN_TREE -> "PERENE";
+            default -> throw new StreamCorruptedException("Unknown tree type");
+        };
+        int plantingAge = in.readSignedVarInt();
+        int plantingSeason = in.readSignedVarInt();
+        int difficulty = in.readSignedVarInt();
+        return new Entry(id, "ÁRVORE|" + id + "|" + name + "|" + type + "|" + plantingAge + "|" + plantingSeason + "|" + difficulty);
+    }
+
+    /**
+     * @param in the input, whose current record is a habitat record.
+     * @param byPosition {@code true} if the record refers to other entities by position, {@code false} by ID.
+     * @return the habitat, with its trees and its influences on species.
+     * @throws IOException if the record is corrupted or refers to records that do not exist.
+     */
+    private Entry readHabitat(SnapshotInput in, boolean byPosition) throws IOException {
+        String id = in.readString();
+        String name = in.readString();
+        int area = in.readSignedVarInt();
+        List<String> trees = new ArrayList<>();
+        for (int count = in.readVarInt(); count > 0; count--)
+            trees.add(readReference(SnapshotFormat.TREES, in, byPosition));
+        List<String> influences = new ArrayList<>();
+        HabitatInfluence[] values = HabitatInfluence.values();
+        for (int count = in.readVarInt(); count > 0; count--) {
+            String species = readReference(SnapshotFormat.SPECIES, in, byPosition);
+            influences.add(species + ":" + values[in.readByte()]);
+        }
+        return new Entry(id, "HABITAT|" + id + "|" + name + "|" + area + "|" + join(trees) + "|" + join(influences));
+    }
+
+    /**
+     * @param in the input, whose current record is an animal record.
+     * @param byPosition {@code true} if the record refers to other entities by position, {@code false} by ID.
+     * @return the animal, as it is listed.
+     * @throws IOException if the record is corrupted or refers to records that do not exist.
+     */
+    private Entry readAnimal(SnapshotInput in, boolean byPosition) throws IOException {
+        String id = in.readString();
+        String name = in.readString();
+        String species = readReference(SnapshotFormat.SPECIES, in, byPosition);
+        String habitat = readReference(SnapshotFormat.HABITATS, in, byPosition);
+        List<String> health = new ArrayList<>();
+        VaccineDamage[] damages = VaccineDamage.values();
+        for (int events = in.readVarInt(); events > 0; events--)
+            health.add(damages[in.readByte()].getResult());
+        String healthHistory = health.isEmpty() ? "VOID" : String.join(",", health);
+        return new Entry(id, "ANIMAL|" + id + "|" + name + "|" + species + "|" + healthHistory + "|" + habitat);
+    }
+
+    /**
+     * @param in the input, whose current record is an employee record.
+     * @param byPosition {@code true} if the record refers to other entities by position, {@code false} by ID.
+     * @return the employee, as it is listed.
+     * @throws IOException if the record is corrupted or refers to records that do not exist.
+     */
+    private Entry readEmployee(SnapshotInput in, boolean byPosition) throws IOException {
+        int type = in.readByte();
+        String id = in.readString();
+        String name = in.readString();
+        byte responsibility;
+        String prefix;
+        if (type == SnapshotFormat.VETERINARIAN) {
+            responsibility = SnapshotFormat.SPECIES;
+            prefix = "VET|";
+        } else if (type == SnapshotFormat.ZOOKEEPER) {
+            responsibility = SnapshotFormat.HABITATS;
+            prefix = "TRT|";
+        } else {
+            throw new StreamCorruptedException("Unknown employee type " + type);
+        }
+        List<String> responsibilities = new ArrayList<>();
+        for (int count = in.readVarInt(); count > 0; count--)
+            responsibilities.add(readReference(responsibility, in, byPosition));
+        String description = prefix + id + "|" + name;
+        return new Entry(id, responsibilities.isEmpty() ? description : description + "|" + join(responsibilities));
+    }
+
+    /**
+     * @param in the input, whose current record is a vaccine record.
+     * @return the vaccine, with the species it is given to.
+     * @throws IOException if the record is corrupted.
+     */
+    private static Entry readVaccine(SnapshotInput in) throws IOException {
+        String id = in.readString();
+        String name = in.readString();
+        List<String> species = new ArrayList<>();
+        for (int count = in.readVarInt(); count > 0; count--)
+            // by ID in every version
+            species.add(in.readString());
+        String description = "VACINA|" + id + "|" + name;
+        return new Entry(id, species.isEmpty() ? description : description + "|" + join(species));
+    }
+
+    /**
+     * @param ids IDs, in any order.
+     * @return the IDs sorted as the hotel sorts them, separated by commas.
+     */
+    private static String join(List<String> ids) {
+        ids.sort(String.CASE_INSENSITIVE_ORDER);
+        return String.join(",", ids);
+    }
+
+    /**
+     * Reads a vaccination: the references to its vaccine, veterinarian and animal, and whether it was wrong.
+     * Vaccinations are read in place, as the whole history may be a single record.
+     *
+     * @param bytes the bytes of the vaccination.
+     * @param byPosition {@code true} if the vaccination refers to entities by position, {@code false} by ID.
+     * @param bitmap the position of the bitmap of the wrong vaccinations of its record, or -1 if whether it
+     *        was wrong follows its references, as in version 1 sections.
+     * @param index the index of the vaccination in its record.
+     * @return the vaccination.
+     * @throws IOException if the vaccination is corrupted or refers to records that do not exist.
+     */
+    private String readVaccination(ByteBuffer bytes, boolean byPosition, int bitmap, int index) throws IOException {
+        try {
+            String vaccine = byPosition ? idAt(SnapshotFormat.VACCINES, varInt(bytes)) : string(bytes);
+            String veterinarian = byPosition ? idAt(SnapshotFormat.EMPLOYEES, varInt(bytes)) : string(bytes);
+            String animal = byPosition ? idAt(SnapshotFormat.ANIMALS, varInt(bytes)) : string(bytes);
+            String description = "REGISTO-VACINA|" + vaccine + "|" + veterinarian + "|" + animal;
+            boolean wrong = bitmap < 0 ? bytes.get() != 0 : (bytes.get(bitmap + (index >>> 3)) & 1 << (index & 7)) != 0;
+            return wrong ? description + "|ERRADA" : description;
+        } catch (RuntimeException e) {
+            // the vaccination goes beyond the snapshot
+            throw SnapshotReader.corrupted(e);
+        }
+    }
+
+    /**
+     * Steps over the bitmap of the wrong vaccinations of a vaccination history record, which comes before
+     * their references since version 2 of the section.
+     *
+     * @param bytes the bytes of the record, after the number of vaccinations.
+     * @param count the number of vaccinations of the record.
+     * @param version the version of the section of the record.
+     * @param end the position of the end of the record.
+     * @return the position of the bitmap, or -1 in a version 1 section, which has none.
+     * @throws IOException if the bitmap goes beyond the record, or the version of the section is later
+     *         than the one of this code.
+     */
+    private static int skipBitmap(ByteBuffer bytes, int count, int version, int end) throws IOException {
+        // the vaccinations are read in place rather than upgraded, so the versions they are read in are checked here
+        SnapshotMigrations.of(SnapshotFormat.VACCINATION_HISTORY, version);
+        if (version < 2)
+            return -1;
+        int bitmap = bytes.position();
+        if (count < 0 || (count + 7) / 8 > end - bitmap)
+            throw new StreamCorruptedException("Truncated record");
+        bytes.position(bitmap + (count + 7) / 8);
+        return bitmap;
+    }
+
+    /**
+     * @param bytes bytes holding a varint.
+     * @return the integer.
+     * @throws StreamCorruptedException if the integer is too long.
+     */
+    private static int varInt(ByteBuffer bytes) throws StreamCorruptedException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = bytes.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new StreamCorruptedException("Malformed integer");
+    }
+
+    /**
+     * @param bytes bytes holding a string.
+     * @return the string.
+     * @throws StreamCorruptedException if the bytes end before the string.
+     */
+    private static String string(ByteBuffer bytes) throws StreamCorruptedException {
+        int length = varInt(bytes);
+        if (length < 0 || length > bytes.remaining())
+            throw new StreamCorruptedException("Truncated record");
+        byte[] utf8 = new byte[length];
+        bytes.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The {@code Entities} class reads the entities of a type of a saved hotel, in the order of their IDs.
+     *
+     * <p>
+     * The runs of records with increasing IDs of the snapshot are merged, and with the entities of the
+     * deltas, which replace those of the snapshot with the same IDs.
+     * </p>
+     *
+     * <p><b>Attributes:</b></p>
+     * <ul>
+     *   <li>_tag: The tag of the sections of the type.</li>
+     *   <li>_runs: The runs with records left, by the ID of the record at their head.</li>
+     *   <li>_changes: The entities of the deltas not yet read, in the order of their IDs.</li>
+     *   <li>_change: The next entity of the deltas, or {@code null}.</li>
+     * </ul>
+     */
+    final class Entities {
+
+        /** The tag of the sections of the type. */
+        private final byte _tag;
+
+        /** The runs with records left, by the ID of the record at their head. */
+        private final PriorityQueue<Run> _runs = new PriorityQueue<>((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a._head.id(), b._head.id()));
+
+        /** The entities of the deltas not yet read, in the order of their IDs. */
+        private final Iterator<Entry> _changes;
+
+        /** The next entity of the deltas (or {@code null}). */
+        private Entry _change;
+
+        /**
+         * Finds the runs of records with increasing IDs of the sections of a type, reading only their IDs.
+         *
+         * @param tag the tag of the sections of the type.
+         * @throws IOException if a section is corrupted.
+         */
+        private Entities(byte tag) throws IOException {
+            _tag = tag;
+            for (SnapshotReader.Section section : sections(tag)) {
+                SnapshotInput in = input(section, section.offset());
+                long start = section.offset();
+                int length = 0;
+                String previous = null;
+                for (int i = 0; i < section.count(); i++) {
+                    long position = in.position();
+                    in.nextRecord();
+                    String id = readId(tag, in);
+                    if (previous != null && String.CASE_INSENSITIVE_ORDER.compare(previous, id) >= 0) {
+                        addRun(section, start, length);
+                        start = position;
+                        length = 0;
+                    }
+                    previous = id;
+                    length++;
+                }
+                if (length > 0)
+                    addRun(section, start, length);
+            }
+            _changes = changes(tag).values().iterator();
+            _change = _changes.hasNext() ? _changes.next() : null;
+        }
+
+        /**
+         * @param section the section of the run.
+         * @param offset the position in the snapshot of the first record of a run.
+         * @param length the number of records of the run.
+         * @throws IOException if the first record is corrupted.
+         */
+        private void addRun(SnapshotReader.Section section, long offset, int length) throws IOException {
+            Run run = new Run(input(section, offset), length);
+            if (run.next())
+                _runs.add(run);
+        }
+
+        /**
+         * @return the next entity, or {@code null} once they were all read.
+         * @throws IOException if the snapshot is corrupted.
+         */
+        Entry next() throws IOException {
+            Run run = _runs.peek();
+            Entry saved = run == null ? null : run._head;
+            if (_change != null && (saved == null || String.CASE_INSENSITIVE_ORDER.compare(_change.id(), saved.id()) <= 0)) {
+                Entry change = _change;
+                _change = _changes.hasNext() ? _changes.next() : null;
+                if (saved != null && String.CASE_INSENSITIVE_ORDER.compare(change.id(), saved.id()) == 0)
+                    advance(run);
+                return change;
+            }
+            if (run != null)
+                advance(run);
+            return saved;
+        }
+
+        /**
+         * Moves a run to its next record.
+         *
+         * @param run the run at the head of the queue.
+         * @throws IOException if the record is corrupted.
+         */
+        private void advance(Run run) throws IOException {
+            _runs.poll();
+            if (run.next())
+                _runs.add(run);
+        }
+
+        /**
+         * The {@code Run} class reads consecutive records with increasing IDs.
+         *
+         * <p><b>Attributes:</b></p>
+         * <ul>
+         *   <li>_in: The input over the records.</li>
+         *   <li>_left: The number of records of the run not yet read.</li>
+         *   <li>_head: The last record read.</li>
+         * </ul>
+         */
+        private final class Run {
+
+            /** The input over the records. */
+            private final SnapshotInput _in;
+
+            /** The number of records of the run not yet read. */
+            private int _left;
+
+            /** The last record read. */
+            private Entry _head;
+
+            /**
+             * @param in the input, at the first record of the run.
+             * @param length the number of records of the run.
+             */
+            private Run(SnapshotInput in, int length) {
+                _in = in;
+                _left = length;
+            }
+
+            /**
+             * Reads the next record of the run.
+             *
+             * @return {@code false} if the run has no records left.
+             * @throws IOException if the record is corrupted.
+             */
+            private boolean next() throws IOException {
+                if (_left == 0)
+                    return false;
+                _left--;
+                _in.nextRecord();
+                _head = readEntry(_tag, _in, byPosition());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param tag the tag of the sections of a type.
+     * @return the entities of that type in the deltas, by ID.
+     */
+    private NavigableMap<String, Entry> changes(byte tag) {
+        return _changes.getOrDefault(tag, new TreeMap<>());
+    }
+
+    /**
+     * The {@code Vaccinations} class reads the vaccinations of a saved hotel, in the order they happened:
+     * those of the snapshot, read in place, and then those of its deltas.
+     *
+     * <p><b>Attributes:</b></p>
+     * <ul>
+     *   <li>_sections: The sections of the snapshot not yet read.</li>
+     *   <li>_perRecord: Indicates if each record holds a vaccination, as in version 1 snapshots, rather than
+     *       a count of them.</li>
+     *   <li>_bytes: The bytes of the section being read.</li>
+     *   <li>_sectionVersion: The version of the section being read.</li>
+     *   <li>_records: The number of records of the section not yet read.</li>
+     *   <li>_recordEnd: The position in the snapshot of the end of the current record.</li>
+     *   <li>_left: The number of vaccinations of the current record not yet read.</li>
+     *   <li>_bitmap: The position in the snapshot of the bitmap of the wrong vaccinations of the current
+     *       record, or -1 if it has none.</li>
+     *   <li>_index: The index of the next vaccination in the current record.</li>
+     *   <li>_later: The vaccinations of the deltas not yet read.</li>
+     * </ul>
+     */
+    final class Vaccinations {
+
+        /** The sections of the snapshot not yet read. */
+        private final Iterator<SnapshotReader.Section> _sections;
+
+        /** Indicates if each record holds a vaccination, rather than a count of them. */
+        private final boolean _perRecord = _version < 2;
+
+        /** The bytes of the section being read. */
+        private ByteBuffer _bytes;
+
+        /** The version of the section being read. */
+        private int _sectionVersion;
+
+        /** The number of records of the section not yet read. */
+        private int _records;
+
+        /** The position in the snapshot of the end of the current record. */
+        private int _recordEnd;
+
+        /** The number of vaccinations of the current record not yet read. */
+        private int _left;
+
+        /** The position in the snapshot of the bitmap of the wrong vaccinations of the current record (or -1). */
+        private int _bitmap = -1;
+
+        /** The index of the next vaccination in the current record. */
+        private int _index;
+
+        /** The vaccinations of the deltas not yet read. */
+        private final Iterator<String> _later = _laterVaccinations.iterator();
+
+        private Vaccinations() {
+            _sections = sections(_perRecord ? SnapshotFormat.VACCINATIONS : SnapshotFormat.VACCINATION_HISTORY).iterator();
+        }
+
+        /**
+         * @return the next vaccination, or {@code null} once they were all read.
+         * @throws IOException if the snapshot is corrupted.
+         */
+        String next() throws IOException {
+            try {
+                while (_left == 0) {
+                    if (_records > 0) {
+                        // fields added by a later version of the format are stepped over
+                        _bytes.position(_recordEnd);
+                        int length = varInt(_bytes);
+                        _recordEnd = _bytes.position() + length;
+                        if (length < 0 || _recordEnd > _bytes.limit())
+                            throw new EOFException("Truncated snapshot");
+                        _records--;
+                        _left = _perRecord ? 1 : varInt(_bytes);
+                        _bitmap = _perRecord ? -1 : skipBitmap(_bytes, _left, _sectionVersion, _recordEnd);
+                        _index = 0;
+                    } else if (_sections.hasNext()) {
+                        SnapshotReader.Section section = _sections.next();
+                        _bytes = _snapshot.duplicate().position((int) section.offset());
+                        _sectionVersion = section.version();
+                        _records = section.count();
+                        _recordEnd = (int) section.offset();
+                    } else {
+                        return _later.hasNext() ? _later.next() : null;
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw SnapshotReader.corrupted(e);
+            }
+            _left--;
+            String vaccination = readVaccination(_bytes, byPosition(), _bitmap, _index++);
+            if (_bytes.position() > _recordEnd)
+                throw new StreamCorruptedException("Truncated record");
+            return vaccination;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package hva;
+
+import java.io.StreamCorruptedException;
+
+import hva.employee.Employee;
+import hva.tree.Tree;
+
+/**
+ * The {@code SnapshotTables} class holds the entities read from a snapshot, by type and in the order of
+ * their sections, so the records that refer to them are resolved by position (see {@link SnapshotFormat}).
+ *
+ * <p>
+ * The tables are sized by the hotel record, which comes first, and each entity is put at its position
+ * as its record is read. A reference to an entity whose section was not read yet is handed to
+ * {@link #decode(byte)}, which does nothing here: a snapshot read in order never refers forward. A
+ * hotel that decodes its sections on demand (see {@link ReadOnlyHotel}) reads the section there.
+ * </p>
+ *
+ * <p>
+ * Snapshots before version 3 refer to entities by ID, so their tables are left empty.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_version: The version of the snapshot.</li>
+ *   <li>_species: The species, in the order of their section.</li>
+ *   <li>_trees: The trees, in the order of their section.</li>
+ *   <li>_habitats: The habitats, in the order of their section.</li>
+ *   <li>_animals: The animals, in the order of their section.</li>
+ *   <li>_employees: The employees, in the order of their section.</li>
+ *   <li>_vaccines: The vaccines, in the order of their section.</li>
+ * </ul>
+ */
+class SnapshotTables {
+
+    /** The version of the snapshot. */
+    private int _version = SnapshotFormat.VERSION;
+
+    /** The species, in the order of their section. */
+    private Species[] _species = new Species[0];
+
+    /** The trees, in the order of their section. */
+    private Tree[] _trees = new Tree[0];
+
+    /** The habitats, in the order of their section. */
+    private Habitat[] _habitats = new Habitat[0];
+
+    /** The animals, in the order of their section. */
+    private Animal[] _animals = new Animal[0];
+
+    /** The employees, in the order of their section. */
+    private Employee[] _employees = new Employee[0];
+
+    /** The vaccines, in the order of their section. */
+    private Vaccine[] _vaccines = new Vaccine[0];
+
+    /**
+     * @param version the version of the snapshot.
+     */
+    void setVersion(int version) {
+        _version = version;
+    }
+
+    /**
+     * @return whether the records of the snapshot refer to entities by position rather than by ID.
+     */
+    boolean byPosition() {
+        return _version >= 3;
+    }
+
+    /**
+     * Makes room for the entities of the snapshot, as counted in its hotel record.
+     *
+     * @param species the number of species.
+     * @param trees the number of trees.
+     * @param habitats the number of habitats.
+     * @param animals the number of animals.
+     * @param employees the number of employees.
+     * @param vaccines the number of vaccines.
+     */
+    void allocate(int species, int trees, int habitats, int animals, int employees, int vaccines) {
+        _species = new Species[species];
+        _trees = new Tree[trees];
+        _habitats = new Habitat[habitats];
+        _animals = new Animal[animals];
+        _employees = new Employee[employees];
+        _vaccines = new Vaccine[vaccines];
+    }
+
+    /**
+     * Reads the section with the given tag, which holds an entity that is referred to before it was read.
+     *
+     * @param tag the tag of the section.
+     */
+    void decode(byte tag) {
+        // a snapshot read in order never refers forward
+    }
+
+    /**
+     * @param position the position of the record of the species in its section.
+     * @param species the species.
+     * @throws StreamCorruptedException if the section has more records than the hotel record counted.
+     */
+    void put(int position, Species species) throws StreamCorruptedException {
+        put(_species, position, species);
+    }
+
+    /**
+     * @param position the position of the record of the tree in its section.
+     * @param tree the tree.
+     * @throws StreamCorruptedException if the section has more records than the hotel record counted.
+     */
+    void put(int position, Tree tree) throws StreamCorruptedException {
+        put(_trees, position, tree);
+    }
+
+    /**
+     * @param position the position of the record of the habitat in its section.
+     * @param habitat the habitat.
+     * @throws StreamCorruptedException if the section has more records than the hotel record counted.
+     */
+    void put(int position, Habitat habitat) throws StreamCorruptedException {
+        put(_habitats, position, habitat);
+    }
+
+    /**
+     * @param position the position of the record of the animal in its section.
+     * @param animal the animal.
+     * @throws StreamCorruptedException if the section has more records than the hotel record counted.
+     */
+    void put(int position, Animal animal) throws StreamCorruptedException {
+        put(_animals, position, animal);
+    }
+
+    /**
+     * @param position the position of the record of the employee in its section.
+     * @param employee the employee.
+     * @throws StreamCorruptedException if the section has more records than the hotel record counted.
+     */
+    void put(int position, Employee employee) throws StreamCorruptedException {
+        put(_employees, position, employee);
+    }
+
+    /**
+     * @param position the position of the record of the vaccine in its section.
+     * @param vaccine the vaccine.
+     * @throws StreamCorruptedException if the section has more records than the hotel record counted.
+     */
+    void put(int position, Vaccine vaccine) throws StreamCorruptedException {
+        put(_vaccines, position, vaccine);
+    }
+
+    /**
+     * @param position the position of the record of the species in its section.
+     * @return the species.
+     * @throws StreamCorruptedException if there is no such species.
+     */
+    Species species(int position) throws StreamCorruptedException {
+        return get(SnapshotFormat.SPECIES, _species, position);
+    }
+
+    /**
+     * @param position the position of the record of the tree in its section.
+     * @return the tree.
+     * @throws StreamCorruptedException if there is no such tree.
+     */
+    Tree tree(int position) throws StreamCorruptedException {
+        return get(SnapshotFormat.TREES, _trees, position);
+    }
+
+    /**
+     * @param position the position of the record of the habitat in its section.
+     * @return the habitat.
+     * @throws StreamCorruptedException if there is no such habitat.
+     */
+    Habitat habitat(int position) throws StreamCorruptedException {
+        return get(SnapshotFormat.HABITATS, _habitats, position);
+    }
+
+    /**
+     * @param position the position of the record of the animal in its section.
+     * @return the animal.
+     * @throws StreamCorruptedException if there is no such animal.
+     */
+    Animal animal(int position) throws StreamCorruptedException {
+        return get(SnapshotFormat.ANIMALS, _animals, position);
+    }
+
+    /**
+     * @param position the position of the record of the employee in its section.
+     * @return the employee.
+     * @throws StreamCorruptedException if there is no such employee.
+     */
+    Employee employee(int position) throws StreamCorruptedException {
+        return get(SnapshotFormat.EMPLOYEES, _employees, position);
+    }
+
+    /**
+     * @param position the position of the record of the vaccine in its section.
+     * @return the vaccine.
+     * @throws StreamCorruptedException if there is no such vaccine.
+     */
+    Vaccine vaccine(int position) throws StreamCorruptedException {
+        return get(SnapshotFormat.VACCINES, _vaccines, position);
+    }
+
+    /**
+     * Puts an entity at its position in its table.
+     *
+     * @param table the table.
+     * @param position the position of the record of the entity in its section.
+     * @param entity the entity.
+     * @throws StreamCorruptedException if the section has more records than the hotel record counted.
+     */
+    private static <T> void put(T[] table, int position, T entity) throws StreamCorruptedException {
+        if (position >= table.length)
+            throw new StreamCorruptedException("Section larger than counted: " + position + " >= " + table.length);
+        table[position] = entity;
+    }
+
+    /**
+     * Retrieves the entity at a position of its table, reading its section if it was not read yet.
+     *
+     * @param tag the tag of the section of the entity.
+     * @param table the table.
+     * @param position the position.
+     * @return the entity.
+     * @throws StreamCorruptedException if there is no such entity.
+     */
+    private <T> T get(byte tag, T[] table, int position) throws StreamCorruptedException {
+        if (position < 0 || position >= table.length)
+            throw new StreamCorruptedException("Reference " + position + " outside section " + tag + " of " + table.length);
+        T entity = table[position];
+        if (entity == null) {
+            decode(tag);
+            entity = table[position];
+            if (entity == null)
+                throw new StreamCorruptedException("Reference " + position + " to section " + tag + " before it was read");
+        }
+        return entity;
+    }
+}
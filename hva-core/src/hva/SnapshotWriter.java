@@ -0,0 +1,786 @@
+package hva;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import hva.employee.Employee;
+import hva.employee.Veterinarian;
+import hva.enums.SnapshotCompression;
+import hva.enums.VaccineDamage;
+import hva.tree.DeciduousTree;
+import hva.tree.Tree;
+
+/**
+ * The {@code SnapshotWriter} class writes a hotel in the binary snapshot format (see {@link SnapshotFormat}).
+ *
+ * <p>
+ * Only the state that cannot be derived is written: strategies, tree states, back-pointers and
+ * caches are rebuilt by {@link SnapshotReader}. The snapshot is written from a {@link SnapshotImage}
+ * of the hotel, so it can be written on another thread while the hotel keeps changing. It is written
+ * to a temporary file next to the target (its name followed by {@code .tmp}), which then replaces the
+ * target, so a failed save never leaves a truncated snapshot.
+ * </p>
+ *
+ * <p>
+ * Large sections are split in sections of at most {@link SnapshotFormat#SECTION_RECORDS} records, which
+ * are encoded in parallel and written to the file at their position as soon as the sections before them
+ * are, so encoding and writing overlap.
+ * </p>
+ *
+ * <p>
+ * A snapshot may be compressed as it is written: the encoded sections go through a {@link DeflatingChannel},
+ * which compresses and writes them to the file on other threads. The snapshot ends with a table of contents,
+ * which notes where each section was written, so a reader can go straight to the sections it needs.
+ * </p>
+ *
+ * <p>
+ * Records refer to other entities by their position in their section, which the writer looks up by
+ * identity in a table built before the first section is written (see {@link Positions}).
+ * </p>
+ *
+ * <p>
+ * A delta (see {@link SnapshotDelta}) is written from an image of what changed, with the same records,
+ * which then refer to other entities by ID. It is small, so it is encoded on the save thread, in order.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_image: The image of the hotel being written.</li>
+ *   <li>_out: The output where the snapshot is written.</li>
+ *   <li>_positions: The position of each entity in its section.</li>
+ * </ul>
+ */
+final class SnapshotWriter {
+
+    /** The image of the hotel being written. */
+    private final SnapshotImage _image;
+
+    /** The output where the snapshot is written. */
+    private final SnapshotOutput _out;
+
+    /** The position of each entity in its section. */
+    private Positions _positions;
+
+    /**
+     * A section of the snapshot, to be encoded.
+     *
+     * @param tag the tag of the section.
+     * @param first the index of the first record of the section among those of its type.
+     * @param count the number of records of the section.
+     * @param records writes each record.
+     */
+    private record Section(byte tag, int first, int count, Records records) { }
+
+    /**
+     * Writes the record at an index of a section type.
+     */
+    @FunctionalInterface
+    private interface Records {
+
+        /**
+         * @param writer the writer of the section.
+         * @param index the index of the record.
+         * @throws IOException if the record cannot be written.
+         */
+        void write(SnapshotWriter writer, int index) throws IOException;
+    }
+
+    /**
+     * Writes the record of an entity of a delta.
+     */
+    @FunctionalInterface
+    private interface DeltaRecord<T> {
+
+        /**
+         * @param entity the entity, or its state.
+         * @throws IOException if the record cannot be written.
+         */
+        void write(T entity) throws IOException;
+    }
+
+    /**
+     * Writes the contents of a file.
+     */
+    @FunctionalInterface
+    private interface Contents {
+
+        /**
+         * @param channel the file, which is left open.
+         * @throws IOException if the file cannot be written.
+         */
+        void write(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * The bytes of a section encoded in memory.
+     */
+    private static final class SectionBytes extends ByteArrayOutputStream implements WritableByteChannel {
+
+        /**
+         * @param size the initial capacity, in bytes.
+         */
+        SectionBytes(int size) {
+            super(size);
+        }
+
+        /** @see WritableByteChannel#write(ByteBuffer) */
+        @Override
+        public int write(ByteBuffer bytes) {
+            int length = bytes.remaining();
+            write(bytes.array(), bytes.arrayOffset() + bytes.position(), length);
+            bytes.position(bytes.limit());
+            return length;
+        }
+
+        /** @see WritableByteChannel#isOpen() */
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        /**
+         * @return the bytes, without copying them.
+         */
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * @param image the image of the hotel being written.
+     * @param out the output where a section is written, or {@code null} for the writer of the snapshot.
+     * @param positions the position of each entity in its section, or {@code null} to number them, or
+     *        to refer to them by ID in a delta.
+     */
+    private SnapshotWriter(SnapshotImage image, SnapshotOutput out, Positions positions) {
+        _image = image;
+        _out = out;
+        _positions = positions;
+    }
+
+    /**
+     * Writes a snapshot of a hotel to a file, replacing it.
+     *
+     * @param hotel the hotel.
+     * @param path the file.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(Hotel hotel, Path path) throws IOException {
+        write(new SnapshotImage(hotel), path, SnapshotCompression.NONE);
+    }
+
+    /**
+     * Writes a snapshot of an image of a hotel to a file, replacing it.
+     *
+     * @param image the image of the hotel.
+     * @param path the file.
+     * @param compression how much the snapshot is compressed.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(SnapshotImage image, Path path, SnapshotCompression compression) throws IOException {
+        replace(path, channel -> {
+            if (compression == SnapshotCompression.NONE)
+                write(image, channel);
+            else
+                writeCompressed(image, channel, compression.level());
+        });
+    }
+
+    /**
+     * Writes a delta of a snapshot, from an image of what changed since the save before it.
+     *
+     * @param delta the image of the delta.
+     * @param path the snapshot file the delta extends.
+     * @return the number of bytes of the delta.
+     * @throws IOException if the delta cannot be written.
+     */
+    static long writeDelta(SnapshotImage delta, Path path) throws IOException {
+        Path target = SnapshotDelta.pathOf(path, delta.delta());
+        replace(target, channel -> {
+            SnapshotOutput out = new SnapshotOutput(channel);
+            new SnapshotWriter(delta, out, null).writeDelta();
+            out.flush();
+        });
+        return Files.size(target);
+    }
+
+    /**
+     * Writes a file to a temporary file next to it, which then replaces it.
+     *
+     * @param path the file.
+     * @param contents writes the contents of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void replace(Path path, Contents contents) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                contents.write(channel);
+                channel.force(false);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Writes a snapshot of an image of a hotel to a channel, which is left open.
+     *
+     * @param image the image of the hotel.
+     * @param channel the channel.
+     * @throws IOException if the channel cannot be written.
+     */
+    private static void write(SnapshotImage image, WritableByteChannel channel) throws IOException {
+        new SnapshotWriter(image, null, null).writeHotel(channel);
+    }
+
+    /**
+     * Writes a compressed snapshot of an image of a hotel to a file channel, which is left open.
+     *
+     * @param image the image of the hotel.
+     * @param channel the file channel.
+     * @param level the compression level.
+     * @throws IOException if the channel cannot be written.
+     */
+    private static void writeCompressed(SnapshotImage image, FileChannel channel, int level) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.COMPRESSED_HEADER_SIZE);
+        header.put(SnapshotFormat.COMPRESSED_MAGIC).putInt(SnapshotFormat.COMPRESSED_VERSION).flip();
+        while (header.hasRemaining())
+            channel.write(header);
+        try (DeflatingChannel deflating = new DeflatingChannel(channel, level)) {
+            write(image, deflating);
+            deflating.finish();
+        }
+    }
+
+    /**
+     * Writes the header and every section of the snapshot. Sections are encoded in memory on the common
+     * fork/join pool, a few ahead of the one being written, and written in order as they are ready: at
+     * their position in the file, or one after the other to a channel that compresses them.
+     *
+     * @param channel the channel.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    private void writeHotel(WritableByteChannel channel) throws IOException {
+        Species[] species = _image.species();
+        Tree[] trees = _image.trees();
+        SnapshotImage.HabitatImage[] habitats = _image.habitats();
+        SnapshotImage.AnimalImage[] animals = _image.animals();
+        SnapshotImage.EmployeeImage[] employees = _image.employees();
+        Vaccine[] vaccines = _image.vaccines();
+        Vaccination[] vaccinations = _image.vaccinations();
+
+        _positions = new Positions(species.length + trees.length + habitats.length + animals.length + employees.length + vaccines.length);
+        _positions.number(species);
+        _positions.number(trees);
+        for (int i = 0; i < habitats.length; i++)
+            _positions.put(habitats[i].habitat(), i);
+        for (int i = 0; i < animals.length; i++)
+            _positions.put(animals[i].animal(), i);
+        for (int i = 0; i < employees.length; i++)
+            _positions.put(employees[i].employee(), i);
+        _positions.number(vaccines);
+        Set<Vaccination> wrong = Collections.newSetFromMap(new IdentityHashMap<>());
+        Collections.addAll(wrong, _image.wrongVaccinations());
+
+        List<Section> sections = new ArrayList<>();
+        sections.add(new Section(SnapshotFormat.HOTEL, 0, 1, (writer, i) -> {
+            writer._out.writeVarInt(_image.elapsedSeasons());
+            for (Object[] entities : List.of(species, trees, habitats, animals, employees, vaccines))
+                writer._out.writeVarInt(entities.length);
+            writer._out.writeVarLong(_image.journalSequence());
+            writer._out.writeVarLong(_image.lineage());
+            writer._out.endRecord();
+        }));
+        addSections(sections, SnapshotFormat.SPECIES, species.length, (writer, i) -> writer.writeSpecies(species[i]));
+        addSections(sections, SnapshotFormat.TREES, trees.length, (writer, i) -> writer.writeTree(trees[i]));
+        addSections(sections, SnapshotFormat.HABITATS, habitats.length, (writer, i) -> writer.writeHabitat(habitats[i]));
+        addSections(sections, SnapshotFormat.ANIMALS, animals.length, (writer, i) -> writer.writeAnimal(animals[i]));
+        addSections(sections, SnapshotFormat.EMPLOYEES, employees.length, (writer, i) -> writer.writeEmployee(employees[i]));
+        addSections(sections, SnapshotFormat.VACCINES, vaccines.length, (writer, i) -> writer.writeVaccine(vaccines[i]));
+        // a record per chunk of the history, each in its own section
+        for (int from = 0; from < vaccinations.length; from += SnapshotFormat.SECTION_RECORDS) {
+            int to = Math.min(from + SnapshotFormat.SECTION_RECORDS, vaccinations.length);
+            sections.add(new Section(SnapshotFormat.VACCINATION_HISTORY, from, 1, (writer, i) -> writer.writeVaccinations(vaccinations, i, to, wrong)));
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.MAGIC.length + Integer.BYTES);
+        header.put(SnapshotFormat.MAGIC).putInt(SnapshotFormat.VERSION).flip();
+        long position = write(channel, header, 0);
+        int window = 2 * ForkJoinPool.getCommonPoolParallelism() + 2;
+        Deque<CompletableFuture<ByteBuffer[]>> pending = new ArrayDeque<>();
+        long[] offsets = new long[sections.size()];
+        int[] lengths = new int[sections.size()];
+        int next = 0;
+        int written = 0;
+        try {
+            while (next < sections.size() || !pending.isEmpty()) {
+                while (next < sections.size() && pending.size() < window) {
+                    Section section = sections.get(next++);
+                    pending.add(CompletableFuture.supplyAsync(() -> encode(section), ForkJoinPool.commonPool()));
+                }
+                ByteBuffer[] bytes = join(pending.remove());
+                position = write(channel, bytes[0], position);
+                offsets[written] = position;
+                lengths[written++] = bytes[1].remaining();
+                position = write(channel, bytes[1], position);
+            }
+        } finally {
+            // a failed save does not leave sections being encoded
+            for (CompletableFuture<ByteBuffer[]> section : pending)
+                section.cancel(false);
+        }
+        position = write(channel, ByteBuffer.wrap(new byte[] { SnapshotFormat.END }), position);
+        writeContents(channel, sections, offsets, lengths, position);
+    }
+
+    /**
+     * Writes the table of contents of the snapshot, after its {@link SnapshotFormat#END} tag, followed by
+     * the trailer that locates it.
+     *
+     * @param channel the channel.
+     * @param sections the sections of the snapshot, in order.
+     * @param offsets the position in the snapshot of the first record of each section.
+     * @param lengths the number of bytes of the records of each section.
+     * @param position the position of the table of contents in the snapshot.
+     * @throws IOException if the channel cannot be written.
+     */
+    private static void writeContents(WritableByteChannel channel, List<Section> sections, long[] offsets, int[] lengths, long position) throws IOException {
+        SectionBytes bytes = new SectionBytes(16 * sections.size() + 16 + SnapshotFormat.TRAILER_SIZE);
+        SnapshotOutput out = new SnapshotOutput(bytes);
+        out.writeVarInt(sections.size());
+        for (int i = 0; i < sections.size(); i++) {
+            Section section = sections.get(i);
+            out.writeByte(section.tag());
+            out.writeVarInt(SnapshotFormat.sectionVersion(section.tag()));
+            out.writeVarLong(offsets[i]);
+            out.writeVarInt(section.count());
+            out.writeVarInt(lengths[i]);
+        }
+        out.endRecord();
+        out.flush();
+        ByteBuffer trailer = ByteBuffer.allocate(SnapshotFormat.TRAILER_SIZE);
+        trailer.putLong(position).put(SnapshotFormat.CONTENTS_MAGIC).flip();
+        bytes.write(trailer);
+        write(channel, bytes.buffer(), position);
+    }
+
+    /**
+     * Writes the header and every section of a delta, in order.
+     *
+     * @throws IOException if the delta cannot be written.
+     */
+    private void writeDelta() throws IOException {
+        _out.writeHeader(SnapshotFormat.DELTA_MAGIC, SnapshotFormat.DELTA_VERSION);
+        _out.beginSection(SnapshotFormat.HOTEL, 1);
+        _out.writeVarLong(_image.lineage());
+        _out.writeVarLong(_image.previousSequence());
+        _out.writeVarLong(_image.journalSequence());
+        _out.writeVarInt(_image.elapsedSeasons());
+        _out.endRecord();
+        writeDeltaSection(SnapshotFormat.SPECIES, _image.species(), this::writeSpecies);
+        writeDeltaSection(SnapshotFormat.TREES, _image.trees(), this::writeTree);
+        writeDeltaSection(SnapshotFormat.HABITATS, _image.habitats(), this::writeHabitat);
+        writeDeltaSection(SnapshotFormat.ANIMALS, _image.animals(), this::writeAnimal);
+        writeDeltaSection(SnapshotFormat.EMPLOYEES, _image.employees(), this::writeEmployee);
+        writeDeltaSection(SnapshotFormat.VACCINES, _image.vaccines(), this::writeVaccine);
+        writeDeltaSection(SnapshotFormat.CHANGED_HABITATS, _image.changedHabitats(), this::writeHabitat);
+        writeDeltaSection(SnapshotFormat.CHANGED_ANIMALS, _image.changedAnimals(), this::writeAnimal);
+        writeDeltaSection(SnapshotFormat.CHANGED_EMPLOYEES, _image.changedEmployees(), this::writeEmployee);
+        Vaccination[] vaccinations = _image.vaccinations();
+        if (vaccinations.length > 0) {
+            Set<Vaccination> wrong = Collections.newSetFromMap(new IdentityHashMap<>());
+            Collections.addAll(wrong, _image.wrongVaccinations());
+            _out.beginSection(SnapshotFormat.VACCINATION_HISTORY, 1);
+            writeVaccinations(vaccinations, 0, vaccinations.length, wrong);
+        }
+        _out.writeEnd();
+    }
+
+    /**
+     * Writes a section of a delta, unless it is empty.
+     *
+     * @param tag the tag of the section.
+     * @param entities the entities, or their states.
+     * @param record writes the record of an entity.
+     * @throws IOException if the section cannot be written.
+     */
+    private <T> void writeDeltaSection(byte tag, T[] entities, DeltaRecord<T> record) throws IOException {
+        if (entities.length == 0)
+            return;
+        _out.beginSection(tag, entities.length);
+        for (T entity : entities)
+            record.write(entity);
+    }
+
+    /**
+     * Adds the sections of an entity type, each with at most {@link SnapshotFormat#SECTION_RECORDS} records.
+     *
+     * @param sections the sections of the snapshot.
+     * @param tag the tag of the sections.
+     * @param count the number of entities.
+     * @param records writes the record of each entity.
+     */
+    private static void addSections(List<Section> sections, byte tag, int count, Records records) {
+        for (int first = 0; first < count; first += SnapshotFormat.SECTION_RECORDS)
+            sections.add(new Section(tag, first, Math.min(SnapshotFormat.SECTION_RECORDS, count - first), records));
+    }
+
+    /**
+     * Encodes a section in memory.
+     *
+     * @param section the section.
+     * @return the header and the records of the section.
+     * @throws UncheckedIOException if the section cannot be encoded.
+     */
+    private ByteBuffer[] encode(Section section) {
+        try {
+            SectionBytes records = new SectionBytes(1 << 16);
+            SnapshotWriter writer = new SnapshotWriter(_image, new SnapshotOutput(records), _positions);
+            for (int i = section.first(); i < section.first() + section.count(); i++)
+                section.records().write(writer, i);
+            writer._out.flush();
+            SectionBytes header = new SectionBytes(16);
+            SnapshotOutput out = new SnapshotOutput(header);
+            out.beginSection(section.tag(), section.count(), records.size());
+            out.flush();
+            return new ByteBuffer[] { header.buffer(), records.buffer() };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits for a section to be encoded or decoded on the fork/join pool.
+     *
+     * @param section the section being encoded or decoded.
+     * @return the result for the section.
+     * @throws IOException if the section could not be encoded or decoded.
+     */
+    static <T> T join(CompletableFuture<T> section) throws IOException {
+        try {
+            return section.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause)
+                throw cause.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes bytes to a channel: at the given position, if it is a file, or after what was written before.
+     *
+     * @param channel the channel.
+     * @param bytes the bytes.
+     * @param position the position of the bytes in the snapshot.
+     * @return the position after the bytes.
+     * @throws IOException if the channel cannot be written.
+     */
+    private static long write(WritableByteChannel channel, ByteBuffer bytes, long position) throws IOException {
+        long end = position + bytes.remaining();
+        if (channel instanceof FileChannel file) {
+            while (bytes.hasRemaining())
+                position += file.write(bytes, position);
+        } else {
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+        return end;
+    }
+
+    /**
+     * Writes a species record: ID and name.
+     *
+     * @param species the species.
+     * @throws IOException if the record cannot be written.
+     */
+    private void writeSpecies(Species species) throws IOException {
+        _out.writeString(species.getId());
+        _out.writeString(species.getName());
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a vaccine record: ID, name and the IDs of the species it is meant for, as they were given.
+     *
+     * @param vaccine the vaccine.
+     * @throws IOException if the record cannot be written.
+     */
+    private void writeVaccine(Vaccine vaccine) throws IOException {
+        _out.writeString(vaccine.getId());
+        _out.writeString(vaccine.getName());
+        writeIds(vaccine.speciesIds());
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a tree record: ID, name, type, planting age, planting season and cleaning difficulty.
+     *
+     * @param tree the tree.
+     * @throws IOException if the record cannot be written.
+     */
+    private void writeTree(Tree tree) throws IOException {
+        _out.writeString(tree.getId());
+        _out.writeString(tree.getName());
+        _out.writeByte(tree instanceof DeciduousTree ? SnapshotFormat.DECIDUOUS_TREE : SnapshotFormat.EVERGREEN_TREE);
+        _out.writeSignedVarInt(tree.getPlantingAge());
+        _out.writeSignedVarInt(tree.getPlantingSeason());
+        _out.writeSignedVarInt(tree.getCleaningDificulty());
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a habitat record: ID, name, area, its trees and its influence on each species, ordered by
+     * species ID in a snapshot.
+     *
+     * @param image the state of the habitat.
+     * @throws IOException if the record cannot be written.
+     */
+    private void writeHabitat(SnapshotImage.HabitatImage image) throws IOException {
+        _out.writeString(image.habitat().getId());
+        _out.writeString(image.habitat().getName());
+        _out.writeSignedVarInt(image.area());
+        writeReferences(image.trees());
+        Species[] species = image.influencedSpecies();
+        if (_positions == null) {
+            _out.writeVarInt(species.length);
+            for (int i = 0; i < species.length; i++) {
+                writeReference(species[i]);
+                _out.writeByte(image.influences()[i].ordinal());
+            }
+            _out.endRecord();
+            return;
+        }
+        // species are positioned in ID order, so sorting by position sorts by ID
+        long[] influences = new long[species.length];
+        for (int i = 0; i < species.length; i++)
+            influences[i] = (long) _positions.of(species[i]) << Byte.SIZE | image.influences()[i].ordinal();
+        Arrays.sort(influences);
+        _out.writeVarInt(influences.length);
+        for (long influence : influences) {
+            _out.writeVarInt((int) (influence >>> Byte.SIZE));
+            _out.writeByte((int) influence & 0xFF);
+        }
+        _out.endRecord();
+    }
+
+    /**
+     * Writes an animal record: ID, name, species, habitat and the effects of the vaccines it took.
+     *
+     * @param image the state of the animal.
+     * @throws IOException if the record cannot be written.
+     */
+    private void writeAnimal(SnapshotImage.AnimalImage image) throws IOException {
+        Animal animal = image.animal();
+        _out.writeString(animal.getId());
+        _out.writeString(animal.getName());
+        writeReference(animal.getSpecies());
+        writeReference(image.habitat());
+        _out.writeVarInt(image.healthEvents().length);
+        for (VaccineDamage damage : image.healthEvents())
+            _out.writeByte(damage.ordinal());
+        _out.endRecord();
+    }
+
+    /**
+     * Writes an employee record: type, ID, name and its responsibilities.
+     *
+     * @param image the state of the employee.
+     * @throws IOException if the record cannot be written.
+     */
+    private void writeEmployee(SnapshotImage.EmployeeImage image) throws IOException {
+        Employee employee = image.employee();
+        _out.writeByte(employee instanceof Veterinarian ? SnapshotFormat.VETERINARIAN : SnapshotFormat.ZOOKEEPER);
+        _out.writeString(employee.getId());
+        _out.writeString(employee.getName());
+        writeReferences(image.responsibilities());
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a vaccination history record: the number of vaccinations, a bitmap of those in which the
+     * vaccine was wrong and, in the order they happened, the vaccine, the veterinarian and the animal of
+     * each of them.
+     *
+     * @param vaccinations the vaccinations of the hotel.
+     * @param from the first vaccination of the record.
+     * @param to the vaccination after the last one of the record.
+     * @param wrong the vaccinations in which the vaccine was wrong.
+     * @throws IOException if the record cannot be written.
+     */
+    private void writeVaccinations(Vaccination[] vaccinations, int from, int to, Set<Vaccination> wrong) throws IOException {
+        _out.writeVarInt(to - from);
+        for (int i = from; i < to; i += Byte.SIZE) {
+            int flags = 0;
+            for (int j = i; j < Math.min(i + Byte.SIZE, to); j++)
+                if (wrong.contains(vaccinations[j]))
+                    flags |= 1 << (j - i);
+            _out.writeByte(flags);
+        }
+        for (int i = from; i < to; i++) {
+            Vaccination vaccination = vaccinations[i];
+            writeReference(vaccination.getVaccine());
+            writeReference(vaccination.getVeterinarian());
+            writeReference(vaccination.getAnimal());
+        }
+        _out.endRecord();
+    }
+
+    /**
+     * Writes a list of IDs, prefixed by their number.
+     *
+     * @param ids the IDs.
+     */
+    private void writeIds(Collection<String> ids) {
+        _out.writeVarInt(ids.size());
+        for (String id : ids)
+            _out.writeString(id);
+    }
+
+    /**
+     * Writes a list of references to entities, prefixed by their number.
+     *
+     * @param entities the entities.
+     */
+    private void writeReferences(Object[] entities) {
+        _out.writeVarInt(entities.length);
+        for (Object entity : entities)
+            writeReference(entity);
+    }
+
+    /**
+     * Writes a reference to an entity: its position in its section, or its ID in a delta.
+     *
+     * @param entity the entity.
+     */
+    private void writeReference(Object entity) {
+        if (_positions != null)
+            _out.writeVarInt(_positions.of(entity));
+        else
+            _out.writeString(idOf(entity));
+    }
+
+    /**
+     * @param entity an entity.
+     * @return its ID.
+     */
+    private static String idOf(Object entity) {
+        if (entity instanceof Species species)
+            return species.getId();
+        if (entity instanceof Tree tree)
+            return tree.getId();
+        if (entity instanceof Habitat habitat)
+            return habitat.getId();
+        if (entity instanceof Animal animal)
+            return animal.getId();
+        if (entity instanceof Employee employee)
+            return employee.getId();
+        return ((Vaccine) entity).getId();
+    }
+
+    /**
+     * The {@code Positions} class maps each entity of a snapshot to its position in its section, telling
+     * entities apart by identity.
+     *
+     * <p>
+     * The entities and their positions are kept in two arrays, probed linearly from the identity hash
+     * code of each entity, so numbering millions of entities allocates no object per entity.
+     * </p>
+     *
+     * <p><b>Attributes:</b></p>
+     * <ul>
+     *   <li>_entities: The entities, at the slot of their hash code or the next free one.</li>
+     *   <li>_positions: The position of the entity in each slot.</li>
+     * </ul>
+     */
+    private static final class Positions {
+
+        /** The entities, at the slot of their hash code or the next free one. */
+        private final Object[] _entities;
+
+        /** The position of the entity in each slot. */
+        private final int[] _positions;
+
+        /**
+         * @param count the number of entities to number.
+         */
+        Positions(int count) {
+            // at most half full, so probes stay short
+            int slots = Integer.highestOneBit(Math.max(count, 1)) << 2;
+            _entities = new Object[slots];
+            _positions = new int[slots];
+        }
+
+        /**
+         * Numbers the entities of a section, in order.
+         *
+         * @param entities the entities.
+         */
+        void number(Object[] entities) {
+            for (int i = 0; i < entities.length; i++)
+                put(entities[i], i);
+        }
+
+        /**
+         * @param entity an entity.
+         * @param position its position in its section.
+         */
+        void put(Object entity, int position) {
+            int slot = slot(entity);
+            _entities[slot] = entity;
+            _positions[slot] = position;
+        }
+
+        /**
+         * @param entity an entity.
+         * @return its position in its section.
+         * @throws IllegalStateException if the entity is not in the image, which would make the snapshot inconsistent.
+         */
+        int of(Object entity) {
+            int slot = slot(entity);
+            if (_entities[slot] == null)
+                throw new IllegalStateException("Reference to an entity outside the snapshot: " + entity);
+            return _positions[slot];
+        }
+
+        /**
+         * @param entity an entity.
+         * @return the slot of the entity, or the free slot where it would be put.
+         */
+        private int slot(Object entity) {
+            int mask = _entities.length - 1;
+            int hash = System.identityHashCode(entity);
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (_entities[slot] != null && _entities[slot] != entity)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+    }
+}
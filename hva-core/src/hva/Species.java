@@ -2,6 +2,9 @@ package hva;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -24,6 +27,8 @@ import hva.employee.Veterinarian;
  *   <li>_name: The name of the species.</li>
  *   <li>_animals: A collection of animals that belong to the species, keyed by animal ID.</li>
  *   <li>_veterinarians: A collection of veterinarians assigned to the species, keyed by veterinarian ID.</li>
+ *   <li>_index: The position of the species in the hotel, used to address per-species tables.</li>
+ *   <li>_nameCharacters: The characters of the name in upper case, sorted.</li>
  * </ul>
  */
 public class Species implements Serializable {
@@ -44,6 +49,12 @@ public class Species implements Serializable {
     /** Veterinarians assigned to the species. */
     private Map<String, Veterinarian> _veterinarians = new HashMap<>();
 
+    /** The position of the species in the hotel, assigned when the species is registered. */
+    private int _index;
+
+    /** The characters of the name in upper case, sorted (rebuilt on demand after loading). */
+    private transient char[] _nameCharacters;
+
     /**
      * Constructs a new {@code Specie} with the specified ID and name.
      * 
@@ -53,6 +64,7 @@ public class Species implements Serializable {
     public Species (String id, String name) {
         _id = id;
         _name = name;
+        _nameCharacters = sortedCharacters(name);
     }
 
     /**
@@ -73,6 +85,51 @@ public class Species implements Serializable {
         return _name;
     }
 
+    /**
+     * Returns the position of the species in the hotel. Species are numbered from zero,
+     * in the order they were registered, so the index can address per-species tables.
+     *
+     * @return the species' index.
+     */
+    int getIndex() {
+        return _index;
+    }
+
+    /**
+     * Sets the position of the species in the hotel.
+     *
+     * @param index the species' index.
+     */
+    void setIndex(int index) {
+        _index = index;
+    }
+
+    /**
+     * Returns the characters of the species' name in upper case, sorted, so that the characters
+     * two names have in common can be counted by merging them.
+     *
+     * <p>The array is shared and must not be modified.</p>
+     *
+     * @return the sorted upper case characters of the name.
+     */
+    char[] nameCharacters() {
+        if (_nameCharacters == null)
+            _nameCharacters = sortedCharacters(_name);
+        return _nameCharacters;
+    }
+
+    /**
+     * Converts a name to upper case and sorts its characters.
+     *
+     * @param name the name.
+     * @return the sorted upper case characters of the name.
+     */
+    private static char[] sortedCharacters(String name) {
+        char[] characters = name.toUpperCase().toCharArray();
+        Arrays.sort(characters);
+        return characters;
+    }
+
     /**
      * Retrieves the current population of animals of this species.
      *
@@ -91,6 +148,15 @@ public class Species implements Serializable {
         return _veterinarians.size();
     }
 
+    /**
+     * Returns all the veterinarians assigned to this species as an unmodifiable collection.
+     *
+     * @return a collection of veterinarians assigned to the species.
+     */
+    public Collection<Veterinarian> allVeterinarians() {
+        return Collections.unmodifiableCollection(_veterinarians.values());
+    }
+
     /**
      * Adds an animal to the species.
      * 
@@ -100,6 +166,19 @@ public class Species implements Serializable {
         _animals.put(animal.getId(), animal);
     }
 
+    /**
+     * Makes room for the given number of animals, so the species is not rehashed while they are added.
+     *
+     * @param expected the number of animals the species is expected to have.
+     */
+    void ensureCapacity(int expected) {
+        if (expected > _animals.size()) {
+            Map<String, Animal> animals = new HashMap<>((int) (expected / 0.75f) + 1);
+            animals.putAll(_animals);
+            _animals = animals;
+        }
+    }
+
     /**
      * Assigns a veterinarian to the species by adding the veterinarian to the internal map.
      *
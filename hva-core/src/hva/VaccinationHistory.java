@@ -0,0 +1,215 @@
+package hva;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The {@code VaccinationHistory} class is the vaccination history of a hotel that was stepped over when
+ * the hotel was read from a snapshot (see {@link SnapshotReader}), and is read when it is first needed.
+ *
+ * <p>
+ * The history is read by {@link #materialize()}, which the hotel calls before it uses its vaccinations
+ * and each vaccine calls before it counts its own. The snapshot file stays open until then, so the
+ * history is still there if the file is replaced by a later save. The history can also be read from a
+ * memory-mapped snapshot (see {@link ReadOnlyHotel}). If the history cannot be read, nothing is added
+ * to the hotel and it is tried again the next time it is needed.
+ * </p>
+ *
+ * <p>
+ * Since version 4, the history is split in sections whose lengths are known (see {@link SnapshotFormat}),
+ * which are decoded from the file on the common fork/join pool and added to the hotel at once, in order.
+ * The records of a section of an older version are upgraded as they are decoded (see {@link SnapshotMigrations}).
+ * </p>
+ *
+ * <p>
+ * The vaccinations of the deltas that extend the snapshot (see {@link SnapshotDelta}) are read with the
+ * rest of each delta, and wait here to be added after the history.
+ * </p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_hotel: The hotel the history belongs to.</li>
+ *   <li>_tables: The entities of the snapshot, to which the history refers by position, or {@code null}.</li>
+ *   <li>_channel: The snapshot file, or {@code null} if the history is mapped or was read or discarded.</li>
+ *   <li>_snapshot: The mapped snapshot, or {@code null}.</li>
+ *   <li>_sections: The vaccination history sections of the snapshot, in order.</li>
+ *   <li>_laterVaccinations: The vaccinations of the deltas of the snapshot, in order.</li>
+ *   <li>_laterWrongVaccinations: The vaccinations of the deltas in which the vaccine was wrong.</li>
+ * </ul>
+ */
+final class VaccinationHistory {
+
+    /** The hotel the history belongs to. */
+    private final Hotel _hotel;
+
+    /** The entities of the snapshot, to which the history refers by position (or {@code null} once read or discarded). */
+    private SnapshotTables _tables;
+
+    /** The snapshot file (or {@code null} if the history is mapped or was read or discarded). */
+    private FileChannel _channel;
+
+    /** The mapped snapshot (or {@code null}). */
+    private ByteBuffer _snapshot;
+
+    /** The vaccination history sections of the snapshot, in order. */
+    private final List<SnapshotReader.Section> _sections;
+
+    /** The vaccinations of the deltas of the snapshot, in order. */
+    private final List<Vaccination> _laterVaccinations = new ArrayList<>();
+
+    /** The vaccinations of the deltas in which the vaccine was wrong. */
+    private final List<Vaccination> _laterWrongVaccinations = new ArrayList<>();
+
+    /**
+     * @param hotel the hotel the history belongs to.
+     * @param tables the entities of the snapshot.
+     * @param channel the snapshot file.
+     * @param sections the vaccination history sections of the snapshot, in order.
+     */
+    VaccinationHistory(Hotel hotel, SnapshotTables tables, FileChannel channel, List<SnapshotReader.Section> sections) {
+        _hotel = hotel;
+        _tables = tables;
+        _channel = channel;
+        _sections = sections;
+    }
+
+    /**
+     * @param hotel the hotel the history belongs to.
+     * @param tables the entities of the snapshot.
+     * @param snapshot the mapped snapshot.
+     * @param sections the vaccination history sections of the snapshot, in order.
+     */
+    VaccinationHistory(Hotel hotel, SnapshotTables tables, ByteBuffer snapshot, List<SnapshotReader.Section> sections) {
+        _hotel = hotel;
+        _tables = tables;
+        _snapshot = snapshot;
+        _sections = sections;
+    }
+
+    /**
+     * Reads the history into the hotel, unless it was already read, and closes the snapshot file.
+     *
+     * @throws UncheckedIOException if the history cannot be read or is corrupted.
+     */
+    synchronized void materialize() {
+        if (_channel == null && _snapshot == null)
+            return;
+        List<Vaccination> vaccinations = new ArrayList<>();
+        List<Vaccination> wrongVaccinations = new ArrayList<>();
+        try {
+            if (_snapshot != null || _sections.size() == 1) {
+                // a mapped snapshot decodes the sections the history refers to on the thread that reads it
+                for (SnapshotReader.Section section : _sections)
+                    decode(section, vaccinations, wrongVaccinations);
+            } else {
+                List<CompletableFuture<List<List<Vaccination>>>> decoded = new ArrayList<>();
+                try {
+                    for (SnapshotReader.Section section : _sections)
+                        decoded.add(CompletableFuture.supplyAsync(() -> decode(section), ForkJoinPool.commonPool()));
+                    for (CompletableFuture<List<List<Vaccination>>> section : decoded) {
+                        List<List<Vaccination>> lists = SnapshotWriter.join(section);
+                        vaccinations.addAll(lists.get(0));
+                        wrongVaccinations.addAll(lists.get(1));
+                    }
+                } finally {
+                    for (CompletableFuture<List<List<Vaccination>>> section : decoded)
+                        section.cancel(false);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        vaccinations.addAll(_laterVaccinations);
+        wrongVaccinations.addAll(_laterWrongVaccinations);
+        _hotel.restoreVaccinationHistory(vaccinations, wrongVaccinations);
+        close();
+    }
+
+    /**
+     * Keeps the vaccinations of a delta of the snapshot, to be added after the history when it is read.
+     *
+     * @param vaccinations the vaccinations, in the order they happened.
+     * @param wrongVaccinations the vaccinations in which the vaccine was wrong.
+     * @return {@code false} if the history was already read or discarded, so the vaccinations were not kept.
+     */
+    synchronized boolean append(List<Vaccination> vaccinations, List<Vaccination> wrongVaccinations) {
+        if (_channel == null && _snapshot == null)
+            return false;
+        _laterVaccinations.addAll(vaccinations);
+        _laterWrongVaccinations.addAll(wrongVaccinations);
+        return true;
+    }
+
+    /**
+     * Decodes a vaccination history section on a thread of the pool.
+     *
+     * @param section the section.
+     * @return the vaccinations and the wrong vaccinations of the section.
+     * @throws UncheckedIOException if the section cannot be read or is corrupted.
+     */
+    private List<List<Vaccination>> decode(SnapshotReader.Section section) {
+        List<Vaccination> vaccinations = new ArrayList<>();
+        List<Vaccination> wrongVaccinations = new ArrayList<>();
+        try {
+            decode(section, vaccinations, wrongVaccinations);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return List.of(vaccinations, wrongVaccinations);
+    }
+
+    /**
+     * Decodes a vaccination history section, without adding its vaccinations to the hotel.
+     *
+     * @param section the section.
+     * @param vaccinations the vaccinations read so far, to which those of the section are added.
+     * @param wrongVaccinations the wrong vaccinations read so far, to which those of the section are added.
+     * @throws IOException if the section cannot be read or is corrupted.
+     */
+    private void decode(SnapshotReader.Section section, List<Vaccination> vaccinations, List<Vaccination> wrongVaccinations) throws IOException {
+        SnapshotInput in;
+        if (_snapshot != null) {
+            in = new SnapshotInput(_snapshot.duplicate().position((int) section.offset()));
+        } else if (section.length() >= 0) {
+            in = new SnapshotInput(SnapshotReader.readBytes(_channel, section.offset(), section.length()));
+        } else {
+            // before version 4 the history is a single section, whose length is not known
+            _channel.position(section.offset());
+            in = new SnapshotInput(_channel);
+        }
+        in.migrate(section.tag(), section.version(), _tables.byPosition());
+        try {
+            for (int i = 0; i < section.count(); i++) {
+                in.nextRecord();
+                new SnapshotReader(in, _hotel, null, _tables).readVaccinationHistory(vaccinations, wrongVaccinations);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // an unknown ID: the history does not match the rest of the snapshot
+            throw SnapshotReader.corrupted(e);
+        }
+    }
+
+    /**
+     * Closes the snapshot file without reading the history, when the hotel is discarded.
+     */
+    synchronized void close() {
+        _snapshot = null;
+        _tables = null;
+        if (_channel == null)
+            return;
+        try {
+            _channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        _channel = null;
+    }
+}
@@ -5,10 +5,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import hva.enums.VaccineDamage;
@@ -27,6 +27,9 @@ import hva.enums.VaccineDamage;
  *   <li>_id: The unique identifier of the vaccine.</li>
  *   <li>_name: The name of the vaccine.</li>
  *   <li>_species: A map of species that the vaccine targets, keyed by species ID.</li>
+ *   <li>_damageBySpecies: The damage the vaccine causes to animals of each species it was given to, by species index.</li>
+ *   <li>_damageCount: The number of species in the damage table.</li>
+ *   <li>_history: The vaccinations of the vaccine still in the snapshot of the hotel, if any.</li>
  * </ul>
  */
 public class Vaccine implements Serializable {
@@ -47,6 +50,22 @@ public class Vaccine implements Serializable {
     /** The vaccinations administered using this vaccine. */
     private List<Vaccination> _vaccinations = new ArrayList<>();
 
+    /** The vaccinations of the vaccine still in the snapshot of the hotel, if any. */
+    private transient VaccinationHistory _history;
+
+    /** Mask of the species of an entry of the damage table. */
+    private static final long DAMAGE_SPECIES = 0xFFFFFFFF00000000L;
+
+    /**
+     * Damage caused to animals of each species the vaccine was given to, in an open-addressing table of entries
+     * holding the species index plus one in their high half and the damage in their low half, 0 if empty (rebuilt
+     * on demand after loading).
+     */
+    private transient long[] _damageBySpecies;
+
+    /** The number of species in the damage table. */
+    private transient int _damageCount;
+
     /**
      * Constructs a new {@code Vaccine} with the specified ID, name, and target species.
      * 
@@ -78,6 +97,24 @@ public class Vaccine implements Serializable {
         return _name;
     }
 
+    /**
+     * Returns the IDs of the species targeted by the vaccine, as they were given when the vaccine was registered.
+     *
+     * @return an unmodifiable set of species IDs.
+     */
+    Set<String> speciesIds() {
+        return Collections.unmodifiableSet(_species.keySet());
+    }
+
+    /**
+     * Makes the vaccine read the vaccination history of the hotel before it counts its vaccinations.
+     *
+     * @param history the vaccination history, still in the snapshot of the hotel.
+     */
+    void deferVaccinations(VaccinationHistory history) {
+        _history = history;
+    }
+
     /**
      * Adds a vaccination record to the list of vaccinations.
      *
@@ -122,42 +159,111 @@ public class Vaccine implements Serializable {
      * Calculates the damage inflicted on an animal based on the similarity of its species name
      * to other species names in the system.
      *
+     * <p>The damage only depends on the names of the animal's species and of the species targeted
+     * by the vaccine, so it is computed once per species and remembered; later inadequate
+     * vaccinations of animals of the same species do not allocate. The species targeted by
+     * the vaccine are fixed when it is created, so the remembered values never become stale.</p>
+     *
      * @param animal The animal on which the damage is being calculated.
      * @return The maximum damage value calculated based on the difference in name lengths
      *         and common characters between the animal's species name and other species names.
      */
     private int damageOnAnimal(Animal animal) {
         Species animalSpecies = animal.getSpecies();
+        long species = (long) (animalSpecies.getIndex() + 1) << 32;
+        long[] table = _damageBySpecies;
+        if (table != null)
+            for (int slot = slot(species, table.length); table[slot] != 0; slot = (slot + 1) & (table.length - 1))
+                if ((table[slot] & DAMAGE_SPECIES) == species)
+                    return (int) table[slot];
+        int damage = damageOnSpecies(animalSpecies);
+        rememberDamage(species | damage);
+        return damage;
+    }
+
+    /**
+     * Adds an entry to the damage table, which only grows with the species the vaccine is given to, not with
+     * all the species of the hotel. Entries are added one at a time, and each is written at once, so a
+     * vaccination that reads the table meanwhile finds the entry or an empty slot, and then computes the
+     * damage itself; the table is never more than half full.
+     *
+     * @param entry the species index plus one, in the high half, and the damage, in the low half.
+     */
+    private synchronized void rememberDamage(long entry) {
+        long[] table = _damageBySpecies;
+        if (table == null || 2 * (_damageCount + 1) > table.length) {
+            long[] grown = new long[table == null ? 8 : 2 * table.length];
+            if (table != null)
+                for (long old : table)
+                    if (old != 0)
+                        grown[free(grown, old)] = old;
+            table = grown;
+        }
+        table[free(table, entry)] = entry;
+        _damageCount++;
+        _damageBySpecies = table;
+    }
+
+    /**
+     * @param table a damage table.
+     * @param entry an entry whose species is not in the table.
+     * @return the first empty slot for the species.
+     */
+    private static int free(long[] table, long entry) {
+        int slot = slot(entry & DAMAGE_SPECIES, table.length);
+        while (table[slot] != 0)
+            slot = (slot + 1) & (table.length - 1);
+        return slot;
+    }
+
+    /**
+     * @param species the species index plus one, in the high half.
+     * @param length the length of a damage table, a power of two.
+     * @return the slot where the search for the species starts.
+     */
+    private static int slot(long species, int length) {
+        return (int) (species >>> 32) * 0x9E3779B9 >>> 16 & (length - 1);
+    }
+
+    /**
+     * Calculates the damage the vaccine causes to an animal of the given species.
+     *
+     * @param animalSpecies the species of the animal.
+     * @return the maximum damage over the species targeted by the vaccine.
+     */
+    private int damageOnSpecies(Species animalSpecies) {
         int damage = 0;
         for (Species species : _species.values()) {
             int nameSize = Math.max(animalSpecies.getName().length(), species.getName().length());
-            int calculatedDamage = Math.abs(nameSize - commonCharacters(animalSpecies.getName(), species.getName()));
+            int calculatedDamage = Math.abs(nameSize - commonCharacters(animalSpecies.nameCharacters(), species.nameCharacters()));
             damage = Math.max(damage, calculatedDamage);
         }
         return damage;
     }
 
     /**
-     * Calculates the number of common characters between two strings.
+     * Calculates the number of common characters between two names, given their sorted
+     * upper case characters, by merging both arrays.
      *
-     * @param name1 the first string to compare
-     * @param name2 the second string to compare
-     * @return the number of common characters between the two strings
+     * @param name1 the sorted characters of the first name
+     * @param name2 the sorted characters of the second name
+     * @return the number of common characters between the two names
      */
-    private int commonCharacters(String name1, String name2) {
-        HashMap<Character, Integer> map1 = new HashMap<>();
-        
+    private static int commonCharacters(char[] name1, char[] name2) {
         int commonCharacters = 0;
-
-        for (char c : name1.toUpperCase().toCharArray())
-            map1.put(c, map1.containsKey(c) ? map1.get(c) + 1 : 1);
-
-        for (char c : name2.toUpperCase().toCharArray())
-            if (map1.containsKey(c) && map1.get(c) > 0) {
+        int i = 0;
+        int j = 0;
+        while (i < name1.length && j < name2.length) {
+            if (name1[i] < name2[j])
+                i++;
+            else if (name1[i] > name2[j])
+                j++;
+            else {
                 commonCharacters++;
-                map1.put(c, map1.get(c) - 1);
+                i++;
+                j++;
             }
-        
+        }
         return commonCharacters;
     }
 
@@ -188,6 +294,8 @@ public class Vaccine implements Serializable {
      */
     @Override
     public String toString() {
+        if (_history != null)
+            _history.materialize();
         String speciesIDs = "";
         if (!_species.isEmpty()) {
             speciesIDs = "|";
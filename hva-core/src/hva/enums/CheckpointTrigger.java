@@ -0,0 +1,11 @@
+package hva.enums;
+
+/**
+ * The {@code CheckpointTrigger} enum represents why a hotel was checkpointed: the season advanced, enough
+ * operations changed it, or it stayed changed for long enough without being saved.
+ */
+public enum CheckpointTrigger {
+    SEASON,
+    OPERATIONS,
+    TIME;
+}
@@ -0,0 +1,12 @@
+package hva.enums;
+
+/**
+ * The {@code JournalSync} enum represents when the journal of a hotel is forced to the storage device:
+ * after every operation, by a background thread every few milliseconds (group commit), or whenever
+ * the operating system decides to.
+ */
+public enum JournalSync {
+    EVERY_OPERATION,
+    GROUP_COMMIT,
+    OS_MANAGED;
+}
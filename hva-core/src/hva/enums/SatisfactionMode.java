@@ -0,0 +1,10 @@
+package hva.enums;
+
+/**
+ * The {@code SatisfactionMode} enum represents how the satisfaction of many animals and employees is evaluated at once:
+ * one after the other on the calling thread, or split by habitat and by employee type on the common fork/join pool.
+ */
+public enum SatisfactionMode {
+    SEQUENTIAL,
+    PARALLEL;
+}
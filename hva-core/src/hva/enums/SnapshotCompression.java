@@ -0,0 +1,19 @@
+package hva.enums;
+
+/**
+ * The {@code SnapshotCompression} enum represents how much the snapshots of a hotel are compressed, from
+ * not at all to as small as possible. Each level is associated with a level of {@link java.util.zip.Deflater}.
+ */
+public enum SnapshotCompression {
+    NONE(0), FAST(1), BALANCED(6), SMALL(9);
+
+    private final int _level;
+
+    SnapshotCompression(int level) {
+        _level = level;
+    }
+
+    public int level() {
+        return _level;
+    }
+}
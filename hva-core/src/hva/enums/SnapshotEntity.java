@@ -0,0 +1,15 @@
+package hva.enums;
+
+/**
+ * The {@code SnapshotEntity} enum represents the types of entities that are compared between two saved
+ * hotels, in the order their differences are reported.
+ */
+public enum SnapshotEntity {
+    SPECIES,
+    TREE,
+    HABITAT,
+    ANIMAL,
+    EMPLOYEE,
+    VACCINE,
+    VACCINATION;
+}
@@ -0,0 +1,25 @@
+package hva.exceptions.unknown;
+
+import java.io.Serial;
+
+/**
+ * Launched when a unknown species name is used.
+ */
+public class UnknownSpeciesNameException extends Exception {
+    
+    @Serial
+    private static final long serialVersionUID = 202610171200L;
+
+    /** The species's name. */
+    private final String _name;
+
+    /** @param speciesName */
+    public UnknownSpeciesNameException(String speciesName) {
+        _name = speciesName;
+    }
+
+    /** @return the name */
+    public String getName() {
+        return _name;
+    }
+}
@@ -2,7 +2,8 @@ package hva.tree;
 
 import java.io.Serial;
 
-import hva.strategies.WorkStrategy;
+import hva.SeasonClock;
+import hva.enums.Season;
 import hva.treeStates.EvergreenTreeState;
 import hva.treeStates.TreeState;
 
@@ -25,9 +26,35 @@ public class EvergreenTree extends Tree {
      * @param name The name of the tree.
      * @param age The age of the tree.
      * @param baseCleaningDificulty The base difficulty of cleaning the tree.
+     * @param clock The season clock of the hotel where the tree is planted.
      */
-    public EvergreenTree(String id, String name, int age, int baseCleaningDificulty) {
-        super(id, name, age, baseCleaningDificulty);
+    public EvergreenTree(String id, String name, int age, int baseCleaningDificulty, SeasonClock clock) {
+        super(id, name, age, baseCleaningDificulty, clock);
+    }
+
+    /**
+     * Constructs a {@code EvergreenTree} that was planted in a given season of the clock, with the age it had then.
+     * 
+     * @param id The unique identifier of the tree.
+     * @param name The name of the tree.
+     * @param plantingAge The age of the tree when it was planted.
+     * @param plantingSeason The number of seasons the clock had elapsed when the tree was planted.
+     * @param baseCleaningDificulty The base difficulty of cleaning the tree.
+     * @param clock The season clock of the hotel where the tree is planted.
+     */
+    public EvergreenTree(String id, String name, int plantingAge, int plantingSeason, int baseCleaningDificulty, SeasonClock clock) {
+        super(id, name, plantingAge, plantingSeason, baseCleaningDificulty, clock);
+    }
+
+    /**
+     * Retrieves the shared state of evergreen trees in the given season.
+     *
+     * @param season the season.
+     * @return the state of evergreen trees in the season.
+     */
+    @Override
+    protected TreeState stateIn(Season season) {
+        return EvergreenTreeState.forSeason(season);
     }
     
 
@@ -1,13 +1,16 @@
 package hva.tree;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
 import java.io.Serial;
 import java.io.Serializable;
 
-import hva.Habitat;
+import hva.SeasonClock;
 import hva.enums.Season;
 import hva.strategies.TreeWorkStrategy;
 import hva.strategies.WorkStrategy;
-import hva.treeStates.EvergreenTreeState;
 import hva.treeStates.TreeState;
 
 
@@ -22,28 +25,43 @@ import hva.treeStates.TreeState;
  * <ul>
  *   <li>{@code _id} - The unique identifier of the tree.</li>
  *   <li>{@code _name} - The name of this tree instance.</li>
- *   <li>{@code _age} - The age of the tree.</li>
+ *   <li>{@code _plantingAge} - The age of the tree (in years) when it was planted.</li>
+ *   <li>{@code _plantingSeason} - The number of seasons the hotel had gone through when the tree was planted.</li>
  *   <li>{@code _cleaningDifficulty} - The base difficulty of cleaning the tree.</li>
- *   <li>{@code _birthState} - The birth state of the tree.</li>
- *   <li>{@code _state} - The current state of the tree.</li>
+ *   <li>{@code _clock} - The season clock of the hotel where the tree is planted.</li>
  *   <li>{@code _workStrategy} - The work strategy used to calculate the effort required to clean the tree.</li>
  * </ul>
  * 
  * <p>Methods:</p>
  * <ul>
- *   <li>{@code setBirthState(TreeState birthState)} - Sets the birth state of the tree and updates its current state to the given birth state.</li>
- *   <li>{@code getTreeState()} - Retrieves the current state of the tree.</li>
- *   <li>{@code setState(TreeState newState)} - Sets the state of the tree to the given state.</li>
- *   <li>{@code advanceSeason()} - Advances the season of the tree to the next one.</li>
+ *   <li>{@code getTreeState()} - Retrieves the state of the tree in the current season.</li>
+ *   <li>{@code getAge()} - Retrieves the age of the tree, derived from the seasons passed since it was planted.</li>
  *   <li>{@code cleaningEffort()} - Calculates the effort required to clean the tree.</li>
  * </ul>
  * 
+ * <p>A tree does not change when the season advances: its state and age are derived from the season clock
+ * of the hotel, so advancing the season does not depend on the number of trees.</p>
+ * 
  * <p>Note: This class is abstract and cannot be instantiated directly. Subclasses should provide specific implementations.</p>
  */
 public abstract class Tree implements Serializable {
 
     @Serial
     private static final long serialVersionUID = 202407081733L;
+
+    /**
+     * The fields of a tree in the hotels saved with Java serialization, which stored the age of the tree,
+     * growing a quarter of a year every season, and its state in the current season.
+     */
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("_id", String.class),
+        new ObjectStreamField("_name", String.class),
+        new ObjectStreamField("_age", double.class),
+        new ObjectStreamField("_cleaningDifficulty", int.class),
+        new ObjectStreamField("_state", TreeState.class),
+        new ObjectStreamField("_workStrategy", WorkStrategy.class),
+    };
     
     /** The unique identifier of the tree. */
     private String _id;
@@ -51,34 +69,93 @@ public abstract class Tree implements Serializable {
     /** The name of this tree instance. */
     private String _name;
 
-    /** The age of the tree. */
-    private double _age;
+    /** The age of the tree (in years) when it was planted. */
+    private int _plantingAge;
+
+    /** The number of seasons the hotel had gone through when the tree was planted. */
+    private int _plantingSeason;
 
     /** The base difficulty of cleaning the tree. */
     private int _cleaningDifficulty;
 
-    /** The current state of the tree. */
-    private TreeState _state;
+    /** The season clock of the hotel where the tree is planted. */
+    private SeasonClock _clock;
 
     /** The work strategy used to calculate the effort required to clean the tree. */
     private WorkStrategy _workStrategy;
 
     /**
-     * Constructs a new Tree object with the specified ID, name, age, and cleaning difficulty.
+     * Constructs a new Tree object with the specified ID, name, age, and cleaning difficulty,
+     * planted in the current season of the given clock.
      *
      * @param id the unique identifier of the tree.
      * @param name the name of the tree.
      * @param age the age of the tree.
      * @param cleaningDifficulty the base difficulty of cleaning the tree.
+     * @param clock the season clock of the hotel where the tree is planted.
+     */
+    public Tree(String id, String name, int age, int cleaningDifficulty, SeasonClock clock) {
+        this(id, name, age, clock.getElapsedSeasons(), cleaningDifficulty, clock);
+    }
+
+    /**
+     * Constructs a Tree object that was planted in a given season of the clock, with the age it had then.
+     * Used to restore trees from a snapshot.
+     *
+     * @param id the unique identifier of the tree.
+     * @param name the name of the tree.
+     * @param plantingAge the age of the tree when it was planted.
+     * @param plantingSeason the number of seasons the clock had elapsed when the tree was planted.
+     * @param cleaningDifficulty the base difficulty of cleaning the tree.
+     * @param clock the season clock of the hotel where the tree is planted.
      */
-    public Tree(String id, String name, int age, int cleaningDifficulty) {
+    public Tree(String id, String name, int plantingAge, int plantingSeason, int cleaningDifficulty, SeasonClock clock) {
         _id = id;
         _name = name;
-        _age = age;
+        _plantingAge = plantingAge;
+        _plantingSeason = plantingSeason;
         _cleaningDifficulty = cleaningDifficulty;
+        _clock = clock;
         _workStrategy = new TreeWorkStrategy(this);
     }
 
+    /**
+     * Restores a tree from a hotel saved with Java serialization, planted as many seasons ago as the quarters
+     * of a year in its age, on a clock of its own in the season of its state, until it is moved to the clock
+     * of its hotel (see {@link #setClock(SeasonClock)}).
+     * 
+     * @param in the stream from which the tree is read.
+     * @throws IOException if the stream cannot be read or the tree has no state.
+     * @throws ClassNotFoundException if a serialized class is not available.
+     */
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        TreeState state = (TreeState) fields.get("_state", null);
+        if (state == null)
+            throw new InvalidObjectException("tree without a state");
+        int quarters = (int) Math.round(fields.get("_age", 0.0) * 4);
+        int season = state.getSeason().value();
+        _id = (String) fields.get("_id", null);
+        _name = (String) fields.get("_name", null);
+        _plantingAge = quarters / 4;
+        _plantingSeason = season - quarters % 4;
+        _cleaningDifficulty = fields.get("_cleaningDifficulty", 0);
+        _clock = new SeasonClock(season);
+        _workStrategy = (WorkStrategy) fields.get("_workStrategy", null);
+    }
+
+    /**
+     * Moves the tree to another season clock, keeping its age, when a hotel saved with Java serialization
+     * is read and its trees are given the clock of the hotel.
+     * 
+     * @param clock the season clock of the hotel where the tree is planted.
+     */
+    public void setClock(SeasonClock clock) {
+        _plantingSeason += clock.getElapsedSeasons() - _clock.getElapsedSeasons();
+        _clock = clock;
+    }
+
     /**
      * @return the tree's id.
      */
@@ -93,6 +170,20 @@ public abstract class Tree implements Serializable {
         return _name;
     }
 
+    /**
+     * @return the age of the tree when it was planted.
+     */
+    public int getPlantingAge() {
+        return _plantingAge;
+    }
+
+    /**
+     * @return the number of seasons the clock had elapsed when the tree was planted.
+     */
+    public int getPlantingSeason() {
+        return _plantingSeason;
+    }
+
     /**
      * @return the tree's cleaning difficulty.
      */
@@ -101,12 +192,12 @@ public abstract class Tree implements Serializable {
     }
 
     /**
-     * Retrieves the age of the tree.
+     * Retrieves the age of the tree: each season passed since it was planted adds a quarter of a year.
      *
      * @return the age of the tree as an integer.
      */
     public int getAge() {
-        return (int)Math.floor(_age);
+        return _plantingAge + (_clock.getElapsedSeasons() - _plantingSeason) / 4;
     }
 
     /**
@@ -115,17 +206,16 @@ public abstract class Tree implements Serializable {
      * @return the current state of the tree as a {@link TreeState} object.
      */
     public TreeState getTreeState() {
-        return _state;
+        return stateIn(_clock.getSeason());
     }
 
     /**
-     * Sets the state of the tree to the given state.
+     * Retrieves the state of this kind of tree in the given season.
      *
-     * @param newState the new state of the tree to be set
+     * @param season the season.
+     * @return the shared state of this kind of tree in the season.
      */
-    public void setState(TreeState newState) {
-        _state = newState;
-    }
+    protected abstract TreeState stateIn(Season season);
 
     /**
      * Retrieves the biological cycle of the tree.
@@ -133,35 +223,25 @@ public abstract class Tree implements Serializable {
      * @return the biological cycle of the tree as a string.
      */
     protected String getBiologicalCycle() {
-        if (_state != null) {
-            return _state.getBiologicalCycle();
-        }
-        return null;
-    }
-
-    
-    public int getSeasonalEffort() {
-        return _state.getSeasonalEffort();
+        return getTreeState().getBiologicalCycle();
     }
 
     /**
-     * Advances the season of the tree to the next one.
+     * Retrieves the effort required for the tree in the current season.
+     *
+     * @return the seasonal effort of the tree.
      */
-    public void advanceSeason() {
-        _state.nextTreeState();
-        incrementAge();
+    public int getSeasonalEffort() {
+        return getTreeState().getSeasonalEffort();
     }
 
     /**
-     * Increments the age of the tree by a season.
+     * Retrieves the current season.
+     *
+     * @return the current season.
      */
-    private void incrementAge() {
-        _age += 0.25;
-    }
-
-
     public Season getSeason() {
-        return _state.getSeason();
+        return _clock.getSeason();
     }
 
     /**
@@ -1,34 +1,65 @@
 package hva.treeStates;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 /**
- * The {@code DeciduousTreeState} class represents the state of a deciduous tree, including its seasonal effort,
- * biological cycle, and current season. This is an abstract class that must be extended by concrete implementations
+ * The {@code DeciduousTreeState} class represents the state of a deciduous tree in a given season, including its seasonal effort
+ * and biological cycle. This is an abstract class that must be extended by concrete implementations
  * to define specific deciduous tree states.
  * 
  * <p>This class extends the {@link TreeState} class and provides a common base for all deciduous tree states.</p>
  * 
- * <p>Each {@code DeciduousTreeState} object is associated with a specific {@code Tree} object and contains information
- * about the effort required for the tree in the current season, the biological cycle of the tree, and the current season.</p>
- * 
- * <p>The class provides methods to retrieve the tree, seasonal effort, biological cycle, and season associated with the tree state.
- * It also defines abstract methods for transitioning to the next tree state and creating a new tree state for a different tree.</p>
+ * <p>There is a single, immutable instance of each {@code DeciduousTreeState}, shared by every deciduous tree: the state
+ * of a tree is obtained from the current season with {@link #forSeason(Season)}.</p>
  * 
  * <p>The {@code equals} method is overridden to compare two {@code DeciduousTreeState} objects based on their season.</p>
  */
 public abstract class DeciduousTreeState extends TreeState {
 
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = 3576377669230498649L;
+
     /**
-     * Constructs a new {@code DeciduousTreeState} with the specified tree, seasonal effort, biological cycle, and season.
+     * Constructs a new {@code DeciduousTreeState} with the specified seasonal effort, biological cycle, and season.
      *
-     * @param tree the tree associated with this state
-     * @param seasonalEffort the effort required for the tree in the current season
+     * @param seasonalEffort the effort required for the tree in the season
      * @param biologicalCycle the biological cycle of the tree
-     * @param season the current season
+     * @param season the season
+     */
+    protected DeciduousTreeState(int seasonalEffort, String biologicalCycle, Season season) {
+        super(seasonalEffort, biologicalCycle, season);
+    }
+
+    /**
+     * Returns the state of a deciduous tree in the given season.
+     *
+     * @param season the season
+     * @return the shared state of a deciduous tree in the season
+     */
+    public static DeciduousTreeState forSeason(Season season) {
+        return switch (season) {
+            case SPRING -> DeciduousTreeStateSpring.INSTANCE;
+            case SUMMER -> DeciduousTreeStateSummer.INSTANCE;
+            case AUTUMN -> DeciduousTreeStateAutumn.INSTANCE;
+            case WINTER -> DeciduousTreeStateWinter.INSTANCE;
+        };
+    }
+
+    /**
+     * Replaces a state read from a hotel saved with Java serialization with the shared state of its season.
+     *
+     * @return the shared state of a deciduous tree in the season of the state read.
+     * @throws ObjectStreamException if the state read has no season.
      */
-    public DeciduousTreeState(Tree tree, int seasonalEffort, String biologicalCycle, Season season) {
-        super(tree, seasonalEffort, biologicalCycle, season);
+    @Serial
+    protected Object readResolve() throws ObjectStreamException {
+        if (getSeason() == null)
+            throw new InvalidObjectException("deciduous tree state without a season");
+        return forSeason(getSeason());
     }
 }
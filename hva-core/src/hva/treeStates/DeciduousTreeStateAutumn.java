@@ -1,21 +1,23 @@
 package hva.treeStates;
 
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 public class DeciduousTreeStateAutumn extends DeciduousTreeState {
-    
-    public DeciduousTreeStateAutumn(Tree tree) {
-        super(tree, 5, "LARGARFOLHAS", Season.AUTUMN);
-    }
 
-    @Override
-    public void nextTreeState() {
-        getTree().setState(new DeciduousTreeStateWinter(getTree()));
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = 5048183320621717022L;
+
+    public static final DeciduousTreeStateAutumn INSTANCE = new DeciduousTreeStateAutumn();
+    
+    private DeciduousTreeStateAutumn() {
+        super(5, "LARGARFOLHAS", Season.AUTUMN);
     }
 
     @Override
-    public TreeState createForNewTree(Tree newTree) {
-        return new DeciduousTreeStateAutumn(newTree); 
+    public TreeState nextTreeState() {
+        return DeciduousTreeStateWinter.INSTANCE;
     }
 }
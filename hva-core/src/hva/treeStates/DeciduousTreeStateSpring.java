@@ -1,21 +1,23 @@
 package hva.treeStates;
 
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 public class DeciduousTreeStateSpring extends DeciduousTreeState {
 
-    public DeciduousTreeStateSpring(Tree tree) {
-        super(tree, 1, "GERARFOLHAS", Season.SPRING);
-    }
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = 7508016929752305473L;
 
-    @Override
-    public void nextTreeState() {
-        getTree().setState(new DeciduousTreeStateSummer(getTree()));
+    public static final DeciduousTreeStateSpring INSTANCE = new DeciduousTreeStateSpring();
+    
+    private DeciduousTreeStateSpring() {
+        super(1, "GERARFOLHAS", Season.SPRING);
     }
 
     @Override
-    public TreeState createForNewTree(Tree newTree) {
-        return new DeciduousTreeStateSpring(newTree); 
+    public TreeState nextTreeState() {
+        return DeciduousTreeStateSummer.INSTANCE;
     }
 }
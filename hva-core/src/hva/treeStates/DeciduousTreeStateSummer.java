@@ -1,21 +1,23 @@
 package hva.treeStates;
 
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 public class DeciduousTreeStateSummer extends DeciduousTreeState {
 
-    public DeciduousTreeStateSummer(Tree tree) {
-        super(tree, 2, "COMFOLHAS", Season.SUMMER);
-    }
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = 8261829097894836081L;
 
-    @Override
-    public void nextTreeState() {
-        getTree().setState(new DeciduousTreeStateAutumn(getTree()));
+    public static final DeciduousTreeStateSummer INSTANCE = new DeciduousTreeStateSummer();
+    
+    private DeciduousTreeStateSummer() {
+        super(2, "COMFOLHAS", Season.SUMMER);
     }
 
     @Override
-    public TreeState createForNewTree(Tree newTree) {
-        return new DeciduousTreeStateSummer(newTree); 
+    public TreeState nextTreeState() {
+        return DeciduousTreeStateAutumn.INSTANCE;
     }
 }
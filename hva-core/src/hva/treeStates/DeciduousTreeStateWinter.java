@@ -1,21 +1,23 @@
 package hva.treeStates;
 
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 public class DeciduousTreeStateWinter extends DeciduousTreeState {
-    
-    public DeciduousTreeStateWinter(Tree tree) {
-        super(tree, 0, "SEMFOLHAS", Season.WINTER);
-    }
 
-    @Override
-    public void nextTreeState() {
-        getTree().setState(new DeciduousTreeStateSpring(getTree()));
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = 1344072972229191345L;
+
+    public static final DeciduousTreeStateWinter INSTANCE = new DeciduousTreeStateWinter();
+    
+    private DeciduousTreeStateWinter() {
+        super(0, "SEMFOLHAS", Season.WINTER);
     }
 
     @Override
-    public TreeState createForNewTree(Tree newTree) {
-        return new DeciduousTreeStateWinter(newTree); 
+    public TreeState nextTreeState() {
+        return DeciduousTreeStateSpring.INSTANCE;
     }
 }
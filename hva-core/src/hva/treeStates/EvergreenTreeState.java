@@ -1,34 +1,65 @@
 package hva.treeStates;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 /**
- * The {@code EvergreenTreeState} class represents the state of an evergreen tree, including its seasonal effort,
- * biological cycle, and current season. This is an abstract class that must be extended by concrete implementations
+ * The {@code EvergreenTreeState} class represents the state of an evergreen tree in a given season, including its seasonal effort
+ * and biological cycle. This is an abstract class that must be extended by concrete implementations
  * to define specific evergreen tree states.
  * 
  * <p>This class extends the {@link TreeState} class and provides a common base for all evergreen tree states.</p>
  * 
- * <p>Each {@code EvergreenTreeState} object is associated with a specific {@code Tree} object and contains information
- * about the effort required for the tree in the current season, the biological cycle of the tree, and the current season.</p>
- * 
- * <p>The class provides methods to retrieve the tree, seasonal effort, biological cycle, and season associated with the tree state.
- * It also defines abstract methods for transitioning to the next tree state and creating a new tree state for a different tree.</p>
+ * <p>There is a single, immutable instance of each {@code EvergreenTreeState}, shared by every evergreen tree: the state
+ * of a tree is obtained from the current season with {@link #forSeason(Season)}.</p>
  * 
  * <p>The {@code equals} method is overridden to compare two {@code EvergreenTreeState} objects based on their season.</p>
  */
 public abstract class EvergreenTreeState extends TreeState {
 
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = -6975233867736968014L;
+
     /**
-     * Constructs a new {@code EvergreenTreeState} with the specified tree, seasonal effort, biological cycle, and season.
+     * Constructs a new {@code EvergreenTreeState} with the specified seasonal effort, biological cycle, and season.
      *
-     * @param tree the tree associated with this state
-     * @param seasonalEffort the effort required for the tree in the current season
+     * @param seasonalEffort the effort required for the tree in the season
      * @param biologicalCycle the biological cycle of the tree
-     * @param season the current season
+     * @param season the season
+     */
+    protected EvergreenTreeState(int seasonalEffort, String biologicalCycle, Season season) {
+        super(seasonalEffort, biologicalCycle, season);
+    }
+
+    /**
+     * Returns the state of an evergreen tree in the given season.
+     *
+     * @param season the season
+     * @return the shared state of an evergreen tree in the season
+     */
+    public static EvergreenTreeState forSeason(Season season) {
+        return switch (season) {
+            case SPRING -> EvergreenTreeStateSpring.INSTANCE;
+            case SUMMER -> EvergreenTreeStateSummer.INSTANCE;
+            case AUTUMN -> EvergreenTreeStateAutumn.INSTANCE;
+            case WINTER -> EvergreenTreeStateWinter.INSTANCE;
+        };
+    }
+
+    /**
+     * Replaces a state read from a hotel saved with Java serialization with the shared state of its season.
+     *
+     * @return the shared state of an evergreen tree in the season of the state read.
+     * @throws ObjectStreamException if the state read has no season.
      */
-    public EvergreenTreeState(Tree tree, int seasonalEffort, String biologicalCycle, Season season) {
-        super(tree, seasonalEffort, biologicalCycle, season);
+    @Serial
+    protected Object readResolve() throws ObjectStreamException {
+        if (getSeason() == null)
+            throw new InvalidObjectException("evergreen tree state without a season");
+        return forSeason(getSeason());
     }
 }
@@ -1,21 +1,23 @@
 package hva.treeStates;
 
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 public class EvergreenTreeStateAutumn extends EvergreenTreeState {
 
-    public EvergreenTreeStateAutumn(Tree tree) {
-        super(tree, 1, "COMFOLHAS", Season.AUTUMN);
-    }
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = -745085351909720806L;
 
-    @Override
-    public void nextTreeState() {
-        getTree().setState(new EvergreenTreeStateWinter(getTree()));
+    public static final EvergreenTreeStateAutumn INSTANCE = new EvergreenTreeStateAutumn();
+    
+    private EvergreenTreeStateAutumn() {
+        super(1, "COMFOLHAS", Season.AUTUMN);
     }
 
     @Override
-    public TreeState createForNewTree(Tree newTree) {
-        return new EvergreenTreeStateAutumn(newTree); 
+    public TreeState nextTreeState() {
+        return EvergreenTreeStateWinter.INSTANCE;
     }
 }
@@ -1,21 +1,23 @@
 package hva.treeStates;
 
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 public class EvergreenTreeStateSpring extends EvergreenTreeState {
-    
-    public EvergreenTreeStateSpring(Tree tree) {
-        super(tree, 1, "GERARFOLHAS", Season.SPRING);
-    }
 
-    @Override
-    public void nextTreeState() {
-        getTree().setState(new EvergreenTreeStateSummer(getTree()));
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = 3018158511691963740L;
+
+    public static final EvergreenTreeStateSpring INSTANCE = new EvergreenTreeStateSpring();
+    
+    private EvergreenTreeStateSpring() {
+        super(1, "GERARFOLHAS", Season.SPRING);
     }
 
     @Override
-    public TreeState createForNewTree(Tree newTree) {
-        return new EvergreenTreeStateSpring(newTree); 
+    public TreeState nextTreeState() {
+        return EvergreenTreeStateSummer.INSTANCE;
     }
 }
@@ -1,21 +1,23 @@
 package hva.treeStates;
 
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 public class EvergreenTreeStateSummer extends EvergreenTreeState {
-    
-    public EvergreenTreeStateSummer(Tree tree) {
-        super(tree, 1, "COMFOLHAS", Season.SUMMER);
-    }
 
-    @Override
-    public void nextTreeState() {
-        getTree().setState(new EvergreenTreeStateAutumn(getTree()));
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = 7076375076548353053L;
+
+    public static final EvergreenTreeStateSummer INSTANCE = new EvergreenTreeStateSummer();
+    
+    private EvergreenTreeStateSummer() {
+        super(1, "COMFOLHAS", Season.SUMMER);
     }
 
     @Override
-    public TreeState createForNewTree(Tree newTree) {
-        return new EvergreenTreeStateSummer(newTree); 
+    public TreeState nextTreeState() {
+        return EvergreenTreeStateAutumn.INSTANCE;
     }
 }
@@ -1,21 +1,23 @@
 package hva.treeStates;
 
+import java.io.Serial;
+
 import hva.enums.Season;
-import hva.tree.Tree;
 
 public class EvergreenTreeStateWinter extends EvergreenTreeState {
 
-    public EvergreenTreeStateWinter(Tree tree) {
-        super(tree, 2, "LARGARFOLHAS", Season.WINTER);
-    }
+    /** Class serial number, computed by default before the class was given one. */
+    @Serial
+    private static final long serialVersionUID = -5872992606315416893L;
 
-    @Override
-    public void nextTreeState() {
-        getTree().setState(new EvergreenTreeStateSpring(getTree()));
+    public static final EvergreenTreeStateWinter INSTANCE = new EvergreenTreeStateWinter();
+    
+    private EvergreenTreeStateWinter() {
+        super(2, "LARGARFOLHAS", Season.WINTER);
     }
 
     @Override
-    public TreeState createForNewTree(Tree newTree) {
-        return new EvergreenTreeStateWinter(newTree); 
+    public TreeState nextTreeState() {
+        return EvergreenTreeStateSpring.INSTANCE;
     }
 }
@@ -3,71 +3,56 @@ package hva.treeStates;
 import java.io.Serial;
 import java.io.Serializable;
 
-import hva.Habitat;
 import hva.enums.Season;
-import hva.tree.Tree;
 
 
 /**
- * The {@code TreeState} class represents the state of a tree, including its seasonal effort,
- * biological cycle, and current season. This is an abstract class that must be extended by 
+ * The {@code TreeState} class represents the state of a tree in a given season, including its seasonal effort
+ * and biological cycle. This is an abstract class that must be extended by 
  * concrete implementations to define specific tree states.
  * 
- * <p>This class implements the {@code Serializable} interface to allow its instances to be 
- * serialized and deserialized.</p>
+ * <p>Tree states are immutable flyweights: there is a single instance of each concrete state, shared by every
+ * tree of the same kind. A tree does not store its state; it is derived from the season of the hotel.</p>
  * 
- * <p>Each {@code TreeState} object is associated with a specific {@code Tree} object and 
- * contains information about the effort required for the tree in the current season, the 
- * biological cycle of the tree, and the current season.</p>
+ * <p>States are still {@code Serializable} because hotels saved with Java serialization, before the trees
+ * shared the season of the hotel, hold one state per tree; each of them is resolved to the shared instance
+ * as it is read.</p>
  * 
- * <p>The class provides methods to retrieve the tree, seasonal effort, biological cycle, 
- * and season associated with the tree state. It also defines abstract methods for transitioning 
- * to the next tree state and creating a new tree state for a different tree.</p>
+ * <p>The class provides methods to retrieve the seasonal effort, biological cycle, 
+ * and season associated with the tree state. It also defines an abstract method for obtaining 
+ * the state of the next season.</p>
  * 
  * <p>The {@code equals} method is overridden to compare two {@code TreeState} objects based 
  * on their season.</p>
  */
 public abstract class TreeState implements Serializable {
+
     /** Class serial number. */
     @Serial
     private static final long serialVersionUID = 202407081733L;
-    
-    /** The tree associated with this state. */
-    private Tree _tree;
 
-    /** The effort required for the tree in the current season. */
-    private int _seasonalEffort;
+    /** The effort required for the tree in the season. */
+    private final int _seasonalEffort;
 
     /** The biological cycle of the tree. */
-    private String _biologicalCycle;
+    private final String _biologicalCycle;
 
-    /** The current season. */
-    private Season _season;
+    /** The season of this state. */
+    private final Season _season;
 
     /**
-     * Constructs a new {@code TreeState} with the specified tree, seasonal effort, biological cycle, and season.
+     * Constructs a new {@code TreeState} with the specified seasonal effort, biological cycle, and season.
      *
-     * @param tree the tree associated with this state
-     * @param seasonalEffort the effort required for the tree in the current season
+     * @param seasonalEffort the effort required for the tree in the season
      * @param biologicalCycle the biological cycle of the tree
-     * @param season the current season
+     * @param season the season
      */
-    public TreeState(Tree tree, int seasonalEffort, String biologicalCycle, Season season) {
-        _tree = tree;
+    protected TreeState(int seasonalEffort, String biologicalCycle, Season season) {
         _seasonalEffort = seasonalEffort;
         _biologicalCycle = biologicalCycle;
         _season = season;
     }
 
-    /**
-     * Retrieves the tree associated with this state.
-     *
-     * @return the tree associated with this state.
-     */
-    public Tree getTree() {
-        return _tree;
-    }
-
     /**
      * Retrieves the seasonal effort value.
      *
@@ -87,26 +72,20 @@ public abstract class TreeState implements Serializable {
     }
 
     /**
-     * Retrieves the current season.
+     * Retrieves the season of this state.
      *
-     * @return the current season.
+     * @return the season.
      */
     public Season getSeason() {
         return _season;
     }
 
     /**
-     * Updates the tree state to the next season.
-     */
-    public abstract void nextTreeState();
-
-    /**
-     * Creates a new tree state for the specified tree.
+     * Retrieves the state of the same kind of tree in the next season.
      *
-     * @param newTree the tree for which to create a new tree state
-     * @return a new tree state for the specified tree
+     * @return the shared state of the next season.
      */
-    public abstract TreeState createForNewTree(Tree newTree);
+    public abstract TreeState nextTreeState();
 
     /**
      * Compares this TreeState object to the specified object for equality.
@@ -0,0 +1,135 @@
+package hva;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import hva.employee.Employee;
+import hva.employee.Veterinarian;
+
+/**
+ * The {@code ExportRoundTripCheck} class checks that a hotel exported to a text input file imports back into
+ * an equivalent hotel, both from the text file and from the bulk-import file it converts into.
+ *
+ * <p>The hotel is the one saved with Java serialization for {@link LegacyHotelCheck}, whose habitats have
+ * influences on species and whose animals were vaccinated, some with the wrong vaccine. The season is not
+ * exported, so the report leaves out what depends on it: the trees and the satisfaction of the zookeepers
+ * and of the hotel. It holds the animals, with their health and satisfaction, which depends on the influences
+ * of their habitats, the veterinarians with their vaccinations, the vaccines with their doses, and the
+ * vaccinations, wrong or not, in order.</p>
+ *
+ * <p>Usage: {@code java hva.ExportRoundTripCheck <saved hotel>}; the check fails with an
+ * {@link AssertionError} at the first line that differs.</p>
+ */
+public class ExportRoundTripCheck {
+
+    /**
+     * Runs the check.
+     *
+     * @param args the saved hotel.
+     * @throws Exception if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("hva-export");
+        try {
+            // the saved hotel is copied, as loading it opens a journal next to it
+            Path legacy = dir.resolve("legacy.hva");
+            Files.copy(Path.of(args[0]), legacy);
+            Path text = dir.resolve("export.txt");
+            Path bulk = dir.resolve("export.hvab");
+
+            HotelManager manager = new HotelManager();
+            manager.load(legacy.toString());
+            List<String> expected = report(manager.getHotel());
+            manager.getHotel().exportTo(text);
+            manager.convertImportFile(text.toString(), bulk.toString());
+
+            compare("text", expected, report(imported(text)));
+            compare("bulk", expected, report(imported(bulk)));
+        } finally {
+            delete(dir);
+        }
+        System.out.println("ExportRoundTripCheck: ok");
+    }
+
+    /**
+     * Imports a file into a new hotel.
+     *
+     * @param path the text or bulk-import file.
+     * @return the hotel.
+     * @throws Exception if the file cannot be imported.
+     */
+    private static Hotel imported(Path path) throws Exception {
+        HotelManager manager = new HotelManager();
+        manager.importFile(path.toString());
+        return manager.getHotel();
+    }
+
+    /**
+     * Reports the state of a hotel that does not depend on the season.
+     *
+     * @param hotel the hotel.
+     * @return the lines of the report.
+     * @throws Exception if an entity of the hotel cannot be found by its own ID.
+     */
+    private static List<String> report(Hotel hotel) throws Exception {
+        StringWriter text = new StringWriter();
+        try (PrintWriter out = new PrintWriter(text)) {
+            for (Animal animal : hotel.allAnimals())
+                out.println(animal + "|" + hotel.animalSatisfaction(animal.getId()));
+            for (Employee employee : hotel.allEmployees())
+                if (employee instanceof Veterinarian)
+                    out.println(employee + "|" + hotel.veterinarianVaccinations(employee.getId()).size());
+            for (Vaccine vaccine : hotel.allVaccines())
+                out.println(vaccine);
+            for (Vaccination vaccination : hotel.allVaccinations())
+                out.println(vaccination);
+            for (Vaccination vaccination : hotel.wrongVaccinations())
+                out.println("wrong|" + vaccination);
+        }
+        return text.toString().lines().toList();
+    }
+
+    /**
+     * Compares a report with the expected one, failing at the first line that differs.
+     *
+     * @param name what the report is of.
+     * @param expected the expected report.
+     * @param actual the report.
+     */
+    private static void compare(String name, List<String> expected, List<String> actual) {
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            String wanted = i < expected.size() ? expected.get(i) : "<end>";
+            String found = i < actual.size() ? actual.get(i) : "<end>";
+            if (!wanted.equals(found))
+                fail(name + ", line " + (i + 1) + ": expected " + wanted + " but found " + found);
+        }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param message the failure.
+     */
+    private static void fail(String message) {
+        throw new AssertionError("ExportRoundTripCheck: " + message);
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     *
+     * @param dir the directory.
+     * @throws IOException if a file cannot be deleted.
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+}
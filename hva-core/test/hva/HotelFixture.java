@@ -0,0 +1,183 @@
+package hva;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The {@code HotelFixture} class writes the text input file of a large hotel, made up at random from a seed,
+ * for the checks that need one, such as {@link SnapshotStressCheck}, and for {@link SnapshotBenchmark}.
+ *
+ * <p>For every 100 animals, the hotel has 2 species, 2 habitats, 20 trees, 10 employees (zookeepers and
+ * veterinarians, each responsible for one to three habitats or species) and 4 vaccines (each for one to three
+ * species). Each habitat plants none to three trees of its own and has an influence on one species. The
+ * vaccinations are given by random veterinarians to random animals, and about one in four is wrong. The
+ * entries are written in dependency order, so the file also imports sequentially.</p>
+ *
+ * <p>Usage: {@code java hva.HotelFixture <file> <animals> [vaccinations]}. With no vaccinations, the file only
+ * has the entities, with no influences either, as builds from before influence and vaccination entries
+ * import it without reporting them.</p>
+ *
+ * <p><b>Attributes:</b></p>
+ * <ul>
+ *   <li>_out: The writer of the text file.</li>
+ *   <li>_random: The source of the choices, from the seed.</li>
+ * </ul>
+ */
+public class HotelFixture {
+
+    /** The seed of every fixture, so the same size gives the same hotel. */
+    private static final long SEED = 202407081733L;
+
+    /** The writer of the text file. */
+    private final Writer _out;
+
+    /** The source of the choices, from the seed. */
+    private final Random _random = new Random(SEED);
+
+    /**
+     * @param out the writer of the text file.
+     */
+    private HotelFixture(Writer out) {
+        _out = out;
+    }
+
+    /**
+     * Writes a fixture.
+     *
+     * @param args the file, the number of animals and, optionally, the number of vaccinations.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int animals = Integer.parseInt(args[1]);
+        write(Path.of(args[0]), animals, args.length > 2 ? Integer.parseInt(args[2]) : animals);
+    }
+
+    /**
+     * Writes the text input file of a hotel.
+     *
+     * @param path the file, replaced if it exists.
+     * @param animals the number of animals.
+     * @param vaccinations the number of vaccinations; with none, there are no influences either.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(Path path, int animals, int vaccinations) throws IOException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            new HotelFixture(out).write(animals, vaccinations);
+        }
+    }
+
+    /**
+     * Writes the entries of the hotel, in dependency order.
+     *
+     * @param animals the number of animals.
+     * @param vaccinations the number of vaccinations.
+     * @throws IOException if the file cannot be written.
+     */
+    private void write(int animals, int vaccinations) throws IOException {
+        int species = Math.max(2, animals / 50);
+        int habitats = Math.max(2, animals / 50);
+        int trees = Math.max(2, animals / 5);
+        int employees = Math.max(2, animals / 10);
+        int vaccines = Math.max(2, animals / 25);
+        for (int i = 0; i < species; i++)
+            line("ESPÉCIE|S" + i + "|Espécie " + (char) ('a' + _random.nextInt(26)) + i);
+        for (int i = 0; i < trees; i++)
+            line("ÁRVORE|T" + i + "|Árvore " + i + "|" + _random.nextInt(20) + "|" + (1 + _random.nextInt(10)) + "|"
+                + (_random.nextBoolean() ? "PERENE" : "CADUCA"));
+        // each habitat plants some of its own block of trees, as a tree grows in one habitat
+        for (int i = 0; i < habitats; i++)
+            line("HABITAT|H" + i + "|Habitat " + i + "|" + (1 + _random.nextInt(500)) + treeIds(i, trees / habitats));
+        // a vaccine for each species, if any, so most vaccinations can use an adequate one
+        int[] vaccineOf = new int[species];
+        Arrays.fill(vaccineOf, -1);
+        for (int i = 0; i < vaccines; i++) {
+            int[] targets = pick(species);
+            for (int target : targets)
+                vaccineOf[target] = i;
+            line("VACINA|V" + i + "|Vacina " + i + ids("S", targets));
+        }
+        int[] speciesOf = new int[animals];
+        for (int i = 0; i < animals; i++) {
+            speciesOf[i] = _random.nextInt(species);
+            line("ANIMAL|A" + i + "|Animal " + i + "|S" + speciesOf[i] + "|H" + _random.nextInt(habitats));
+        }
+        // even employees are zookeepers and odd ones veterinarians, so every other one can vaccinate
+        for (int i = 0; i < employees; i++)
+            line(i % 2 == 0
+                ? "TRATADOR|E" + i + "|Tratador " + i + ids("H", pick(habitats))
+                : "VETERINÁRIO|E" + i + "|Veterinário " + i + ids("S", pick(species)));
+        if (vaccinations == 0)
+            return;
+        for (int i = 0; i < habitats; i++)
+            line("INFLUÊNCIA|H" + i + "|S" + _random.nextInt(species) + "|" + (_random.nextBoolean() ? "POS" : "NEG"));
+        // one in four vaccinations uses a random vaccine, which is almost always wrong
+        for (int i = 0; i < vaccinations; i++) {
+            int animal = _random.nextInt(animals);
+            int vaccine = vaccineOf[speciesOf[animal]];
+            if (vaccine < 0 || _random.nextInt(4) == 0)
+                vaccine = _random.nextInt(vaccines);
+            line("VACINAÇÃO|V" + vaccine + "|E" + (2 * _random.nextInt(employees / 2) + 1) + "|A" + animal);
+        }
+    }
+
+    /**
+     * Picks one to three different random entities.
+     *
+     * @param count the number of entities.
+     * @return the numbers of the entities picked.
+     */
+    private int[] pick(int count) {
+        int size = Math.min(count, 1 + _random.nextInt(3));
+        Set<Integer> numbers = new LinkedHashSet<>();
+        while (numbers.size() < size)
+            numbers.add(_random.nextInt(count));
+        return numbers.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns the identifiers of entities as a last field.
+     *
+     * @param prefix the prefix of the identifiers.
+     * @param numbers the numbers of the entities.
+     * @return the field, after its separator.
+     */
+    private static String ids(String prefix, int[] numbers) {
+        StringBuilder field = new StringBuilder();
+        for (int number : numbers)
+            field.append(field.length() == 0 ? '|' : ',').append(prefix).append(number);
+        return field.toString();
+    }
+
+    /**
+     * Returns a last field of none to three of the trees of the block of a habitat.
+     *
+     * @param habitat the number of the habitat.
+     * @param block the number of trees in the block of each habitat.
+     * @return the field, after its separator, or nothing if the habitat has no trees.
+     */
+    private String treeIds(int habitat, int block) {
+        int size = Math.min(block, _random.nextInt(4));
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < size; i++)
+            field.append(i == 0 ? '|' : ',').append('T').append(habitat * block + i);
+        return field.toString();
+    }
+
+    /**
+     * Writes an entry.
+     *
+     * @param entry the entry.
+     * @throws IOException if the file cannot be written.
+     */
+    private void line(String entry) throws IOException {
+        _out.write(entry);
+        _out.write('\n');
+    }
+}
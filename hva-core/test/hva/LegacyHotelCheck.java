@@ -0,0 +1,129 @@
+package hva;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import hva.employee.Employee;
+
+/**
+ * The {@code LegacyHotelCheck} class checks that a hotel saved with Java serialization, before snapshots
+ * existed, still loads, and that it can then be saved as a snapshot and loaded again.
+ *
+ * <p>The fixture was saved by the hotel as it was before snapshots, after importing {@code legacy.txt},
+ * advancing the seasons, changing habitats and responsibilities and vaccinating animals, some with the wrong
+ * vaccine. The expected file holds what that hotel reported right after saving: the satisfaction of the
+ * hotel, its animals and employees, the season it advanced to next, and its habitats with their trees,
+ * vaccines and vaccinations.</p>
+ *
+ * <p>Usage: {@code java hva.LegacyHotelCheck <saved hotel> <expected report>}; the check fails with an
+ * {@link AssertionError} at the first line that differs.</p>
+ */
+public class LegacyHotelCheck {
+
+    /**
+     * Runs the check.
+     *
+     * @param args the saved hotel and the expected report.
+     * @throws Exception if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> expected = Files.readAllLines(Path.of(args[1]), StandardCharsets.UTF_8);
+        Path dir = Files.createTempDirectory("hva-legacy");
+        try {
+            // the saved hotel is copied, as loading it opens a journal next to it
+            Path legacy = dir.resolve("legacy.hva");
+            Files.copy(Path.of(args[0]), legacy);
+            Path snapshot = dir.resolve("snapshot.hva");
+
+            HotelManager manager = new HotelManager();
+            manager.load(legacy.toString());
+            if (manager.getHotel().hasChanged())
+                fail("the hotel read is marked as changed");
+            // an unchanged hotel is not saved
+            manager.getHotel().setChanged(true);
+            manager.saveAs(snapshot.toString());
+            // loaded before the report advances the season, which the journal of the snapshot records
+            HotelManager reloaded = new HotelManager();
+            reloaded.load(snapshot.toString());
+
+            compare("legacy", expected, report(manager.getHotel()));
+            compare("snapshot", expected, report(reloaded.getHotel()));
+        } finally {
+            delete(dir);
+        }
+        System.out.println("LegacyHotelCheck: ok");
+    }
+
+    /**
+     * Reports the state of a hotel, advancing its season once.
+     *
+     * @param hotel the hotel.
+     * @return the lines of the report.
+     * @throws Exception if an entity of the hotel cannot be found by its own ID.
+     */
+    private static List<String> report(Hotel hotel) throws Exception {
+        StringWriter text = new StringWriter();
+        try (PrintWriter out = new PrintWriter(text)) {
+            out.println("global|" + hotel.globalSatisfaction());
+            for (Animal animal : hotel.allAnimals())
+                out.println(animal + "|" + hotel.animalSatisfaction(animal.getId()));
+            for (Employee employee : hotel.allEmployees())
+                out.println(employee + "|" + hotel.employeeSatisfaction(employee.getId()));
+            out.println("season|" + hotel.advanceSeason());
+            for (Habitat habitat : hotel.allHabitats())
+                out.println(habitat.toString().replace(System.lineSeparator(), "\n"));
+            for (Vaccine vaccine : hotel.allVaccines())
+                out.println(vaccine);
+            for (Vaccination vaccination : hotel.allVaccinations())
+                out.println(vaccination);
+            for (Vaccination vaccination : hotel.wrongVaccinations())
+                out.println("wrong|" + vaccination);
+        }
+        return text.toString().lines().toList();
+    }
+
+    /**
+     * Compares a report with the expected one, failing at the first line that differs.
+     *
+     * @param name what the report is of.
+     * @param expected the expected report.
+     * @param actual the report.
+     */
+    private static void compare(String name, List<String> expected, List<String> actual) {
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            String wanted = i < expected.size() ? expected.get(i) : "<end>";
+            String found = i < actual.size() ? actual.get(i) : "<end>";
+            if (!wanted.equals(found))
+                fail(name + ", line " + (i + 1) + ": expected " + wanted + " but found " + found);
+        }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param message the failure.
+     */
+    private static void fail(String message) {
+        throw new AssertionError("LegacyHotelCheck: " + message);
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     *
+     * @param dir the directory.
+     * @throws IOException if a file cannot be deleted.
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package hva;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import hva.enums.SnapshotCompression;
+
+/**
+ * The {@code SnapshotBenchmark} class measures how large a hotel is once saved as a snapshot, at each level of
+ * compression, and how long it takes to save and load, against the file it was read from: a hotel saved with
+ * Java serialization by a build from before snapshots, or an import file, such as a fixture (see
+ * {@link HotelFixture}).
+ *
+ * <p>The hotel file is loaded, or the import file imported, then the hotel is saved as a snapshot at each level
+ * of {@link SnapshotCompression}, and each snapshot is loaded back. Each step is timed several times and the
+ * best time is kept. A load is timed until the hotel is loaded, and again until its vaccination history, which
+ * a snapshot only reads when it is first needed, is read too.</p>
+ *
+ * <p>A large hotel saved with Java serialization can be made by importing a fixture with no vaccinations
+ * ({@code java hva.HotelFixture <file> 100000 0}), which such builds import, into one of them and saving it;
+ * the hotel is then loaded as in {@link LegacyHotelCheck}. Those builds read the file in the platform charset
+ * and write and read the hotel recursively, so they need {@code -Dfile.encoding=UTF-8} and a large stack, such
+ * as {@code -Xss512m}, and so does the benchmark to load the hotel.</p>
+ *
+ * <p>Usage: {@code java -Xss512m hva.SnapshotBenchmark <hotel or import file> [runs]}, with 5 runs by
+ * default.</p>
+ */
+public class SnapshotBenchmark {
+
+    /** The first bytes of a file saved with Java serialization. */
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the hotel or import file and, optionally, the number of runs.
+     * @throws Exception if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path dir = Files.createTempDirectory("hva-benchmark");
+        try {
+            // the hotel file is copied, as loading it opens a journal next to it
+            Path source = dir.resolve("source");
+            Files.copy(Path.of(args[0]), source);
+            String format = format(source);
+            long[] sourceRead = read(source, format == null, runs);
+
+            HotelManager manager = new HotelManager();
+            if (format == null)
+                manager.importFile(source.toString());
+            else
+                manager.load(source.toString());
+            System.out.printf("%-20s %10s %10s %10s %14s%n", "format", "size", "save", "load", "with history");
+            System.out.printf("%-20s %7.2f MB %10s %7d ms %11d ms%n", format == null ? "import file" : format,
+                Files.size(source) / 1e6, "-", sourceRead[0] / 1_000_000, sourceRead[1] / 1_000_000);
+            Path plain = null;
+            long[] plainLoad = null;
+            for (SnapshotCompression compression : SnapshotCompression.values()) {
+                manager.setSnapshotCompression(compression);
+                Path snapshot = null;
+                long save = Long.MAX_VALUE;
+                for (int run = 0; run < runs; run++) {
+                    snapshot = dir.resolve(compression + "-" + run + ".hva");
+                    // an unchanged hotel is not saved
+                    manager.getHotel().setChanged(true);
+                    System.gc();
+                    long start = System.nanoTime();
+                    manager.saveAs(snapshot.toString());
+                    save = Math.min(save, System.nanoTime() - start);
+                }
+                long[] load = read(snapshot, false, runs);
+                System.out.printf("%-20s %7.2f MB %7d ms %7d ms %11d ms%n", "snapshot " + compression,
+                    Files.size(snapshot) / 1e6, save / 1_000_000, load[0] / 1_000_000, load[1] / 1_000_000);
+                if (compression == SnapshotCompression.NONE) {
+                    plain = snapshot;
+                    plainLoad = load;
+                }
+            }
+            manager.reset();
+            if (format != null)
+                System.out.printf("snapshot: %.1fx smaller, loads %.1fx faster (%.1fx with history), best of %d runs%n",
+                    (double) Files.size(source) / Files.size(plain), (double) sourceRead[0] / plainLoad[0],
+                    (double) sourceRead[1] / plainLoad[1], runs);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * @param path a file.
+     * @return the format of the hotel saved in the file, or {@code null} if it is an import file.
+     * @throws IOException if the file cannot be read.
+     */
+    private static String format(Path path) throws IOException {
+        if (SnapshotFormat.isSnapshot(path))
+            return "snapshot";
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readUnsignedShort() == SERIALIZATION_MAGIC ? "Java serialization" : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads a hotel file, or imports an import file, several times.
+     *
+     * @param path the file.
+     * @param imported {@code true} if it is an import file.
+     * @param runs the number of times.
+     * @return the best time to read the hotel and the best time to also read its vaccination history, in
+     *         nanoseconds.
+     * @throws Exception if the file cannot be read.
+     */
+    private static long[] read(Path path, boolean imported, int runs) throws Exception {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        for (int run = 0; run < runs; run++) {
+            HotelManager manager = new HotelManager();
+            System.gc();
+            long start = System.nanoTime();
+            if (imported)
+                manager.importFile(path.toString());
+            else
+                manager.load(path.toString());
+            long loaded = System.nanoTime();
+            manager.getHotel().allVaccinations();
+            long history = System.nanoTime();
+            best[0] = Math.min(best[0], loaded - start);
+            best[1] = Math.min(best[1], history - start);
+            manager.reset();
+        }
+        return best;
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     *
+     * @param dir the directory.
+     * @throws IOException if a file cannot be deleted.
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package hva;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * The {@code SnapshotCompactionCheck} class checks that a hotel can be loaded while it is saved as deltas,
+ * which are folded into a new snapshot every few saves (see {@link SnapshotDelta}).
+ *
+ * <p>A writer changes the area of a habitat to the number of the round and saves the hotel, a hundred
+ * times; after every third delta, the save thread folds the deltas into a new snapshot and removes them.
+ * After each save, while the deltas may still be folding, another manager loads the file, which must hold
+ * the round just saved. Meanwhile, readers open the file read-only over and over; each must find a round
+ * saved before it opened the file, or a later one.</p>
+ *
+ * <p>Usage: {@code java hva.SnapshotCompactionCheck <import file>}, where the import file has a habitat
+ * {@code H1}; the check fails with an {@link AssertionError} at the first load that fails.</p>
+ */
+public class SnapshotCompactionCheck {
+
+    /** The number of rounds of the writer. */
+    private static final int ROUNDS = 100;
+
+    /** The number of threads that open the hotel read-only. */
+    private static final int READERS = 2;
+
+    /**
+     * Runs the check.
+     *
+     * @param args the import file.
+     * @throws Exception if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("hva-compaction");
+        try {
+            String file = dir.resolve("hotel.hva").toString();
+            HotelManager writer = new HotelManager();
+            writer.setSnapshotDeltas(2, 1000);
+            writer.importFile(args[0]);
+            writer.saveAs(file);
+
+            AtomicInteger saved = new AtomicInteger(-1);
+            AtomicInteger opened = new AtomicInteger();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> readers = new ArrayList<>();
+            for (int i = 0; i < READERS; i++) {
+                readers.add(new Thread(() -> {
+                    try {
+                        while (saved.get() < ROUNDS && failure.get() == null) {
+                            int before = saved.get();
+                            HotelManager reader = new HotelManager();
+                            reader.loadReadOnly(file);
+                            int round = reader.getHotel().getHabitat("H1").getArea();
+                            if (before >= 0 && round < before)
+                                fail("round " + before + " was saved before the file was opened, read-only, with round " + round);
+                            reader.reset();
+                            opened.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }, "reader-" + i));
+            }
+            readers.forEach(Thread::start);
+
+            HotelManager loader = new HotelManager();
+            try {
+                for (int round = 0; round < ROUNDS && failure.get() == null; round++) {
+                    writer.getHotel().changeHabitatArea("H1", round);
+                    writer.save();
+                    saved.set(round);
+                    loader.load(file);
+                    int loaded = loader.getHotel().getHabitat("H1").getArea();
+                    if (loaded != round)
+                        fail("round " + round + " was saved, but the file loaded holds round " + loaded);
+                    // closes the journal the load opened, which the writer appends to
+                    loader.reset();
+                }
+            } finally {
+                saved.set(ROUNDS);
+                for (Thread reader : readers)
+                    reader.join();
+            }
+            // the last save may still be folding the deltas
+            for (Thread thread : Thread.getAllStackTraces().keySet())
+                if (thread.getName().equals("hva-save"))
+                    thread.join();
+            writer.reset();
+            if (failure.get() != null)
+                throw new AssertionError("SnapshotCompactionCheck: a read-only hotel could not be opened", failure.get());
+            System.out.println("SnapshotCompactionCheck: ok, " + ROUNDS + " loads and " + opened.get() + " read-only");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param message the failure.
+     */
+    private static void fail(String message) {
+        throw new AssertionError("SnapshotCompactionCheck: " + message);
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     *
+     * @param dir the directory.
+     * @throws IOException if a file cannot be deleted.
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package hva;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * The {@code SnapshotStressCheck} class checks that a hotel with millions of animals and vaccinations is saved
+ * as a snapshot and loaded back, with the same animals, vaccines and vaccinations, on small thread stacks:
+ * the snapshot is written and read as flat tables, walked in loops, so the depth of the stack does not grow
+ * with the number of linked entities, as it did with Java serialization.
+ *
+ * <p>The hotel is imported from a fixture (see {@link HotelFixture}) with as many vaccinations as animals.
+ * The check is meant to run with {@code -Xss256k}, so every thread, including the one that writes the
+ * snapshot, has a small stack; it reports how long the import, the save, the load and the first read of the
+ * vaccination history took, and the size of the snapshot.</p>
+ *
+ * <p>Usage: {@code java -Xss256k hva.SnapshotStressCheck <animals>}; the check fails with an
+ * {@link AssertionError} at the first entity that differs, or with a {@link StackOverflowError}.</p>
+ */
+public class SnapshotStressCheck {
+
+    /**
+     * Runs the check.
+     *
+     * @param args the number of animals.
+     * @throws Exception if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        int animals = Integer.parseInt(args[0]);
+        Path dir = Files.createTempDirectory("hva-stress");
+        try {
+            Path text = dir.resolve("hotel.txt");
+            Path snapshot = dir.resolve("hotel.hva");
+            HotelFixture.write(text, animals, animals);
+
+            long start = System.nanoTime();
+            HotelManager manager = new HotelManager();
+            manager.importFile(text.toString());
+            long imported = System.nanoTime();
+            manager.saveAs(snapshot.toString());
+            long saved = System.nanoTime();
+            HotelManager loader = new HotelManager();
+            loader.load(snapshot.toString());
+            long loaded = System.nanoTime();
+            Collection<Vaccination> vaccinations = loader.getHotel().allVaccinations();
+            long history = System.nanoTime();
+
+            Hotel hotel = manager.getHotel();
+            Hotel read = loader.getHotel();
+            if (hotel.allVaccinations().size() != animals)
+                fail(hotel.allVaccinations().size() + " vaccinations were imported instead of " + animals);
+            compare("animal", hotel.allAnimals(), read.allAnimals());
+            compare("vaccine", hotel.allVaccines(), read.allVaccines());
+            compare("vaccination", hotel.allVaccinations(), vaccinations);
+            compare("wrong vaccination", hotel.wrongVaccinations(), read.wrongVaccinations());
+            System.out.printf("SnapshotStressCheck: ok, %d animals and vaccinations (%d wrong): import %d ms, save %d ms"
+                + " (%.1f MB), load %d ms, vaccination history %d ms%n", animals, read.wrongVaccinations().size(),
+                millis(start, imported), millis(imported, saved), Files.size(snapshot) / 1e6, millis(saved, loaded),
+                millis(loaded, history));
+            manager.reset();
+            loader.reset();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Compares the entities of a hotel with those read back, in order, failing at the first that differs.
+     *
+     * @param name what the entities are.
+     * @param expected the entities of the hotel.
+     * @param actual the entities read back.
+     */
+    private static void compare(String name, Collection<?> expected, Collection<?> actual) {
+        if (expected.size() != actual.size())
+            fail(actual.size() + " " + name + " entities were read instead of " + expected.size());
+        Iterator<?> found = actual.iterator();
+        for (Object wanted : expected) {
+            String entity = found.next().toString();
+            if (!wanted.toString().equals(entity))
+                fail(name + ": expected " + wanted + " but found " + entity);
+        }
+    }
+
+    /**
+     * @param start the start of a step, in nanoseconds.
+     * @param end the end of the step, in nanoseconds.
+     * @return how long the step took, in milliseconds.
+     */
+    private static long millis(long start, long end) {
+        return (end - start) / 1_000_000;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param message the failure.
+     */
+    private static void fail(String message) {
+        throw new AssertionError("SnapshotStressCheck: " + message);
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     *
+     * @param dir the directory.
+     * @throws IOException if a file cannot be deleted.
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+}